@@ -1,11 +1,14 @@
 package com.oscar.market.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 
+import com.oscar.market.marketdata.RateBudget;
+
 @Configuration
 public class HttpClientConfig {
 
@@ -16,4 +19,16 @@ public class HttpClientConfig {
         factory.setReadTimeout(10_000);    // ms
         return builder.requestFactory(() -> factory).build();
     }
+
+    /** Peso REST de spot por minuto, compartido por SpotClient y BinanceClient. */
+    @Bean
+    public RateBudget spotRateBudget(@Value("${market.rest.spot-weight-per-minute:2400}") int weightPerMinute) {
+        return new RateBudget(weightPerMinute);
+    }
+
+    /** Peso REST de futuros por minuto, uno para toda la aplicación (el límite de Binance es por IP). */
+    @Bean
+    public RateBudget futuresRateBudget(@Value("${market.rest.futures-weight-per-minute:1200}") int weightPerMinute) {
+        return new RateBudget(weightPerMinute);
+    }
 }
@@ -0,0 +1,30 @@
+package com.oscar.market.config;
+
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Dos planificadores: el general (spring.task.scheduling.*) para los trabajos que pueden tardar
+ * segundos o minutos (flush del archivo, particiones, reparación del VWAP, sondeo de derivados...)
+ * y uno de un hilo solo para los relojes de 1 s, que así no esperan detrás de ninguno de ellos.
+ * Los relojes lo piden con {@code @Scheduled(scheduler = "timerScheduler")}.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    /** El de siempre; al haber dos, @Scheduled sin scheduler usa el que se llama taskScheduler. */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler timerScheduler() {
+        ThreadPoolTaskScheduler s = new ThreadPoolTaskScheduler();
+        s.setPoolSize(1);
+        s.setThreadNamePrefix("timer-");
+        return s;
+    }
+}
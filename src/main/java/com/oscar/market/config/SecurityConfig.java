@@ -86,6 +86,10 @@ public class SecurityConfig {
                 }
 
                 String provided = req.getHeader("X-API-KEY");
+                // EventSource no puede mandar cabeceras: el stream SSE acepta la clave como parámetro
+                if (provided == null && "GET".equalsIgnoreCase(req.getMethod()) && "/push/stream".equals(path)) {
+                    provided = req.getParameter("apiKey");
+                }
                 if (apiKey == null || apiKey.isBlank() || !apiKey.equals(provided)) {
                     res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                     res.getWriter().write("Unauthorized");
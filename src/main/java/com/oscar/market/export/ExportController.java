@@ -0,0 +1,67 @@
+package com.oscar.market.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv; charset=UTF-8");
+
+    private final HistoryExport export;
+
+    @Value("${DEFAULT_SYMBOL:BTCUSDC}")
+    private String defaultSymbol;
+
+    public ExportController(HistoryExport export) {
+        this.export = export;
+    }
+
+    // Descarga en streaming: dataset = liquidations | candles | derivatives; from/to en epoch ms (to por defecto ahora)
+    @GetMapping("/{dataset}")
+    public ResponseEntity<StreamingResponseBody> export(
+            @PathVariable String dataset,
+            @RequestParam(required = false) String symbol,
+            @RequestParam Long from,
+            @RequestParam(required = false) Long to,
+            @RequestParam(required = false) String metric, // solo derivatives: OI_5M, OI_1H, ...
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response
+    ) {
+        if (!"csv".equalsIgnoreCase(format)) throw new IllegalArgumentException("format no soportado: " + format + " (csv)");
+        String sym = ((symbol == null || symbol.isBlank()) ? defaultSymbol : symbol).toUpperCase(Locale.ROOT);
+        long end = to != null ? to : System.currentTimeMillis();
+        if (end <= from) throw new IllegalArgumentException("'to' debe ser mayor que 'from'");
+        HistoryExport.Dataset ds = HistoryExport.dataset(dataset);
+        export.check(ds);
+
+        String file = ds.name().toLowerCase(Locale.ROOT) + "-" + sym + "-" + from + "-" + end + ".csv";
+        StreamingResponseBody body = out -> {
+            if (export.write(ds, sym, metric, from, end, out)) return;
+            // aún no se ha escrito nada: la respuesta sigue sin confirmar y se puede cambiar a 429
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, null);
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8");
+            out.write("Demasiadas exportaciones en curso".getBytes(StandardCharsets.UTF_8));
+        };
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file + "\"")
+                .body(body);
+    }
+}
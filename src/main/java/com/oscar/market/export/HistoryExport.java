@@ -0,0 +1,234 @@
+package com.oscar.market.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.oscar.market.marketdata.archive.CandleArchive;
+import com.oscar.market.metrics.derivatives.DerivativesSampleStore;
+import com.oscar.market.metrics.derivatives.ws.LiquidationArchive;
+
+/**
+ * Exportación histórica en CSV escrita directamente sobre la respuesta: cada consulta va con
+ * fetchSize dentro de una transacción de solo lectura (en PostgreSQL eso es un cursor) y las
+ * filas se escriben según llegan, así exportar meses cuesta lo mismo en heap que exportar un día.
+ * Cada exportación ocupa una conexión del pool mientras dura: se limitan las concurrentes.
+ */
+@Component
+public class HistoryExport {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryExport.class);
+    private static final int BUFFER = 64 * 1024;
+
+    public enum Dataset { LIQUIDATIONS, CANDLES, DERIVATIVES }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final CandleArchive candles;
+    private final LiquidationArchive liqArchive;
+    private final DerivativesSampleStore samples;
+    private final String liqTable;
+    private final String sampleTable;
+    private final Semaphore slots;
+
+    @Value("${market.export.fetch-size:${spring.jpa.properties.hibernate.jdbc.fetch_size:50}}")
+    private int fetchSize = 50;
+
+    public HistoryExport(JdbcTemplate jdbc, PlatformTransactionManager txManager, CandleArchive candles,
+                         LiquidationArchive liqArchive, DerivativesSampleStore samples,
+                         @Value("${market.export.max-concurrent:2}") int maxConcurrent,
+                         @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.tx.setReadOnly(true);
+        this.candles = candles;
+        this.liqArchive = liqArchive;
+        this.samples = samples;
+        String prefix = (schema == null || schema.isBlank()) ? "" : schema + ".";
+        this.liqTable = prefix + "liquidation_event";
+        this.sampleTable = prefix + "derivatives_sample";
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    public static Dataset dataset(String name) {
+        try {
+            return Dataset.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("dataset no soportado: " + name + " (liquidations, candles, derivatives)");
+        }
+    }
+
+    /** Valida antes de empezar la respuesta que el dataset se puede exportar. */
+    public void check(Dataset dataset) {
+        if (dataset == Dataset.DERIVATIVES && !samples.isReady()) {
+            throw new IllegalArgumentException("derivatives_sample no está activo (market.derivatives.persist)");
+        }
+    }
+
+    /**
+     * Escribe el CSV de [from, to) en out. La plaza se toma y se suelta aquí, dentro del cuerpo en
+     * streaming: si el cuerpo no llega a ejecutarse no queda ninguna reservada. Devuelve false sin
+     * escribir nada si ya están todas ocupadas.
+     */
+    public boolean write(Dataset dataset, String symbol, String metric, long from, long to, OutputStream out)
+            throws IOException {
+        if (!slots.tryAcquire()) return false;
+        long t0 = System.currentTimeMillis();
+        try {
+            Csv csv = new Csv(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER));
+            tx.executeWithoutResult(status -> {
+                switch (dataset) {
+                    case LIQUIDATIONS -> liquidations(csv, symbol, from, to);
+                    case CANDLES -> candles(csv, symbol, from, to);
+                    case DERIVATIVES -> derivatives(csv, symbol, metric, from, to);
+                }
+            });
+            csv.w.flush();
+            log.info("Exportación {} {} [{}, {}): {} filas en {} ms", dataset, symbol, from, to, csv.rows,
+                    System.currentTimeMillis() - t0);
+            return true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // el cliente cortó: la transacción ya se ha deshecho y el cursor cerrado
+        } finally {
+            slots.release();
+        }
+    }
+
+    /* =================== datasets =================== */
+
+    // primero lo archivado (ya borrado de la tabla cruda), después liquidation_event
+    private void liquidations(Csv csv, String symbol, long from, long to) {
+        csv.header("ts,symbol,side,price,qty,notional");
+        liqArchive.scan(symbol, from, to, (ts, v) -> {
+            double side = v[LiquidationArchive.SIDE];
+            csv.row(ts, symbol, side > 0 ? "BUY" : side < 0 ? "SELL" : "",
+                    v[LiquidationArchive.PRICE], v[LiquidationArchive.QTY], v[LiquidationArchive.NOTIONAL]);
+        });
+        stream("select ts, side, price, qty, notional from " + liqTable
+                + " where symbol = ? and ts >= ? and ts < ? order by ts", rs -> {
+            String side = rs.getString(2);
+            csv.row(rs.getLong(1), symbol, side == null ? "" : side, rs.getDouble(3), rs.getDouble(4), rs.getDouble(5));
+        }, symbol, from, to);
+    }
+
+    private void candles(Csv csv, String symbol, long from, long to) {
+        csv.header("open_time,symbol,open,high,low,close,volume");
+        candles.scan(symbol, from, to, (ts, v) -> csv.row(ts, symbol, v));
+    }
+
+    private void derivatives(Csv csv, String symbol, String metric, long from, long to) {
+        csv.header("ts,symbol,metric,v0,v1,v2,v3");
+        String sql = "select ts, metric, v0, v1, v2, v3 from " + sampleTable + " where symbol = ? and ts >= ? and ts < ?";
+        RowWriter rw = rs -> {
+            csv.begin(rs.getLong(1), symbol);
+            csv.text(rs.getString(2));
+            for (int i = 3; i <= 6; i++) {
+                double v = rs.getDouble(i);
+                if (rs.wasNull()) csv.empty();
+                else csv.num(v);
+            }
+            csv.end();
+        };
+        if (metric == null || metric.isBlank()) {
+            stream(sql + " order by ts, metric", rw, symbol, from, to);
+        } else {
+            stream(sql + " and metric = ? order by ts", rw, symbol, from, to, metric.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /* =================== utils =================== */
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void row(ResultSet rs) throws SQLException;
+    }
+
+    private void stream(String sql, RowWriter writer, Object... args) {
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) ps.setObject(i + 1, args[i]);
+            return ps;
+        }, writer::row);
+    }
+
+    /** Escritor CSV mínimo: sin comillas porque ningún campo lleva comas ni saltos de línea. */
+    private static final class Csv {
+        final Writer w;
+        long rows;
+
+        Csv(Writer w) {
+            this.w = w;
+        }
+
+        void header(String line) {
+            put(line);
+            put("\n");
+        }
+
+        void row(long ts, String symbol, String side, double a, double b, double c) {
+            begin(ts, symbol);
+            text(side);
+            num(a);
+            num(b);
+            num(c);
+            end();
+        }
+
+        void row(long ts, String symbol, double[] values) {
+            begin(ts, symbol);
+            for (double v : values) num(v);
+            end();
+        }
+
+        void begin(long ts, String symbol) {
+            put(Long.toString(ts));
+            put(",");
+            put(symbol);
+        }
+
+        void text(String s) {
+            put(",");
+            put(s);
+        }
+
+        void num(double v) {
+            put(",");
+            put(Double.toString(v));
+        }
+
+        void empty() {
+            put(",");
+        }
+
+        void end() {
+            put("\n");
+            rows++;
+        }
+
+        private void put(String s) {
+            try {
+                w.write(s);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -4,20 +4,32 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+/** Klines spot por RestTemplate; cada petición descuenta del presupuesto de spot compartido con {@link SpotClient}. */
 @Service
 public class BinanceClient {
 
+    private static final int KLINES_WEIGHT = 2;
+
     private final RestTemplate rt;
+    private final RateBudget budget;
 
-    public BinanceClient(RestTemplate rt) {
+    public BinanceClient(RestTemplate rt, @Qualifier("spotRateBudget") RateBudget budget) {
         this.rt = rt;
+        this.budget = budget;
     }
 
     public List<Candle> getKlines(String symbol, String interval, int limit) {
+        try {
+            budget.acquire(KLINES_WEIGHT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando peso REST de spot", e);
+        }
         String url = "https://api.binance.com/api/v3/klines?symbol="
                 + symbol + "&interval=" + interval + "&limit=" + limit;
 
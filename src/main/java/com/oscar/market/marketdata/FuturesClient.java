@@ -5,27 +5,38 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
 
+/**
+ * Cliente REST de futuros. Cada petición descuenta su peso del presupuesto compartido de futuros
+ * (market.rest.futures-weight-per-minute), así sondeo, backfill y consultas no se pisan el límite de IP.
+ */
 @Component
 public class FuturesClient {
 
+    private static final int DATA_WEIGHT = 1;
+    private static final int LIQUIDATION_ORDERS_WEIGHT = 20;
+
     private final RestClient http;
+    private final RateBudget budget;
 
-    public FuturesClient() {
+    public FuturesClient(@Qualifier("futuresRateBudget") RateBudget budget) {
         this.http = RestClient.builder()
                 .baseUrl("https://fapi.binance.com")
                 .build();
+        this.budget = budget;
     }
 
     /* ======== PUBLIC FUTURES DATA ======== */
 
     // 19) Open Interest hist
     public List<OpenInterestHistItem> getOpenInterestHist(String symbol, String period, int limit) {
+        spend(DATA_WEIGHT);
         return http.get()
                 .uri(u -> u.path("/futures/data/openInterestHist")
                         .queryParam("symbol", symbol)
@@ -46,6 +57,7 @@ public class FuturesClient {
 
     // 20) Funding rate hist
     public List<FundingItem> getFundingRateHistory(String symbol, int limit) {
+        spend(DATA_WEIGHT);
         return http.get()
                 .uri(u -> u.path("/fapi/v1/fundingRate")
                         .queryParam("symbol", symbol)
@@ -60,6 +72,7 @@ public class FuturesClient {
 
     // 21) Basis
     public List<BasisItem> getBasis(String pair, String contractType, String period, int limit) {
+        spend(DATA_WEIGHT);
         return http.get()
                 .uri(u -> u.path("/futures/data/basis")
                         .queryParam("pair", pair)
@@ -80,6 +93,7 @@ public class FuturesClient {
 
     // 22) Global Long/Short
     public List<LongShortItem> getGlobalLongShortAccountRatio(String symbol, String period, int limit) {
+        spend(DATA_WEIGHT);
         return http.get()
                 .uri(u -> u.path("/futures/data/globalLongShortAccountRatio")
                         .queryParam("symbol", symbol)
@@ -98,38 +112,70 @@ public class FuturesClient {
     /* 23) Liquidaciones: ventana simple */
     public List<Map<String, Object>> getLiquidationsWindow(
             String symbol, long startTime, long endTime, Integer limit, String autoCloseType) {
-        int lim = Math.min(Math.max(limit == null ? 1000 : limit, 1), 1000);
         try {
-            return http.get()
-                    .uri(u -> {
-                        var b = u.path("/futures/data/liquidationOrders")
-                                .queryParam("startTime", startTime)
-                                .queryParam("endTime", endTime)
-                                .queryParam("limit", lim);
-                        if (symbol != null && !symbol.isBlank()) b.queryParam("symbol", symbol);
-                        if (autoCloseType != null && !autoCloseType.isBlank())
-                            b.queryParam("autoCloseType", autoCloseType); // LIQUIDATION | ADL
-                        return b.build();
-                    })
-                    .accept(MediaType.APPLICATION_JSON)
-                    .retrieve()
-                    .body(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+            return getLiquidationOrders(symbol, startTime, endTime, limit, autoCloseType);
         } catch (HttpClientErrorException e) {
             return List.of();
         }
     }
 
-    /* 23) Liquidaciones: paginado por ventanas */
+    /** Como {@link #getLiquidationsWindow} pero propaga los errores HTTP (vacío = sin datos de verdad). */
+    public List<Map<String, Object>> getLiquidationOrders(
+            String symbol, long startTime, long endTime, Integer limit, String autoCloseType) {
+        int lim = Math.min(Math.max(limit == null ? LIQUIDATIONS_PAGE : limit, 1), LIQUIDATIONS_PAGE);
+        spend(LIQUIDATION_ORDERS_WEIGHT);
+        List<Map<String, Object>> body = http.get()
+                .uri(u -> {
+                    var b = u.path("/futures/data/liquidationOrders")
+                            .queryParam("startTime", startTime)
+                            .queryParam("endTime", endTime)
+                            .queryParam("limit", lim);
+                    if (symbol != null && !symbol.isBlank()) b.queryParam("symbol", symbol);
+                    if (autoCloseType != null && !autoCloseType.isBlank())
+                        b.queryParam("autoCloseType", autoCloseType); // LIQUIDATION | ADL
+                    return b.build();
+                })
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+        return body == null ? List.of() : body;
+    }
+
+    public static final int LIQUIDATIONS_PAGE = 1000;
+
+    /* 23) Liquidaciones: paginado por ventanas; una ventana que llena la página se parte en dos */
     public List<Map<String, Object>> getLiquidationsPaged(
             String symbol, long startTime, long endTime, int windowMinutes, String autoCloseType) {
         long step = windowMinutes * 60L * 1000L;
         List<Map<String, Object>> out = new ArrayList<>();
         for (long from = startTime; from < endTime; from += step) {
             long to = Math.min(from + step - 1, endTime);
-            out.addAll(getLiquidationsWindow(symbol, from, to, 1000, autoCloseType));
+            collectLiquidations(symbol, from, to, autoCloseType, out);
         }
         return out;
     }
 
+    private void collectLiquidations(String symbol, long from, long to, String autoCloseType,
+                                     List<Map<String, Object>> out) {
+        List<Map<String, Object>> page = getLiquidationsWindow(symbol, from, to, LIQUIDATIONS_PAGE, autoCloseType);
+        if (page.size() >= LIQUIDATIONS_PAGE && to - from >= 1000) {
+            long mid = from + (to - from) / 2;
+            collectLiquidations(symbol, from, mid, autoCloseType, out);
+            collectLiquidations(symbol, mid + 1, to, autoCloseType, out);
+            return;
+        }
+        out.addAll(page);
+    }
+
+    /** Espera a tener peso en el presupuesto; una interrupción corta la petición. */
+    private void spend(int weight) {
+        try {
+            budget.acquire(weight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando peso REST de futuros", e);
+        }
+    }
+
     public static long nowMs() { return Instant.now().toEpochMilli(); }
 }
@@ -0,0 +1,51 @@
+package com.oscar.market.marketdata;
+
+/**
+ * Presupuesto de peso REST tipo token bucket (peso por minuto, recarga continua).
+ * Compartido por los hilos que paginan contra Binance para no exceder el límite de IP.
+ */
+public class RateBudget {
+
+    private final double capacity;
+    private final double refillPerMs;
+    private double tokens;
+    private long lastRefillMs;
+
+    public RateBudget(int weightPerMinute) {
+        this.capacity = Math.max(1, weightPerMinute);
+        this.refillPerMs = capacity / 60_000.0;
+        this.tokens = capacity;
+        this.lastRefillMs = System.currentTimeMillis();
+    }
+
+    /** Bloquea hasta disponer de 'weight' unidades de peso. */
+    public void acquire(int weight) throws InterruptedException {
+        double w = Math.min(weight, capacity);
+        while (true) {
+            long waitMs;
+            synchronized (this) {
+                refill();
+                if (tokens >= w) {
+                    tokens -= w;
+                    return;
+                }
+                waitMs = (long) Math.ceil((w - tokens) / refillPerMs);
+            }
+            Thread.sleep(Math.max(1, waitMs));
+        }
+    }
+
+    /** Peso disponible ahora mismo (aproximado). */
+    public synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+        if (now > lastRefillMs) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillMs) * refillPerMs);
+            lastRefillMs = now;
+        }
+    }
+}
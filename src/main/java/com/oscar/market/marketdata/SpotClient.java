@@ -1,5 +1,7 @@
 package com.oscar.market.marketdata;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -8,18 +10,28 @@ import org.springframework.web.client.RestClient;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Cliente REST de spot. Cada petición descuenta su peso del presupuesto compartido de spot
+ * (market.rest.spot-weight-per-minute): aggTrades, velas y libro tiran del mismo límite de IP.
+ */
 @Component
 public class SpotClient {
 
+    private static final int KLINES_WEIGHT = 2;
+    private static final int AGG_TRADES_WEIGHT = 4;
+
     private final RestClient http;
+    private final RateBudget budget;
 
-    public SpotClient() {
+    public SpotClient(@Qualifier("spotRateBudget") RateBudget budget) {
         this.http = RestClient.builder()
                 .baseUrl("https://api.binance.com")
                 .build();
+        this.budget = budget;
     }
 
     public List<Kline> getKlines(String symbol, String interval, Long startTime, Long endTime, Integer limit) {
+        spend(KLINES_WEIGHT);
         var builder = http.get()
                 .uri(uri -> {
                     var b = uri.path("/api/v3/klines")
@@ -55,6 +67,71 @@ public class SpotClient {
     public static record Kline(long openTime, double open, double high, double low, double close,
                                double volume, long closeTime) {}
 
+    /**
+     * aggTrades: por id (fromId) o por ventana temporal (startTime/endTime, máx. 1h).
+     * Binance devuelve como mucho 'limit' (≤1000) trades; paginar por id para rangos grandes.
+     */
+    public List<AggTrade> getAggTrades(String symbol, Long fromId, Long startTime, Long endTime, Integer limit) {
+        spend(AGG_TRADES_WEIGHT);
+        List<AggTrade> rows = http.get()
+                .uri(uri -> {
+                    var b = uri.path("/api/v3/aggTrades")
+                            .queryParam("symbol", symbol);
+                    if (fromId != null) b.queryParam("fromId", fromId);
+                    if (startTime != null) b.queryParam("startTime", startTime);
+                    if (endTime != null) b.queryParam("endTime", endTime);
+                    if (limit != null) b.queryParam("limit", limit);
+                    return b.build();
+                })
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<AggTrade>>() {});
+        return rows != null ? rows : List.of();
+    }
+
+    // isBuyerMaker = true ⇒ la agresión la hace el vendedor
+    public static record AggTrade(
+            @JsonProperty("a") long id,
+            @JsonProperty("p") double price,
+            @JsonProperty("q") double qty,
+            @JsonProperty("m") boolean buyerMaker,
+            @JsonProperty("T") long time
+    ) {}
+
+    /** Snapshot REST del libro (limit: 5..5000). */
+    public Depth getDepth(String symbol, int limit) {
+        spend(depthWeight(limit));
+        return http.get()
+                .uri(uri -> uri.path("/api/v3/depth")
+                        .queryParam("symbol", symbol)
+                        .queryParam("limit", limit)
+                        .build())
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(Depth.class);
+    }
+
+    // niveles [precio, cantidad] como strings; bids desc, asks asc
+    public static record Depth(long lastUpdateId, List<List<String>> bids, List<List<String>> asks) {}
+
+    // peso de /api/v3/depth según el límite pedido
+    private static int depthWeight(int limit) {
+        if (limit <= 100) return 5;
+        if (limit <= 500) return 25;
+        if (limit <= 1000) return 50;
+        return 250;
+    }
+
+    /** Espera a tener peso en el presupuesto; una interrupción corta la petición. */
+    private void spend(int weight) {
+        try {
+            budget.acquire(weight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando peso REST de spot", e);
+        }
+    }
+
     private static double asDouble(Object o) {
         if (o == null) return 0.0;
         if (o instanceof Number n) return n.doubleValue();
@@ -0,0 +1,332 @@
+package com.oscar.market.marketdata.archive;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.SpotClient;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+import com.oscar.market.metrics.series.GorillaBlock;
+import com.oscar.market.metrics.series.IndicatorKernels;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Histórico largo de velas de 1m comprimido: un bloque {@link GorillaBlock} por (símbolo, día UTC)
+ * en candle_archive_1m (bytea) con open, high, low, close y volume. El día en curso vive en
+ * memoria (1440 ranuras por minuto, sin duplicados) alimentado por el stream kline_1m y se
+ * reescribe periódicamente; los días anteriores se completan por REST al arrancar.
+ */
+@Component
+public class CandleArchive implements SpotStreamHandler, ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(CandleArchive.class);
+    static final long MINUTE_MS = 60_000L;
+    static final long DAY_MS = 1440 * MINUTE_MS;
+    static final int OPEN = 0, HIGH = 1, LOW = 2, CLOSE = 3, VOLUME = 4, COLUMNS = 5;
+    private static final int REST_LIMIT = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final SpotClient spot;
+    private final TransactionTemplate readTx;
+    private final String table;
+    private final Map<String, DayCandles> open = new ConcurrentHashMap<>(); // symbol|día
+    private final ExecutorService backfiller = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "candle-archive-backfill");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${market.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${market.export.fetch-size:${spring.jpa.properties.hibernate.jdbc.fetch_size:50}}")
+    private int fetchSize = 50;
+
+    @Value("${market.archive.backfill-days:30}")
+    private int backfillDays;
+
+    @Value("${market.spot.symbols-tracked:BTCUSDC,BTCUSDT}")
+    private String symbolsTrackedCsv;
+
+    public CandleArchive(JdbcTemplate jdbc, SpotClient spot, PlatformTransactionManager txManager,
+                         @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.spot = spot;
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.table = (schema == null || schema.isBlank()) ? "candle_archive_1m" : schema + ".candle_archive_1m";
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        try {
+            jdbc.execute("create table if not exists " + table + " ("
+                    + "symbol varchar(20) not null, day bigint not null, rows int not null,"
+                    + " block bytea not null, updated_at bigint not null,"
+                    + " primary key (symbol, day))");
+        } catch (Exception ex) {
+            log.warn("No se pudo preparar {}: {}", table, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        backfiller.shutdownNow();
+        flush();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        long today = Math.floorDiv(System.currentTimeMillis(), DAY_MS);
+        for (String sym : symbols()) {
+            // el bloque de hoy (si lo hay) se mezcla con lo que ya haya llegado por el stream
+            try {
+                byte[] block = load(sym, today);
+                if (block != null) day(sym, today).merge(block);
+                else day(sym, today).markLoaded();
+            } catch (Exception ex) {
+                log.warn("No se pudo cargar el archivo de velas de hoy para {}: {}", sym, ex.getMessage());
+            }
+            backfiller.submit(() -> backfill(sym, today));
+        }
+    }
+
+    /* =================== stream =================== */
+
+    @Override
+    public List<String> streamSuffixes() {
+        return enabled ? List.of("kline_1m") : List.of();
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        JsonNode k = data.get("k");
+        if (k == null || !k.path("x").asBoolean()) return; // solo velas cerradas
+        long t = k.path("t").asLong();
+        day(symbol, Math.floorDiv(t, DAY_MS)).put(t, parse(k.path("o").asText()), parse(k.path("h").asText()),
+                parse(k.path("l").asText()), parse(k.path("c").asText()), parse(k.path("v").asText()));
+    }
+
+    /* =================== persistencia =================== */
+
+    /** Reescribe los días en memoria con cambios y suelta los ya cerrados. */
+    @Scheduled(fixedDelayString = "${market.archive.flush-ms:300000}")
+    public void flush() {
+        if (!enabled) return;
+        long today = Math.floorDiv(System.currentTimeMillis(), DAY_MS);
+        for (var e : open.entrySet()) {
+            DayCandles d = e.getValue();
+            try {
+                // un día reabierto por una vela tardía (o cuya carga falló) aún no tiene lo archivado
+                if (!d.loaded()) {
+                    byte[] prev = load(d.symbol, d.day);
+                    if (prev != null) d.merge(prev);
+                    else d.markLoaded();
+                }
+                DayCandles.Snapshot s = d.snapshotIfDirty();
+                if (s != null) {
+                    upsert(d.symbol, d.day, s.rows(), s.block());
+                    d.markClean(s.version());
+                }
+                if (d.day < today && d.isClean()) open.remove(e.getKey(), d);
+            } catch (Exception ex) {
+                log.warn("No se pudo archivar {} día {}: {}", d.symbol, d.day, ex.getMessage());
+            }
+        }
+    }
+
+    private void backfill(String symbol, long today) {
+        Map<Long, Integer> have = new HashMap<>();
+        try {
+            jdbc.query("select day, rows from " + table + " where symbol = ? and day >= ?",
+                    rs -> { have.put(rs.getLong("day"), rs.getInt("rows")); },
+                    symbol, today - backfillDays);
+        } catch (Exception ex) {
+            log.warn("Backfill del archivo de velas {} no disponible: {}", symbol, ex.getMessage());
+            return;
+        }
+        int filled = 0;
+        for (long d = today - Math.max(0, backfillDays); d < today && !Thread.currentThread().isInterrupted(); d++) {
+            if (have.getOrDefault(d, 0) >= 1440) continue;
+            try {
+                List<SpotClient.Kline> ks = new ArrayList<>(1440);
+                long from = d * DAY_MS, end = from + DAY_MS - 1;
+                while (from <= end) {
+                    List<SpotClient.Kline> page = spot.getKlines(symbol, "1m", from, end, REST_LIMIT);
+                    if (page.isEmpty()) break;
+                    ks.addAll(page);
+                    from = page.get(page.size() - 1).openTime() + MINUTE_MS;
+                    if (page.size() < REST_LIMIT) break;
+                }
+                if (ks.isEmpty()) continue;
+                DayCandles mem = open.get(symbol + "|" + d);
+                if (mem != null) { // aún en memoria: lo escribe el flush
+                    for (SpotClient.Kline k : ks) mem.put(k.openTime(), k.open(), k.high(), k.low(), k.close(), k.volume());
+                    continue;
+                }
+                DayCandles merged = new DayCandles(symbol, d);
+                byte[] prev = load(symbol, d);
+                if (prev != null) merged.merge(prev);
+                for (SpotClient.Kline k : ks) merged.put(k.openTime(), k.open(), k.high(), k.low(), k.close(), k.volume());
+                DayCandles.Snapshot s = merged.snapshotIfDirty();
+                upsert(symbol, d, s.rows(), s.block());
+                filled++;
+            } catch (Exception ex) {
+                log.warn("Backfill del archivo de velas {} día {} fallido: {}", symbol, d, ex.getMessage());
+            }
+        }
+        if (filled > 0) log.info("Archivo de velas {}: {} días completados por REST", symbol, filled);
+    }
+
+    private void upsert(String symbol, long day, int rows, byte[] block) {
+        jdbc.update("insert into " + table + " (symbol, day, rows, block, updated_at) values (?,?,?,?,?)"
+                        + " on conflict (symbol, day) do update set rows = excluded.rows, block = excluded.block,"
+                        + " updated_at = excluded.updated_at",
+                symbol, day, rows, block, System.currentTimeMillis());
+    }
+
+    private byte[] load(String symbol, long day) {
+        List<byte[]> r = jdbc.query("select block from " + table + " where symbol = ? and day = ?",
+                (rs, i) -> rs.getBytes(1), symbol, day);
+        return r.isEmpty() ? null : r.get(0);
+    }
+
+    /* =================== lectura =================== */
+
+    /**
+     * Recorre en orden las velas de [from, to) decodificando bloque a bloque: values trae
+     * open, high, low, close, volume (índices OPEN..VOLUME). Devuelve los bytes comprimidos leídos.
+     * Los bloques se leen con fetchSize: dentro de una transacción de solo lectura PostgreSQL usa
+     * cursor y la memoria no depende de cuántos días se recorran. Fuera de una transacción (autocommit)
+     * el driver ignora el fetchSize y carga todo: quien llame debe abrirla.
+     */
+    public long scan(String symbol, long from, long to, GorillaBlock.RowSink sink) {
+        long d0 = Math.floorDiv(from, DAY_MS), d1 = Math.floorDiv(to - 1, DAY_MS);
+        // días abiertos en memoria (hoy y quizá ayer): una vez cargados, memoria ⊇ BD para ese día
+        TreeMap<Long, DayCandles> mem = new TreeMap<>();
+        for (DayCandles d : open.values()) {
+            if (d.symbol.equals(symbol) && d.day >= d0 && d.day <= d1) mem.put(d.day, d);
+        }
+        long[] bytes = {0};
+        double[] v = new double[COLUMNS];
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement("select day, block from " + table
+                    + " where symbol = ? and day >= ? and day <= ? order by day");
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, symbol);
+            ps.setLong(2, d0);
+            ps.setLong(3, d1);
+            return ps;
+        }, rs -> {
+            long day = rs.getLong(1);
+            while (!mem.isEmpty() && mem.firstKey() < day) {
+                bytes[0] += emit(mem.pollFirstEntry().getValue().encode(), from, to, v, sink);
+            }
+            DayCandles d = mem.remove(day);
+            if (d != null && !d.loaded()) d.merge(rs.getBytes(2));
+            bytes[0] += emit(d != null ? d.encode() : rs.getBytes(2), from, to, v, sink);
+        });
+        while (!mem.isEmpty()) bytes[0] += emit(mem.pollFirstEntry().getValue().encode(), from, to, v, sink);
+        return bytes[0];
+    }
+
+    private static int emit(byte[] block, long from, long to, double[] v, GorillaBlock.RowSink sink) {
+        GorillaBlock.Reader r = GorillaBlock.reader(block);
+        while (r.next()) {
+            long t = r.ts();
+            if (t < from || t >= to) continue;
+            for (int c = 0; c < COLUMNS; c++) v[c] = r.value(c);
+            sink.row(t, v);
+        }
+        return block.length;
+    }
+
+    /** Resumen de los últimos 'days' días: compresión e indicadores calculados en streaming. */
+    public Map<String, Object> summary(String symbol, int days) {
+        if (days < 1 || days > 3660) throw new IllegalArgumentException("days debe estar entre 1 y 3660");
+        long to = System.currentTimeMillis();
+        long from = to - days * DAY_MS;
+        IndicatorKernels.Ema ema20 = new IndicatorKernels.Ema(20);
+        IndicatorKernels.Ema ema50 = new IndicatorKernels.Ema(50);
+        IndicatorKernels.Rsi rsi14 = new IndicatorKernels.Rsi(14);
+        long[] rows = {0};
+        long[] first = {0}, last = {0};
+        double[] close = {Double.NaN};
+        long t0 = System.nanoTime();
+        // transacción de solo lectura: cursor de PostgreSQL, sin cargar hasta 3660 bloques de golpe
+        Long scanned = readTx.execute(status -> scan(symbol, from, to, (ts, v) -> {
+            if (rows[0]++ == 0) first[0] = ts;
+            last[0] = ts;
+            close[0] = v[CLOSE];
+            ema20.accept(v[CLOSE]);
+            ema50.accept(v[CLOSE]);
+            rsi14.accept(v[CLOSE]);
+        }));
+        long bytes = scanned == null ? 0 : scanned;
+        long decodeUs = (System.nanoTime() - t0) / 1000;
+
+        long raw = rows[0] * (8 + COLUMNS * 8L); // ts + 5 doubles sin comprimir
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        out.put("interval", "1m");
+        out.put("days", days);
+        out.put("rows", rows[0]);
+        out.put("firstTs", rows[0] > 0 ? first[0] : null);
+        out.put("lastTs", rows[0] > 0 ? last[0] : null);
+        out.put("compressedBytes", bytes);
+        out.put("rawBytes", raw);
+        out.put("ratio", bytes > 0 ? (double) raw / bytes : null);
+        out.put("decodeMicros", decodeUs);
+        out.put("close", rows[0] > 0 ? close[0] : null);
+        out.put("ema20", ema20.ready() ? ema20.value() : null);
+        out.put("ema50", ema50.ready() ? ema50.value() : null);
+        out.put("rsi14", rsi14.ready() ? rsi14.value() : null);
+        out.put("source", "archive (gorilla, 1m)");
+        return out;
+    }
+
+    /* =================== utils =================== */
+
+    private DayCandles day(String symbol, long day) {
+        return open.computeIfAbsent(symbol + "|" + day, k -> new DayCandles(symbol, day));
+    }
+
+    private Set<String> symbols() {
+        Set<String> out = new LinkedHashSet<>();
+        for (String s : symbolsTrackedCsv.split(",")) {
+            String v = s.trim().toUpperCase(Locale.ROOT);
+            if (!v.isEmpty()) out.add(v);
+        }
+        return out;
+    }
+
+    private static double parse(String s) {
+        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    }
+}
@@ -0,0 +1,31 @@
+package com.oscar.market.marketdata.archive;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/archive")
+public class CandleArchiveController {
+
+    private final CandleArchive archive;
+
+    @Value("${DEFAULT_SYMBOL:BTCUSDC}")
+    private String defaultSymbol;
+
+    public CandleArchiveController(CandleArchive archive) {
+        this.archive = archive;
+    }
+
+    // Velas de 1m archivadas: compresión y EMA/RSI calculados decodificando en streaming
+    @GetMapping("/candles")
+    public Map<String, Object> candles(@RequestParam(required = false) String symbol,
+                                       @RequestParam(defaultValue = "30") int days) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return archive.summary(sym, days);
+    }
+}
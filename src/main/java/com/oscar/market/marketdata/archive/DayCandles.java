@@ -0,0 +1,102 @@
+package com.oscar.market.marketdata.archive;
+
+import static com.oscar.market.marketdata.archive.CandleArchive.COLUMNS;
+import static com.oscar.market.marketdata.archive.CandleArchive.DAY_MS;
+import static com.oscar.market.marketdata.archive.CandleArchive.MINUTE_MS;
+
+import com.oscar.market.metrics.series.GorillaBlock;
+
+/**
+ * Un día UTC de velas de 1m en 1440 ranuras fijas (una por minuto): las repetidas se
+ * sobrescriben y el orden sale gratis al codificar. 'version' cuenta cambios para saber
+ * si lo escrito en BD está al día. 'loaded' indica que ya se ha mezclado el bloque de BD: hasta
+ * entonces la memoria no contiene lo archivado y no puede reescribirlo.
+ */
+final class DayCandles {
+
+    private static final int SLOTS = (int) (DAY_MS / MINUTE_MS);
+
+    final String symbol;
+    final long day;
+    private final boolean[] present = new boolean[SLOTS];
+    private final double[][] cols = new double[COLUMNS][SLOTS];
+    private int rows;
+    private long version, written;
+    private boolean loaded;
+
+    record Snapshot(int rows, byte[] block, long version) {}
+
+    DayCandles(String symbol, long day) {
+        this.symbol = symbol;
+        this.day = day;
+    }
+
+    synchronized void put(long openTime, double o, double h, double l, double c, double v) {
+        int i = slot(openTime);
+        if (i < 0) return;
+        if (!present[i]) {
+            present[i] = true;
+            rows++;
+        }
+        cols[0][i] = o;
+        cols[1][i] = h;
+        cols[2][i] = l;
+        cols[3][i] = c;
+        cols[4][i] = v;
+        version++;
+    }
+
+    /** Añade las velas del bloque que falten (lo ya presente en memoria manda). */
+    synchronized void merge(byte[] block) {
+        GorillaBlock.Reader r = GorillaBlock.reader(block);
+        while (r.next()) {
+            int i = slot(r.ts());
+            if (i < 0 || present[i]) continue;
+            present[i] = true;
+            rows++;
+            for (int c = 0; c < COLUMNS; c++) cols[c][i] = r.value(c);
+        }
+        loaded = true;
+        // lo cargado ya está en BD: no ensucia
+    }
+
+    /** No había bloque en BD para este día. */
+    synchronized void markLoaded() {
+        loaded = true;
+    }
+
+    synchronized boolean loaded() {
+        return loaded;
+    }
+
+    synchronized Snapshot snapshotIfDirty() {
+        if (version == written || rows == 0) return null;
+        return new Snapshot(rows, encode(), version);
+    }
+
+    synchronized void markClean(long v) {
+        written = Math.max(written, v);
+    }
+
+    synchronized boolean isClean() {
+        return version == written;
+    }
+
+    synchronized byte[] encode() {
+        long[] ts = new long[rows];
+        double[][] out = new double[COLUMNS][rows];
+        int n = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (!present[i]) continue;
+            ts[n] = day * DAY_MS + i * MINUTE_MS;
+            for (int c = 0; c < COLUMNS; c++) out[c][n] = cols[c][i];
+            n++;
+        }
+        return GorillaBlock.encode(ts, out, n);
+    }
+
+    private int slot(long openTime) {
+        long i = (openTime - day * DAY_MS) / MINUTE_MS;
+        return i < 0 || i >= SLOTS ? -1 : (int) i;
+    }
+}
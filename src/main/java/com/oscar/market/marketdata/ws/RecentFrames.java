@@ -0,0 +1,67 @@
+package com.oscar.market.marketdata.ws;
+
+import java.util.Arrays;
+
+/**
+ * Huellas (FNV-1a de 64 bits) de las últimas tramas vistas, para descartar la misma trama
+ * llegada por otra conexión. Dos generaciones de tablas abiertas: al llenarse la actual pasa
+ * a ser la anterior y se vacía la otra, así no hace falta borrar entradas. Sin sincronización:
+ * la usa el supervisor dentro de su sección de entrega.
+ */
+final class RecentFrames {
+
+    private long[] current;
+    private long[] previous;
+    private final int mask;
+    private final int maxPerGeneration;
+    private int size;
+
+    RecentFrames(int perGeneration) {
+        int cap = Integer.highestOneBit(Math.max(16, perGeneration * 2 - 1)) << 1; // carga ≤ 50%
+        this.current = new long[cap];
+        this.previous = new long[cap];
+        this.mask = cap - 1;
+        this.maxPerGeneration = cap / 2;
+    }
+
+    /** true si la trama no se había visto (y la registra). */
+    boolean firstSeen(CharSequence frame) {
+        long h = hash(frame);
+        if (contains(current, h) || contains(previous, h)) return false;
+        if (size >= maxPerGeneration) {
+            long[] t = previous;
+            previous = current;
+            current = t;
+            Arrays.fill(current, 0L);
+            size = 0;
+        }
+        int i = (int) (mix(h) & mask);
+        while (current[i] != 0) i = (i + 1) & mask;
+        current[i] = h;
+        size++;
+        return true;
+    }
+
+    private boolean contains(long[] table, long h) {
+        int i = (int) (mix(h) & mask);
+        long v;
+        while ((v = table[i]) != 0) {
+            if (v == h) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h; // 0 = celda vacía
+    }
+
+    private static long mix(long h) {
+        return h ^ (h >>> 29) ^ (h >>> 47);
+    }
+}
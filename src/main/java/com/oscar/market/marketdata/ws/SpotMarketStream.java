@@ -0,0 +1,117 @@
+package com.oscar.market.marketdata.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Conexión combinada a wss://stream.binance.com para los símbolos spot seguidos.
+ * Cada {@link SpotStreamHandler} declara sus sufijos (depth, aggTrade, kline...) y recibe
+ * solo sus eventos.
+ */
+@Component
+public class SpotMarketStream implements ApplicationRunner {
+
+    private static final String BASE = "wss://stream.binance.com:9443/stream?streams=";
+
+    private final List<SpotStreamHandler> handlers;
+    private final StreamSupervisor supervisor;
+    private final ObjectMapper om = new ObjectMapper();
+    private final Map<String, List<SpotStreamHandler>> bySuffix = new HashMap<>();
+
+    @Value("${market.spot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${market.spot.symbols-tracked:BTCUSDC,BTCUSDT}")
+    private String symbolsTrackedCsv;
+
+    @Value("${market.spot.redundant:false}")
+    private boolean redundant;
+
+    private Set<String> symbols = Set.of();
+
+    public SpotMarketStream(List<SpotStreamHandler> handlers, StreamSupervisor supervisor) {
+        this.handlers = handlers;
+        this.supervisor = supervisor;
+    }
+
+    /** Símbolos spot seguidos en tiempo real (mayúsculas). */
+    public Set<String> symbols() {
+        if (symbols.isEmpty()) symbols = parseSymbols(symbolsTrackedCsv);
+        return symbols;
+    }
+
+    public boolean tracks(String symbol) {
+        return enabled && symbol != null && symbols().contains(symbol);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || handlers.isEmpty() || symbols().isEmpty()) return;
+        for (SpotStreamHandler h : handlers) {
+            for (String suffix : h.streamSuffixes()) {
+                bySuffix.computeIfAbsent(suffix, k -> new ArrayList<>()).add(h);
+            }
+        }
+        supervisor.open("spot", streamUri(), redundant, new StreamSupervisor.FrameHandler() {
+            @Override
+            public void onFrame(CharSequence frame) {
+                handle(frame.toString());
+            }
+
+            // solo tras un hueco real: un relevo solapado no obliga a resincronizar
+            @Override
+            public void onConnected() {
+                handlers.forEach(SpotStreamHandler::onConnected);
+            }
+
+            @Override
+            public void onDisconnected() {
+                handlers.forEach(SpotStreamHandler::onDisconnected);
+            }
+        });
+    }
+
+    URI streamUri() {
+        StringJoiner j = new StringJoiner("/");
+        for (String s : symbols()) {
+            for (String suffix : bySuffix.keySet()) j.add(s.toLowerCase(Locale.ROOT) + "@" + suffix);
+        }
+        return URI.create(BASE + j);
+    }
+
+    private void handle(String json) {
+        try {
+            JsonNode root = om.readTree(json);
+            JsonNode stream = root.get("stream");
+            JsonNode data = root.get("data");
+            if (stream == null || data == null) return;
+            String name = stream.asText();
+            int at = name.indexOf('@');
+            if (at <= 0) return;
+            String suffix = name.substring(at + 1);
+            List<SpotStreamHandler> hs = bySuffix.get(suffix);
+            if (hs == null) return;
+            String symbol = name.substring(0, at).toUpperCase(Locale.ROOT);
+            for (SpotStreamHandler h : hs) {
+                try { h.onEvent(symbol, suffix, data); } catch (Exception ignored) {}
+            }
+        } catch (Exception ignored) {}
+    }
+
+    private static Set<String> parseSymbols(String csv) {
+        Set<String> out = new LinkedHashSet<>();
+        if (csv == null) return out;
+        for (String p : csv.split(",")) {
+            String v = p.trim().toUpperCase(Locale.ROOT);
+            if (!v.isEmpty()) out.add(v);
+        }
+        return out;
+    }
+}
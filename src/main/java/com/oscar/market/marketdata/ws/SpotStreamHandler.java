@@ -0,0 +1,21 @@
+package com.oscar.market.marketdata.ws;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/** Consumidor de uno o varios streams de spot dentro de la conexión combinada. */
+public interface SpotStreamHandler {
+
+    /** Sufijos de stream a suscribir por símbolo, ej. "depth@100ms" → btcusdt@depth@100ms. */
+    List<String> streamSuffixes();
+
+    /** Evento de 'data' del stream combinado. 'symbol' en mayúsculas. */
+    void onEvent(String symbol, String suffix, JsonNode data);
+
+    /** La conexión se ha (re)abierto: los streams con estado deben resincronizar. */
+    default void onConnected() {}
+
+    /** La conexión se ha perdido. */
+    default void onDisconnected() {}
+}
@@ -0,0 +1,317 @@
+package com.oscar.market.marketdata.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conexiones WebSocket supervisadas: un HttpClient compartido, reconexión con backoff
+ * exponencial y jitter, ping propio con detección de conexión muda y relevo antes del corte
+ * de 24h de Binance (la conexión nueva se abre antes de cerrar la vieja). Opcionalmente
+ * mantiene dos conexiones por stream; las tramas repetidas entre ellas se descartan.
+ * Las tramas de un stream se entregan de una en una, aunque lleguen por varias conexiones.
+ */
+@Component
+public class StreamSupervisor {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamSupervisor.class);
+
+    /** Receptor de tramas de texto completas; el CharSequence solo es válido durante la llamada. */
+    public interface FrameHandler {
+        void onFrame(CharSequence frame);
+
+        /** Al menos una conexión viva tras un periodo sin ninguna (hay hueco que recuperar). */
+        default void onConnected() {}
+
+        /** Ya no queda ninguna conexión viva. */
+        default void onDisconnected() {}
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ws-supervisor");
+        t.setDaemon(true);
+        return t;
+    });
+    private final MeterRegistry meters;
+    private final List<Stream> streams = new CopyOnWriteArrayList<>();
+
+    @Value("${market.stream.ping-interval-ms:20000}")
+    private long pingIntervalMs;
+
+    @Value("${market.stream.stale-after-ms:60000}")
+    private long staleAfterMs;
+
+    @Value("${market.stream.max-age-minutes:1380}") // 23h: antes del corte de 24h
+    private long maxAgeMinutes;
+
+    @Value("${market.stream.overlap-ms:3000}")
+    private long overlapMs;
+
+    @Value("${market.stream.backoff-initial-ms:500}")
+    private long backoffInitialMs;
+
+    @Value("${market.stream.backoff-max-ms:30000}")
+    private long backoffMaxMs;
+
+    public StreamSupervisor(MeterRegistry meters) {
+        this.meters = meters;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Stream s : streams) s.close();
+        scheduler.shutdownNow();
+    }
+
+    /** Abre un stream con 1 conexión (o 2 si redundant) y lo mantiene vivo hasta close(). */
+    public Stream open(String name, URI uri, boolean redundant, FrameHandler handler) {
+        Stream s = new Stream(name, uri, redundant ? 2 : 1, handler);
+        streams.add(s);
+        for (int slot = 0; slot < s.slots; slot++) s.connect(slot, null);
+        return s;
+    }
+
+    public final class Stream {
+        private final String name;
+        private final URI uri;
+        private final int slots;
+        private final FrameHandler handler;
+        private final RecentFrames recent = new RecentFrames(4096);
+        private final int[] attempts;
+        private final AtomicInteger live = new AtomicInteger();
+        private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed;
+        private long downSince = System.nanoTime();
+
+        private final Counter reconnects;
+        private final Counter rollovers;
+        private final Counter duplicates;
+        private final Timer downtime;
+
+        private Stream(String name, URI uri, int slots, FrameHandler handler) {
+            this.name = name;
+            this.uri = uri;
+            this.slots = slots;
+            this.handler = handler;
+            this.attempts = new int[slots];
+            reconnects = Counter.builder("ws.stream.reconnects").tag("stream", name).register(meters);
+            rollovers = Counter.builder("ws.stream.rollovers").tag("stream", name).register(meters);
+            duplicates = Counter.builder("ws.stream.duplicates.suppressed").tag("stream", name).register(meters);
+            downtime = Timer.builder("ws.stream.downtime").tag("stream", name).register(meters);
+            Gauge.builder("ws.stream.connections.live", live, AtomicInteger::get).tag("stream", name).register(meters);
+        }
+
+        public int liveConnections() { return live.get(); }
+
+        public void close() {
+            closed = true;
+            streams.remove(this);
+            for (Connection c : connections) c.retire();
+        }
+
+        private void connect(int slot, Connection predecessor) {
+            if (closed) return;
+            Connection c = new Connection(this, slot, predecessor);
+            connections.add(c);
+            client.newWebSocketBuilder()
+                    .buildAsync(uri, c)
+                    .whenComplete((ws, err) -> { if (err != null) c.fail(); });
+        }
+
+        private synchronized void reconnectLater(int slot, Connection predecessor) {
+            if (closed) return;
+            long cap = Math.min(backoffMaxMs, backoffInitialMs << Math.min(attempts[slot], 16));
+            attempts[slot]++;
+            long delay = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1); // jitter
+            reconnects.increment();
+            scheduler.schedule(() -> connect(slot, predecessor), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void up(Connection c) {
+            attempts[c.slot] = 0;
+            if (live.incrementAndGet() == 1) {
+                downtime.record(System.nanoTime() - downSince, TimeUnit.NANOSECONDS);
+                try { handler.onConnected(); } catch (Exception ignored) {}
+            }
+        }
+
+        private synchronized void down() {
+            if (live.decrementAndGet() == 0) {
+                downSince = System.nanoTime();
+                try { handler.onDisconnected(); } catch (Exception ignored) {}
+            }
+        }
+
+        private synchronized void deliver(CharSequence frame) {
+            // con una sola conexión no hay duplicados posibles: ni se calcula la huella
+            boolean overlapping = slots > 1 || connections.size() > 1;
+            if (overlapping && !recent.firstSeen(frame)) {
+                duplicates.increment();
+                return;
+            }
+            try { handler.onFrame(frame); } catch (Exception ignored) {}
+        }
+    }
+
+    private final class Connection implements WebSocket.Listener {
+        private final Stream stream;
+        private final int slot;
+        private Connection predecessor;
+        private final StringBuilder buf = new StringBuilder();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile WebSocket ws;
+        private volatile boolean live;
+        private volatile boolean retired; // cerrada a propósito en un relevo
+        private volatile boolean replaced; // su relevo ya está en marcha y se encarga del slot
+        private volatile long lastSeen = System.nanoTime();
+        private ScheduledFuture<?> pinger;
+        private ScheduledFuture<?> rollover;
+
+        Connection(Stream stream, int slot, Connection predecessor) {
+            this.stream = stream;
+            this.slot = slot;
+            this.predecessor = predecessor;
+        }
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            if (done.get()) { // retirada mientras conectaba
+                ws.abort();
+                return;
+            }
+            this.ws = ws;
+            lastSeen = System.nanoTime();
+            live = true;
+            stream.up(this);
+            pinger = scheduler.scheduleAtFixedRate(this::ping, pingIntervalMs, pingIntervalMs, TimeUnit.MILLISECONDS);
+            // relevo escalonado por slot y con jitter para no relevar las dos a la vez
+            long ageMs = TimeUnit.MINUTES.toMillis(maxAgeMinutes) - slot * TimeUnit.MINUTES.toMillis(30)
+                    - ThreadLocalRandom.current().nextLong(TimeUnit.MINUTES.toMillis(10));
+            rollover = scheduler.schedule(this::rollover, Math.max(60_000, ageMs), TimeUnit.MILLISECONDS);
+            if (predecessor != null) {
+                Connection old = predecessor;
+                predecessor = null;
+                scheduler.schedule(old::retire, overlapMs, TimeUnit.MILLISECONDS);
+            }
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            lastSeen = System.nanoTime();
+            if (last && buf.isEmpty()) {
+                stream.deliver(data);
+            } else {
+                buf.append(data);
+                if (last) {
+                    stream.deliver(buf);
+                    buf.setLength(0);
+                }
+            }
+            ws.request(1);
+            return CompletableFuture.completedStage(null);
+        }
+
+        @Override
+        public CompletionStage<?> onPing(WebSocket ws, ByteBuffer message) {
+            lastSeen = System.nanoTime(); // el pong lo responde el propio cliente
+            ws.request(1);
+            return CompletableFuture.completedStage(null);
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket ws, ByteBuffer message) {
+            lastSeen = System.nanoTime();
+            ws.request(1);
+            return CompletableFuture.completedStage(null);
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            fail();
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            fail();
+            return CompletableFuture.completedStage(null);
+        }
+
+        private void ping() {
+            WebSocket w = ws;
+            if (w == null || done.get()) return;
+            if (stream.closed) {
+                retire();
+                return;
+            }
+            if (System.nanoTime() - lastSeen > TimeUnit.MILLISECONDS.toNanos(staleAfterMs)) {
+                log.warn("Stream {}: sin datos ni pong en {} ms, reconectando", stream.name, staleAfterMs);
+                w.abort();
+                fail(); // abort() no garantiza onClose/onError
+                return;
+            }
+            w.sendPing(ByteBuffer.allocate(0));
+        }
+
+        private void rollover() {
+            if (done.get() || stream.closed) return;
+            stream.rollovers.increment();
+            replaced = true;
+            stream.connect(slot, this);
+        }
+
+        private void retire() {
+            retired = true;
+            WebSocket w = ws;
+            if (w != null) {
+                w.sendClose(WebSocket.NORMAL_CLOSURE, "rollover");
+                scheduler.schedule(w::abort, 5, TimeUnit.SECONDS);
+            }
+            fail();
+        }
+
+        /** Único camino de cierre: onError, onClose, abort y relevo pasan por aquí una sola vez. */
+        void fail() {
+            if (!done.compareAndSet(false, true)) return;
+            if (pinger != null) pinger.cancel(false);
+            if (rollover != null) rollover.cancel(false);
+            stream.connections.remove(this);
+            if (live) {
+                live = false;
+                stream.down();
+            }
+            if (retired || replaced || stream.closed) return;
+            // si era el relevo de otra conexión aún viva, el siguiente intento la sigue relevando
+            stream.reconnectLater(slot, predecessor);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.oscar.market.metrics.derivatives;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -21,6 +23,18 @@ public class DerivativesController {
         this.service = service;
     }
 
+    // 0) Resumen de derivados de uno o varios símbolos (piezas en paralelo, plazo común)
+    @GetMapping("/overview")
+    public Map<String, Object> overview(
+            @RequestParam(required = false) String symbols,
+            @RequestParam(defaultValue = "1500") long budgetMs
+    ) {
+        String csv = (symbols == null || symbols.isBlank()) ? defaultSymbol : symbols;
+        List<String> syms = Arrays.stream(csv.split(",")).map(String::trim).filter(v -> !v.isEmpty()).distinct().toList();
+        if (syms.size() > 10) throw new IllegalArgumentException("Máximo 10 símbolos");
+        return service.overview(syms, Math.min(Math.max(budgetMs, 100), 10_000));
+    }
+
     // 19) OI y ΔOI (1h,4h)
     @GetMapping("/open-interest")
     public Map<String, Object> openInterest(
@@ -30,6 +44,17 @@ public class DerivativesController {
         return service.openInterestWithDelta(sym);
     }
 
+    // 19b) ΔOI en los últimos N periodos (5m, 1h, 4h)
+    @GetMapping("/open-interest-history")
+    public Map<String, Object> openInterestHistory(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "1h") String period,
+            @RequestParam(defaultValue = "24") int periods
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.openInterestHistory(sym, period, periods);
+    }
+
     // 20) Funding rate (último)
     @GetMapping("/funding-rate")
     public Map<String, Object> fundingRate(
@@ -39,6 +64,16 @@ public class DerivativesController {
         return service.latestFundingRate(sym);
     }
 
+    // 20b) Percentil del funding actual sobre los últimos N cobros
+    @GetMapping("/funding-percentile")
+    public Map<String, Object> fundingPercentile(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "90") int periods
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.fundingPercentile(sym, periods);
+    }
+
     // 21) Basis 1M (estandarizado a 30D sobre PERPETUAL)
     @GetMapping("/basis-1m")
     public Map<String, Object> basis1m(
@@ -48,6 +83,16 @@ public class DerivativesController {
         return service.basis1M(p);
     }
 
+    // 21b) Mark price, índice, funding previsto y basis segundo a segundo (última hora como máximo)
+    @GetMapping("/mark-price")
+    public Map<String, Object> markPrice(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "300") int seconds
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.markPriceHistory(sym, seconds);
+    }
+
     // 22) Global Long/Short Account Ratio
     @GetMapping("/long-short-ratio")
     public Map<String, Object> longShortRatio(
@@ -66,6 +111,66 @@ public class DerivativesController {
         return service.liquidations24h(sym);
     }
 
+    // 23b) Liquidaciones en varias ventanas desde los agregados en memoria
+    @GetMapping("/liquidations-summary")
+    public Map<String, Object> liquidationsSummary(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "5m,1h,4h,24h,7d") String window
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.liquidationsSummary(sym,
+                Arrays.stream(window.split(",")).filter(w -> !w.isBlank()).toList());
+    }
+
+    // 23c) Liquidaciones por bucket (lee la tabla de agregados más gruesa posible)
+    @GetMapping("/liquidations")
+    public Map<String, Object> liquidations(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "24h") String window,
+            @RequestParam(defaultValue = "1h") String bucket
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.liquidationsHistory(sym, window, bucket);
+    }
+
+    // 23d) Mapa de calor de liquidaciones: tramos de precio × tiempo (bucket vacío = toda la ventana)
+    @GetMapping("/liquidations/heatmap")
+    public Map<String, Object> liquidationsHeatmap(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "24h") String window,
+            @RequestParam(required = false) String bucket,
+            @RequestParam(defaultValue = "100") double priceStep
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.liquidationsHeatmap(sym, window, bucket, priceStep);
+    }
+
+    // 23e) Estado del backfill de liquidaciones
+    @GetMapping("/liquidations/backfill")
+    public Map<String, Object> liquidationsBackfill() {
+        return service.liquidationsBackfill();
+    }
+
+    // 23f) Cascadas de liquidaciones (inicio/fin) y contadores de 1s/10s/30s/60s
+    @GetMapping("/liquidations/cascades")
+    public Map<String, Object> liquidationCascades(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.liquidationCascades(sym, limit);
+    }
+
+    // 23g) Liquidaciones crudas archivadas (comprimidas) más allá de la retención
+    @GetMapping("/liquidations/archive")
+    public Map<String, Object> liquidationsArchive(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(defaultValue = "90") int days
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        return service.liquidationsArchive(sym, days);
+    }
+
     // 24) Apalancamiento medio estimado (ELR) - placeholder
     @GetMapping("/estimated-leverage")
     public Map<String, Object> estimatedLeverage(
@@ -0,0 +1,237 @@
+package com.oscar.market.metrics.derivatives;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.marketdata.FuturesClient;
+import com.oscar.market.metrics.series.RingSeries;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Sondeo en segundo plano de los datos de futuros de los símbolos seguidos: OI (5m/1h/4h),
+ * funding, basis y long/short, cada uno a su cadencia natural. Los puntos se guardan en
+ * anillos de primitivos (y opcionalmente en Postgres); {@link DerivativesService} lee de aquí.
+ * Para símbolos no seguidos {@link #read} va directo a REST sin guardar nada.
+ */
+@Component
+public class DerivativesPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(DerivativesPoller.class);
+    private static final long MIN_MS = 60_000L;
+    private static final long HOUR_MS = 60 * MIN_MS;
+    private static final long GRACE_MS = 15_000L;      // margen tras el cierre del periodo
+    private static final long RETRY_MS = 30_000L;       // entre intentos del mismo dato
+
+    /** Serie sondeada: periodo natural del dato y columnas que guarda. */
+    public enum Metric {
+        OI_5M("5m", 5 * MIN_MS, 2),          // sumOpenInterest, sumOpenInterestValue
+        OI_1H("1h", HOUR_MS, 2),
+        OI_4H("4h", 4 * HOUR_MS, 2),
+        FUNDING("8h", 15 * MIN_MS, 1),       // fundingRate (4h u 8h según símbolo: se sondea cada 15m)
+        BASIS("1h", HOUR_MS, 4),             // basis, basisRate, futuresPrice, indexPrice
+        LONG_SHORT("1h", HOUR_MS, 3);        // longShortRatio, longAccount, shortAccount
+
+        final String period;
+        final long periodMs;
+        final int columns;
+
+        Metric(String period, long periodMs, int columns) {
+            this.period = period;
+            this.periodMs = periodMs;
+            this.columns = columns;
+        }
+    }
+
+    public record Point(long ts, double[] values) {}
+
+    /** Puntos (antiguo → reciente), instante del último sondeo y origen (memory | rest). */
+    public record Reading(List<Point> points, long fetchedAt, String source) {
+        public boolean isEmpty() { return points.isEmpty(); }
+        public Point last() { return points.getLast(); }
+    }
+
+    private final FuturesClient futures;
+    private final DerivativesSampleStore store;
+    private final Map<String, Tracked> series = new ConcurrentHashMap<>();
+
+    @Value("${market.derivatives.enabled:true}")
+    private boolean enabled;
+
+    @Value("${market.derivatives.symbols-tracked:BTCUSDC,BTCUSDT}")
+    private String symbolsTrackedCsv;
+
+    @Value("${market.derivatives.history:500}") // máximo de futures/data
+    private int history;
+
+    private Set<String> symbols = Set.of();
+
+    public DerivativesPoller(FuturesClient futures, DerivativesSampleStore store) {
+        this.futures = futures;
+        this.store = store;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        Set<String> out = new LinkedHashSet<>();
+        for (String p : symbolsTrackedCsv.split(",")) {
+            String v = p.trim().toUpperCase(Locale.ROOT);
+            if (!v.isEmpty()) out.add(v);
+        }
+        symbols = out;
+        for (String s : symbols) {
+            for (Metric m : Metric.values()) series.put(key(s, m), new Tracked(s, m, Math.max(2, history)));
+        }
+    }
+
+    public boolean tracks(String symbol) {
+        return symbols.contains(symbol);
+    }
+
+    @Scheduled(fixedDelayString = "${market.derivatives.tick-ms:15000}", initialDelay = 1000)
+    public void poll() {
+        long now = FuturesClient.nowMs();
+        for (Tracked t : series.values()) {
+            if (!t.due(now)) continue;
+            try {
+                int limit = t.limitFor(now, history);
+                List<Point> pts = fetch(t.symbol, t.metric, limit);
+                List<Point> added = t.append(pts, now);
+                if (!added.isEmpty()) store.save(t.symbol, t.metric, added);
+            } catch (Exception ex) {
+                t.failed(now);
+                log.debug("Sondeo {} {} fallido: {}", t.symbol, t.metric, ex.getMessage());
+            }
+        }
+    }
+
+    /** Últimos n puntos: de memoria si el símbolo se sigue y ya hay datos, si no por REST. */
+    public Reading read(String symbol, Metric metric, int n) {
+        Tracked t = series.get(key(symbol, metric));
+        if (t != null) {
+            Reading r = t.read(n);
+            if (!r.isEmpty()) return r;
+        }
+        List<Point> pts = fetch(symbol, metric, Math.max(1, n));
+        if (pts.size() > n) pts = pts.subList(pts.size() - n, pts.size());
+        return new Reading(pts, FuturesClient.nowMs(), "rest");
+    }
+
+    /* =================== REST =================== */
+
+    private List<Point> fetch(String symbol, Metric m, int limit) {
+        List<Point> out = new ArrayList<>();
+        switch (m) {
+            case OI_5M, OI_1H, OI_4H -> {
+                var items = futures.getOpenInterestHist(symbol, m.period, limit);
+                if (items != null) for (var it : items) {
+                    out.add(new Point(it.timestamp(), new double[]{
+                            parseD(it.sumOpenInterest()), parseD(it.sumOpenInterestValue())}));
+                }
+            }
+            case FUNDING -> {
+                var items = futures.getFundingRateHistory(symbol, limit);
+                if (items != null) for (var it : items) {
+                    out.add(new Point(it.fundingTime(), new double[]{parseD(it.fundingRate())}));
+                }
+            }
+            case BASIS -> {
+                var items = futures.getBasis(symbol, "PERPETUAL", m.period, limit);
+                if (items != null) for (var it : items) {
+                    out.add(new Point(it.timestamp(), new double[]{
+                            it.basis(), it.basisRate(), it.futuresPrice(), it.indexPrice()}));
+                }
+            }
+            case LONG_SHORT -> {
+                var items = futures.getGlobalLongShortAccountRatio(symbol, m.period, limit);
+                if (items != null) for (var it : items) {
+                    out.add(new Point(it.timestamp(), new double[]{
+                            parseD(it.longShortRatio()), parseD(it.longAccount()), parseD(it.shortAccount())}));
+                }
+            }
+        }
+        out.sort((a, b) -> Long.compare(a.ts(), b.ts()));
+        return out;
+    }
+
+    private static String key(String symbol, Metric m) {
+        return symbol + "|" + m.name();
+    }
+
+    private static double parseD(String s) {
+        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    }
+
+    private static final class Tracked {
+        final String symbol;
+        final Metric metric;
+        final RingSeries ring;
+        long lastAttempt = Long.MIN_VALUE / 2;
+        long fetchedAt;
+
+        Tracked(String symbol, Metric metric, int capacity) {
+            this.symbol = symbol;
+            this.metric = metric;
+            this.ring = new RingSeries(capacity, metric.columns);
+        }
+
+        synchronized boolean due(long now) {
+            if (now - lastAttempt < RETRY_MS) return false;
+            if (ring.isEmpty()) return true;
+            if (metric == Metric.FUNDING) return now - lastAttempt >= metric.periodMs;
+            return now >= ring.lastTs() + metric.periodMs + GRACE_MS;
+        }
+
+        synchronized int limitFor(long now, int history) {
+            lastAttempt = now;
+            if (ring.isEmpty()) return history;
+            long missing = (now - ring.lastTs()) / metric.periodMs + 2;
+            return (int) Math.max(2, Math.min(history, missing));
+        }
+
+        synchronized void failed(long now) {
+            lastAttempt = now;
+        }
+
+        /** Añade solo los puntos posteriores al último guardado; devuelve los añadidos. */
+        synchronized List<Point> append(List<Point> pts, long now) {
+            fetchedAt = now;
+            List<Point> added = new ArrayList<>();
+            for (Point p : pts) {
+                if (!ring.isEmpty() && p.ts() <= ring.lastTs()) continue;
+                double[] v = p.values();
+                switch (v.length) {
+                    case 1 -> ring.append(p.ts(), v[0]);
+                    case 2 -> ring.append(p.ts(), v[0], v[1]);
+                    case 3 -> ring.append(p.ts(), v[0], v[1], v[2]);
+                    default -> ring.append(p.ts(), v[0], v[1], v[2], v[3]);
+                }
+                added.add(p);
+            }
+            return added;
+        }
+
+        synchronized Reading read(int n) {
+            int k = Math.min(n, ring.size());
+            List<Point> out = new ArrayList<>(k);
+            for (int back = k - 1; back >= 0; back--) {
+                double[] v = new double[metric.columns];
+                for (int c = 0; c < v.length; c++) v[c] = ring.value(c, back);
+                out.add(new Point(ring.ts(back), v));
+            }
+            return new Reading(out, fetchedAt, "memory");
+        }
+    }
+}
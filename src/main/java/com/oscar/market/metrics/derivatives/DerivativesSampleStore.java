@@ -0,0 +1,72 @@
+package com.oscar.market.metrics.derivatives;
+
+import java.sql.Types;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Persistencia opcional (market.derivatives.persist) de los puntos sondeados en
+ * derivatives_sample, para conservar historia más allá de los anillos en memoria.
+ * Idempotente: un punto repetido no se vuelve a insertar.
+ */
+@Component
+public class DerivativesSampleStore {
+
+    private static final Logger log = LoggerFactory.getLogger(DerivativesSampleStore.class);
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+
+    @Value("${market.derivatives.persist:false}")
+    private boolean persist;
+
+    private volatile boolean ready;
+
+    public DerivativesSampleStore(JdbcTemplate jdbc,
+                                  @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.table = (schema == null || schema.isBlank()) ? "derivatives_sample" : schema + ".derivatives_sample";
+    }
+
+    @PostConstruct
+    void init() {
+        if (!persist) return;
+        try {
+            jdbc.execute("create table if not exists " + table + " ("
+                    + "symbol varchar(20) not null, metric varchar(16) not null, ts bigint not null,"
+                    + " v0 float(53) not null, v1 float(53), v2 float(53), v3 float(53),"
+                    + " primary key (symbol, metric, ts))");
+            ready = true;
+        } catch (Exception ex) {
+            log.warn("derivatives_sample no disponible, solo memoria: {}", ex.getMessage());
+        }
+    }
+
+    /** Si la tabla está lista (persistencia activada y creada). */
+    public boolean isReady() {
+        return ready;
+    }
+
+    void save(String symbol, DerivativesPoller.Metric metric, List<DerivativesPoller.Point> points) {
+        if (!ready || points.isEmpty()) return;
+        jdbc.batchUpdate("insert into " + table + " (symbol, metric, ts, v0, v1, v2, v3)"
+                        + " values (?,?,?,?,?,?,?) on conflict do nothing",
+                points, points.size(), (ps, p) -> {
+                    double[] v = p.values();
+                    ps.setString(1, symbol);
+                    ps.setString(2, metric.name());
+                    ps.setLong(3, p.ts());
+                    for (int i = 0; i < 4; i++) {
+                        if (i < v.length) ps.setDouble(4 + i, v[i]);
+                        else ps.setNull(4 + i, Types.DOUBLE);
+                    }
+                });
+    }
+}
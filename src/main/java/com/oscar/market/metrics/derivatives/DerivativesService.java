@@ -1,46 +1,169 @@
 package com.oscar.market.metrics.derivatives;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.oscar.market.metrics.derivatives.ws.LiquidationEventRepository;
 import com.oscar.market.marketdata.FuturesClient;
-import com.oscar.market.marketdata.FuturesClient.BasisItem;
-import com.oscar.market.marketdata.FuturesClient.FundingItem;
-import com.oscar.market.marketdata.FuturesClient.LongShortItem;
-import com.oscar.market.marketdata.FuturesClient.OpenInterestHistItem;
+import com.oscar.market.metrics.derivatives.DerivativesPoller.Metric;
+import com.oscar.market.metrics.derivatives.DerivativesPoller.Point;
+import com.oscar.market.metrics.derivatives.DerivativesPoller.Reading;
+import com.oscar.market.metrics.derivatives.MarkPriceStream.History;
+import com.oscar.market.metrics.derivatives.MarkPriceStream.Mark;
+import com.oscar.market.metrics.derivatives.ws.LiquidationArchive;
+import com.oscar.market.metrics.derivatives.ws.LiquidationBackfill;
+import com.oscar.market.metrics.derivatives.ws.LiquidationCascadeDetector;
+import com.oscar.market.metrics.derivatives.ws.LiquidationHeatmap;
+import com.oscar.market.metrics.derivatives.ws.LiquidationRollup;
+import com.oscar.market.metrics.derivatives.ws.LiquidationRollupStore;
+
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class DerivativesService {
 
-    private final FuturesClient futures;
-    private final LiquidationEventRepository liqRepo;
+    private final DerivativesPoller poller;
+    private final LiquidationRollup liqRollup;
+    private final LiquidationRollupStore liqStore;
+    private final MarkPriceStream markPrice;
+    private final LiquidationHeatmap liqHeatmap;
+    private final LiquidationBackfill liqBackfill;
+    private final LiquidationCascadeDetector liqCascades;
+    private final LiquidationArchive liqArchive;
+    private final TransactionTemplate readTx;
+
+    private static final int MAX_LIQ_BUCKETS = 5000;
+    private static final List<String> OVERVIEW_LIQ_WINDOWS = List.of("1h", "4h", "24h");
+
+    private final ExecutorService fanOut = Executors.newVirtualThreadPerTaskExecutor();
+
+    public DerivativesService(DerivativesPoller poller, LiquidationRollup liqRollup, LiquidationRollupStore liqStore,
+                              MarkPriceStream markPrice, LiquidationHeatmap liqHeatmap,
+                              LiquidationBackfill liqBackfill, LiquidationCascadeDetector liqCascades,
+                              LiquidationArchive liqArchive, PlatformTransactionManager txManager) {
+        this.poller = poller;
+        this.liqRollup = liqRollup;
+        this.liqStore = liqStore;
+        this.markPrice = markPrice;
+        this.liqHeatmap = liqHeatmap;
+        this.liqBackfill = liqBackfill;
+        this.liqCascades = liqCascades;
+        this.liqArchive = liqArchive;
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fanOut.shutdownNow();
+    }
+
+    /* 0) Resumen: todas las piezas de cada símbolo en paralelo con un plazo común */
+    public Map<String, Object> overview(List<String> symbols, long budgetMs) {
+        long t0 = System.nanoTime();
+        long deadline = t0 + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+
+        Map<String, Map<String, Future<Map<String, Object>>>> tasks = new LinkedHashMap<>();
+        for (String sym : symbols) {
+            Map<String, Future<Map<String, Object>>> parts = new LinkedHashMap<>();
+            parts.put("oi1h", submit(() -> computeOiDelta(poller.read(sym, Metric.OI_1H, 2))));
+            parts.put("oi4h", submit(() -> computeOiDelta(poller.read(sym, Metric.OI_4H, 2))));
+            parts.put("funding", submit(() -> latestFundingRate(sym)));
+            parts.put("basis", submit(() -> basis1M(sym)));
+            parts.put("longShort", submit(() -> longShortRatio(sym)));
+            parts.put("liquidations", submit(() -> liquidationsSummary(sym, OVERVIEW_LIQ_WINDOWS)));
+            tasks.put(sym, parts);
+        }
+
+        Map<String, Object> bySymbol = new LinkedHashMap<>();
+        int missing = 0;
+        for (var e : tasks.entrySet()) {
+            Map<String, Object> parts = new LinkedHashMap<>();
+            for (var p : e.getValue().entrySet()) {
+                Map<String, Object> part = await(p.getValue(), deadline);
+                if (!"ok".equals(part.get("status"))) missing++;
+                parts.put(p.getKey(), part);
+            }
+            bySymbol.put(e.getKey(), parts);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbols", bySymbol);
+        out.put("budgetMs", budgetMs);
+        out.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+        out.put("partsMissing", missing);
+        out.put("source", "binance-futures");
+        return out;
+    }
+
+    private Future<Map<String, Object>> submit(Supplier<Map<String, Object>> part) {
+        return fanOut.submit(part::get);
+    }
+
+    private static Map<String, Object> join(Future<Map<String, Object>> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+    }
 
-    public DerivativesService(FuturesClient futures, LiquidationEventRepository liqRepo) {
-        this.futures = futures;
-        this.liqRepo = liqRepo;
+    // lo que no llega a tiempo se cancela y se marca; no retrasa al resto
+    private static Map<String, Object> await(Future<Map<String, Object>> f, long deadline) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        try {
+            long left = Math.max(0, deadline - System.nanoTime());
+            m.put("status", "ok");
+            m.put("data", f.get(left, TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            f.cancel(true);
+            m.put("status", "timeout");
+            m.put("data", null);
+        } catch (ExecutionException e) {
+            m.put("status", "error");
+            m.put("error", e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(true);
+            m.put("status", "interrupted");
+        }
+        return m;
     }
 
     /* 19) OI + ΔOI */
     public Map<String, Object> openInterestWithDelta(String symbol) {
         Map<String, Object> out = new LinkedHashMap<>();
-        var oi1h = futures.getOpenInterestHist(symbol, "1h", 2);
-        var oi4h = futures.getOpenInterestHist(symbol, "4h", 2);
+        // de memoria es inmediato; si hay que ir a REST, las dos peticiones van en paralelo
+        var oi4h = submit(() -> computeOiDelta(poller.read(symbol, Metric.OI_4H, 2)));
+        var oi1h = computeOiDelta(poller.read(symbol, Metric.OI_1H, 2));
         out.put("symbol", symbol);
         out.put("oi", Map.of(
-                "1h", computeOiDelta(oi1h),
-                "4h", computeOiDelta(oi4h)
+                "1h", oi1h,
+                "4h", join(oi4h)
         ));
         out.put("source", "binance-futures");
         return out;
     }
 
-    private Map<String, Object> computeOiDelta(List<OpenInterestHistItem> items) {
+    private Map<String, Object> computeOiDelta(Reading r) {
         Map<String, Object> m = new LinkedHashMap<>();
-        if (items == null || items.isEmpty()) {
+        if (r.isEmpty()) {
             m.put("openInterest", null);
             m.put("openInterestValue", null);
             m.put("delta", null);
@@ -48,13 +171,12 @@ public class DerivativesService {
             m.put("timestamp", null);
             return m;
         }
-        var last = items.getLast();
-        double curOi = parseD(last.sumOpenInterest());
-        double curVal = parseD(last.sumOpenInterestValue());
+        var last = r.last();
+        double curOi = last.values()[0];
+        double curVal = last.values()[1];
         Double delta = null, pct = null;
-        if (items.size() >= 2) {
-            var prev = items.get(items.size() - 2);
-            double prevOi = parseD(prev.sumOpenInterest());
+        if (r.points().size() >= 2) {
+            double prevOi = r.points().get(r.points().size() - 2).values()[0];
             delta = curOi - prevOi;
             if (prevOi != 0) pct = (delta / prevOi) * 100.0;
         }
@@ -62,37 +184,139 @@ public class DerivativesService {
         m.put("openInterestValue", curVal);
         m.put("delta", delta);
         m.put("pct", pct);
-        m.put("timestamp", last.timestamp());
+        m.put("timestamp", last.ts());
+        putAge(m, r);
         return m;
     }
 
-    /* 20) Funding último */
+    /* 19b) ΔOI sobre los últimos N periodos (5m, 1h, 4h) */
+    public Map<String, Object> openInterestHistory(String symbol, String period, int periods) {
+        Metric metric = switch (period) {
+            case "5m" -> Metric.OI_5M;
+            case "1h" -> Metric.OI_1H;
+            case "4h" -> Metric.OI_4H;
+            default -> throw new IllegalArgumentException("period no soportado: " + period);
+        };
+        int n = Math.max(1, periods);
+        Reading r = poller.read(symbol, metric, n + 1);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<Point> pts = r.points();
+        for (int i = 1; i < pts.size(); i++) {
+            double prev = pts.get(i - 1).values()[0];
+            double cur = pts.get(i).values()[0];
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("timestamp", pts.get(i).ts());
+            row.put("openInterest", cur);
+            row.put("delta", cur - prev);
+            row.put("pct", prev != 0 ? (cur - prev) / prev * 100.0 : null);
+            rows.add(row);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        out.put("period", period);
+        out.put("periods", rows.size());
+        if (pts.size() >= 2) {
+            double first = pts.getFirst().values()[0];
+            double last = pts.getLast().values()[0];
+            out.put("deltaTotal", last - first);
+            out.put("pctTotal", first != 0 ? (last - first) / first * 100.0 : null);
+        } else {
+            out.put("deltaTotal", null);
+            out.put("pctTotal", null);
+        }
+        out.put("series", rows);
+        putAge(out, r);
+        out.put("source", "binance-futures");
+        return out;
+    }
+
+    /* 20) Funding último (liquidado) y, si hay stream, el previsto en vivo */
     public Map<String, Object> latestFundingRate(String symbol) {
         Map<String, Object> out = new LinkedHashMap<>();
-        var list = futures.getFundingRateHistory(symbol, 1);
-        if (list == null || list.isEmpty()) {
-            out.put("symbol", symbol);
+        Reading r = poller.read(symbol, Metric.FUNDING, 1);
+        Mark live = markPrice.live(symbol).orElse(null);
+        out.put("symbol", symbol);
+        if (r.isEmpty()) {
             out.put("fundingRate", null);
             out.put("fundingTime", null);
             out.put("fundingRatePct", null);
+        } else {
+            double rate = r.last().values()[0];
+            out.put("fundingRate", rate);
+            out.put("fundingTime", r.last().ts());
+            out.put("fundingRatePct", rate * 100.0);
+            putAge(out, r);
+        }
+        if (live != null) {
+            out.put("predictedFundingRate", live.fundingRate());
+            out.put("predictedFundingRatePct", live.fundingRate() * 100.0);
+            out.put("nextFundingTime", live.nextFundingTime());
+            out.put("markPrice", live.markPrice());
+            out.put("indexPrice", live.indexPrice());
+            out.put("liveAgeMs", live.ageMs());
+        }
+        out.put("source", "binance-futures");
+        return out;
+    }
+
+    /* 20b) Percentil del funding actual frente a los últimos N cobros */
+    public Map<String, Object> fundingPercentile(String symbol, int periods) {
+        Reading r = poller.read(symbol, Metric.FUNDING, Math.max(2, periods));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        if (r.isEmpty()) {
+            out.put("fundingRate", null);
+            out.put("percentile", null);
             out.put("source", "binance-futures");
             return out;
         }
-        FundingItem it = list.getFirst();
-        double rate = parseD(it.fundingRate());
-        out.put("symbol", symbol);
-        out.put("fundingRate", rate);
-        out.put("fundingTime", it.fundingTime());
-        out.put("fundingRatePct", rate * 100.0);
+        int n = r.points().size();
+        double[] rates = new double[n];
+        for (int i = 0; i < n; i++) rates[i] = r.points().get(i).values()[0];
+        double cur = rates[n - 1];
+        int below = 0, equal = 0;
+        for (double v : rates) {
+            if (v < cur) below++;
+            else if (v == cur) equal++;
+        }
+        double[] sorted = rates.clone();
+        Arrays.sort(sorted);
+
+        out.put("fundingRate", cur);
+        out.put("fundingTime", r.last().ts());
+        out.put("periods", n);
+        out.put("percentile", (below + 0.5 * equal) / n * 100.0);
+        out.put("min", sorted[0]);
+        out.put("median", n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2);
+        out.put("max", sorted[n - 1]);
+        out.put("mean", Arrays.stream(rates).average().orElse(0.0));
+        putAge(out, r);
         out.put("source", "binance-futures");
         return out;
     }
 
-    /* 21) Basis 1M */
+    /* 21) Basis 1M: calculado en vivo con mark/índice del stream; si no, último punto sondeado */
     public Map<String, Object> basis1M(String pair) {
         Map<String, Object> out = new LinkedHashMap<>();
-        var list = futures.getBasis(pair, "PERPETUAL", "1h", 1);
-        if (list == null || list.isEmpty()) {
+        Mark live = markPrice.live(pair).orElse(null);
+        if (live != null) {
+            out.put("pair", pair);
+            out.put("contractType", "PERPETUAL");
+            out.put("basis", live.basis());
+            out.put("basisRate", live.basisRate());
+            out.put("annualized1M", live.basisRate() * (365.0 / 30.0));
+            out.put("futuresPrice", live.markPrice());
+            out.put("indexPrice", live.indexPrice());
+            out.put("timestamp", live.eventTime());
+            out.put("dataAgeMs", live.ageMs());
+            out.put("served", "stream");
+            out.put("source", "binance-futures");
+            return out;
+        }
+        Reading r = poller.read(pair, Metric.BASIS, 1);
+        if (r.isEmpty()) {
             out.put("pair", pair);
             out.put("basisRate", null);
             out.put("annualized1M", null);
@@ -102,16 +326,47 @@ public class DerivativesService {
             out.put("source", "binance-futures");
             return out;
         }
-        BasisItem it = list.getFirst();
-        double basisRate = it.basisRate();
+        double[] v = r.last().values();
+        double basisRate = v[1];
         double annualized1M = basisRate * (365.0 / 30.0);
         out.put("pair", pair);
-        out.put("contractType", it.contractType());
-        out.put("basis", it.basis());
+        out.put("contractType", "PERPETUAL");
+        out.put("basis", v[0]);
         out.put("basisRate", basisRate);
         out.put("annualized1M", annualized1M);
-        out.put("futuresPrice", it.futuresPrice());
-        out.put("indexPrice", it.indexPrice());
+        out.put("futuresPrice", v[2]);
+        out.put("indexPrice", v[3]);
+        out.put("timestamp", r.last().ts());
+        putAge(out, r);
+        out.put("source", "binance-futures");
+        return out;
+    }
+
+    /* 21b) Historial corto del mark price (1 punto/s, solo símbolos seguidos) */
+    public Map<String, Object> markPriceHistory(String symbol, int seconds) {
+        if (seconds < 1) throw new IllegalArgumentException("seconds debe ser >= 1");
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        History h = markPrice.history(symbol, seconds).orElse(null);
+        if (h == null) {
+            out.put("tracked", false);
+            out.put("series", List.of());
+            out.put("source", "binance-futures");
+            return out;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(h.ts().length);
+        for (int i = 0; i < h.ts().length; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ts", h.ts()[i]);
+            row.put("markPrice", h.mark()[i]);
+            row.put("indexPrice", h.index()[i]);
+            row.put("fundingRate", h.funding()[i]);
+            row.put("basisRate", h.basisRate()[i]);
+            rows.add(row);
+        }
+        out.put("tracked", true);
+        out.put("points", rows.size());
+        out.put("series", rows);
         out.put("source", "binance-futures");
         return out;
     }
@@ -119,8 +374,8 @@ public class DerivativesService {
     /* 22) Long/Short ratio */
     public Map<String, Object> longShortRatio(String symbol) {
         Map<String, Object> out = new LinkedHashMap<>();
-        var list = futures.getGlobalLongShortAccountRatio(symbol, "1h", 1);
-        if (list == null || list.isEmpty()) {
+        Reading r = poller.read(symbol, Metric.LONG_SHORT, 1);
+        if (r.isEmpty()) {
             out.put("symbol", symbol);
             out.put("interval", "1h");
             out.put("longShortRatio", null);
@@ -130,71 +385,263 @@ public class DerivativesService {
             out.put("source", "binance-futures");
             return out;
         }
-        LongShortItem it = list.getFirst();
+        double[] v = r.last().values();
         out.put("symbol", symbol);
         out.put("interval", "1h");
-        out.put("longShortRatio", parseD(it.longShortRatio()));
-        out.put("longAccount", parseD(it.longAccount()));
-        out.put("shortAccount", parseD(it.shortAccount()));
-        out.put("timestamp", it.timestamp());
+        out.put("longShortRatio", v[0]);
+        out.put("longAccount", v[1]);
+        out.put("shortAccount", v[2]);
+        out.put("timestamp", r.last().ts());
+        putAge(out, r);
         out.put("source", "binance-futures");
         return out;
     }
 
-    /* 23) Liquidaciones 24h: SOLO BD (WS). Si no hay datos, avisar. */
+    /* 23) Liquidaciones 24h: agregados en memoria del WS (sin consultas a BD). Si no hay datos, avisar. */
     public Map<String, Object> liquidations24h(String symbol) {
         Map<String, Object> out = new LinkedHashMap<>();
-        long end = FuturesClient.nowMs();
-        long start = end - 24L * 60 * 60 * 1000;
+        long windowMs = 24L * 60 * 60 * 1000;
 
-        String queried = symbol;
-        String note = null;
+        String queried = liquidationSymbol(symbol, windowMs);
+        LiquidationRollup.Totals t = liqRollup.window(queried, windowMs);
 
-        long count = liqRepo.countBySymbolAndTsGreaterThanEqual(symbol, start);
+        String note;
+        if (t.count() == 0) note = "sin datos persistidos aún (WS)";
+        else if (!queried.equals(symbol)) note = "source=ws-db; fallback a USDT";
+        else note = "source=ws-db";
 
-        // Fallback a USDT solo dentro de BD, por si el WS guarda USDT
-        if (count == 0 && symbol.endsWith("USDC")) {
-            String alt = symbol.substring(0, symbol.length() - 4) + "USDT";
-            long altCount = liqRepo.countBySymbolAndTsGreaterThanEqual(alt, start);
-            if (altCount > 0) {
-                queried = alt;
-                count = altCount;
-                note = "source=ws-db; fallback a USDT";
-            }
+        out.put("symbol", symbol);
+        out.put("symbolQueried", queried);
+        out.put("window", "24h");
+        out.put("count", t.count());
+        out.put("totalNotional", t.notional());
+        out.put("bySide", Map.of("BUY", t.buys(), "SELL", t.sells()));
+        out.put("note", note);
+        out.put("source", "binance-futures");
+        return out;
+    }
+
+    /* 23b) Resumen de liquidaciones en varias ventanas (5m, 1h, 4h, 24h, 7d...) */
+    public Map<String, Object> liquidationsSummary(String symbol, List<String> windows) {
+        long longest = 0;
+        Map<String, Long> parsed = new LinkedHashMap<>();
+        for (String w : windows) {
+            long ms = LiquidationRollup.windowMs(w);
+            parsed.put(w.trim(), ms);
+            longest = Math.max(longest, ms);
+        }
+        String queried = liquidationSymbol(symbol, longest);
+
+        Map<String, Object> byWindow = new LinkedHashMap<>();
+        long now = FuturesClient.nowMs();
+        for (var e : parsed.entrySet()) {
+            // más allá de la retención en memoria: agregados en BD (1m y, antes, 1h)
+            boolean memory = liqRollup.holds(now - e.getValue());
+            LiquidationRollup.Totals t = memory
+                    ? liqRollup.window(queried, e.getValue())
+                    : liqStore.totals(queried, now - e.getValue(), now + 1);
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", t.count());
+            m.put("totalNotional", t.notional());
+            m.put("bySide", Map.of("BUY", t.buys(), "SELL", t.sells()));
+            m.put("notionalBySide", Map.of("BUY", t.buyNotional(), "SELL", t.sellNotional()));
+            m.put("maxNotional", t.maxNotional());
+            m.put("complete", t.complete());
+            m.put("tier", memory ? "memory" : "rollup");
+            byWindow.put(e.getKey(), m);
         }
 
-        long buys = 0, sells = 0;
-        double notional = 0.0;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        out.put("symbolQueried", queried);
+        out.put("windows", byWindow);
+        out.put("coveredFrom", liqRollup.coveredFrom());
+        out.put("source", "binance-futures (ws, agregados en memoria / BD)");
+        return out;
+    }
 
-        if (count > 0) {
-            buys  = liqRepo.countBySymbolAndSideIgnoreCaseAndTsGreaterThanEqual(queried, "BUY", start);
-            sells = liqRepo.countBySymbolAndSideIgnoreCaseAndTsGreaterThanEqual(queried, "SELL", start);
-            notional = liqRepo.sumNotionalSince(queried, start);
-            if (note == null) note = "source=ws-db";
-        } else {
-            note = "sin datos persistidos aún (WS)";
+    /* 23c) Serie de liquidaciones por bucket desde las tablas de agregados (1m / 1h) */
+    public Map<String, Object> liquidationsHistory(String symbol, String window, String bucket) {
+        long windowMs = LiquidationRollup.windowMs(window);
+        long bucketMs = LiquidationRollup.windowMs(bucket);
+        if (windowMs / bucketMs > MAX_LIQ_BUCKETS) {
+            throw new IllegalArgumentException("Demasiados buckets: máximo " + MAX_LIQ_BUCKETS);
+        }
+        long end = FuturesClient.nowMs();
+        var series = liqStore.buckets(symbol, end - windowMs, end + 1, bucketMs);
+
+        List<Map<String, Object>> rows = new ArrayList<>(series.buckets().size());
+        for (var b : series.buckets()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("ts", b.ts());
+            m.put("count", b.events());
+            m.put("totalNotional", b.notional());
+            m.put("bySide", Map.of("BUY", b.buys(), "SELL", b.sells()));
+            m.put("notionalBySide", Map.of("BUY", b.buyNotional(), "SELL", b.sellNotional()));
+            m.put("maxNotional", b.maxNotional());
+            rows.add(m);
         }
 
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        out.put("window", window);
+        out.put("bucket", bucket);
+        out.put("table", series.table());
+        if (series.hourlyBefore() != null) {
+            // tramo anterior a la retención de 1m: buckets horarios
+            out.put("hourlyBefore", series.hourlyBefore());
+            out.put("hourlyBucketMs", series.hourlyBucketMs());
+        }
+        out.put("buckets", rows);
+        out.put("source", "binance-futures (ws, agregados en BD)");
+        return out;
+    }
+
+    /* 23d) Mapa de calor de liquidaciones por tramo de precio y de tiempo (en memoria) */
+    public Map<String, Object> liquidationsHeatmap(String symbol, String window, String bucket, double priceStep) {
+        long windowMs = LiquidationRollup.windowMs(window);
+        long bucketMs = (bucket == null || bucket.isBlank()) ? windowMs : LiquidationRollup.windowMs(bucket);
+        String queried = liquidationSymbol(symbol, windowMs);
+        long end = FuturesClient.nowMs();
+        LiquidationHeatmap.Heatmap h = liqHeatmap.query(queried, end - windowMs, end + 1, priceStep, bucketMs);
+
+        List<Map<String, Object>> cells = new ArrayList<>(h.cells().size());
+        for (var c : h.cells()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("ts", c.ts());
+            m.put("priceFrom", c.priceFrom());
+            m.put("priceTo", c.priceTo());
+            m.put("count", c.events());
+            m.put("totalNotional", c.notional());
+            m.put("notionalBySide", Map.of("BUY", c.buyNotional(), "SELL", c.sellNotional()));
+            cells.add(m);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
         out.put("symbol", symbol);
         out.put("symbolQueried", queried);
-        out.put("window", "24h");
-        out.put("count", count);
-        out.put("totalNotional", notional);
-        out.put("bySide", Map.of("BUY", buys, "SELL", sells));
-        out.put("note", note);
-        out.put("source", "binance-futures");
+        out.put("window", window);
+        out.put("bucketMs", h.timeStepMs());
+        out.put("priceStep", h.priceStep());
+        out.put("cells", cells);
+        out.put("source", "binance-futures (ws, agregados en memoria)");
         return out;
     }
 
+    /* 23e) Progreso del relleno por REST de huecos del WS (pasada en curso o la última) */
+    public Map<String, Object> liquidationsBackfill() {
+        LiquidationBackfill.Progress p = liqBackfill.progress();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("running", p.running());
+        out.put("startedAt", p.startedAt() == 0 ? null : p.startedAt());
+        out.put("finishedAt", p.finishedAt() == 0 ? null : p.finishedAt());
+        out.put("gaps", p.gaps());
+        out.put("windowsPlanned", p.windowsPlanned());
+        out.put("windowsDone", p.windowsDone());
+        out.put("windowsSplit", p.windowsSplit());
+        out.put("windowsFailed", p.windowsFailed());
+        out.put("fetched", p.fetched());
+        out.put("inserted", p.inserted());
+        out.put("duplicates", p.duplicates());
+        out.put("lastError", p.lastError());
+        out.put("source", "binance-futures (rest)");
+        return out;
+    }
+
+    /* 23f) Cascadas de liquidaciones detectadas (en curso y recientes) y ventanas móviles actuales */
+    public Map<String, Object> liquidationCascades(String symbol, int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit debe ser >= 1");
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (var c : liqCascades.recent(symbol, Math.min(limit, 500))) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", c.id());
+            m.put("symbol", c.symbol());
+            m.put("side", c.side());
+            m.put("trigger", c.trigger());
+            m.put("startedAt", c.startedAt());
+            m.put("endedAt", c.endedAt());
+            m.put("active", c.endedAt() == null);
+            m.put("totalNotional", c.notional());
+            m.put("count", c.events());
+            m.put("peakNotional30s", c.peakNotional30s());
+            m.put("peakCount10s", (long) c.peakEvents10s());
+            rows.add(m);
+        }
+
+        Map<String, Object> windows = new LinkedHashMap<>();
+        for (String side : List.of("BUY", "SELL")) {
+            var w = liqCascades.windows(symbol, side);
+            if (w == null) continue;
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("notional", Map.of("1s", w.notional1s(), "10s", w.notional10s(),
+                    "30s", w.notional30s(), "60s", w.notional60s()));
+            m.put("count", Map.of("1s", w.events1s(), "10s", w.events10s(),
+                    "30s", w.events30s(), "60s", w.events60s()));
+            m.put("baselinePerSec", w.baselinePerSec());
+            windows.put(side, m);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        out.put("cascades", rows);
+        out.put("windows", windows);
+        out.put("source", "binance-futures (ws, en memoria)");
+        return out;
+    }
+
+    /* 23g) Liquidaciones del archivo comprimido: totales decodificando los bloques en streaming */
+    public Map<String, Object> liquidationsArchive(String symbol, int days) {
+        if (days < 1 || days > 3660) throw new IllegalArgumentException("days debe estar entre 1 y 3660");
+        long to = FuturesClient.nowMs();
+        long from = to - days * 86_400_000L;
+        long[] count = new long[3]; // total, BUY, SELL
+        double[] notional = new double[4]; // total, BUY, SELL, máx
+        long[] span = {Long.MAX_VALUE, Long.MIN_VALUE};
+        // transacción de solo lectura: el fetchSize del scan solo da cursor dentro de una
+        Long scanned = readTx.execute(status -> liqArchive.scan(symbol, from, to, (ts, v) -> {
+            count[0]++;
+            notional[0] += v[LiquidationArchive.NOTIONAL];
+            if (v[LiquidationArchive.SIDE] > 0) { count[1]++; notional[1] += v[LiquidationArchive.NOTIONAL]; }
+            else if (v[LiquidationArchive.SIDE] < 0) { count[2]++; notional[2] += v[LiquidationArchive.NOTIONAL]; }
+            notional[3] = Math.max(notional[3], v[LiquidationArchive.NOTIONAL]);
+            span[0] = Math.min(span[0], ts);
+            span[1] = Math.max(span[1], ts);
+        }));
+        long bytes = scanned == null ? 0 : scanned;
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", symbol);
+        out.put("days", days);
+        out.put("count", count[0]);
+        out.put("totalNotional", notional[0]);
+        out.put("bySide", Map.of("BUY", count[1], "SELL", count[2]));
+        out.put("notionalBySide", Map.of("BUY", notional[1], "SELL", notional[2]));
+        out.put("maxNotional", notional[3]);
+        out.put("firstTs", count[0] > 0 ? span[0] : null);
+        out.put("lastTs", count[0] > 0 ? span[1] : null);
+        out.put("compressedBytes", bytes);
+        out.put("source", "binance-futures (ws, archivo comprimido en BD)");
+        return out;
+    }
+
+    // Fallback a USDT, por si el WS guarda USDT
+    private String liquidationSymbol(String symbol, long windowMs) {
+        long now = FuturesClient.nowMs();
+        if (symbol.endsWith("USDC") && !liqRollup.hasData(symbol, now - windowMs, now)) {
+            String alt = symbol.substring(0, symbol.length() - 4) + "USDT";
+            if (liqRollup.hasData(alt, now - windowMs, now)) return alt;
+        }
+        return symbol;
+    }
+
     /* 24) ELR placeholder */
     public Map<String, Object> estimatedLeverageRatio(String symbol) {
         Map<String, Object> out = new LinkedHashMap<>();
-        var oi = futures.getOpenInterestHist(symbol, "1h", 1);
+        Reading r = poller.read(symbol, Metric.OI_1H, 1);
         Double oiUsd = null; Long ts = null;
-        if (oi != null && !oi.isEmpty()) {
-            var it = oi.getFirst();
-            oiUsd = parseD(it.sumOpenInterestValue());
-            ts = it.timestamp();
+        if (!r.isEmpty()) {
+            oiUsd = r.last().values()[1];
+            ts = r.last().ts();
         }
         out.put("symbol", symbol);
         out.put("elr", null);
@@ -206,7 +653,11 @@ public class DerivativesService {
     }
 
     /* utils */
-    private static double parseD(String s) {
-        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    // antigüedad del último punto y del último sondeo; origen memoria o REST directo
+    private static void putAge(Map<String, Object> m, Reading r) {
+        long now = FuturesClient.nowMs();
+        m.put("dataAgeMs", r.isEmpty() ? null : now - r.last().ts());
+        m.put("fetchedAgoMs", now - r.fetchedAt());
+        m.put("served", r.source());
     }
 }
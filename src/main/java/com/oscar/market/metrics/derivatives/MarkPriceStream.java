@@ -0,0 +1,149 @@
+package com.oscar.market.metrics.derivatives;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oscar.market.marketdata.ws.StreamSupervisor;
+import com.oscar.market.metrics.series.RingSeries;
+
+/**
+ * Stream &lt;symbol&gt;@markPrice@1s de futuros: mark, índice y funding previsto en vivo por
+ * símbolo seguido. El basis perp-índice se calcula aquí con cada actualización (1/s) y se
+ * guarda un historial corto en anillo (mark, índice, funding, basisRate).
+ */
+@Component
+public class MarkPriceStream implements ApplicationRunner {
+
+    private static final String BASE = "wss://fstream.binance.com/stream?streams=";
+
+    private final StreamSupervisor supervisor;
+    private final ObjectMapper om = new ObjectMapper();
+    private final Map<String, MarkState> states = new ConcurrentHashMap<>();
+
+    @Value("${market.markprice.enabled:true}")
+    private boolean enabled;
+
+    @Value("${market.derivatives.symbols-tracked:BTCUSDC,BTCUSDT}")
+    private String symbolsTrackedCsv;
+
+    @Value("${market.markprice.history:3600}") // segundos
+    private int history;
+
+    @Value("${market.markprice.max-age-ms:5000}")
+    private long maxAgeMs;
+
+    public MarkPriceStream(StreamSupervisor supervisor) {
+        this.supervisor = supervisor;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        Set<String> symbols = new LinkedHashSet<>();
+        for (String p : symbolsTrackedCsv.split(",")) {
+            String v = p.trim().toUpperCase(Locale.ROOT);
+            if (!v.isEmpty()) symbols.add(v);
+        }
+        if (symbols.isEmpty()) return;
+        StringJoiner j = new StringJoiner("/");
+        for (String s : symbols) {
+            states.put(s, new MarkState(Math.max(2, history)));
+            j.add(s.toLowerCase(Locale.ROOT) + "@markPrice@1s");
+        }
+        supervisor.open("markprice", URI.create(BASE + j), false, frame -> handle(frame.toString()));
+    }
+
+    /** Última actualización con el basis ya calculado. */
+    public record Mark(String symbol, long eventTime, double markPrice, double indexPrice,
+                       double fundingRate, long nextFundingTime,
+                       double basis, double basisRate, long ageMs) {}
+
+    /** Valor en vivo si llegó hace menos de max-age-ms. */
+    public Optional<Mark> live(String symbol) {
+        MarkState st = states.get(symbol);
+        if (st == null) return Optional.empty();
+        Mark m = st.last(symbol);
+        if (m == null || m.ageMs() > maxAgeMs) return Optional.empty();
+        return Optional.of(m);
+    }
+
+    /** Historial de los últimos 'seconds' puntos (antiguo → reciente). */
+    public record History(long[] ts, double[] mark, double[] index, double[] funding, double[] basisRate) {}
+
+    public Optional<History> history(String symbol, int seconds) {
+        MarkState st = states.get(symbol);
+        return st == null ? Optional.empty() : Optional.of(st.history(seconds));
+    }
+
+    private void handle(String json) {
+        try {
+            JsonNode root = om.readTree(json);
+            JsonNode d = root.has("data") ? root.get("data") : root;
+            MarkState st = states.get(d.path("s").asText());
+            if (st == null) return;
+            double mark = parse(d.path("p").asText());
+            double index = parse(d.path("i").asText());
+            if (mark <= 0 || index <= 0) return;
+            st.update(d.path("E").asLong(), mark, index, parse(d.path("r").asText()), d.path("T").asLong());
+        } catch (Exception ignored) {}
+    }
+
+    private static double parse(String s) {
+        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    }
+
+    private static final class MarkState {
+        final RingSeries ring; // col 0 = mark, 1 = índice, 2 = funding, 3 = basisRate
+        long eventTime;
+        double mark, index, funding;
+        long nextFunding;
+
+        MarkState(int capacity) {
+            this.ring = new RingSeries(capacity, 4);
+        }
+
+        synchronized void update(long e, double mark, double index, double funding, long nextFunding) {
+            this.eventTime = e;
+            this.mark = mark;
+            this.index = index;
+            this.funding = funding;
+            this.nextFunding = nextFunding;
+            ring.append(e, mark, index, funding, (mark - index) / index);
+        }
+
+        synchronized Mark last(String symbol) {
+            if (ring.isEmpty()) return null;
+            double basis = mark - index;
+            return new Mark(symbol, eventTime, mark, index, funding, nextFunding,
+                    basis, basis / index, System.currentTimeMillis() - eventTime);
+        }
+
+        synchronized History history(int seconds) {
+            int k = Math.max(0, Math.min(seconds, ring.size()));
+            long[] ts = new long[k];
+            double[] m = new double[k], i = new double[k], f = new double[k], b = new double[k];
+            for (int back = 0; back < k; back++) {
+                int at = k - 1 - back;
+                ts[at] = ring.ts(back);
+                m[at] = ring.value(0, back);
+                i[at] = ring.value(1, back);
+                f[at] = ring.value(2, back);
+                b[at] = ring.value(3, back);
+            }
+            return new History(ts, m, i, f, b);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola acotada sin locks (algoritmo de Vyukov): cada celda lleva un número de secuencia que
+ * indica si está libre para el productor o lista para el consumidor. Varios productores (hilos
+ * WS) y un consumidor (writer); poll() es seguro también desde productores, lo que permite
+ * la política drop-oldest. Capacidad redondeada a potencia de 2.
+ */
+final class BoundedEventRing<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+
+    BoundedEventRing(int requestedCapacity) {
+        int cap = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.buffer = new AtomicReferenceArray<>(cap);
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) sequences.set(i, i);
+        this.mask = cap - 1;
+    }
+
+    int capacity() { return mask + 1; }
+
+    /** Encola sin bloquear; false si está llena. */
+    boolean offer(E e) {
+        long pos = enqueuePos.get();
+        int idx;
+        while (true) {
+            idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) break;
+                pos = enqueuePos.get();
+            } else if (dif < 0) {
+                return false; // llena
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+        buffer.lazySet(idx, e);
+        sequences.set(idx, pos + 1); // publica la celda al consumidor
+        return true;
+    }
+
+    /** Desencola sin bloquear; null si está vacía. */
+    E poll() {
+        long pos = dequeuePos.get();
+        int idx;
+        while (true) {
+            idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) break;
+                pos = dequeuePos.get();
+            } else if (dif < 0) {
+                return null; // vacía
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+        E e = buffer.get(idx);
+        buffer.lazySet(idx, null);
+        sequences.set(idx, pos + mask + 1); // libera la celda para la siguiente vuelta
+        return e;
+    }
+
+    int drainTo(List<E> out, int max) {
+        int n = 0;
+        E e;
+        while (n < max && (e = poll()) != null) {
+            out.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    /** Tamaño aproximado (lecturas no atómicas entre sí). */
+    int size() {
+        long s = enqueuePos.get() - dequeuePos.get();
+        return (int) Math.max(0, Math.min(s, capacity()));
+    }
+}
@@ -0,0 +1,279 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+/**
+ * Parser en streaming para tramas de !forceOrder@arr. Recorre el CharSequence una vez y solo
+ * extrae s, S, p/ap, z/q/l, T y E en un {@link Order} reutilizable; el resto de valores se salta
+ * sin crear objetos. Los símbolos se resuelven contra los seguidos (misma instancia String),
+ * así un símbolo no seguido se descarta antes de asignar nada.
+ * No es thread-safe: una instancia por conexión.
+ */
+final class ForceOrderParser {
+
+    /** Recibe cada orden válida; el holder se reutiliza, no guardar la referencia. */
+    interface Sink {
+        void onOrder(Order o);
+    }
+
+    /** Campos de una orden de liquidación; NaN / MIN_VALUE = ausente. */
+    static final class Order {
+        String symbol;
+        String side;
+        double p, ap, z, q, l;
+        long tradeTime, eventTime;
+        boolean untracked;
+
+        void reset() {
+            symbol = null;
+            side = null;
+            p = ap = z = q = l = Double.NaN;
+            tradeTime = eventTime = Long.MIN_VALUE;
+            untracked = false;
+        }
+
+        /** Mismas prioridades que el parser anterior: p → ap, z → q → l, T → E → ahora. */
+        double price() { return !Double.isNaN(p) ? p : !Double.isNaN(ap) ? ap : 0.0; }
+        double qty() { return !Double.isNaN(z) ? z : !Double.isNaN(q) ? q : !Double.isNaN(l) ? l : 0.0; }
+        long ts() {
+            if (tradeTime != Long.MIN_VALUE) return tradeTime;
+            return eventTime != Long.MIN_VALUE ? eventTime : System.currentTimeMillis();
+        }
+    }
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final String[] tracked; // vacío = todos
+    private final Order order = new Order();
+    private CharSequence s;
+    private int pos;
+    private int end;
+
+    ForceOrderParser(String[] tracked) {
+        this.tracked = tracked == null ? new String[0] : tracked.clone();
+    }
+
+    /** Procesa una trama (objeto o array de objetos). Devuelve las órdenes entregadas al sink. */
+    int parse(CharSequence frame, Sink sink) {
+        this.s = frame;
+        this.pos = 0;
+        this.end = frame.length();
+        int delivered = 0;
+        try {
+            skipWs();
+            if (pos >= end) return 0;
+            if (s.charAt(pos) == '[') {
+                pos++;
+                skipWs();
+                if (peek() == ']') return 0;
+                while (true) {
+                    if (event(sink)) delivered++;
+                    skipWs();
+                    char c = next();
+                    if (c == ']') break;
+                    if (c != ',') throw new IllegalStateException("JSON inválido");
+                    skipWs();
+                }
+            } else if (event(sink)) {
+                delivered++;
+            }
+        } catch (RuntimeException ignored) {
+            // trama mal formada: se descarta lo que quede
+        } finally {
+            this.s = null;
+        }
+        return delivered;
+    }
+
+    private boolean event(Sink sink) {
+        order.reset();
+        object();
+        if (order.untracked || order.symbol == null || order.symbol.isEmpty()) return false;
+        if (order.price() <= 0 || order.qty() <= 0) return false;
+        sink.onOrder(order);
+        return true;
+    }
+
+    /** Objeto del evento; "o" se recorre con el mismo holder (el evento puede venir sin envolver). */
+    private void object() {
+        expect('{');
+        skipWs();
+        if (peek() == '}') { pos++; return; }
+        while (true) {
+            skipWs();
+            expect('"');
+            int k0 = pos;
+            skipStringBody();
+            int kLen = pos - 1 - k0;
+            skipWs();
+            expect(':');
+            skipWs();
+            field(k0, kLen);
+            skipWs();
+            char c = next();
+            if (c == '}') return;
+            if (c != ',') throw new IllegalStateException("JSON inválido");
+        }
+    }
+
+    private void field(int k0, int kLen) {
+        char k = s.charAt(k0);
+        if (kLen == 1) {
+            switch (k) {
+                case 'o' -> { if (peek() == '{') object(); else skipValue(); }
+                case 's' -> symbol();
+                case 'S' -> side();
+                case 'p' -> order.p = number();
+                case 'z' -> order.z = number();
+                case 'q' -> order.q = number();
+                case 'l' -> order.l = number();
+                case 'T' -> { double v = number(); if (!Double.isNaN(v)) order.tradeTime = (long) v; }
+                case 'E' -> {
+                    double v = number();
+                    if (!Double.isNaN(v) && order.eventTime == Long.MIN_VALUE) order.eventTime = (long) v;
+                }
+                default -> skipValue();
+            }
+        } else if (kLen == 2 && k == 'a' && s.charAt(k0 + 1) == 'p') {
+            order.ap = number();
+        } else {
+            skipValue();
+        }
+    }
+
+    private void symbol() {
+        if (peek() != '"') { skipValue(); return; }
+        pos++;
+        int v0 = pos;
+        skipStringBody();
+        int len = pos - 1 - v0;
+        if (tracked.length == 0) {
+            order.symbol = s.subSequence(v0, v0 + len).toString();
+            return;
+        }
+        for (String t : tracked) {
+            if (regionEquals(v0, len, t)) { order.symbol = t; return; }
+        }
+        order.untracked = true;
+    }
+
+    private void side() {
+        if (peek() != '"') { skipValue(); return; }
+        pos++;
+        int v0 = pos;
+        skipStringBody();
+        int len = pos - 1 - v0;
+        if (regionEquals(v0, len, "SELL")) order.side = "SELL";
+        else if (regionEquals(v0, len, "BUY")) order.side = "BUY";
+        else order.side = s.subSequence(v0, v0 + len).toString();
+    }
+
+    private boolean regionEquals(int from, int len, String t) {
+        if (len != t.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(from + i) != t.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Número entre comillas o sin ellas. Mantisa entera y división por 10^k: con mantisa < 2^53
+     * y k ≤ 22 el resultado es el mismo que Double.parseDouble. Si no, se delega en él.
+     */
+    private double number() {
+        boolean quoted = peek() == '"';
+        if (quoted) pos++;
+        int n0 = pos;
+        boolean neg = false;
+        if (pos < end && s.charAt(pos) == '-') { neg = true; pos++; }
+        long mant = 0;
+        int frac = 0;
+        boolean dot = false, exact = true;
+        for (; pos < end; pos++) {
+            char c = s.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (mant < 100_000_000_000_000_000L) {
+                    mant = mant * 10 + (c - '0');
+                    if (dot) frac++;
+                } else {
+                    exact = false;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else if (c == 'e' || c == 'E' || c == '+' || (c == '-' && pos > n0)) {
+                exact = false;
+            } else {
+                break;
+            }
+        }
+        int n1 = pos;
+        if (quoted && peek() != '"') { // texto no numérico entre comillas
+            skipStringBody();
+            return Double.NaN;
+        }
+        if (quoted) pos++;
+        if (n1 == n0 || (neg && n1 == n0 + 1)) return Double.NaN;
+        if (exact && mant < (1L << 53) && frac < POW10.length) {
+            double v = mant / POW10[frac];
+            return neg ? -v : v;
+        }
+        try {
+            return Double.parseDouble(s.subSequence(n0, n1).toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /* =================== saltos =================== */
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') { pos++; skipStringBody(); return; }
+        if (c == '{' || c == '[') { skipNested(); return; }
+        while (pos < end) { // número o literal
+            c = s.charAt(pos);
+            if (c == ',' || c == '}' || c == ']' || c <= ' ') return;
+            pos++;
+        }
+    }
+
+    private void skipNested() {
+        int depth = 0;
+        while (pos < end) {
+            char c = s.charAt(pos++);
+            if (c == '"') skipStringBody();
+            else if (c == '{' || c == '[') depth++;
+            else if ((c == '}' || c == ']') && --depth == 0) return;
+        }
+        throw new IllegalStateException("JSON incompleto");
+    }
+
+    /** Avanza hasta pasada la comilla de cierre (pos apunta tras la comilla de apertura). */
+    private void skipStringBody() {
+        while (pos < end) {
+            char c = s.charAt(pos++);
+            if (c == '\\') pos++;
+            else if (c == '"') return;
+        }
+        throw new IllegalStateException("JSON incompleto");
+    }
+
+    private void skipWs() {
+        while (pos < end && s.charAt(pos) <= ' ') pos++;
+    }
+
+    private char peek() {
+        if (pos >= end) throw new IllegalStateException("JSON incompleto");
+        return s.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw new IllegalStateException("JSON inválido");
+    }
+}
@@ -0,0 +1,187 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.metrics.series.GorillaBlock;
+
+import jakarta.annotation.PostConstruct;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Archivo comprimido de las liquidaciones crudas que salen de la retención: un bloque
+ * {@link GorillaBlock} por (símbolo, día UTC) en liquidation_archive con price, qty, notional
+ * y side (+1 BUY, -1 SELL, 0 sin lado). La retención lo llama en la misma transacción que borra
+ * las filas (o que marca la partición como archivada), así cada fila se archiva una sola vez;
+ * si un día llega en varias tandas (tabla sin particionar, partición default) se fusiona con el
+ * bloque que ya hubiera.
+ */
+@Component
+public class LiquidationArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquidationArchive.class);
+    static final long DAY_MS = 86_400_000L;
+    public static final int PRICE = 0, QTY = 1, NOTIONAL = 2, SIDE = 3;
+    private static final int COLUMNS = 4;
+    private static final int FETCH_SIZE = 5000;
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+    private final String rawTable;
+
+    @Value("${market.archive.liquidations:true}")
+    private boolean enabled = true;
+
+    @Value("${market.export.fetch-size:${spring.jpa.properties.hibernate.jdbc.fetch_size:50}}")
+    private int fetchSize = 50;
+
+    public LiquidationArchive(JdbcTemplate jdbc,
+                              @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        String prefix = (schema == null || schema.isBlank()) ? "" : schema + ".";
+        this.table = prefix + "liquidation_archive";
+        this.rawTable = prefix + "liquidation_event";
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        try {
+            jdbc.execute("create table if not exists " + table + " ("
+                    + "symbol varchar(20) not null, day bigint not null, rows int not null,"
+                    + " block bytea not null, primary key (symbol, day))");
+        } catch (Exception ex) {
+            log.warn("No se pudo preparar {}: {}", table, ex.getMessage());
+        }
+    }
+
+    /* =================== escritura =================== */
+
+    /** Archiva las filas de sourceTable con ts en [fromTs, beforeTs). Devuelve las filas archivadas. */
+    int archive(String sourceTable, long fromTs, long beforeTs) {
+        if (!enabled) return 0;
+        Day[] cur = {null};
+        int[] total = {0};
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement("select symbol, ts, side, price, qty, notional from "
+                    + sourceTable + " where ts >= ? and ts < ? order by symbol, ts");
+            ps.setFetchSize(FETCH_SIZE); // en streaming: un día de una partición puede ser grande
+            ps.setLong(1, fromTs);
+            ps.setLong(2, beforeTs);
+            return ps;
+        }, rs -> {
+            String symbol = rs.getString(1);
+            long ts = rs.getLong(2);
+            long day = Math.floorDiv(ts, DAY_MS);
+            Day d = cur[0];
+            if (d == null || d.day != day || !d.symbol.equals(symbol)) {
+                if (d != null) write(d);
+                d = cur[0] = new Day(symbol, day);
+            }
+            String side = rs.getString(3);
+            d.add(ts, rs.getDouble(4), rs.getDouble(5), rs.getDouble(6),
+                    "BUY".equalsIgnoreCase(side) ? 1 : "SELL".equalsIgnoreCase(side) ? -1 : 0);
+            total[0]++;
+        });
+        if (cur[0] != null) write(cur[0]);
+        return total[0];
+    }
+
+    /** Para liquidation_event sin particionar, antes del DELETE. */
+    int archiveRaw(long beforeTs) {
+        return archive(rawTable, Long.MIN_VALUE, beforeTs);
+    }
+
+    private void write(Day d) {
+        List<byte[]> prev = jdbc.query("select block from " + table + " where symbol = ? and day = ?",
+                (rs, i) -> rs.getBytes(1), d.symbol, d.day);
+        if (!prev.isEmpty()) d.mergeWith(prev.get(0));
+        jdbc.update("insert into " + table + " (symbol, day, rows, block) values (?,?,?,?)"
+                        + " on conflict (symbol, day) do update set rows = excluded.rows, block = excluded.block",
+                d.symbol, d.day, d.n, GorillaBlock.encode(d.ts, d.cols, d.n));
+    }
+
+    /* =================== lectura =================== */
+
+    /** Liquidaciones archivadas de [from, to) en orden; values: PRICE, QTY, NOTIONAL, SIDE. Devuelve bytes leídos. */
+    public long scan(String symbol, long from, long to, GorillaBlock.RowSink sink) {
+        long[] bytes = {0};
+        double[] v = new double[COLUMNS];
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement("select block from " + table
+                    + " where symbol = ? and day >= ? and day <= ? order by day");
+            ps.setFetchSize(fetchSize); // con transacción abierta, cursor: un bloque por día en memoria
+            ps.setString(1, symbol);
+            ps.setLong(2, Math.floorDiv(from, DAY_MS));
+            ps.setLong(3, Math.floorDiv(to - 1, DAY_MS));
+            return ps;
+        }, rs -> {
+            byte[] block = rs.getBytes(1);
+            bytes[0] += block.length;
+            GorillaBlock.Reader r = GorillaBlock.reader(block);
+            while (r.next()) {
+                long t = r.ts();
+                if (t < from || t >= to) continue;
+                for (int c = 0; c < COLUMNS; c++) v[c] = r.value(c);
+                sink.row(t, v);
+            }
+        });
+        return bytes[0];
+    }
+
+    /** Filas de un (símbolo, día) en columnas; crece duplicando. */
+    private static final class Day {
+        final String symbol;
+        final long day;
+        long[] ts = new long[256];
+        double[][] cols = new double[COLUMNS][256];
+        int n;
+
+        Day(String symbol, long day) {
+            this.symbol = symbol;
+            this.day = day;
+        }
+
+        void add(long t, double price, double qty, double notional, double side) {
+            if (n == ts.length) {
+                ts = Arrays.copyOf(ts, n * 2);
+                for (int c = 0; c < COLUMNS; c++) cols[c] = Arrays.copyOf(cols[c], n * 2);
+            }
+            ts[n] = t;
+            cols[PRICE][n] = price;
+            cols[QTY][n] = qty;
+            cols[NOTIONAL][n] = notional;
+            cols[SIDE][n] = side;
+            n++;
+        }
+
+        /** Mezcla ordenada por ts con un bloque ya archivado (ambos ordenados). */
+        void mergeWith(byte[] block) {
+            long[] oldTs = ts;
+            double[][] oldCols = cols;
+            int oldN = n;
+            int total = oldN + GorillaBlock.rows(block);
+            ts = new long[total];
+            cols = new double[COLUMNS][total];
+            n = 0;
+            GorillaBlock.Reader r = GorillaBlock.reader(block);
+            boolean has = r.next();
+            int i = 0;
+            while (has || i < oldN) {
+                if (has && (i >= oldN || r.ts() <= oldTs[i])) {
+                    add(r.ts(), r.value(PRICE), r.value(QTY), r.value(NOTIONAL), r.value(SIDE));
+                    has = r.next();
+                } else {
+                    add(oldTs[i], oldCols[PRICE][i], oldCols[QTY][i], oldCols[NOTIONAL][i], oldCols[SIDE][i]);
+                    i++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.marketdata.FuturesClient;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relleno por REST de los huecos que deja el WS de liquidaciones (arranque, caídas, cortes).
+ * La cobertura se apunta en liquidation_coverage: intervalos en los que el WS estuvo conectado
+ * ("ws") y ventanas ya rellenadas ("rest"). Cada pasada calcula los huecos dentro del horizonte,
+ * los parte en ventanas y las pide en paralelo dentro del presupuesto de peso de futuros, que
+ * comparte con el resto de llamadas de {@link FuturesClient}; una ventana que
+ * llena la página se parte en dos. Lo nuevo pasa por el mismo {@link LiquidationBulkWriter} tras
+ * descartar las filas que ya estaban en BD. No se piden ventanas más recientes que lo que el
+ * {@link LiquidationIngestor} ya ha escrito: lo que sigue en su cola aún no se ve en BD. Una ventana solo cuenta como cubierta cuando se ha escrito,
+ * así que una pasada interrumpida se retoma donde quedó. La pasada corre en su propio hilo: el
+ * planificador solo la lanza.
+ */
+@Component
+public class LiquidationBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquidationBackfill.class);
+    private static final long MIN_WINDOW_MS = 1000L;
+
+    private final FuturesClient futures;
+    private final LiquidationBulkWriter bulk;
+    private final LiquidationIngestor ingest;
+    private final List<LiquidationBatchListener> listeners;
+    private final JdbcTemplate jdbc;
+    private final String eventTable;
+    private final String coverageTable;
+    private final Semaphore parallel;
+    private final ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "liquidation-backfill");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${market.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${market.ws.symbols-tracked:BTCUSDT,BTCUSDC}")
+    private String symbolsTrackedCsv;
+
+    @Value("${market.ws.min-notional:50}")
+    private double minNotional;
+
+    @Value("${market.backfill.lookback-hours:24}")
+    private int lookbackHours;
+
+    @Value("${market.backfill.window-minutes:60}")
+    private int windowMinutes;
+
+    @Value("${market.backfill.settle-ms:60000}") // margen para que REST tenga el último tramo
+    private long settleMs;
+
+    private Set<String> symbols = Set.of();
+    private volatile boolean ready;
+
+    // conexión actual del WS (cobertura abierta)
+    private volatile long wsLiveSince = -1;
+
+    // progreso de la pasada actual o de la última
+    private volatile long startedAt, finishedAt;
+    private volatile String lastError;
+    private final AtomicInteger gaps = new AtomicInteger();
+    private final AtomicInteger windowsPlanned = new AtomicInteger();
+    private final AtomicInteger windowsDone = new AtomicInteger();
+    private final AtomicInteger windowsSplit = new AtomicInteger();
+    private final AtomicInteger windowsFailed = new AtomicInteger();
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public LiquidationBackfill(FuturesClient futures, LiquidationBulkWriter bulk, LiquidationIngestor ingest,
+                               List<LiquidationBatchListener> listeners, JdbcTemplate jdbc,
+                               @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema,
+                               @Value("${market.backfill.parallelism:4}") int parallelism) {
+        this.futures = futures;
+        this.bulk = bulk;
+        this.ingest = ingest;
+        this.listeners = listeners;
+        this.jdbc = jdbc;
+        String prefix = (schema == null || schema.isBlank()) ? "" : schema + ".";
+        this.eventTable = prefix + "liquidation_event";
+        this.coverageTable = prefix + "liquidation_coverage";
+        this.parallel = new Semaphore(Math.max(1, parallelism));
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        Set<String> out = new LinkedHashSet<>();
+        for (String p : symbolsTrackedCsv.split(",")) {
+            String v = p.trim();
+            if (!v.isEmpty()) out.add(v);
+        }
+        symbols = out;
+        try {
+            jdbc.execute("create table if not exists " + coverageTable + " ("
+                    + "symbol varchar(20) not null, source varchar(8) not null,"
+                    + " from_ts bigint not null, to_ts bigint not null,"
+                    + " primary key (symbol, source, from_ts))");
+            ready = true;
+        } catch (Exception ex) {
+            log.warn("liquidation_coverage no disponible, backfill desactivado: {}", ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        long since = wsLiveSince;
+        if (since >= 0) markWs(since, System.currentTimeMillis());
+        runner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /* =================== cobertura del WS =================== */
+
+    /** El WS vuelve a tener conexión: abre cobertura y rellena el hueco que haya quedado. */
+    public void onStreamUp() {
+        long since = System.currentTimeMillis();
+        wsLiveSince = since;
+        if (!ready) return;
+        pool.submit(() -> { // fuera del hilo del supervisor
+            markWs(since, since);
+            run();
+        });
+    }
+
+    /** Sin conexión: cierra el intervalo cubierto por el WS. */
+    public void onStreamDown() {
+        long since = wsLiveSince;
+        wsLiveSince = -1;
+        long now = System.currentTimeMillis();
+        if (since >= 0 && ready) pool.submit(() -> markWs(since, now));
+    }
+
+    /** Alarga en BD el intervalo del WS en curso y compacta la cobertura fuera del horizonte. */
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void touch() {
+        long since = wsLiveSince;
+        if (since >= 0) markWs(since, System.currentTimeMillis());
+        if (!ready) return;
+        try {
+            jdbc.update("delete from " + coverageTable + " where to_ts < ?", horizonStart(System.currentTimeMillis()));
+        } catch (Exception ignored) {}
+    }
+
+    private void markWs(long from, long to) {
+        if (!ready) return;
+        try {
+            for (String s : symbols) mark(s, "ws", from, to);
+        } catch (Exception ex) {
+            log.debug("No se pudo apuntar la cobertura del WS: {}", ex.getMessage());
+        }
+    }
+
+    private void mark(String symbol, String source, long from, long to) {
+        jdbc.update("insert into " + coverageTable + " as c (symbol, source, from_ts, to_ts) values (?,?,?,?)"
+                        + " on conflict (symbol, source, from_ts) do update"
+                        + " set to_ts = greatest(c.to_ts, excluded.to_ts)",
+                symbol, source, from, to);
+    }
+
+    /* =================== pasada de relleno =================== */
+
+    public record Progress(boolean running, long startedAt, long finishedAt, int gaps,
+                           int windowsPlanned, int windowsDone, int windowsSplit, int windowsFailed,
+                           long fetched, long inserted, long duplicates, String lastError) {}
+
+    public Progress progress() {
+        return new Progress(running.get(), startedAt, finishedAt, gaps.get(),
+                windowsPlanned.get(), windowsDone.get(), windowsSplit.get(), windowsFailed.get(),
+                fetched.get(), inserted.get(), duplicates.get(), lastError);
+    }
+
+    /** Lanza una pasada completa en su hilo y vuelve; si ya hay otra en marcha no hace nada. */
+    @Scheduled(fixedDelayString = "${market.backfill.interval-ms:300000}", initialDelayString = "${market.backfill.initial-delay-ms:30000}")
+    public void run() {
+        if (!enabled || !ready || !running.compareAndSet(false, true)) return;
+        try {
+            runner.execute(this::pass);
+        } catch (RejectedExecutionException e) { // apagando
+            running.set(false);
+        }
+    }
+
+    /** La pasada en sí, en el hilo que llama; quien la lanza ya ha puesto running. */
+    void pass() {
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        lastError = null;
+        gaps.set(0);
+        windowsPlanned.set(0);
+        windowsDone.set(0);
+        windowsSplit.set(0);
+        windowsFailed.set(0);
+        fetched.set(0);
+        inserted.set(0);
+        duplicates.set(0);
+        try {
+            long now = System.currentTimeMillis();
+            long from = horizonStart(now);
+            // lo aceptado por el WS y aún en cola del writer no está en BD: se tomaría por hueco
+            long to = Math.min(now, ingest.flushedThrough()) - settleMs;
+            long step = Math.max(MIN_WINDOW_MS, windowMinutes * 60_000L);
+            List<Window> windows = new ArrayList<>();
+            for (String s : symbols) {
+                for (long[] g : gaps(s, from, to)) {
+                    gaps.incrementAndGet();
+                    for (long w = g[0]; w <= g[1]; w += step) {
+                        windows.add(new Window(s, w, Math.min(g[1], w + step - 1)));
+                    }
+                }
+            }
+            windowsPlanned.set(windows.size());
+            if (!windows.isEmpty()) {
+                log.info("Backfill de liquidaciones: {} huecos, {} ventanas", gaps.get(), windows.size());
+                execute(windows);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastError = "interrumpido";
+        } catch (Exception ex) {
+            lastError = ex.getMessage();
+            log.warn("Backfill de liquidaciones fallido: {}", ex.getMessage());
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            running.set(false);
+        }
+    }
+
+    /** Huecos [from, to] (inclusive) de un símbolo que no cubren ni el WS ni pasadas anteriores. */
+    List<long[]> gaps(String symbol, long from, long to) {
+        List<long[]> covered = new ArrayList<>(jdbc.query(
+                "select from_ts, to_ts from " + coverageTable
+                        + " where symbol = ? and to_ts >= ? and from_ts <= ? order by from_ts",
+                (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, symbol, from, to));
+        long live = wsLiveSince;
+        if (live >= 0) covered.add(new long[]{live, Long.MAX_VALUE});
+        return complement(covered, from, to);
+    }
+
+    /** Complemento de la unión de intervalos cerrados dentro de [from, to]. */
+    static List<long[]> complement(List<long[]> covered, long from, long to) {
+        List<long[]> sorted = new ArrayList<>(covered);
+        sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> out = new ArrayList<>();
+        long cursor = from;
+        for (long[] c : sorted) {
+            if (c[1] < cursor) continue;
+            if (c[0] > to) break;
+            if (c[0] > cursor) out.add(new long[]{cursor, c[0] - 1});
+            if (c[1] >= to) return out;
+            cursor = Math.max(cursor, c[1] + 1);
+        }
+        if (cursor <= to) out.add(new long[]{cursor, to});
+        return out;
+    }
+
+    record Window(String symbol, long from, long to) {}
+
+    /** Reparte las ventanas en paralelo; las que se parten vuelven a la cola como dos mitades. */
+    private void execute(List<Window> windows) throws InterruptedException {
+        ExecutorCompletionService<List<Window>> done = new ExecutorCompletionService<>(pool);
+        int pending = 0;
+        for (Window w : windows) {
+            done.submit(() -> window(w));
+            pending++;
+        }
+        while (pending > 0) {
+            pending--;
+            List<Window> halves;
+            try {
+                halves = done.take().get();
+            } catch (ExecutionException e) {
+                windowsFailed.incrementAndGet();
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                lastError = cause.getMessage();
+                log.debug("Ventana de backfill fallida: {}", cause.getMessage());
+                continue;
+            }
+            for (Window h : halves) {
+                done.submit(() -> window(h));
+                pending++;
+            }
+        }
+    }
+
+    /**
+     * Pide una ventana; si la página viene llena devuelve sus dos mitades sin escribir nada.
+     * Si no, escribe lo que falte en BD, notifica a los listeners y la marca como cubierta.
+     */
+    private List<Window> window(Window w) throws InterruptedException {
+        List<Map<String, Object>> page;
+        parallel.acquire();
+        try {
+            page = futures.getLiquidationOrders(w.symbol(), w.from(), w.to(),
+                    FuturesClient.LIQUIDATIONS_PAGE, "LIQUIDATION");
+        } finally {
+            parallel.release();
+        }
+        if (page.size() >= FuturesClient.LIQUIDATIONS_PAGE && w.to() - w.from() >= 2 * MIN_WINDOW_MS) {
+            windowsSplit.incrementAndGet();
+            windowsPlanned.incrementAndGet(); // una ventana se convierte en dos
+            long mid = w.from() + (w.to() - w.from()) / 2;
+            return List.of(new Window(w.symbol(), w.from(), mid), new Window(w.symbol(), mid + 1, w.to()));
+        }
+        fetched.addAndGet(page.size());
+
+        List<LiquidationEvent> fresh = dedupe(w, toEvents(w.symbol(), page));
+        duplicates.addAndGet(page.size() - fresh.size());
+        if (!fresh.isEmpty()) {
+            bulk.write(fresh);
+            inserted.addAndGet(fresh.size());
+            for (LiquidationBatchListener l : listeners) {
+                try { l.onPersisted(fresh); } catch (Exception ignored) {}
+            }
+        }
+        mark(w.symbol(), "rest", w.from(), w.to());
+        windowsDone.incrementAndGet();
+        return List.of();
+    }
+
+    private List<LiquidationEvent> toEvents(String symbol, List<Map<String, Object>> page) {
+        List<LiquidationEvent> out = new ArrayList<>(page.size());
+        for (Map<String, Object> o : page) {
+            // mismas prioridades que el WS (p → ap, z → q) para que la huella coincida
+            double price = num(o.get("price"));
+            if (price <= 0) price = num(o.get("averagePrice"));
+            double qty = num(o.get("executedQty"));
+            if (qty <= 0) qty = num(o.get("origQty"));
+            long ts = (long) num(o.get("time"));
+            if (price <= 0 || qty <= 0 || ts <= 0) continue;
+            double notional = price * qty;
+            if (notional < minNotional) continue;
+            Object side = o.get("side");
+            out.add(new LiquidationEvent(null, symbol, side == null ? null : side.toString(), price, qty, notional, ts));
+        }
+        return out;
+    }
+
+    record Fingerprint(long ts, String side, double price, double qty) {}
+
+    private List<LiquidationEvent> dedupe(Window w, List<LiquidationEvent> events) {
+        if (events.isEmpty()) return events;
+        List<Fingerprint> stored = jdbc.query(
+                "select ts, side, price, qty from " + eventTable + " where symbol = ? and ts between ? and ?",
+                (rs, i) -> new Fingerprint(rs.getLong(1), rs.getString(2), rs.getDouble(3), rs.getDouble(4)),
+                w.symbol(), w.from(), w.to());
+        return fresh(events, stored);
+    }
+
+    /**
+     * Lo de la página que no está en BD. Cada fila guardada empareja como mucho una de la página
+     * (mismo ts, lado, precio y cantidad): dos liquidaciones idénticas en el mismo ms son
+     * distintas y no se colapsan.
+     */
+    static List<LiquidationEvent> fresh(List<LiquidationEvent> page, List<Fingerprint> stored) {
+        Map<Fingerprint, Integer> left = new HashMap<>();
+        for (Fingerprint f : stored) left.merge(f, 1, Integer::sum);
+        List<LiquidationEvent> out = new ArrayList<>(page.size());
+        for (LiquidationEvent e : page) {
+            Fingerprint f = new Fingerprint(e.getTs(), e.getSide(), e.getPrice(), e.getQty());
+            Integer n = left.get(f);
+            if (n == null) {
+                out.add(e);
+            } else if (n == 1) {
+                left.remove(f);
+            } else {
+                left.put(f, n - 1);
+            }
+        }
+        return out;
+    }
+
+    private static double num(Object v) {
+        if (v instanceof Number n) return n.doubleValue();
+        if (v == null) return 0.0;
+        try { return Double.parseDouble(v.toString()); } catch (Exception e) { return 0.0; }
+    }
+
+    private long horizonStart(long now) {
+        return now - Math.max(1, lookbackHours) * 3_600_000L;
+    }
+}
@@ -0,0 +1,8 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.util.List;
+
+/** Recibe cada lote de liquidaciones ya confirmado en BD (hilo writer del ingestor). */
+public interface LiquidationBatchListener {
+    void onPersisted(List<LiquidationEvent> batch);
+}
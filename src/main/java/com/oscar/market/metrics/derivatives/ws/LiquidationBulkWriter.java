@@ -0,0 +1,87 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Escritura masiva de liquidaciones. Con ids IDENTITY Hibernate desactiva el batching y manda
+ * un INSERT por evento; aquí se envía un único INSERT multi-fila por bloque (hasta
+ * {@link #MAX_ROWS} filas) sin columna id, y la BD asigna los ids con su default.
+ * Todo el lote va en una transacción junto con los upserts de los agregados
+ * (liquidation_rollup_1m/1h): o entra entero o no entra nada.
+ */
+@Component
+public class LiquidationBulkWriter {
+
+    /** 6 parámetros por fila: 1000 filas quedan lejos del límite de 32767 del protocolo. */
+    static final int MAX_ROWS = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final LiquidationRollupStore rollups;
+    private final TransactionTemplate tx;
+    private final String table;
+    private final String fullChunkSql;
+
+    public LiquidationBulkWriter(JdbcTemplate jdbc, LiquidationRollupStore rollups, PlatformTransactionManager txManager,
+                                 @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.rollups = rollups;
+        this.tx = new TransactionTemplate(txManager);
+        this.table = (schema == null || schema.isBlank()) ? "liquidation_event" : schema + ".liquidation_event";
+        this.fullChunkSql = insertSql(MAX_ROWS);
+    }
+
+    /** Inserta el lote completo en una transacción. Devuelve las filas escritas. */
+    public int write(List<LiquidationEvent> batch) {
+        return write(batch, null);
+    }
+
+    /** Como {@link #write(List)}; sameTx (si no es null) corre dentro de la misma transacción. */
+    public int write(List<LiquidationEvent> batch, Runnable sameTx) {
+        if (batch.isEmpty()) return 0;
+        Integer rows = tx.execute(status -> {
+            int n = 0;
+            for (int from = 0; from < batch.size(); from += MAX_ROWS) {
+                List<LiquidationEvent> chunk = batch.subList(from, Math.min(batch.size(), from + MAX_ROWS));
+                String sql = chunk.size() == MAX_ROWS ? fullChunkSql : insertSql(chunk.size());
+                n += jdbc.update(sql, ps -> bind(ps, chunk));
+            }
+            rollups.upsert(batch);
+            if (sameTx != null) sameTx.run();
+            return n;
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private String insertSql(int rows) {
+        StringBuilder sb = new StringBuilder(64 + rows * 16)
+                .append("insert into ").append(table)
+                .append(" (symbol, side, price, qty, notional, ts) values ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("(?,?,?,?,?,?)");
+        }
+        return sb.toString();
+    }
+
+    private static void bind(PreparedStatement ps, List<LiquidationEvent> chunk) throws SQLException {
+        int p = 1;
+        for (LiquidationEvent e : chunk) {
+            ps.setString(p++, e.getSymbol());
+            if (e.getSide() == null) ps.setNull(p++, Types.VARCHAR);
+            else ps.setString(p++, e.getSide());
+            ps.setDouble(p++, e.getPrice());
+            ps.setDouble(p++, e.getQty());
+            ps.setDouble(p++, e.getNotional());
+            ps.setLong(p++, e.getTs());
+        }
+    }
+}
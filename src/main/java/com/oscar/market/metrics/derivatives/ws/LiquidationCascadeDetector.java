@@ -0,0 +1,269 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detector de cascadas de liquidaciones en la ruta de entrada. Por (símbolo, lado) guarda un
+ * anillo de 60 segundos con sumas móviles de 1s, 10s, 30s y 60s que se actualizan en O(1)
+ * por evento (y O(segundos transcurridos) al avanzar el reloj, acotado a 60).
+ * Una cascada empieza cuando el nocional de 30s supera el umbral o el número de eventos de 10s
+ * se dispara frente a la media móvil, y termina tras cooldown-seconds sin cumplirse ninguna.
+ * Inicio y fin quedan en un log acotado y se notifican a los {@link LiquidationCascadeListener}.
+ */
+@Component
+public class LiquidationCascadeDetector {
+
+    static final int SECONDS = 60;
+
+    private final List<LiquidationCascadeListener> listeners;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Deque<Cascade> log = new ArrayDeque<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    @Value("${market.cascade.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${market.cascade.notional-30s:5000000}") // USD en 30s
+    private double notionalThreshold = 5_000_000;
+
+    @Value("${market.cascade.rate-multiplier:5}") // eventos de 10s frente a la media
+    private double rateMultiplier = 5;
+
+    @Value("${market.cascade.min-events-10s:10}")
+    private int minEvents = 10;
+
+    @Value("${market.cascade.baseline-minutes:30}")
+    private int baselineMinutes = 30;
+
+    @Value("${market.cascade.cooldown-seconds:20}")
+    private int cooldownSeconds = 20;
+
+    @Value("${market.cascade.log-size:500}")
+    private int logSize = 500;
+
+    public LiquidationCascadeDetector(List<LiquidationCascadeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /** Llamado desde el hilo del WS por cada liquidación aceptada. */
+    public void accept(LiquidationEvent e) {
+        if (!enabled) return;
+        onEvent(e.getSymbol(), e.getSide(), e.getNotional(), System.currentTimeMillis());
+    }
+
+    void onEvent(String symbol, String side, double notional, long now) {
+        String s = "BUY".equalsIgnoreCase(side) ? "BUY" : "SELL".equalsIgnoreCase(side) ? "SELL" : null;
+        if (s == null) return;
+        Series x = series.computeIfAbsent(symbol + "|" + s, k -> new Series(symbol, s));
+        Transition t;
+        synchronized (x) {
+            x.advance(Math.floorDiv(now, 1000L));
+            x.add(notional);
+            t = evaluate(x, now);
+        }
+        if (t != null) emit(t);
+    }
+
+    /** Avanza el reloj de todas las series: cierra las cascadas que se han calmado. */
+    @Scheduled(fixedRate = 1000L, scheduler = "timerScheduler")
+    public void tick() {
+        tick(System.currentTimeMillis());
+    }
+
+    void tick(long now) {
+        if (!enabled) return;
+        for (Series x : series.values()) {
+            Transition t;
+            synchronized (x) {
+                x.advance(Math.floorDiv(now, 1000L));
+                t = evaluate(x, now);
+            }
+            if (t != null) emit(t);
+        }
+    }
+
+    /* =================== consultas =================== */
+
+    /** Cascada en curso o terminada (endedAt == null = en curso). */
+    public record Cascade(long id, String symbol, String side, String trigger, long startedAt, Long endedAt,
+                          double notional, long events, double peakNotional30s, double peakEvents10s) {}
+
+    /** Sumas móviles actuales de una serie. */
+    public record Windows(double notional1s, double notional10s, double notional30s, double notional60s,
+                          int events1s, int events10s, int events30s, int events60s, double baselinePerSec) {}
+
+    private record Transition(boolean started, Cascade cascade) {}
+
+    /** Últimas cascadas (recientes primero), en curso incluidas; symbol null = todas. */
+    public List<Cascade> recent(String symbol, int limit) {
+        List<Cascade> out = new ArrayList<>();
+        for (Series x : series.values()) {
+            if (symbol != null && !symbol.equals(x.symbol)) continue;
+            synchronized (x) {
+                if (x.active != null) out.add(x.active.snapshot(null));
+            }
+        }
+        synchronized (log) {
+            Iterator<Cascade> it = log.descendingIterator();
+            while (it.hasNext() && out.size() < limit) {
+                Cascade c = it.next();
+                if (symbol == null || symbol.equals(c.symbol())) out.add(c);
+            }
+        }
+        return out.size() > limit ? out.subList(0, limit) : out;
+    }
+
+    public Windows windows(String symbol, String side) {
+        return windows(symbol, side, System.currentTimeMillis());
+    }
+
+    Windows windows(String symbol, String side, long now) {
+        Series x = series.get(symbol + "|" + side);
+        if (x == null) return null;
+        synchronized (x) {
+            x.advance(Math.floorDiv(now, 1000L));
+            return new Windows(x.notional[x.slot(x.head)], x.n10, x.n30, x.n60,
+                    x.count[x.slot(x.head)], x.c10, x.c30, x.c60, x.baseline);
+        }
+    }
+
+    /* =================== reglas =================== */
+
+    private Transition evaluate(Series x, long now) {
+        boolean byNotional = x.n30 >= notionalThreshold;
+        boolean byRate = x.c10 >= minEvents && x.c10 >= rateMultiplier * x.baseline * 10;
+        boolean hot = byNotional || byRate;
+        Active a = x.active;
+        if (a == null) {
+            if (!hot) return null;
+            a = new Active(ids.incrementAndGet(), x.symbol, x.side, byNotional ? "notional" : "rate", now);
+            a.notional = x.n30; // la ventana que ha disparado cuenta como parte de la cascada
+            a.events = x.c30;
+            a.peakNotional = x.n30;
+            a.peakEvents = x.c10;
+            a.lastHot = now;
+            x.active = a;
+            return new Transition(true, a.snapshot(null));
+        }
+        a.peakNotional = Math.max(a.peakNotional, x.n30);
+        a.peakEvents = Math.max(a.peakEvents, x.c10);
+        if (hot) {
+            a.lastHot = now;
+            return null;
+        }
+        if (now - a.lastHot < cooldownSeconds * 1000L) return null;
+        x.active = null;
+        Cascade done = a.snapshot(now);
+        synchronized (log) {
+            log.addLast(done);
+            while (log.size() > Math.max(1, logSize)) log.removeFirst();
+        }
+        return new Transition(false, done);
+    }
+
+    private void emit(Transition t) {
+        for (LiquidationCascadeListener l : listeners) {
+            try {
+                if (t.started()) l.onCascadeStart(t.cascade());
+                else l.onCascadeEnd(t.cascade());
+            } catch (Exception ignored) {}
+        }
+    }
+
+    private static final class Active {
+        final long id;
+        final String symbol, side, trigger;
+        final long startedAt;
+        double notional, peakNotional, peakEvents;
+        long events;
+        long lastHot;
+
+        Active(long id, String symbol, String side, String trigger, long startedAt) {
+            this.id = id;
+            this.symbol = symbol;
+            this.side = side;
+            this.trigger = trigger;
+            this.startedAt = startedAt;
+        }
+
+        Cascade snapshot(Long endedAt) {
+            return new Cascade(id, symbol, side, trigger, startedAt, endedAt, notional, events, peakNotional, peakEvents);
+        }
+    }
+
+    /** Anillo de segundos con sumas de 10, 30 y 60 s; el segundo en curso es la ventana de 1 s. */
+    private final class Series {
+        final String symbol, side;
+        final double[] notional = new double[SECONDS];
+        final int[] count = new int[SECONDS];
+        double n10, n30, n60;
+        int c10, c30, c60;
+        double baseline; // eventos por segundo, media exponencial
+        long head = Long.MIN_VALUE;
+        Active active;
+
+        Series(String symbol, String side) {
+            this.symbol = symbol;
+            this.side = side;
+        }
+
+        int slot(long second) {
+            return (int) Math.floorMod(second, (long) SECONDS);
+        }
+
+        void add(double v) {
+            int i = slot(head);
+            notional[i] += v;
+            count[i]++;
+            n10 += v; n30 += v; n60 += v;
+            c10++; c30++; c60++;
+            if (active != null) {
+                active.notional += v;
+                active.events++;
+            }
+        }
+
+        void advance(long s) {
+            if (head == Long.MIN_VALUE) {
+                head = s;
+                return;
+            }
+            if (s <= head) return;
+            double alpha = 1.0 / (Math.max(1, baselineMinutes) * 60.0);
+            if (s - head > SECONDS) {
+                // todo fuera de la ventana: los segundos vacíos también cuentan para la media
+                baseline += alpha * (count[slot(head)] - baseline);
+                baseline *= Math.pow(1 - alpha, s - head - 1);
+                Arrays.fill(notional, 0.0);
+                Arrays.fill(count, 0);
+                n10 = n30 = n60 = 0;
+                c10 = c30 = c60 = 0;
+                head = s;
+                return;
+            }
+            for (long x = head + 1; x <= s; x++) {
+                baseline += alpha * (count[slot(x - 1)] - baseline);
+                int j10 = slot(x - 10), j30 = slot(x - 30), i = slot(x);
+                n10 -= notional[j10]; c10 -= count[j10];
+                n30 -= notional[j30]; c30 -= count[j30];
+                n60 -= notional[i]; c60 -= count[i]; // x - 60 comparte ranura con x
+                notional[i] = 0.0;
+                count[i] = 0;
+            }
+            head = s;
+            if (c60 == 0) n10 = n30 = n60 = 0.0; // sin eventos: se corta la deriva de coma flotante
+        }
+    }
+}
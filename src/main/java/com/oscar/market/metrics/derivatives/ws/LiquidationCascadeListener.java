@@ -0,0 +1,8 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+/** Inicio y fin de cascadas (hilo del WS o del tick del detector: no bloquear). */
+public interface LiquidationCascadeListener {
+    void onCascadeStart(LiquidationCascadeDetector.Cascade cascade);
+
+    void onCascadeEnd(LiquidationCascadeDetector.Cascade cascade);
+}
@@ -0,0 +1,194 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.metrics.series.LongDoubleMap;
+
+import jakarta.annotation.PostConstruct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mapa de calor de liquidaciones en memoria: nocional y eventos por (símbolo, tramo de precio,
+ * tramo de tiempo) con la resolución base configurada. Las consultas agrupan celdas base en
+ * tramos mayores sin tocar liquidation_event. Como {@link LiquidationRollup}, se reconstruye
+ * desde BD al arrancar, antes de que el ingestor empiece a notificar lotes.
+ */
+@Component
+public class LiquidationHeatmap implements LiquidationBatchListener {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquidationHeatmap.class);
+
+    // columnas de cada celda
+    private static final int NOTIONAL = 0, BUY_NOTIONAL = 1, SELL_NOTIONAL = 2, EVENTS = 3, COLS = 4;
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+    private final Map<String, Cells> bySymbol = new ConcurrentHashMap<>();
+
+    @Value("${market.heatmap.price-step:10}")
+    private double priceStep;
+
+    @Value("${market.heatmap.time-step-minutes:5}")
+    private int timeStepMinutes;
+
+    @Value("${market.heatmap.max-cells:20000}")
+    private int maxCells;
+
+    @Value("${market.retention.days:7}")
+    private int retentionDays;
+
+    private long timeStepMs;
+
+    public LiquidationHeatmap(JdbcTemplate jdbc,
+                              @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.table = (schema == null || schema.isBlank()) ? "liquidation_event" : schema + ".liquidation_event";
+    }
+
+    @PostConstruct
+    void rebuild() {
+        if (priceStep <= 0) throw new IllegalArgumentException("market.heatmap.price-step debe ser > 0");
+        timeStepMs = Math.max(1, timeStepMinutes) * LiquidationRollup.MINUTE_MS;
+        long since = cutoff(System.currentTimeMillis());
+        try {
+            jdbc.query("select symbol, ts / ? as t, cast(floor(price / ?) as bigint) as p,"
+                            + " count(*) as n, sum(notional) as notional,"
+                            + " sum(case when upper(side) = 'BUY' then notional else 0 end) as buy_notional,"
+                            + " sum(case when upper(side) = 'SELL' then notional else 0 end) as sell_notional"
+                            + " from " + table + " where ts >= ? and price > 0 group by 1, 2, 3",
+                    rs -> {
+                        cells(rs.getString("symbol")).load(key(rs.getLong("t"), rs.getLong("p")),
+                                rs.getDouble("notional"), rs.getDouble("buy_notional"),
+                                rs.getDouble("sell_notional"), rs.getLong("n"));
+                    },
+                    timeStepMs, priceStep, since);
+        } catch (Exception ex) {
+            log.warn("No se pudo reconstruir el mapa de calor de liquidaciones: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void onPersisted(List<LiquidationEvent> batch) {
+        for (LiquidationEvent e : batch) {
+            if (e.getPrice() <= 0) continue;
+            long k = key(Math.floorDiv(e.getTs(), timeStepMs), (long) Math.floor(e.getPrice() / priceStep));
+            cells(e.getSymbol()).add(k, e.getNotional(), e.getSide());
+        }
+    }
+
+    /** Descarta las celdas más antiguas que la retención. */
+    @Scheduled(fixedDelay = 3_600_000L, initialDelay = 3_600_000L)
+    public void prune() {
+        long minT = Math.floorDiv(cutoff(System.currentTimeMillis()), timeStepMs);
+        for (Cells c : bySymbol.values()) c.prune(minT);
+    }
+
+    /* =================== consultas =================== */
+
+    public record Cell(long ts, double priceFrom, double priceTo, double notional,
+                       double buyNotional, double sellNotional, long events) {}
+
+    /** Celdas con datos ordenadas por tiempo y precio, más los tramos efectivos usados. */
+    public record Heatmap(double priceStep, long timeStepMs, List<Cell> cells) {}
+
+    /**
+     * Agrupa [from, to) en tramos de precio y tiempo múltiplos de la resolución base (se
+     * redondean a ella); priceStep / bucketMs ≤ 0 = resolución base.
+     */
+    public Heatmap query(String symbol, long from, long to, double priceStep, long bucketMs) {
+        int kp = priceStep <= 0 ? 1 : (int) Math.max(1, Math.round(priceStep / this.priceStep));
+        long kt = bucketMs <= 0 ? 1 : Math.max(1, bucketMs / timeStepMs);
+        double effPrice = kp * this.priceStep;
+        long effTime = kt * timeStepMs;
+        Cells c = bySymbol.get(symbol);
+        if (c == null) return new Heatmap(effPrice, effTime, List.of());
+
+        LongDoubleMap grouped = c.group(Math.floorDiv(from, timeStepMs), Math.floorDiv(to - 1, timeStepMs), kp, kt);
+        if (grouped.size() > maxCells) {
+            throw new IllegalArgumentException("Demasiadas celdas (" + grouped.size() + "): máximo " + maxCells
+                    + ", usa tramos de precio o tiempo mayores");
+        }
+        long[] keys = new long[grouped.size()];
+        int[] slots = new int[grouped.size()];
+        int n = 0;
+        for (int s = 0; s < grouped.capacity(); s++) if (grouped.used(s)) keys[n++] = grouped.keyAt(s);
+        Arrays.sort(keys); // la clave ordena por tiempo y después por precio
+        for (int i = 0; i < n; i++) slots[i] = grouped.find(keys[i]);
+
+        List<Cell> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int s = slots[i];
+            long t = keys[i] >> 32;
+            long p = (int) keys[i];
+            out.add(new Cell(t * effTime, p * effPrice, (p + 1) * effPrice,
+                    grouped.get(s, NOTIONAL), grouped.get(s, BUY_NOTIONAL), grouped.get(s, SELL_NOTIONAL),
+                    (long) grouped.get(s, EVENTS)));
+        }
+        return new Heatmap(effPrice, effTime, out);
+    }
+
+    public double basePriceStep() { return priceStep; }
+
+    public long baseTimeStepMs() { return timeStepMs; }
+
+    /** Tiempo en los 32 bits altos y precio (con signo) en los bajos: ordenar claves = ordenar por (t, p). */
+    static long key(long t, long p) {
+        return (t << 32) | (p & 0xffffffffL);
+    }
+
+    private long cutoff(long now) {
+        return now - Math.max(1, retentionDays) * 24L * 60 * LiquidationRollup.MINUTE_MS;
+    }
+
+    private Cells cells(String symbol) {
+        return bySymbol.computeIfAbsent(symbol, k -> new Cells());
+    }
+
+    private static final class Cells {
+        final LongDoubleMap map = new LongDoubleMap(COLS, 1024);
+
+        synchronized void add(long k, double notional, String side) {
+            int s = map.slot(k);
+            map.add(s, NOTIONAL, notional);
+            if ("BUY".equalsIgnoreCase(side)) map.add(s, BUY_NOTIONAL, notional);
+            else if ("SELL".equalsIgnoreCase(side)) map.add(s, SELL_NOTIONAL, notional);
+            map.add(s, EVENTS, 1);
+        }
+
+        synchronized void load(long k, double notional, double buy, double sell, long events) {
+            int s = map.slot(k);
+            map.add(s, NOTIONAL, notional);
+            map.add(s, BUY_NOTIONAL, buy);
+            map.add(s, SELL_NOTIONAL, sell);
+            map.add(s, EVENTS, events);
+        }
+
+        synchronized void prune(long minT) {
+            map.removeIf(k -> (k >> 32) < minT);
+        }
+
+        synchronized LongDoubleMap group(long t0, long t1, int kp, long kt) {
+            LongDoubleMap out = new LongDoubleMap(COLS, 256);
+            for (int s = 0; s < map.capacity(); s++) {
+                if (!map.used(s)) continue;
+                long k = map.keyAt(s);
+                long t = k >> 32;
+                if (t < t0 || t > t1) continue;
+                long p = (int) k;
+                int o = out.slot(key(Math.floorDiv(t, kt), Math.floorDiv(p, kp)));
+                for (int c = 0; c < COLS; c++) out.add(o, c, map.get(s, c));
+            }
+            return out;
+        }
+    }
+}
@@ -1,20 +1,51 @@
 package com.oscar.market.metrics.derivatives.ws;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Entrada de liquidaciones desde el WS. El hilo del WS solo filtra y encola en un anillo
+ * acotado sin locks; un hilo writer dedicado es el único que toca la base de datos.
+ * Si el anillo se llena se aplica la política de desbordamiento configurada.
+ * Con market.ws.journal.enabled los eventos van primero a un journal mapeado en disco
+ * ({@link LiquidationJournal}) y el writer lo reproduce desde su checkpoint: una caída de
+ * la BD o del proceso no pierde nada, y la posición confirmada se guarda con cada lote en BD
+ * ({@link LiquidationJournalCheckpoint}), así tampoco se repite nada. El anillo queda como
+ * respaldo si el journal se llena.
+ */
 @Component
+@DependsOn("liquidationPartitionManager") // la tabla ya está particionada antes de escribir
 public class LiquidationIngestor {
 
-    private final LiquidationEventRepository repo;
+    private static final Logger log = LoggerFactory.getLogger(LiquidationIngestor.class);
+    private static final long RETRY_BACKOFF_MS = 2000;
+
+    public enum OverflowPolicy { DROP_OLDEST, DROP_NEWEST, SPILL_TO_DISK }
+
+    private final LiquidationBulkWriter bulk;
+    private final List<LiquidationBatchListener> listeners;
+    private final List<LiquidationLiveListener> live;
+    private final LiquidationCascadeDetector cascades;
+    private final LiquidationJournalCheckpoint checkpoints;
+    private final MeterRegistry meters;
 
     @Value("${market.ws.enabled:true}")
     private boolean enabled;
@@ -34,34 +65,113 @@ public class LiquidationIngestor {
     @Value("${market.ws.flush-interval-ms:1000}")
     private long flushIntervalMs;
 
+    @Value("${market.ws.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${market.ws.spill-dir:./data/spill}")
+    private String spillDir;
+
+    @Value("${market.ws.journal.enabled:false}")
+    private boolean journalEnabled;
+
+    @Value("${market.ws.journal.dir:./data/journal}")
+    private String journalDir;
+
+    @Value("${market.ws.journal.segment-mb:64}")
+    private int journalSegmentMb;
+
+    @Value("${market.ws.journal.max-segments:32}")
+    private int journalMaxSegments;
+
+    @Value("${market.ws.journal.replay-batch-size:5000}") // bloques grandes al ponerse al día
+    private int replayBatchSize;
+
+    @Value("${market.ws.journal.fsync-ms:1000}")
+    private long journalFsyncMs;
+
     private Set<String> symbolsTracked;
-    private final LinkedBlockingQueue<LiquidationEvent> queue = new LinkedBlockingQueue<>();
-    private ScheduledExecutorService scheduler;
+    private BoundedEventRing<LiquidationEvent> ring;
+    private LiquidationSpillFile spill;
+    private LiquidationJournal journal;
+    private String journalKey;
+    private Thread writer;
+    private volatile boolean running;
+    // todo lo aceptado antes de este instante (reloj local) ya está en BD
+    private volatile long flushedThrough;
+
+    private Counter droppedOldest;
+    private Counter droppedNewest;
+    private Counter spilled;
+    private Counter persisted;
+    private Counter writeErrors;
+    private Counter journaled;
+    private Timer ingestLatency;
 
-    public LiquidationIngestor(LiquidationEventRepository repo) {
-        this.repo = repo;
+    public LiquidationIngestor(LiquidationBulkWriter bulk, List<LiquidationBatchListener> listeners,
+                               List<LiquidationLiveListener> live, LiquidationCascadeDetector cascades,
+                               LiquidationJournalCheckpoint checkpoints, MeterRegistry meters) {
+        this.bulk = bulk;
+        this.listeners = listeners;
+        this.live = live;
+        this.cascades = cascades;
+        this.checkpoints = checkpoints;
+        this.meters = meters;
     }
 
     @PostConstruct
-    void init() {
+    void init() throws IOException {
         if (!enabled) return;
         this.symbolsTracked = Set.of(symbolsTrackedCsv.replace(" ", "").split(","));
-        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "liq-ingestor-flusher");
-            t.setDaemon(true);
-            return t;
-        });
-        scheduler.scheduleAtFixedRate(this::flushPeriodic, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        this.ring = new BoundedEventRing<>(bufferCapacity);
+        if (overflowPolicy == OverflowPolicy.SPILL_TO_DISK) {
+            this.spill = new LiquidationSpillFile(Path.of(spillDir));
+        }
+        if (journalEnabled) {
+            Path dir = Path.of(journalDir).toAbsolutePath().normalize();
+            this.journalKey = dir.toString();
+            long[] committed = null;
+            try {
+                committed = checkpoints.load(journalKey);
+            } catch (Exception ex) {
+                log.warn("No se pudo leer la posición del journal en BD, se usa la del fichero: {}", ex.getMessage());
+            }
+            this.journal = new LiquidationJournal(dir, journalSegmentMb << 20, journalMaxSegments, committed);
+            Gauge.builder("liquidations.journal.pending", journal, LiquidationJournal::pending).register(meters);
+            journaled = Counter.builder("liquidations.journal.appended").register(meters);
+        }
+
+        Gauge.builder("liquidations.ingest.queue.depth", ring, BoundedEventRing::size).register(meters);
+        droppedOldest = Counter.builder("liquidations.ingest.dropped").tag("policy", "drop_oldest").register(meters);
+        droppedNewest = Counter.builder("liquidations.ingest.dropped").tag("policy", "drop_newest").register(meters);
+        spilled = Counter.builder("liquidations.ingest.spilled").register(meters);
+        persisted = Counter.builder("liquidations.ingest.persisted").register(meters);
+        writeErrors = Counter.builder("liquidations.ingest.write.errors").register(meters);
+        // desde el timestamp del exchange hasta el commit en BD
+        ingestLatency = Timer.builder("liquidations.ingest.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meters);
+
+        running = true;
+        writer = new Thread(this::writerLoop, "liq-ingestor-writer");
+        writer.setDaemon(true);
+        writer.start();
     }
 
     @PreDestroy
     void shutdown() {
-        if (scheduler != null) {
-            scheduler.shutdownNow();
-            flushAll();
+        if (writer == null) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        if (spill != null) spill.close();
+        if (journal != null) journal.close();
     }
 
+    /** Llamado desde el hilo del WS: nunca bloquea ni toca la BD. */
     public void accept(LiquidationEvent e) {
         if (!enabled) return;
         if (e == null) return;
@@ -70,34 +180,118 @@ public class LiquidationIngestor {
         }
         if (e.getNotional() < minNotional) return;
 
-        // intenta encolar; si llena, suelta eventos viejos para no bloquear
-        if (!queue.offer(e)) {
-            // si no hay capacidad, drenar un lote pequeño y volver a intentar
-            drainAndPersist(Math.max(1, batchSize / 2));
-            queue.offer(e); // segundo intento (si vuelve a fallar, se descarta silenciosamente)
+        cascades.accept(e); // O(1), antes de encolar: no espera a la BD
+        for (LiquidationLiveListener l : live) {
+            try { l.onLiquidation(e); } catch (Exception ignored) {}
         }
-
-        if (queue.size() >= batchSize * 2) {
-            drainAndPersist(batchSize);
+        if (journal != null && journal.append(e)) {
+            journaled.increment();
+            if (journal.pending() >= batchSize) LockSupport.unpark(writer);
+            return;
         }
+        if (!ring.offer(e)) overflow(e);
+        if (ring.size() >= batchSize) LockSupport.unpark(writer);
     }
 
-    private void flushPeriodic() {
-        drainAndPersist(batchSize);
+    /**
+     * Instante hasta el que todo lo aceptado del WS está ya confirmado en BD (lo posterior puede
+     * seguir en el anillo, el journal o el spill). Sin ingesta activa no hay límite.
+     */
+    public long flushedThrough() {
+        return enabled && writer != null ? flushedThrough : Long.MAX_VALUE;
     }
 
-    private void flushAll() {
-        drainAndPersist(Integer.MAX_VALUE);
+    private void overflow(LiquidationEvent e) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST -> droppedNewest.increment();
+            case DROP_OLDEST -> {
+                if (ring.poll() != null) droppedOldest.increment();
+                if (!ring.offer(e)) droppedNewest.increment();
+            }
+            case SPILL_TO_DISK -> {
+                if (spill.append(e)) spilled.increment();
+                else droppedNewest.increment();
+            }
+        }
     }
 
-    private void drainAndPersist(int maxElements) {
-        if (queue.isEmpty()) return;
-        List<LiquidationEvent> buf = new ArrayList<>(Math.min(maxElements, queue.size()));
-        queue.drainTo(buf, maxElements);
-        if (buf.isEmpty()) return;
+    /* =================== writer =================== */
+
+    private void writerLoop() {
+        List<LiquidationEvent> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.currentTimeMillis();
+        long lastFsync = lastFlush;
+        long covered = -1; // el lote lleva todo lo aceptado antes de este instante
+        while (true) {
+            long drainAt = System.currentTimeMillis();
+            // con backlog en el journal (BD caída o arranque) se escribe en bloques grandes
+            int limit = journal != null && journal.pending() > batchSize ? Math.max(batchSize, replayBatchSize) : batchSize;
+            ring.drainTo(batch, limit - batch.size());
+            if (journal != null && batch.size() < limit) journal.read(batch, limit - batch.size());
+            if (batch.isEmpty() && spill != null && spill.hasData()) {
+                batch.addAll(spill.take(batchSize));
+            }
+            // sin llegar al límite se ha vaciado todo lo que había al empezar
+            if (batch.size() < limit && (spill == null || !spill.hasData())) {
+                covered = drainAt;
+                if (batch.isEmpty()) flushedThrough = drainAt;
+            }
+            long now = System.currentTimeMillis();
+            if (journal != null && now - lastFsync >= journalFsyncMs) {
+                journal.force();
+                lastFsync = now;
+            }
+            boolean due = batch.size() >= batchSize
+                    || (!batch.isEmpty() && (now - lastFlush >= flushIntervalMs || !running));
+            if (due) {
+                if (persist(batch)) {
+                    batch.clear();
+                    commitJournal(); // todo lo leído del journal estaba en el lote
+                    if (covered > flushedThrough) flushedThrough = covered;
+                    lastFlush = now;
+                    continue;
+                }
+                if (!running) break; // BD caída en el apagado: se pierde lo pendiente (salvo lo del journal)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_BACKOFF_MS));
+                continue;
+            }
+            if (!running && batch.isEmpty() && ring.size() == 0 && (journal == null || journal.pending() == 0)) break;
+            long waitMs = batch.isEmpty() ? flushIntervalMs : Math.max(1, flushIntervalMs - (now - lastFlush));
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(waitMs));
+        }
+    }
 
-        // batch persist
-        repo.saveAll(buf);
-        repo.flush();
+    private void commitJournal() {
+        if (journal == null) return;
+        try {
+            journal.commit();
+        } catch (IOException ex) {
+            log.warn("No se pudo guardar el checkpoint del journal: {}", ex.getMessage());
+        }
+    }
+
+    private boolean persist(List<LiquidationEvent> batch) {
+        try {
+            // un INSERT multi-fila por bloque y, en la misma transacción, la posición del journal
+            if (journal == null) {
+                bulk.write(batch);
+            } else {
+                long[] pos = journal.position();
+                bulk.write(batch, () -> checkpoints.save(journalKey, pos));
+            }
+        } catch (Exception ex) {
+            writeErrors.increment();
+            log.warn("Fallo persistiendo {} liquidaciones: {}", batch.size(), ex.getMessage());
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        for (LiquidationEvent e : batch) {
+            ingestLatency.record(Math.max(0, now - e.getTs()), TimeUnit.MILLISECONDS);
+        }
+        persisted.increment(batch.size());
+        for (LiquidationBatchListener l : listeners) {
+            try { l.onPersisted(batch); } catch (Exception ignored) {}
+        }
+        return true;
     }
 }
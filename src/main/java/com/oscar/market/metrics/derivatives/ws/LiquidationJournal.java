@@ -0,0 +1,292 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal de liquidaciones en disco (append-only) entre el WS y la BD. Los productores copian
+ * cada evento como registro binario en un segmento mapeado en memoria y vuelven; el writer
+ * lee desde su cursor, persiste en bloque y solo entonces guarda el checkpoint
+ * (segmento, offset). Al arrancar se reproduce todo lo posterior al checkpoint.
+ * <p>
+ * Registro: [int len][int crc32c][payload]; payload = símbolo y lado (longitud + ASCII),
+ * price, qty, notional (double) y ts (long). len == -1 marca el salto al segmento siguiente.
+ * El checkpoint en fichero va después del commit en BD; para no repetir un bloque si el proceso cae
+ * entre ambos, el writer guarda además {@link #position()} en la transacción del lote
+ * ({@link LiquidationJournalCheckpoint}) y esa posición se pasa al abrir el journal.
+ */
+final class LiquidationJournal {
+
+    static final int HEADER = 8;
+    private static final int ROLL = -1;
+    private static final int MAX_PAYLOAD = 2 + 255 * 2 + 32;
+    private static final String CHECKPOINT = "checkpoint";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+    // productor (bajo el lock de append)
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_PAYLOAD);
+    private final CRC32C writeCrc = new CRC32C();
+    private MappedByteBuffer active;
+    private long activeSeq;
+    private int activeOff;
+    private volatile Pos head; // hasta dónde es legible: publicado tras escribir cada registro
+    private volatile long appended;
+
+    // lector (solo el hilo writer)
+    private final byte[] readBuf = new byte[MAX_PAYLOAD];
+    private final CRC32C readCrc = new CRC32C();
+    private long readSeq;
+    private int readOff;
+    private volatile long read; // solo lo escribe el writer
+
+    private record Pos(long seq, int off) {}
+
+    LiquidationJournal(Path dir, int segmentBytes, int maxSegments) throws IOException {
+        this(dir, segmentBytes, maxSegments, null);
+    }
+
+    /** committed: posición confirmada en BD; manda si va por delante del fichero y su segmento sigue ahí. */
+    LiquidationJournal(Path dir, int segmentBytes, int maxSegments, long[] committed) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(2, maxSegments);
+        Files.createDirectories(dir);
+
+        long[] cp = readCheckpoint();
+        if (committed != null && Files.exists(segmentPath(committed[0]))
+                && (committed[0] > cp[0] || (committed[0] == cp[0] && committed[1] > cp[1]))) {
+            cp = committed;
+        }
+        readSeq = cp[0];
+        readOff = (int) cp[1];
+        long last = -1;
+        for (long seq : existingSegments()) {
+            if (seq < readSeq) {
+                Files.deleteIfExists(segmentPath(seq)); // ya persistido
+                continue;
+            }
+            segments.put(seq, map(seq));
+            last = seq;
+        }
+        if (last < 0) {
+            // sin nada pendiente: se empieza en el segmento del checkpoint
+            activeSeq = readSeq;
+            readOff = 0;
+        } else {
+            // el último segmento puede acabar en un registro a medias: se sella y se abre otro
+            activeSeq = last + 1;
+            if (segments.firstKey() > readSeq) {
+                readSeq = segments.firstKey();
+                readOff = 0;
+            }
+        }
+        active = map(activeSeq);
+        segments.put(activeSeq, active);
+        activeOff = 0;
+        head = new Pos(activeSeq, 0);
+
+        // backlog de la ejecución anterior: se cuenta para que pending() lo incluya
+        long seq = readSeq;
+        int off = readOff;
+        long backlog = 0;
+        for (int n; (n = read(null, 1 << 16)) > 0; ) backlog += n;
+        readSeq = seq;
+        readOff = off;
+        read = 0;
+        appended = backlog;
+    }
+
+    /* =================== productor =================== */
+
+    /** Añade el evento; false si no cabe (journal lleno o error de E/S). No fuerza a disco. */
+    synchronized boolean append(LiquidationEvent e) {
+        int len = encode(e);
+        if (len < 0) return false;
+        if (activeOff + HEADER + len + HEADER > segmentBytes) { // siempre queda sitio para el salto
+            if (!roll()) return false;
+        }
+        writeCrc.reset();
+        writeCrc.update(scratch.array(), 0, len);
+        active.put(activeOff + HEADER, scratch.array(), 0, len);
+        active.putInt(activeOff + 4, (int) writeCrc.getValue());
+        active.putInt(activeOff, len);
+        activeOff += HEADER + len;
+        appended++;
+        head = new Pos(activeSeq, activeOff);
+        return true;
+    }
+
+    private boolean roll() {
+        if (segments.size() >= maxSegments) return false;
+        MappedByteBuffer next;
+        try {
+            next = map(activeSeq + 1);
+        } catch (IOException ex) {
+            return false;
+        }
+        active.putInt(activeOff, ROLL);
+        active = next;
+        activeSeq++;
+        activeOff = 0;
+        segments.put(activeSeq, next);
+        return true;
+    }
+
+    private int encode(LiquidationEvent e) {
+        byte[] sym = e.getSymbol().getBytes(StandardCharsets.US_ASCII);
+        byte[] side = e.getSide() == null ? new byte[0] : e.getSide().getBytes(StandardCharsets.US_ASCII);
+        if (sym.length > 255 || side.length > 255) return -1;
+        scratch.clear();
+        scratch.put((byte) sym.length).put(sym);
+        scratch.put((byte) side.length).put(side);
+        scratch.putDouble(e.getPrice()).putDouble(e.getQty()).putDouble(e.getNotional()).putLong(e.getTs());
+        return scratch.position();
+    }
+
+    /* =================== lector =================== */
+
+    /** Lee hasta max eventos desde el cursor (sin mover el checkpoint); out null = solo avanzar. */
+    int read(List<LiquidationEvent> out, int max) {
+        int n = 0;
+        while (n < max) {
+            Pos h = head;
+            if (readSeq == h.seq() && readOff >= h.off()) break;
+            MappedByteBuffer seg = segments.get(readSeq);
+            if (seg == null) { // no debería pasar: se salta al siguiente
+                if (readSeq >= h.seq()) break;
+                readSeq++;
+                readOff = 0;
+                continue;
+            }
+            int len = readOff + HEADER <= segmentBytes ? seg.getInt(readOff) : 0;
+            LiquidationEvent e = len > 0 && len <= MAX_PAYLOAD && readOff + HEADER + len <= segmentBytes
+                    ? decode(seg, readOff, len) : null;
+            if (e == null) {
+                // salto, final o registro roto de un segmento sellado
+                if (readSeq >= h.seq()) break;
+                readSeq++;
+                readOff = 0;
+                continue;
+            }
+            readOff += HEADER + len;
+            if (out != null) out.add(e);
+            read++;
+            n++;
+        }
+        return n;
+    }
+
+    private LiquidationEvent decode(MappedByteBuffer seg, int off, int len) {
+        seg.get(off + HEADER, readBuf, 0, len);
+        readCrc.reset();
+        readCrc.update(readBuf, 0, len);
+        if ((int) readCrc.getValue() != seg.getInt(off + 4)) return null;
+        ByteBuffer b = ByteBuffer.wrap(readBuf, 0, len);
+        String symbol = ascii(b, b.get() & 0xff);
+        int sideLen = b.get() & 0xff;
+        String side = sideLen == 0 ? null : ascii(b, sideLen);
+        return new LiquidationEvent(null, symbol, side, b.getDouble(), b.getDouble(), b.getDouble(), b.getLong());
+    }
+
+    private static String ascii(ByteBuffer b, int n) {
+        String s = new String(b.array(), b.position(), n, StandardCharsets.US_ASCII);
+        b.position(b.position() + n);
+        return s;
+    }
+
+    /** Cursor de lectura (segmento, offset): lo leído hasta aquí es lo que lleva el lote en curso. */
+    long[] position() {
+        return new long[]{readSeq, readOff};
+    }
+
+    /** Todo lo leído ya está en BD: guarda el cursor como checkpoint y borra segmentos consumidos. */
+    void commit() throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        ByteBuffer b = ByteBuffer.allocate(16).putLong(readSeq).putLong(readOff).flip();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(false);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (Map.Entry<Long, MappedByteBuffer> s : segments.headMap(readSeq).entrySet()) {
+            segments.remove(s.getKey());
+            Files.deleteIfExists(segmentPath(s.getKey()));
+        }
+    }
+
+    /** Fuerza a disco los segmentos pendientes (protege frente a caídas del SO, no solo del proceso). */
+    void force() {
+        for (MappedByteBuffer s : segments.tailMap(readSeq).values()) {
+            try { s.force(); } catch (Exception ignored) {}
+        }
+    }
+
+    /** Eventos escritos y aún no leídos por el writer. */
+    long pending() {
+        return appended - read;
+    }
+
+    /** Bytes ocupados por segmentos sin consumir. */
+    long backlogBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    void close() {
+        force();
+    }
+
+    /* =================== ficheros =================== */
+
+    private MappedByteBuffer map(long seq) throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentPath(seq), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes); // el mapeo sigue vivo al cerrar
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("liq-%020d.journal", seq));
+    }
+
+    private List<Long> existingSegments() throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(p -> {
+                String name = p.getFileName().toString();
+                if (!name.startsWith("liq-") || !name.endsWith(".journal")) return;
+                try {
+                    found.put(Long.parseLong(name.substring(4, name.length() - 8)), p);
+                } catch (NumberFormatException ignored) {}
+            });
+        }
+        return new ArrayList<>(found.keySet());
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        Path p = dir.resolve(CHECKPOINT);
+        if (!Files.exists(p)) return new long[]{0, 0};
+        byte[] raw = Files.readAllBytes(p);
+        if (raw.length != 16) return new long[]{0, 0};
+        ByteBuffer b = ByteBuffer.wrap(raw);
+        return new long[]{b.getLong(), b.getLong()};
+    }
+}
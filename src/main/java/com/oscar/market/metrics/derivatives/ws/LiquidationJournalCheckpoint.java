@@ -0,0 +1,61 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Posición (segmento, offset) del journal hasta la que todo está en BD, guardada en
+ * liquidation_journal_position dentro de la misma transacción que el lote. El checkpoint en
+ * fichero se escribe después del commit y puede quedarse atrás si el proceso cae entre medias;
+ * al arrancar manda esta, así un bloque ya confirmado no se vuelve a insertar ni a sumar a los agregados.
+ */
+@Component
+public class LiquidationJournalCheckpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquidationJournalCheckpoint.class);
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+    private volatile boolean ready;
+
+    public LiquidationJournalCheckpoint(JdbcTemplate jdbc,
+                                        @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        String prefix = (schema == null || schema.isBlank()) ? "" : schema + ".";
+        this.table = prefix + "liquidation_journal_position";
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            jdbc.execute("create table if not exists " + table + " ("
+                    + "journal varchar(512) primary key, segment bigint not null, byte_offset int not null)");
+            ready = true;
+        } catch (Exception ex) {
+            log.warn("{} no disponible, el journal queda en entrega al menos una vez: {}", table, ex.getMessage());
+        }
+    }
+
+    /** Última posición confirmada del journal 'key', o null si no hay. */
+    long[] load(String key) {
+        if (!ready) return null;
+        List<long[]> rows = jdbc.query("select segment, byte_offset from " + table + " where journal = ?",
+                (rs, i) -> new long[]{rs.getLong(1), rs.getInt(2)}, key);
+        return rows.isEmpty() ? null : rows.getFirst();
+    }
+
+    /** Llamar dentro de la transacción del lote. */
+    void save(String key, long[] pos) {
+        if (!ready) return;
+        jdbc.update("insert into " + table + " (journal, segment, byte_offset) values (?,?,?)"
+                        + " on conflict (journal) do update set segment = excluded.segment, byte_offset = excluded.byte_offset",
+                key, pos[0], (int) pos[1]);
+    }
+}
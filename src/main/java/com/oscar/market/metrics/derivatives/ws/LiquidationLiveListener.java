@@ -0,0 +1,6 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+/** Cada liquidación aceptada del WS, antes de persistir (hilo del WS: no bloquear). */
+public interface LiquidationLiveListener {
+    void onLiquidation(LiquidationEvent event);
+}
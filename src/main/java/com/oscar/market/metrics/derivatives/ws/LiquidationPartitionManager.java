@@ -0,0 +1,227 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * liquidation_event particionada por rango diario sobre ts (UTC). Al arrancar convierte la
+ * tabla plana que crea Hibernate (una sola vez, en una transacción), crea particiones con
+ * antelación y mantiene una partición default para eventos fuera de rango (backfills).
+ * La retención baja cada partición caducada a agregados horarios y la desengancha y borra
+ * entera en lugar de hacer un DELETE masivo, con el bloqueo de la tabla padre solo durante el DETACH.
+ */
+@Component
+@DependsOn("entityManagerFactory") // tras el ddl-auto de Hibernate
+public class LiquidationPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquidationPartitionManager.class);
+    static final long DAY_MS = 86_400_000L;
+    private static final String PREFIX = "liquidation_event_p";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String ARCHIVED = "archived";
+
+    private final JdbcTemplate jdbc;
+    private final LiquidationRollupStore rollups;
+    private final LiquidationArchive archive;
+    private final TransactionTemplate tx;
+    private final String schema;
+    private final String parent;
+    private final String defaultPart;
+
+    @Value("${market.partition.enabled:true}")
+    private boolean enabled;
+
+    @Value("${market.partition.ahead-days:3}")
+    private int aheadDays;
+
+    @Value("${market.retention.days:7}")
+    private int retentionDays;
+
+    @Value("${market.partition.detach-lock-timeout-ms:5000}")
+    private long detachLockTimeoutMs;
+
+    private volatile boolean partitioned;
+
+    public LiquidationPartitionManager(JdbcTemplate jdbc, LiquidationRollupStore rollups, LiquidationArchive archive,
+                                       PlatformTransactionManager txManager,
+                                       @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.rollups = rollups;
+        this.archive = archive;
+        this.tx = new TransactionTemplate(txManager);
+        this.schema = (schema == null || schema.isBlank()) ? "public" : schema;
+        this.parent = this.schema + ".liquidation_event";
+        this.defaultPart = this.schema + "." + PREFIX + "default";
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        try {
+            String kind = relkind("liquidation_event");
+            if ("r".equals(kind)) tx.executeWithoutResult(s -> migrate());
+            partitioned = "p".equals(relkind("liquidation_event"));
+            if (partitioned) ensurePartitions();
+        } catch (Exception ex) {
+            log.warn("No se pudo preparar el particionado de liquidaciones: {}", ex.getMessage());
+        }
+    }
+
+    public boolean partitioned() { return partitioned; }
+
+    /* =================== creación =================== */
+
+    @Scheduled(cron = "0 5 * * * *")
+    public void ensurePartitions() {
+        if (!partitioned) return;
+        long today = Math.floorDiv(System.currentTimeMillis(), DAY_MS);
+        long firstRetained = today - Math.max(1, retentionDays);
+        List<Long> days = new ArrayList<>();
+        // días con filas caídas en default (p.ej. backfill) que estén dentro de la retención
+        days.addAll(jdbc.queryForList("select distinct ts / " + DAY_MS + " from " + defaultPart
+                + " where ts >= ?", Long.class, firstRetained * DAY_MS));
+        for (long d = today; d <= today + Math.max(1, aheadDays); d++) days.add(d);
+        for (long d : days) {
+            try {
+                tx.executeWithoutResult(s -> createPartition(d));
+            } catch (Exception ex) {
+                log.warn("No se pudo crear la partición del día {}: {}", LocalDate.ofEpochDay(d), ex.getMessage());
+            }
+        }
+    }
+
+    private void createPartition(long day) {
+        String name = PREFIX + LocalDate.ofEpochDay(day).format(DAY);
+        if (relkind(name) != null) return;
+        long lo = day * DAY_MS, hi = lo + DAY_MS;
+        Boolean pending = jdbc.queryForObject("select exists (select 1 from " + defaultPart
+                + " where ts >= ? and ts < ?)", Boolean.class, lo, hi);
+        String table = schema + "." + name;
+        if (Boolean.TRUE.equals(pending)) {
+            // no se puede crear la partición si default ya tiene filas de ese rango: se mueven antes
+            jdbc.execute("create table " + table + " (like " + parent + " including defaults including constraints)");
+            jdbc.update("insert into " + table + " select * from " + defaultPart + " where ts >= ? and ts < ?", lo, hi);
+            jdbc.update("delete from " + defaultPart + " where ts >= ? and ts < ?", lo, hi);
+            jdbc.execute("alter table " + parent + " attach partition " + table
+                    + " for values from (" + lo + ") to (" + hi + ")");
+        } else {
+            jdbc.execute("create table " + table + " partition of " + parent
+                    + " for values from (" + lo + ") to (" + hi + ")");
+        }
+    }
+
+    /** Conversión de la tabla plana: nueva tabla particionada con ids de secuencia, copia y borrado. */
+    private void migrate() {
+        jdbc.execute("lock table " + parent + " in access exclusive mode");
+        Long nextId = jdbc.queryForObject("select coalesce(max(id), 0) + 1 from " + parent, Long.class);
+        Long minTs = jdbc.queryForObject("select min(ts) from " + parent, Long.class);
+
+        jdbc.execute("alter table " + parent + " rename to liquidation_event_legacy");
+        jdbc.execute("alter index if exists " + schema + ".idx_liq_symbol_ts rename to idx_liq_symbol_ts_legacy");
+        jdbc.execute("create sequence " + schema + ".liquidation_event_seq start with " + nextId);
+        jdbc.execute("create table " + parent + " ("
+                + "id bigint not null default nextval('" + schema + ".liquidation_event_seq'),"
+                + " symbol varchar(20) not null, side varchar(5), price float(53) not null,"
+                + " qty float(53) not null, notional float(53) not null, ts bigint not null,"
+                + " constraint liquidation_event_part_pkey primary key (id, ts)"
+                + ") partition by range (ts)");
+        jdbc.execute("alter sequence " + schema + ".liquidation_event_seq owned by " + parent + ".id");
+        jdbc.execute("create index idx_liq_symbol_ts on " + parent + " (symbol, ts)");
+        jdbc.execute("create table " + defaultPart + " partition of " + parent + " default");
+
+        long today = Math.floorDiv(System.currentTimeMillis(), DAY_MS);
+        long from = today - Math.max(1, retentionDays);
+        if (minTs != null) from = Math.max(from, Math.floorDiv(minTs, DAY_MS));
+        for (long d = from; d <= today + Math.max(1, aheadDays); d++) createPartition(d);
+
+        int moved = jdbc.update("insert into " + parent + " (id, symbol, side, price, qty, notional, ts)"
+                + " select id, symbol, side, price, qty, notional, ts from " + schema + ".liquidation_event_legacy");
+        jdbc.execute("drop table " + schema + ".liquidation_event_legacy");
+        log.info("liquidation_event convertida a tabla particionada por día ({} filas movidas)", moved);
+    }
+
+    /* =================== retención =================== */
+
+    /**
+     * Archiva comprimido, baja a agregados de minuto y de hora y elimina las particiones completamente
+     * anteriores a beforeTs, y lo equivalente en la partición default. Gestiona sus propias transacciones:
+     * el archivado y los agregados de cada partición van en una (solo bloquean esa partición) y se
+     * marcan con un comentario en la tabla, así un reintento no archiva dos veces; después el DETACH
+     * y el DROP van en otra corta, que es la única que toma ACCESS EXCLUSIVE sobre liquidation_event.
+     * No debe llamarse dentro de una transacción.
+     */
+    public void dropOlderThan(long beforeTs) {
+        long cutoff = Math.floorDiv(beforeTs, DAY_MS) * DAY_MS;
+        for (String name : partitions()) {
+            long day = LocalDate.parse(name.substring(PREFIX.length()), DAY).toEpochDay();
+            if ((day + 1) * DAY_MS > cutoff) continue;
+            String table = schema + "." + name;
+            try {
+                tx.executeWithoutResult(s -> {
+                    if (ARCHIVED.equals(comment(name))) return;
+                    archive.archive(table, Long.MIN_VALUE, Long.MAX_VALUE);
+                    rollups.rebuildMinutesFrom(table, Long.MIN_VALUE, Long.MAX_VALUE);
+                    rollups.rebuildHoursFrom(table, Long.MAX_VALUE);
+                    jdbc.execute("comment on table " + table + " is '" + ARCHIVED + "'");
+                });
+                tx.executeWithoutResult(s -> {
+                    // si la ingesta tiene la tabla ocupada se desiste y se reintenta en la próxima pasada
+                    jdbc.execute("set local lock_timeout = '" + detachLockTimeoutMs + "ms'");
+                    jdbc.execute("alter table " + parent + " detach partition " + table);
+                    jdbc.execute("drop table " + table);
+                });
+                log.info("Partición {} agregada a 1m/1h y eliminada", name);
+            } catch (Exception ex) {
+                log.warn("No se pudo retirar la partición {}: {}", name, ex.getMessage());
+            }
+        }
+        // la default puede tener solo parte de una hora o minuto (filas tardías de un día ya
+        // eliminado): la reconstrucción no pisa agregados que cuenten más eventos que el crudo.
+        // Archivar y borrar van juntos para que ninguna fila se archive dos veces; el DELETE
+        // solo bloquea filas de default
+        tx.executeWithoutResult(s -> {
+            archive.archive(defaultPart, Long.MIN_VALUE, cutoff);
+            rollups.rebuildMinutesFrom(defaultPart, Long.MIN_VALUE, cutoff);
+            rollups.rebuildHoursFrom(defaultPart, cutoff);
+            jdbc.update("delete from " + defaultPart + " where ts < ?", cutoff);
+        });
+    }
+
+    private String comment(String name) {
+        List<String> c = jdbc.queryForList("select obj_description(c.oid, 'pg_class') from pg_class c"
+                + " join pg_namespace n on n.oid = c.relnamespace"
+                + " where n.nspname = ? and c.relname = ?", String.class, schema, name);
+        return c.isEmpty() ? null : c.getFirst();
+    }
+
+    private List<String> partitions() {
+        return jdbc.queryForList("select c.relname from pg_inherits i"
+                        + " join pg_class c on c.oid = i.inhrelid"
+                        + " join pg_class p on p.oid = i.inhparent"
+                        + " join pg_namespace n on n.oid = p.relnamespace"
+                        + " where n.nspname = ? and p.relname = 'liquidation_event' and c.relname ~ '^"
+                        + PREFIX + "[0-9]{8}$' order by c.relname",
+                String.class, schema);
+    }
+
+    private String relkind(String name) {
+        List<String> kinds = jdbc.queryForList("select c.relkind::text from pg_class c"
+                + " join pg_namespace n on n.oid = c.relnamespace"
+                + " where n.nspname = ? and c.relname = ?", String.class, schema, name);
+        return kinds.isEmpty() ? null : kinds.getFirst();
+    }
+}
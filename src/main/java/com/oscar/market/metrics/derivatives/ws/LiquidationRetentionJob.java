@@ -3,26 +3,66 @@ package com.oscar.market.metrics.derivatives.ws;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+/**
+ * Retención por niveles: eventos crudos durante market.retention.days, agregados de 1m durante
+ * rollup-minute-days y de 1h durante rollup-hour-days (0 = sin límite). Antes de borrar
+ * crudos se recalculan sus agregados, así cada nivel cubre lo que el anterior suelta, y los
+ * crudos se guardan comprimidos en {@link LiquidationArchive}. No es una única transacción:
+ * cada paso lleva la suya para no retener bloqueos sobre liquidation_event mientras dura el resto.
+ */
 @Component
 public class LiquidationRetentionJob {
 
+    private static final long HOUR_MS = LiquidationRollupStore.HOUR_MS;
+    private static final long DAY_MS = LiquidationRollupStore.DAY_MS;
+
     private final LiquidationEventRepository repo;
+    private final LiquidationRollupStore rollups;
+    private final LiquidationPartitionManager partitions;
+    private final LiquidationArchive archive;
+    private final TransactionTemplate tx;
 
     @Value("${market.retention.days:7}")
     private int retentionDays;
 
-    public LiquidationRetentionJob(LiquidationEventRepository repo) {
+    @Value("${market.retention.rollup-hour-days:0}") // 0 = para siempre
+    private int rollupHourDays;
+
+    public LiquidationRetentionJob(LiquidationEventRepository repo, LiquidationRollupStore rollups,
+                                   LiquidationPartitionManager partitions, LiquidationArchive archive,
+                                   PlatformTransactionManager txManager) {
         this.repo = repo;
+        this.rollups = rollups;
+        this.partitions = partitions;
+        this.archive = archive;
+        this.tx = new TransactionTemplate(txManager);
     }
 
     // Cada 30 minutos elimina datos antiguos según retención
-    @Transactional
     @Scheduled(cron = "0 */30 * * * *")
     public void purgeOld() {
         long now = System.currentTimeMillis();
-        long before = now - Math.max(1, retentionDays) * 24L * 60 * 60 * 1000;
-        repo.deleteOlderThan(before);
+        // corte en hora exacta: las horas que quedan en crudo siguen completas
+        long before = Math.floorDiv(now - Math.max(1, retentionDays) * DAY_MS, HOUR_MS) * HOUR_MS;
+        // particionada: se eliminan días enteros (previa agregación); si no, agregación + DELETE clásico
+        if (partitions.partitioned()) {
+            partitions.dropOlderThan(before);
+        } else {
+            // archivar, agregar y borrar juntos: ninguna fila se archiva dos veces ni se pierde
+            tx.executeWithoutResult(s -> {
+                archive.archiveRaw(before);
+                rollups.downsampleRaw(before);
+                repo.deleteOlderThan(before);
+            });
+        }
+        long minuteHorizon = rollups.minuteHorizon(now);
+        rollups.deleteMinutesOlderThan(minuteHorizon);
+        // los agregados horarios son la historia larga para gráficos
+        if (rollupHourDays > 0) {
+            rollups.deleteHoursOlderThan(Math.min(minuteHorizon, now - rollupHourDays * DAY_MS));
+        }
     }
 }
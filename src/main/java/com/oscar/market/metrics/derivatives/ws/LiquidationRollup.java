@@ -0,0 +1,205 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agregados de liquidaciones por símbolo y minuto en memoria (conteo, nocional, reparto
+ * BUY/SELL y mayor liquidación) durante todo el periodo de retención. Se reconstruye desde BD
+ * al arrancar —antes de que el writer del ingestor empiece, así no hay doble conteo— y
+ * después lo alimenta cada lote confirmado. Cualquier ventana se responde sumando minutos.
+ */
+@Component
+public class LiquidationRollup implements LiquidationBatchListener {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquidationRollup.class);
+    static final long MINUTE_MS = 60_000L;
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+    private final Map<String, SymbolMinutes> bySymbol = new ConcurrentHashMap<>();
+
+    @Value("${market.retention.days:7}")
+    private int retentionDays;
+
+    /** Desde cuándo los agregados reflejan toda la BD (si falla la carga, desde el arranque). */
+    private volatile long coveredFrom;
+
+    public LiquidationRollup(JdbcTemplate jdbc,
+                             @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        this.table = (schema == null || schema.isBlank()) ? "liquidation_event" : schema + ".liquidation_event";
+    }
+
+    @PostConstruct
+    void rebuild() {
+        long now = System.currentTimeMillis();
+        long since = (now / MINUTE_MS - capacity() + 1) * MINUTE_MS;
+        try {
+            jdbc.query("select symbol, ts / 60000 as m, count(*) as n,"
+                            + " sum(case when upper(side) = 'BUY' then 1 else 0 end) as buys,"
+                            + " sum(case when upper(side) = 'SELL' then 1 else 0 end) as sells,"
+                            + " sum(notional) as notional,"
+                            + " sum(case when upper(side) = 'BUY' then notional else 0 end) as buy_notional,"
+                            + " sum(case when upper(side) = 'SELL' then notional else 0 end) as sell_notional,"
+                            + " max(notional) as max_notional"
+                            + " from " + table + " where ts >= ? group by symbol, ts / 60000",
+                    rs -> {
+                        symbol(rs.getString("symbol")).load(rs.getLong("m"), rs.getInt("n"),
+                                rs.getInt("buys"), rs.getInt("sells"), rs.getDouble("notional"),
+                                rs.getDouble("buy_notional"), rs.getDouble("sell_notional"),
+                                rs.getDouble("max_notional"));
+                    },
+                    since);
+            coveredFrom = since;
+        } catch (Exception ex) {
+            coveredFrom = now;
+            log.warn("No se pudieron reconstruir los agregados de liquidaciones: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void onPersisted(List<LiquidationEvent> batch) {
+        for (LiquidationEvent e : batch) symbol(e.getSymbol()).add(e);
+    }
+
+    /* =================== consultas =================== */
+
+    public record Totals(long from, long to, long count, long buys, long sells,
+                         double notional, double buyNotional, double sellNotional,
+                         double maxNotional, boolean complete) {}
+
+    /** Totales de [now - windowMs, now] con resolución de minuto. */
+    public Totals window(String symbol, long windowMs) {
+        long now = System.currentTimeMillis();
+        return range(symbol, now - windowMs, now);
+    }
+
+    public Totals range(String symbol, long from, long to) {
+        SymbolMinutes s = bySymbol.get(symbol);
+        Totals t = s == null ? new Totals(from, to, 0, 0, 0, 0, 0, 0, 0, false) : s.sum(from, to);
+        return new Totals(from, to, t.count(), t.buys(), t.sells(), t.notional(), t.buyNotional(),
+                t.sellNotional(), t.maxNotional(), from >= coveredFrom);
+    }
+
+    public boolean hasData(String symbol, long from, long to) {
+        return range(symbol, from, to).count() > 0;
+    }
+
+    public long coveredFrom() { return coveredFrom; }
+
+    /** Si [from, ahora] cabe entero en los minutos en memoria; si no, hay que ir a las tablas de agregados. */
+    public boolean holds(long from) {
+        long oldest = (System.currentTimeMillis() / MINUTE_MS - capacity() + 1) * MINUTE_MS;
+        return from >= Math.max(oldest, coveredFrom);
+    }
+
+    /** Ventanas tipo "5m", "4h", "7d". */
+    public static long windowMs(String window) {
+        String w = window.trim();
+        if (w.length() < 2) throw new IllegalArgumentException("Ventana no válida: " + window);
+        long n;
+        try {
+            n = Long.parseLong(w.substring(0, w.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Ventana no válida: " + window);
+        }
+        if (n <= 0) throw new IllegalArgumentException("Ventana no válida: " + window);
+        return switch (w.charAt(w.length() - 1)) {
+            case 'm' -> n * MINUTE_MS;
+            case 'h' -> n * 60 * MINUTE_MS;
+            case 'd' -> n * 24 * 60 * MINUTE_MS;
+            default -> throw new IllegalArgumentException("Ventana no válida: " + window);
+        };
+    }
+
+    private int capacity() {
+        return Math.max(1, retentionDays) * 24 * 60;
+    }
+
+    private SymbolMinutes symbol(String symbol) {
+        return bySymbol.computeIfAbsent(symbol, k -> new SymbolMinutes(capacity()));
+    }
+
+    /** Anillo de minutos indexado por minuto % capacidad; una celda con otro minuto está vacía. */
+    private static final class SymbolMinutes {
+        final long[] minute;
+        final int[] count, buys, sells;
+        final double[] notional, buyNotional, sellNotional, max;
+
+        SymbolMinutes(int capacity) {
+            minute = new long[capacity];
+            Arrays.fill(minute, Long.MIN_VALUE);
+            count = new int[capacity];
+            buys = new int[capacity];
+            sells = new int[capacity];
+            notional = new double[capacity];
+            buyNotional = new double[capacity];
+            sellNotional = new double[capacity];
+            max = new double[capacity];
+        }
+
+        private int slot(long m) {
+            int i = (int) Math.floorMod(m, (long) minute.length);
+            if (minute[i] != m) {
+                if (minute[i] > m) return -1; // más antiguo que la ventana retenida
+                minute[i] = m;
+                count[i] = buys[i] = sells[i] = 0;
+                notional[i] = buyNotional[i] = sellNotional[i] = max[i] = 0.0;
+            }
+            return i;
+        }
+
+        synchronized void add(LiquidationEvent e) {
+            int i = slot(e.getTs() / MINUTE_MS);
+            if (i < 0) return;
+            count[i]++;
+            notional[i] += e.getNotional();
+            if ("BUY".equalsIgnoreCase(e.getSide())) { buys[i]++; buyNotional[i] += e.getNotional(); }
+            else if ("SELL".equalsIgnoreCase(e.getSide())) { sells[i]++; sellNotional[i] += e.getNotional(); }
+            if (e.getNotional() > max[i]) max[i] = e.getNotional();
+        }
+
+        synchronized void load(long m, int n, int b, int s, double not, double bNot, double sNot, double mx) {
+            int i = slot(m);
+            if (i < 0) return;
+            count[i] += n;
+            buys[i] += b;
+            sells[i] += s;
+            notional[i] += not;
+            buyNotional[i] += bNot;
+            sellNotional[i] += sNot;
+            if (mx > max[i]) max[i] = mx;
+        }
+
+        synchronized Totals sum(long from, long to) {
+            long m0 = Math.floorDiv(from, MINUTE_MS);
+            long m1 = Math.floorDiv(to, MINUTE_MS);
+            if (m1 - m0 >= minute.length) m0 = m1 - minute.length + 1;
+            long n = 0, b = 0, s = 0;
+            double not = 0, bNot = 0, sNot = 0, mx = 0;
+            for (long m = m0; m <= m1; m++) {
+                int i = (int) Math.floorMod(m, (long) minute.length);
+                if (minute[i] != m) continue;
+                n += count[i];
+                b += buys[i];
+                s += sells[i];
+                not += notional[i];
+                bNot += buyNotional[i];
+                sNot += sellNotional[i];
+                if (max[i] > mx) mx = max[i];
+            }
+            return new Totals(from, to, n, b, s, not, bNot, sNot, mx, true);
+        }
+    }
+}
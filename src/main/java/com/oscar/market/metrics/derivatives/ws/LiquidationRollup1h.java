@@ -0,0 +1,44 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import jakarta.persistence.*;
+
+/** Agregado por símbolo y hora; lo mantiene {@link LiquidationRollupStore} con upserts. */
+@Entity
+@Table(name = "liquidation_rollup_1h")
+public class LiquidationRollup1h {
+    @EmbeddedId
+    private LiquidationRollupKey id;
+
+    @Column(nullable = false)
+    private long events;
+
+    @Column(nullable = false)
+    private long buys;
+
+    @Column(nullable = false)
+    private long sells;
+
+    @Column(nullable = false)
+    private double notional;
+
+    @Column(name = "buy_notional", nullable = false)
+    private double buyNotional;
+
+    @Column(name = "sell_notional", nullable = false)
+    private double sellNotional;
+
+    @Column(name = "max_notional", nullable = false)
+    private double maxNotional;
+
+    protected LiquidationRollup1h() {}
+
+    // getters
+    public LiquidationRollupKey getId() { return id; }
+    public long getEvents() { return events; }
+    public long getBuys() { return buys; }
+    public long getSells() { return sells; }
+    public double getNotional() { return notional; }
+    public double getBuyNotional() { return buyNotional; }
+    public double getSellNotional() { return sellNotional; }
+    public double getMaxNotional() { return maxNotional; }
+}
@@ -0,0 +1,35 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class LiquidationRollupKey implements Serializable {
+
+    @Column(nullable = false, length = 20)
+    private String symbol;
+
+    @Column(name = "bucket_ts", nullable = false)
+    private long bucketTs;          // inicio del bucket, epoch ms
+
+    protected LiquidationRollupKey() {}
+    public LiquidationRollupKey(String symbol, long bucketTs) {
+        this.symbol = symbol; this.bucketTs = bucketTs;
+    }
+
+    public String getSymbol() { return symbol; }
+    public long getBucketTs() { return bucketTs; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LiquidationRollupKey k)) return false;
+        return bucketTs == k.bucketTs && Objects.equals(symbol, k.symbol);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(symbol, bucketTs); }
+}
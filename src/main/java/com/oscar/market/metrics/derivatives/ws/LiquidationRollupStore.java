@@ -0,0 +1,282 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tablas liquidation_rollup_1m y liquidation_rollup_1h. El bulk writer llama a
+ * {@link #upsert} dentro de la misma transacción que los eventos crudos, así los agregados
+ * nunca divergen de liquidation_event. Las consultas leen la tabla más gruesa que encaja
+ * con el bucket pedido.
+ * <p>
+ * Niveles de retención: crudo (market.retention.days), 1m (rollup-minute-days) y 1h
+ * (rollup-hour-days, 0 = para siempre). Las lecturas que caen antes del tramo de 1m se
+ * sirven desde 1h con buckets de hora completos.
+ */
+@Component
+public class LiquidationRollupStore {
+
+    public static final long MINUTE_MS = 60_000L;
+    public static final long HOUR_MS = 60 * MINUTE_MS;
+    static final long DAY_MS = 24 * HOUR_MS;
+
+    private static final int MAX_ROWS = 1000; // 8 parámetros por fila
+    private static final Comparator<Key> KEY_ORDER =
+            Comparator.comparing(Key::symbol).thenComparingLong(Key::bucket);
+
+    private final JdbcTemplate jdbc;
+    private final String minuteTable;
+    private final String hourTable;
+    private final String rawTable;
+
+    @Value("${market.retention.days:7}")
+    private int retentionDays = 7;
+
+    @Value("${market.retention.rollup-minute-days:30}")
+    private int minuteDays = 30;
+
+    public LiquidationRollupStore(JdbcTemplate jdbc,
+                                  @Value("${spring.jpa.properties.hibernate.default_schema:market_schema}") String schema) {
+        this.jdbc = jdbc;
+        String prefix = (schema == null || schema.isBlank()) ? "" : schema + ".";
+        this.minuteTable = prefix + "liquidation_rollup_1m";
+        this.hourTable = prefix + "liquidation_rollup_1h";
+        this.rawTable = prefix + "liquidation_event";
+    }
+
+    private record Key(String symbol, long bucket) {}
+
+    private static final class Agg {
+        long events, buys, sells;
+        double notional, buyNotional, sellNotional, max;
+
+        void add(LiquidationEvent e) {
+            events++;
+            notional += e.getNotional();
+            if ("BUY".equalsIgnoreCase(e.getSide())) { buys++; buyNotional += e.getNotional(); }
+            else if ("SELL".equalsIgnoreCase(e.getSide())) { sells++; sellNotional += e.getNotional(); }
+            if (e.getNotional() > max) max = e.getNotional();
+        }
+    }
+
+    /* =================== escritura =================== */
+
+    /** Debe llamarse dentro de la transacción del lote crudo. */
+    void upsert(List<LiquidationEvent> batch) {
+        upsert(minuteTable, aggregate(batch, MINUTE_MS));
+        upsert(hourTable, aggregate(batch, HOUR_MS));
+    }
+
+    // orden fijo de claves: dos writers concurrentes bloquean filas en el mismo orden
+    private static Map<Key, Agg> aggregate(List<LiquidationEvent> batch, long bucketMs) {
+        Map<Key, Agg> out = new TreeMap<>(KEY_ORDER);
+        for (LiquidationEvent e : batch) {
+            long b = Math.floorDiv(e.getTs(), bucketMs) * bucketMs;
+            out.computeIfAbsent(new Key(e.getSymbol(), b), k -> new Agg()).add(e);
+        }
+        return out;
+    }
+
+    private void upsert(String table, Map<Key, Agg> rows) {
+        List<Map.Entry<Key, Agg>> all = new ArrayList<>(rows.entrySet());
+        for (int from = 0; from < all.size(); from += MAX_ROWS) {
+            List<Map.Entry<Key, Agg>> chunk = all.subList(from, Math.min(all.size(), from + MAX_ROWS));
+            jdbc.update(upsertSql(table, chunk.size()), ps -> bind(ps, chunk));
+        }
+    }
+
+    private static String upsertSql(String table, int rows) {
+        StringBuilder sb = new StringBuilder(256 + rows * 20)
+                .append("insert into ").append(table)
+                .append(" as r (symbol, bucket_ts, events, buys, sells, notional, buy_notional, sell_notional, max_notional) values ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("(?,?,?,?,?,?,?,?,?)");
+        }
+        return sb.append(" on conflict (symbol, bucket_ts) do update set")
+                .append(" events = r.events + excluded.events,")
+                .append(" buys = r.buys + excluded.buys,")
+                .append(" sells = r.sells + excluded.sells,")
+                .append(" notional = r.notional + excluded.notional,")
+                .append(" buy_notional = r.buy_notional + excluded.buy_notional,")
+                .append(" sell_notional = r.sell_notional + excluded.sell_notional,")
+                .append(" max_notional = greatest(r.max_notional, excluded.max_notional)")
+                .toString();
+    }
+
+    private static void bind(PreparedStatement ps, List<Map.Entry<Key, Agg>> chunk) throws SQLException {
+        int p = 1;
+        for (Map.Entry<Key, Agg> e : chunk) {
+            Agg a = e.getValue();
+            ps.setString(p++, e.getKey().symbol());
+            ps.setLong(p++, e.getKey().bucket());
+            ps.setLong(p++, a.events);
+            ps.setLong(p++, a.buys);
+            ps.setLong(p++, a.sells);
+            ps.setDouble(p++, a.notional);
+            ps.setDouble(p++, a.buyNotional);
+            ps.setDouble(p++, a.sellNotional);
+            ps.setDouble(p++, a.max);
+        }
+    }
+
+    /* =================== lectura =================== */
+
+    public record Bucket(long ts, long events, long buys, long sells,
+                         double notional, double buyNotional, double sellNotional, double maxNotional) {}
+
+    /**
+     * Serie de buckets. Si parte del rango es anterior al tramo de 1m, los buckets con
+     * ts &lt; hourlyBefore vienen de la tabla horaria con tamaño hourlyBucketMs.
+     */
+    public record Series(String table, long bucketMs, List<Bucket> buckets, Long hourlyBefore, Long hourlyBucketMs) {}
+
+    /** Buckets de bucketMs en [from, to), leyendo de la tabla horaria siempre que el bucket lo permita. */
+    public Series buckets(String symbol, long from, long to, long bucketMs) {
+        if (bucketMs <= 0 || bucketMs % MINUTE_MS != 0) {
+            throw new IllegalArgumentException("El bucket debe ser múltiplo de 1m");
+        }
+        long start = Math.floorDiv(from, bucketMs) * bucketMs;
+        if (bucketMs % HOUR_MS == 0) {
+            return new Series(hourTable, bucketMs, query(hourTable, symbol, start, to, bucketMs), null, null);
+        }
+        // lo anterior al tramo de 1m baja a horas; el corte cae en múltiplo de ambos tamaños
+        long coarse = lcm(bucketMs, HOUR_MS);
+        long edge = minuteEdge(symbol);
+        long split = edge >= to ? to : Math.floorDiv(edge + coarse - 1, coarse) * coarse;
+        if (start >= split) {
+            return new Series(minuteTable, bucketMs, query(minuteTable, symbol, start, to, bucketMs), null, null);
+        }
+        List<Bucket> out = new ArrayList<>(query(hourTable, symbol, Math.floorDiv(start, coarse) * coarse,
+                Math.min(to, split), coarse));
+        if (split < to) out.addAll(query(minuteTable, symbol, split, to, bucketMs));
+        return new Series(minuteTable, bucketMs, out, split, coarse);
+    }
+
+    /** Totales de [from, to): 1m mientras haya minutos, 1h (horas completas) antes. */
+    public LiquidationRollup.Totals totals(String symbol, long from, long to) {
+        long edge = Math.min(minuteEdge(symbol), to);
+        long m0 = Math.max(from, edge);
+        long h0 = Math.floorDiv(from, HOUR_MS) * HOUR_MS;
+        String cols = "events, buys, sells, notional, buy_notional, sell_notional, max_notional";
+        return jdbc.queryForObject(
+                "select coalesce(sum(events), 0) as events, coalesce(sum(buys), 0) as buys,"
+                        + " coalesce(sum(sells), 0) as sells, coalesce(sum(notional), 0) as notional,"
+                        + " coalesce(sum(buy_notional), 0) as buy_notional,"
+                        + " coalesce(sum(sell_notional), 0) as sell_notional,"
+                        + " coalesce(max(max_notional), 0) as max_notional from ("
+                        + " select " + cols + " from " + minuteTable + " where symbol = ? and bucket_ts >= ? and bucket_ts < ?"
+                        + " union all"
+                        + " select " + cols + " from " + hourTable + " where symbol = ? and bucket_ts >= ? and bucket_ts < ?"
+                        + ") t",
+                (rs, i) -> new LiquidationRollup.Totals(from, to, rs.getLong("events"), rs.getLong("buys"),
+                        rs.getLong("sells"), rs.getDouble("notional"), rs.getDouble("buy_notional"),
+                        rs.getDouble("sell_notional"), rs.getDouble("max_notional"), true),
+                symbol, m0, to, symbol, h0, edge);
+    }
+
+    /**
+     * Primera hora completa del tramo de 1m: la mayor entre el horizonte configurado y la hora
+     * siguiente a la fila más antigua (tras un cambio de retención la tabla aún no llega tan atrás).
+     */
+    long minuteEdge(String symbol) {
+        Long oldest = jdbc.queryForObject("select min(bucket_ts) from " + minuteTable + " where symbol = ?",
+                Long.class, symbol);
+        if (oldest == null) return Long.MAX_VALUE;
+        long firstFull = Math.floorDiv(oldest + HOUR_MS - 1, HOUR_MS) * HOUR_MS;
+        return Math.max(minuteHorizon(System.currentTimeMillis()), firstFull);
+    }
+
+    /** Inicio (alineado a la hora) del periodo que conserva liquidation_rollup_1m. */
+    long minuteHorizon(long now) {
+        long days = Math.max(Math.max(1, retentionDays), minuteDays);
+        return Math.floorDiv(now - days * DAY_MS, HOUR_MS) * HOUR_MS;
+    }
+
+    private List<Bucket> query(String table, String symbol, long start, long to, long bucketMs) {
+        return jdbc.query(
+                "select (bucket_ts / ?) * ? as b, sum(events) as events, sum(buys) as buys, sum(sells) as sells,"
+                        + " sum(notional) as notional, sum(buy_notional) as buy_notional,"
+                        + " sum(sell_notional) as sell_notional, max(max_notional) as max_notional"
+                        + " from " + table + " where symbol = ? and bucket_ts >= ? and bucket_ts < ?"
+                        + " group by b order by b",
+                (rs, i) -> new Bucket(rs.getLong("b"), rs.getLong("events"), rs.getLong("buys"),
+                        rs.getLong("sells"), rs.getDouble("notional"), rs.getDouble("buy_notional"),
+                        rs.getDouble("sell_notional"), rs.getDouble("max_notional")),
+                bucketMs, bucketMs, symbol, start, to);
+    }
+
+    static long lcm(long a, long b) {
+        long x = a, y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+
+    /* =================== retención =================== */
+
+    /**
+     * Recalcula los agregados horarios a partir de las filas crudas de rawTable con ts < beforeTs.
+     * Se usa antes de eliminar una partición. Solo sobrescribe un bucket si rawTable tiene al menos
+     * tantas filas como el agregado: todo insert pasa por {@link #upsert}, así que menos filas
+     * significa que parte de la hora ya se borró (filas tardías en la partición default de un día
+     * ya eliminado) y el agregado existente es el completo.
+     */
+    int rebuildHoursFrom(String rawTable, long beforeTs) {
+        return rebuild(hourTable, HOUR_MS, rawTable, Long.MIN_VALUE, beforeTs);
+    }
+
+    /** Igual que {@link #rebuildHoursFrom} para los agregados de minuto, en [fromTs, beforeTs), con la misma guarda. */
+    int rebuildMinutesFrom(String rawTable, long fromTs, long beforeTs) {
+        return rebuild(minuteTable, MINUTE_MS, rawTable, fromTs, beforeTs);
+    }
+
+    /**
+     * Para liquidation_event sin particionar: baja a 1m y 1h las filas crudas con ts &lt; beforeTs
+     * antes del DELETE. Las horas o minutos que un borrado anterior dejó a medias (filas tardías)
+     * no se pisan: la reconstrucción solo sobrescribe cuando el crudo está completo.
+     */
+    void downsampleRaw(long beforeTs) {
+        rebuildMinutesFrom(rawTable, Long.MIN_VALUE, beforeTs);
+        rebuildHoursFrom(rawTable, beforeTs);
+    }
+
+    private int rebuild(String table, long bucketMs, String rawTable, long fromTs, long beforeTs) {
+        return jdbc.update("insert into " + table + " as r"
+                + " (symbol, bucket_ts, events, buys, sells, notional, buy_notional, sell_notional, max_notional)"
+                + " select symbol, (ts / " + bucketMs + ") * " + bucketMs + ", count(*),"
+                + " sum(case when upper(side) = 'BUY' then 1 else 0 end),"
+                + " sum(case when upper(side) = 'SELL' then 1 else 0 end),"
+                + " sum(notional),"
+                + " sum(case when upper(side) = 'BUY' then notional else 0 end),"
+                + " sum(case when upper(side) = 'SELL' then notional else 0 end),"
+                + " max(notional)"
+                + " from " + rawTable + " where ts >= ? and ts < ? group by 1, 2"
+                + " on conflict (symbol, bucket_ts) do update set"
+                + " events = excluded.events, buys = excluded.buys, sells = excluded.sells,"
+                + " notional = excluded.notional, buy_notional = excluded.buy_notional,"
+                + " sell_notional = excluded.sell_notional, max_notional = excluded.max_notional"
+                + " where r.events <= excluded.events",
+                fromTs, beforeTs);
+    }
+
+    int deleteMinutesOlderThan(long beforeTs) {
+        return jdbc.update("delete from " + minuteTable + " where bucket_ts < ?", beforeTs);
+    }
+
+    int deleteHoursOlderThan(long beforeTs) {
+        return jdbc.update("delete from " + hourTable + " where bucket_ts < ?", beforeTs);
+    }
+}
@@ -0,0 +1,101 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Desbordamiento a disco para la política SPILL_TO_DISK: los productores añaden líneas CSV
+ * y el writer las re-inyecta cuando la cola se vacía (rotando a un fichero .replay).
+ */
+final class LiquidationSpillFile {
+
+    private final Path file;
+    private final Path replay;
+    private BufferedWriter out;
+    private BufferedReader in;
+
+    LiquidationSpillFile(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.file = dir.resolve("liq-spill.csv");
+        this.replay = dir.resolve("liq-spill.replay");
+    }
+
+    synchronized boolean append(LiquidationEvent e) {
+        try {
+            if (out == null) {
+                out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            out.write(e.getSymbol() + "," + (e.getSide() == null ? "" : e.getSide()) + ","
+                    + e.getPrice() + "," + e.getQty() + "," + e.getNotional() + "," + e.getTs());
+            out.newLine();
+            out.flush();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    synchronized boolean hasData() {
+        try {
+            return in != null || Files.exists(replay) || (Files.exists(file) && Files.size(file) > 0);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Siguiente lote de eventos desbordados (vacío si no queda nada). */
+    synchronized List<LiquidationEvent> take(int max) {
+        List<LiquidationEvent> batch = new ArrayList<>(Math.min(max, 1024));
+        try {
+            if (in == null) {
+                if (!Files.exists(replay)) {
+                    if (!Files.exists(file)) return batch;
+                    if (out != null) { out.close(); out = null; }
+                    Files.move(file, replay, StandardCopyOption.ATOMIC_MOVE);
+                }
+                in = Files.newBufferedReader(replay, StandardCharsets.UTF_8);
+            }
+            String line;
+            while (batch.size() < max && (line = in.readLine()) != null) {
+                LiquidationEvent e = parse(line);
+                if (e != null) batch.add(e);
+            }
+            if (batch.size() < max) { // EOF
+                in.close();
+                in = null;
+                Files.deleteIfExists(replay);
+            }
+        } catch (IOException ignored) {}
+        return batch;
+    }
+
+    synchronized void close() {
+        try {
+            if (out != null) out.close();
+            if (in != null) in.close();
+        } catch (IOException ignored) {}
+        out = null;
+        in = null;
+    }
+
+    private static LiquidationEvent parse(String line) {
+        String[] p = line.split(",", -1);
+        if (p.length != 6) return null;
+        try {
+            return new LiquidationEvent(null, p[0], p[1].isEmpty() ? null : p[1],
+                    Double.parseDouble(p[2]), Double.parseDouble(p[3]),
+                    Double.parseDouble(p[4]), Long.parseLong(p[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.oscar.market.metrics.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.marketdata.SpotClient;
+import com.oscar.market.marketdata.SpotClient.AggTrade;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Descarga de aggTrades para un rango temporal paginando por id de trade.
+ * 1) localiza el primer y último id del rango, 2) parte el rango en páginas de 1000 ids,
+ * 3) las pide en paralelo dentro del presupuesto de peso de spot (el de {@link SpotClient}) y 4) pliega cada página en buckets
+ * de 1 minuto según llega. Los minutos completos quedan en {@link MinuteFlowBuckets}, así que
+ * consultas repetidas solo pagan la cola no cacheada.
+ */
+@Component
+public class AggTradeFetcher {
+
+    private static final int PAGE = 1000;
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final SpotClient spot;
+    private final MinuteFlowBuckets cache;
+    private final Semaphore parallel;
+    private final ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AggTradeFetcher(SpotClient spot, MinuteFlowBuckets cache,
+                           @Value("${market.flow.fetch-parallelism:4}") int parallelism) {
+        this.spot = spot;
+        this.cache = cache;
+        this.parallel = new Semaphore(Math.max(1, parallelism));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public record FlowTotals(double buys, double sells, int minutesCached, int minutesFetched, int pages) {}
+
+    /**
+     * Volumen agresivo comprador/vendedor en [start, end]. La ventana se alinea al minuto
+     * de 'start' (se incluye el minuto completo en el que empieza).
+     */
+    public FlowTotals flow(String symbol, long start, long end) {
+        long firstMin = Math.floorDiv(start, MINUTE);
+        long lastMin = Math.floorDiv(end, MINUTE);
+
+        double buys = 0.0, sells = 0.0;
+        double[] tmp = new double[2];
+        long m = firstMin;
+        // prefijo ya cacheado
+        while (m <= lastMin && cache.get(symbol, m, tmp)) {
+            buys += tmp[0];
+            sells += tmp[1];
+            m++;
+        }
+        int cached = (int) (m - firstMin);
+        if (m > lastMin) return new FlowTotals(buys, sells, cached, 0, 0);
+
+        // cola no cacheada
+        int n = (int) (lastMin - m + 1);
+        double[] accBuys = new double[n];
+        double[] accSells = new double[n];
+        int pages = fetchInto(symbol, m * MINUTE, end, m, accBuys, accSells);
+
+        long nowMin = Math.floorDiv(System.currentTimeMillis(), MINUTE);
+        for (int i = 0; i < n; i++) {
+            long minute = m + i;
+            buys += accBuys[i];
+            sells += accSells[i];
+            boolean complete = (minute + 1) * MINUTE - 1 <= end && minute < nowMin;
+            if (complete) cache.put(symbol, minute, accBuys[i], accSells[i]);
+        }
+        return new FlowTotals(buys, sells, cached, n, pages);
+    }
+
+    private int fetchInto(String symbol, long from, long end, long baseMin, double[] b, double[] s) {
+        long firstId = firstIdAtOrAfter(symbol, from, end);
+        if (firstId < 0) return 0; // sin trades en el rango
+        long lastId = lastIdAtOrBefore(symbol, end);
+        if (lastId < firstId) return 0;
+
+        int pages = (int) ((lastId - firstId) / PAGE + 1);
+        List<Future<?>> futures = new ArrayList<>(pages);
+        for (int p = 0; p < pages; p++) {
+            long pageFrom = firstId + (long) p * PAGE;
+            int limit = (int) Math.min(PAGE, lastId - pageFrom + 1);
+            futures.add(pool.submit(() -> {
+                fetchPage(symbol, pageFrom, limit, from, end, baseMin, b, s);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> f : futures) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Descarga de aggTrades interrumpida", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Fallo descargando aggTrades de " + symbol, e.getCause());
+        }
+        return pages;
+    }
+
+    private void fetchPage(String symbol, long fromId, int limit, long from, long end,
+                           long baseMin, double[] b, double[] s) throws InterruptedException {
+        parallel.acquire();
+        try {
+            List<AggTrade> trades = spot.getAggTrades(symbol, fromId, null, null, limit);
+            synchronized (b) {
+                for (AggTrade t : trades) {
+                    if (t.time() < from || t.time() > end) continue;
+                    int i = (int) (Math.floorDiv(t.time(), MINUTE) - baseMin);
+                    if (t.buyerMaker()) s[i] += t.qty(); else b[i] += t.qty();
+                }
+            }
+        } finally {
+            parallel.release();
+        }
+    }
+
+    /** Primer id con time >= from (ventanas de 1h, límite de la API). -1 si no hay trades. */
+    private long firstIdAtOrAfter(String symbol, long from, long end) {
+        for (long t = from; t <= end; t += HOUR) {
+            List<AggTrade> first = call(symbol, null, t, Math.min(t + HOUR - 1, end));
+            if (!first.isEmpty()) return first.getFirst().id();
+        }
+        return -1L;
+    }
+
+    /** Último id con time <= end: el anterior al primer trade posterior, o el último existente. */
+    private long lastIdAtOrBefore(String symbol, long end) {
+        long now = System.currentTimeMillis();
+        if (end < now) {
+            List<AggTrade> after = call(symbol, null, end + 1, Math.min(end + HOUR, now));
+            if (!after.isEmpty()) return after.getFirst().id() - 1;
+        }
+        List<AggTrade> latest = call(symbol, null, null, null);
+        return latest.isEmpty() ? -1L : latest.getFirst().id();
+    }
+
+    private List<AggTrade> call(String symbol, Long fromId, Long startTime, Long endTime) {
+        return spot.getAggTrades(symbol, fromId, startTime, endTime, 1);
+    }
+}
@@ -0,0 +1,65 @@
+package com.oscar.market.metrics.flow;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caché de buckets por minuto (volumen comprador/vendedor agresivo) por símbolo.
+ * Solo guarda minutos COMPLETOS; el minuto en curso siempre se recalcula.
+ * Almacenamiento en anillo de primitivos indexado por minuto epoch.
+ */
+@Component
+public class MinuteFlowBuckets {
+
+    @Value("${market.flow.cache-minutes:2880}")
+    private int capacity;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    /** Guarda un minuto completo (sobrescribe si ya existía). */
+    public void put(String symbol, long minute, double buys, double sells) {
+        ring(symbol).put(minute, buys, sells);
+    }
+
+    /** true si el minuto está cacheado; deja buys/sells en out[0]/out[1]. */
+    public boolean get(String symbol, long minute, double[] out) {
+        Ring r = rings.get(symbol);
+        return r != null && r.get(minute, out);
+    }
+
+    private Ring ring(String symbol) {
+        return rings.computeIfAbsent(symbol, s -> new Ring(Math.max(60, capacity)));
+    }
+
+    private static final class Ring {
+        private final long[] minutes;
+        private final double[] buys;
+        private final double[] sells;
+
+        Ring(int capacity) {
+            minutes = new long[capacity];
+            buys = new double[capacity];
+            sells = new double[capacity];
+            Arrays.fill(minutes, -1L);
+        }
+
+        synchronized void put(long minute, double b, double s) {
+            int i = (int) Math.floorMod(minute, (long) minutes.length);
+            minutes[i] = minute;
+            buys[i] = b;
+            sells[i] = s;
+        }
+
+        synchronized boolean get(long minute, double[] out) {
+            int i = (int) Math.floorMod(minute, (long) minutes.length);
+            if (minutes[i] != minute) return false;
+            out[0] = buys[i];
+            out[1] = sells[i];
+            return true;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.oscar.market.metrics.flow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.BinanceClient;
+import com.oscar.market.marketdata.Candle;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+import com.oscar.market.metrics.series.RingSeries;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * OBV incremental por (símbolo, intervalo). Se siembra una vez con klines REST y después
+ * suma/resta el volumen de cada vela cerrada del stream @kline. Guarda un anillo con los
+ * últimos valores de OBV y cierre para pendientes multi-barra sin recalcular.
+ * Sin stream se re-siembra solo cuando ha cerrado una vela nueva. Los pares de
+ * market.spot.symbols-tracked × market.obv.intervals tienen estado permanente; cualquier otro
+ * se siembra por REST al pedirlo y vive en una caché LRU acotada (market.obv.max-untracked).
+ */
+@Component
+public class ObvTracker implements SpotStreamHandler, ApplicationRunner {
+
+    private static final int SEED_CANDLES = 400;
+
+    private final BinanceClient client;
+    private final Map<String, ObvState> states = new ConcurrentHashMap<>();
+    private final Map<String, ObvState> untracked;
+    private final ExecutorService seeder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "obv-seeder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${market.obv.intervals:1h}")
+    private String intervalsCsv;
+
+    @Value("${market.obv.history:200}")
+    private int history;
+
+    @Value("${market.spot.enabled:true}")
+    private boolean streamEnabled;
+
+    @Value("${market.spot.symbols-tracked:BTCUSDC,BTCUSDT}")
+    private String symbolsTrackedCsv;
+
+    public ObvTracker(BinanceClient client, @Value("${market.obv.max-untracked:32}") int maxUntracked) {
+        this.client = client;
+        int max = Math.max(1, maxUntracked);
+        this.untracked = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ObvState> eldest) {
+                return size() > max;
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        seeder.shutdownNow();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!streamEnabled) return;
+        for (String sym : csv(symbolsTrackedCsv)) {
+            for (String interval : csv(intervalsCsv)) {
+                ObvState st = state(sym, interval);
+                seeder.submit(() -> seed(st));
+            }
+        }
+    }
+
+    @Override
+    public List<String> streamSuffixes() {
+        List<String> out = new ArrayList<>();
+        for (String i : csv(intervalsCsv)) out.add("kline_" + i);
+        return out;
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        JsonNode k = data.get("k");
+        if (k == null || !k.path("x").asBoolean()) return; // solo velas cerradas
+        ObvState st = state(symbol, k.path("i").asText());
+        st.onClosed(k.path("t").asLong(), parse(k.path("c").asText()), parse(k.path("v").asText()));
+    }
+
+    /** Ventana de los últimos n puntos (orden antiguo → reciente). */
+    public record Window(double[] obv, double[] close, long lastOpenTime, boolean streamed) {}
+
+    public Window window(String symbol, String interval, int n) {
+        String sym = symbol == null ? "" : symbol.trim().toUpperCase(Locale.ROOT);
+        if (sym.isEmpty()) throw new IllegalArgumentException("Símbolo vacío");
+        intervalMs(interval); // valida antes de crear estado
+        boolean tracked = csv(symbolsTrackedCsv.toUpperCase(Locale.ROOT)).contains(sym)
+                && csv(intervalsCsv).contains(interval);
+        ObvState st = tracked ? state(sym, interval)
+                : untracked.computeIfAbsent(sym + "|" + interval, k -> new ObvState(sym, interval, Math.max(3, history)));
+        if (!st.fresh(System.currentTimeMillis())) seed(st);
+        return st.window(n);
+    }
+
+    private ObvState state(String symbol, String interval) {
+        return states.computeIfAbsent(symbol + "|" + interval,
+                k -> new ObvState(symbol, interval, Math.max(3, history)));
+    }
+
+    /** Carga histórica: OBV clásico sobre velas cerradas, guardando los últimos 'history' puntos. */
+    private void seed(ObvState st) {
+        List<Candle> candles = client.getKlines(st.symbol, st.interval, SEED_CANDLES);
+        long now = System.currentTimeMillis();
+        st.load(candles.stream().filter(c -> c.closeTime().toEpochMilli() < now).toList());
+    }
+
+    private static final class ObvState {
+        final String symbol;
+        final String interval;
+        final long intervalMs;
+        final RingSeries ring; // col 0 = OBV, col 1 = close
+        final List<double[]> pending = new ArrayList<>(); // cierres llegados antes de sembrar
+        boolean seeded;
+        boolean streamed;
+        double obv;
+        double lastClose;
+        long lastOpen = Long.MIN_VALUE;
+
+        ObvState(String symbol, String interval, int capacity) {
+            this.symbol = symbol;
+            this.interval = interval;
+            this.intervalMs = intervalMs(interval);
+            this.ring = new RingSeries(capacity, 2);
+        }
+
+        synchronized void load(List<Candle> candles) {
+            ring.clear();
+            obv = 0.0;
+            lastOpen = Long.MIN_VALUE;
+            for (int i = 0; i < candles.size(); i++) {
+                Candle c = candles.get(i);
+                if (i > 0) obv += step(candles.get(i - 1).close(), c.close(), c.volume());
+                push(c.openTime().toEpochMilli(), c.close());
+            }
+            seeded = !candles.isEmpty();
+            for (double[] p : pending) onClosedLocked((long) p[0], p[1], p[2]);
+            pending.clear();
+        }
+
+        synchronized void onClosed(long openTime, double close, double volume) {
+            streamed = true;
+            if (!seeded) {
+                pending.add(new double[]{openTime, close, volume});
+                return;
+            }
+            onClosedLocked(openTime, close, volume);
+        }
+
+        private void onClosedLocked(long openTime, double close, double volume) {
+            if (openTime <= lastOpen) return;
+            obv += step(lastClose, close, volume);
+            push(openTime, close);
+        }
+
+        private void push(long openTime, double close) {
+            ring.append(openTime, obv, close);
+            lastClose = close;
+            lastOpen = openTime;
+        }
+
+        /** Con stream: siempre al día. Sin stream: hasta que cierre la siguiente vela. */
+        synchronized boolean fresh(long now) {
+            if (!seeded) return false;
+            long nextClose = lastOpen + 2 * intervalMs;
+            return streamed ? now < nextClose + intervalMs : now < nextClose;
+        }
+
+        synchronized Window window(int n) {
+            int k = Math.min(n, ring.size());
+            double[] o = new double[k];
+            double[] c = new double[k];
+            for (int i = 0; i < k; i++) {
+                o[k - 1 - i] = ring.value(0, i);
+                c[k - 1 - i] = ring.value(1, i);
+            }
+            return new Window(o, c, lastOpen, streamed);
+        }
+
+        private static double step(double prevClose, double close, double vol) {
+            if (close > prevClose) return vol;
+            if (close < prevClose) return -vol;
+            return 0.0; // igual → obv sin cambios
+        }
+    }
+
+    static long intervalMs(String interval) {
+        long n;
+        try {
+            n = Long.parseLong(interval.substring(0, interval.length() - 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Intervalo no soportado: " + interval);
+        }
+        if (n <= 0) throw new IllegalArgumentException("Intervalo no soportado: " + interval);
+        return switch (interval.charAt(interval.length() - 1)) {
+            case 's' -> n * 1_000L;
+            case 'm' -> n * 60_000L;
+            case 'h' -> n * 3_600_000L;
+            case 'd' -> n * 86_400_000L;
+            case 'w' -> n * 7 * 86_400_000L;
+            case 'M' -> n * 28 * 86_400_000L; // el mes más corto: como mucho re-siembra antes de tiempo
+            default -> throw new IllegalArgumentException("Intervalo no soportado: " + interval);
+        };
+    }
+
+    private static List<String> csv(String csv) {
+        List<String> out = new ArrayList<>();
+        if (csv == null) return out;
+        for (String p : csv.split(",")) {
+            String v = p.trim();
+            if (!v.isEmpty()) out.add(v);
+        }
+        return out;
+    }
+
+    private static double parse(String s) {
+        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    }
+}
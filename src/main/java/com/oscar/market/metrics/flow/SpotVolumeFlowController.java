@@ -36,19 +36,31 @@ public class SpotVolumeFlowController {
         return out;
     }
 
-    /** 15) OBV pendiente (1h) */
+    /** 15) OBV pendiente (1h por defecto), multi-barra, regresión y divergencia OBV/precio */
     @GetMapping("/obv-slope")
-    public Map<String, Object> obvSlope(@RequestParam(required = false) String symbol) {
+    public Map<String, Object> obvSlope(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false, defaultValue = "1h") String interval,
+            @RequestParam(required = false, defaultValue = "5") int bars,
+            @RequestParam(required = false, defaultValue = "20") int regressionBars
+    ) {
         String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
-        var r = service.obvSlope(sym, "1h");
+        var r = service.obvSlope(sym, interval, Math.max(1, bars), Math.max(3, regressionBars));
 
         Map<String, Object> out = new LinkedHashMap<>();
         out.put("symbol", sym);
-        out.put("interval", "1h");
+        out.put("interval", interval);
         out.put("obv", r.obv());
         out.put("deltaPerBar", r.deltaPerBar());
         out.put("pctPerBar", r.pctPerBar());
         out.put("sign", r.sign()); // up | down | flat
+        out.put("bars", r.bars());
+        out.put("deltaBars", r.deltaBars());
+        out.put("regressionBars", r.regressionBars());
+        out.put("regressionSlope", r.regressionSlope());
+        out.put("priceRegressionSlope", r.priceRegressionSlope());
+        out.put("divergence", r.divergence()); // bullish | bearish | none
+        out.put("lastBarOpenTime", r.lastBarOpenTime());
         out.put("source", "binance");
         return out;
     }
@@ -98,7 +110,38 @@ public class SpotVolumeFlowController {
         out.put("bidVolume", r.bidVolume());
         out.put("askVolume", r.askVolume());
         out.put("imbalancePct", r.imbalancePct());
+        out.put("book", r.source()); // local-book | rest
         out.put("source", "binance");
         return out;
     }
+
+    /** 18b) Profundidad acumulada, spread y microprice desde el libro local */
+    @GetMapping("/orderbook-depth")
+    public Map<String, Object> orderbookDepth(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false, defaultValue = "20") int levels,
+            @RequestParam(required = false, defaultValue = "1.0") double withinPct
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        var r = service.orderbookDepth(sym, levels, withinPct);
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", sym);
+        out.put("levels", r.levels());
+        out.put("bidCumulative", r.bidCumulative());
+        out.put("askCumulative", r.askCumulative());
+        var top = r.top();
+        out.put("bestBid", top != null ? top.bidPrice() : null);
+        out.put("bestAsk", top != null ? top.askPrice() : null);
+        out.put("spread", top != null ? top.spread() : null);
+        out.put("mid", top != null ? top.mid() : null);
+        out.put("microprice", top != null ? top.microprice() : null);
+        out.put("withinPct", r.withinPct());
+        out.put("bidDepthWithin", r.bidDepthWithin());
+        out.put("askDepthWithin", r.askDepthWithin());
+        out.put("lastUpdateId", r.lastUpdateId());
+        out.put("ageMs", r.ageMs());
+        out.put("source", "binance-ws");
+        return out;
+    }
 }
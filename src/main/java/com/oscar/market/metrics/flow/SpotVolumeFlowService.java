@@ -2,31 +2,30 @@ package com.oscar.market.metrics.flow;
 
 import java.util.List;
 
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.oscar.market.marketdata.BinanceClient;
 import com.oscar.market.marketdata.Candle;
+import com.oscar.market.marketdata.SpotClient;
+import com.oscar.market.metrics.flow.book.LocalOrderBook;
+import com.oscar.market.metrics.flow.book.OrderBookMirror;
 
 @Service
 public class SpotVolumeFlowService {
 
     private final BinanceClient client;
-    private final RestClient rest;
+    private final AggTradeFetcher aggTrades;
+    private final OrderBookMirror books;
+    private final ObvTracker obvTracker;
+    private final SpotClient spot;
 
-    public SpotVolumeFlowService(BinanceClient client) {
+    public SpotVolumeFlowService(BinanceClient client, AggTradeFetcher aggTrades,
+                                 OrderBookMirror books, ObvTracker obvTracker, SpotClient spot) {
         this.client = client;
-        // RestClient simple a api.binance.com con timeouts suaves
-        var factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(6_000);
-        factory.setReadTimeout(10_000);
-        this.rest = RestClient.builder()
-                .requestFactory(factory)
-                .baseUrl("https://api.binance.com")
-                .build();
+        this.aggTrades = aggTrades;
+        this.books = books;
+        this.obvTracker = obvTracker;
+        this.spot = spot; // el snapshot REST de respaldo descuenta del presupuesto de spot
     }
 
     /* =================== 14) Volumen vs MA20 (1h) =================== */
@@ -58,66 +57,76 @@ public class SpotVolumeFlowService {
 
     /* =================== 15) OBV pendiente (1h) =================== */
 
-    public record ObvSlopeResult(double obv, double deltaPerBar, double pctPerBar, String sign) {}
-
-    public ObvSlopeResult obvSlope(String symbol, String interval) {
-        int limit = 400;
-        List<Candle> candles = client.getKlines(symbol, interval, limit);
-        if (candles.size() < 3) throw new IllegalArgumentException("Datos insuficientes para OBV");
-
-        // OBV clásico
-        double obv = 0.0;
-        for (int i = 1; i < candles.size(); i++) {
-            double prevClose = candles.get(i - 1).close();
-            double close = candles.get(i).close();
-            double vol = candles.get(i).volume();
-            if (close > prevClose) obv += vol;
-            else if (close < prevClose) obv -= vol;
-            // igual → obv sin cambios
-        }
-
-        // delta por vela = diferencia entre OBV último y el inmediatamente anterior
-        // Para calcular obvPrev, repetimos pero hasta penúltima barra
-        double obvPrev = 0.0;
-        for (int i = 1; i < candles.size() - 1; i++) {
-            double prevClose = candles.get(i - 1).close();
-            double close = candles.get(i).close();
-            double vol = candles.get(i).volume();
-            if (close > prevClose) obvPrev += vol;
-            else if (close < prevClose) obvPrev -= vol;
-        }
+    public record ObvSlopeResult(
+            double obv, double deltaPerBar, double pctPerBar, String sign,
+            int bars, Double deltaBars,            // ΔOBV en las últimas 'bars' velas
+            int regressionBars, Double regressionSlope, Double priceRegressionSlope,
+            String divergence,                     // bullish | bearish | none
+            long lastBarOpenTime
+    ) {}
 
+    /**
+     * OBV desde el estado incremental de {@link ObvTracker} (velas cerradas): sin descargar
+     * 400 velas ni recorrerlas dos veces. Coste por petición O(regressionBars).
+     */
+    public ObvSlopeResult obvSlope(String symbol, String interval, int bars, int regressionBars) {
+        int need = Math.max(Math.max(bars, regressionBars), 1) + 1;
+        var w = obvTracker.window(symbol, interval, need);
+        double[] obvs = w.obv();
+        double[] closes = w.close();
+        int n = obvs.length;
+        if (n < 3) throw new IllegalArgumentException("Datos insuficientes para OBV");
+
+        double obv = obvs[n - 1];
+        double obvPrev = obvs[n - 2];
         double delta = obv - obvPrev; // per última barra
         double pct = obvPrev != 0.0 ? (delta / Math.abs(obvPrev)) * 100.0 : 0.0;
         String sign = Math.abs(delta) < 1e-9 ? "flat" : (delta > 0 ? "up" : "down");
 
-        return new ObvSlopeResult(obv, delta, pct, sign);
+        Double deltaBars = n > bars ? obv - obvs[n - 1 - bars] : null;
+
+        int k = Math.min(regressionBars, n);
+        Double obvSlope = null, priceSlope = null;
+        String divergence = "none";
+        if (k >= 3) {
+            obvSlope = regressionSlope(obvs, n - k, n);
+            priceSlope = regressionSlope(closes, n - k, n);
+            // precio sube con OBV bajando (distribución) y viceversa
+            if (priceSlope > 0 && obvSlope < 0) divergence = "bearish";
+            else if (priceSlope < 0 && obvSlope > 0) divergence = "bullish";
+        }
+
+        return new ObvSlopeResult(obv, delta, pct, sign, bars, deltaBars,
+                k, obvSlope, priceSlope, divergence, w.lastOpenTime());
     }
 
-    /* =================== 16) CVD (1h) y 17) Buy/Sell Ratio (1h) =================== */
+    /** Pendiente por barra de la recta de mínimos cuadrados sobre y[from..to). */
+    private static double regressionSlope(double[] y, int from, int to) {
+        int k = to - from;
+        double sx = 0, sy = 0, sxy = 0, sxx = 0;
+        for (int i = 0; i < k; i++) {
+            double v = y[from + i];
+            sx += i;
+            sy += v;
+            sxy += i * v;
+            sxx += (double) i * i;
+        }
+        double den = k * sxx - sx * sx;
+        return den == 0.0 ? 0.0 : (k * sxy - sx * sy) / den;
+    }
 
-    // aggTrades DTO (spot)
-    public static record AggTradeDTO(
-            @JsonProperty("p") String price,
-            @JsonProperty("q") String qty,
-            @JsonProperty("m") boolean isBuyerMaker,
-            @JsonProperty("T") long tradeTime
-    ) {}
+    /* =================== 16) CVD (1h) y 17) Buy/Sell Ratio (1h) =================== */
 
     public record Flow1hResult(double buysVolume, double sellsVolume, double cvd, double buySellRatioPct) {}
 
     public Flow1hResult flowLastHour(String symbol) {
         long end = System.currentTimeMillis();
         long start = end - 60L * 60_000L; // última hora
-        List<AggTradeDTO> trades = getAggTrades(symbol, start, end);
-
-        double buys = 0.0;
-        double sells = 0.0;
-        for (AggTradeDTO t : trades) {
-            double q = safeParseDouble(t.qty);
-            // isBuyerMaker = true ⇒ el buyer es maker ⇒ la agresión la hace el vendedor ⇒ venta agresiva
-            if (t.isBuyerMaker) sells += q; else buys += q;
-        }
+        // paginado por id + buckets de 1m cacheados (antes: una llamada truncada a 1000 trades)
+        var totals = aggTrades.flow(symbol, start, end);
+
+        double buys = totals.buys();
+        double sells = totals.sells();
         double cvd = buys - sells;
         double denom = buys + sells;
         double ratio = denom == 0.0 ? 0.0 : (buys / denom) * 100.0;
@@ -125,42 +134,26 @@ public class SpotVolumeFlowService {
         return new Flow1hResult(buys, sells, cvd, ratio);
     }
 
-    private List<AggTradeDTO> getAggTrades(String symbol, long start, long end) {
-        var ref = new ParameterizedTypeReference<List<AggTradeDTO>>() {};
-        List<AggTradeDTO> trades = rest.get()
-                .uri(uri -> uri.path("/api/v3/aggTrades")
-                        .queryParam("symbol", symbol)
-                        .queryParam("startTime", start)
-                        .queryParam("endTime", end)
-                        .build())
-                .retrieve()
-                .body(ref);
-        return trades != null ? trades : List.of();
-    }
-
     /* =================== 18) Order book imbalance =================== */
 
-    public static record DepthDTO(
-            List<List<String>> bids,
-            List<List<String>> asks
-    ) {}
-
     public record OrderbookImbalanceResult(
             int levels,
             double bidVolume,
             double askVolume,
-            double imbalancePct   // (bid-ask)/(bid+ask)*100
+            double imbalancePct,  // (bid-ask)/(bid+ask)*100
+            String source         // local-book | rest
     ) {}
 
     public OrderbookImbalanceResult orderbookImbalance(String symbol, int levels) {
+        // libro local sincronizado por WS: sin llamada REST
+        var local = books.book(symbol);
+        if (local.isPresent()) {
+            var r = local.get().imbalance(levels);
+            return new OrderbookImbalanceResult(r.levels(), r.bidVolume(), r.askVolume(), r.imbalancePct(), "local-book");
+        }
+
         int limit = clampDepthLimit(levels);
-        DepthDTO depth = rest.get()
-                .uri(uri -> uri.path("/api/v3/depth")
-                        .queryParam("symbol", symbol)
-                        .queryParam("limit", limit)
-                        .build())
-                .retrieve()
-                .body(DepthDTO.class);
+        SpotClient.Depth depth = spot.getDepth(symbol, limit);
 
         if (depth == null) throw new IllegalStateException("Depth nulo");
 
@@ -181,7 +174,37 @@ public class SpotVolumeFlowService {
         double denom = bidVol + askVol;
         double imbalance = denom == 0.0 ? 0.0 : ((bidVol - askVol) / denom) * 100.0;
 
-        return new OrderbookImbalanceResult(Math.min(levels, Math.min(bids.size(), asks.size())), bidVol, askVol, imbalance);
+        return new OrderbookImbalanceResult(Math.min(levels, Math.min(bids.size(), asks.size())), bidVol, askVol, imbalance, "rest");
+    }
+
+    /* =================== Profundidad acumulada y microprice (libro local) =================== */
+
+    public record OrderbookDepthResult(
+            int levels,
+            double[] bidCumulative,
+            double[] askCumulative,
+            LocalOrderBook.Top top,
+            double withinPct,
+            Double bidDepthWithin,   // cantidad bid en [mid·(1-pct), mejor bid]
+            Double askDepthWithin,   // cantidad ask en [mejor ask, mid·(1+pct)]
+            long lastUpdateId,
+            long ageMs
+    ) {}
+
+    public OrderbookDepthResult orderbookDepth(String symbol, int levels, double withinPct) {
+        LocalOrderBook book = books.book(symbol)
+                .orElseThrow(() -> new IllegalStateException("Libro local no disponible para " + symbol));
+        double[] bids = book.cumulativeDepth(true, levels);
+        double[] asks = book.cumulativeDepth(false, levels);
+        var top = book.top();
+        Double bidWithin = null, askWithin = null;
+        if (top != null) {
+            bidWithin = book.cumulativeTo(true, top.mid() * (1 - withinPct / 100.0));
+            askWithin = book.cumulativeTo(false, top.mid() * (1 + withinPct / 100.0));
+        }
+        long age = Math.max(0, System.currentTimeMillis() - book.lastEventMs());
+        return new OrderbookDepthResult(Math.min(bids.length, asks.length), bids, asks,
+                top, withinPct, bidWithin, askWithin, book.lastUpdateId(), age);
     }
 
     /* =================== helpers =================== */
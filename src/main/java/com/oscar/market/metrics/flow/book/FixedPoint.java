@@ -0,0 +1,46 @@
+package com.oscar.market.metrics.flow.book;
+
+/**
+ * Precios y cantidades en punto fijo (8 decimales, la precisión máxima de Binance).
+ * El parseo lee el CharSequence directamente: sin Double.parseDouble ni objetos intermedios.
+ */
+public final class FixedPoint {
+
+    public static final long SCALE = 100_000_000L;
+    private static final int DECIMALS = 8;
+
+    private FixedPoint() {}
+
+    /** "67123.45000000" → 6712345000000. Decimales de más se truncan. */
+    public static long parse(CharSequence s) {
+        int n = s.length();
+        int i = 0;
+        boolean neg = false;
+        if (n > 0 && s.charAt(0) == '-') { neg = true; i++; }
+        long intPart = 0;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '.') { i++; break; }
+            if (c < '0' || c > '9') throw new NumberFormatException("Número inválido: " + s);
+            intPart = intPart * 10 + (c - '0');
+        }
+        long frac = 0;
+        int digits = 0;
+        for (; i < n && digits < DECIMALS; i++, digits++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') throw new NumberFormatException("Número inválido: " + s);
+            frac = frac * 10 + (c - '0');
+        }
+        for (; digits < DECIMALS; digits++) frac *= 10;
+        long v = intPart * SCALE + frac;
+        return neg ? -v : v;
+    }
+
+    public static double toDouble(long fixed) {
+        return fixed / (double) SCALE;
+    }
+
+    public static long fromDouble(double v) {
+        return Math.round(v * SCALE);
+    }
+}
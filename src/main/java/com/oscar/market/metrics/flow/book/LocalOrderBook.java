@@ -0,0 +1,95 @@
+package com.oscar.market.metrics.flow.book;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.SpotClient.Depth;
+
+/**
+ * Réplica local del libro de un símbolo (snapshot REST + diffs de @depth).
+ * Escribe el hilo del WS; las consultas HTTP leen bajo el mismo monitor.
+ */
+public final class LocalOrderBook {
+
+    private final String symbol;
+    private final PriceLevelBook levels;
+    private long lastUpdateId;
+    private long lastEventMs;
+
+    LocalOrderBook(String symbol, int maxLevels) {
+        this.symbol = symbol;
+        this.levels = new PriceLevelBook(maxLevels);
+    }
+
+    public String symbol() { return symbol; }
+
+    synchronized void load(Depth d) {
+        levels.clear();
+        if (d.bids() != null) for (List<String> l : d.bids()) set(true, l.get(0), l.get(1));
+        if (d.asks() != null) for (List<String> l : d.asks()) set(false, l.get(0), l.get(1));
+        lastUpdateId = d.lastUpdateId();
+        lastEventMs = System.currentTimeMillis();
+    }
+
+    /** Aplica un depthUpdate ya validado en secuencia. */
+    synchronized void apply(JsonNode b, JsonNode a, long finalUpdateId, long eventMs) {
+        applySide(true, b);
+        applySide(false, a);
+        lastUpdateId = finalUpdateId;
+        lastEventMs = eventMs;
+    }
+
+    private void applySide(boolean bid, JsonNode side) {
+        if (side == null) return;
+        for (JsonNode l : side) set(bid, l.get(0).textValue(), l.get(1).textValue());
+    }
+
+    private void set(boolean bid, String price, String qty) {
+        if (price == null || qty == null) return;
+        try {
+            levels.update(bid, FixedPoint.parse(price), FixedPoint.toDouble(FixedPoint.parse(qty)));
+        } catch (NumberFormatException ignored) {}
+    }
+
+    public synchronized long lastUpdateId() { return lastUpdateId; }
+
+    public synchronized long lastEventMs() { return lastEventMs; }
+
+    /* =================== consultas =================== */
+
+    public record Imbalance(int levels, double bidVolume, double askVolume, double imbalancePct) {}
+
+    public synchronized Imbalance imbalance(int n) {
+        double bidVol = levels.cumulative(true, n);
+        double askVol = levels.cumulative(false, n);
+        double denom = bidVol + askVol;
+        double imbalance = denom == 0.0 ? 0.0 : ((bidVol - askVol) / denom) * 100.0;
+        int used = Math.min(n, Math.min(levels.depth(true), levels.depth(false)));
+        return new Imbalance(used, bidVol, askVol, imbalance);
+    }
+
+    /** Profundidad acumulada de los 'n' mejores niveles de un lado. */
+    public synchronized double[] cumulativeDepth(boolean bidSide, int n) {
+        int k = Math.min(n, levels.depth(bidSide));
+        double[] out = new double[k];
+        for (int i = 0; i < k; i++) out[i] = levels.cumulative(bidSide, i + 1);
+        return out;
+    }
+
+    /** Cantidad acumulada desde el mejor nivel hasta 'price' (incluido). */
+    public synchronized double cumulativeTo(boolean bidSide, double price) {
+        return levels.cumulativeTo(bidSide, FixedPoint.fromDouble(price));
+    }
+
+    public record Top(double bidPrice, double bidQty, double askPrice, double askQty,
+                      double spread, double mid, double microprice) {}
+
+    /** Mejor bid/ask y microprice = (bid·askQty + ask·bidQty) / (bidQty + askQty). Null si un lado está vacío. */
+    public synchronized Top top() {
+        if (levels.depth(true) == 0 || levels.depth(false) == 0) return null;
+        double bp = FixedPoint.toDouble(levels.tick(true, 0)), bq = levels.qty(true, 0);
+        double ap = FixedPoint.toDouble(levels.tick(false, 0)), aq = levels.qty(false, 0);
+        double micro = (bp * aq + ap * bq) / (bq + aq);
+        return new Top(bp, bq, ap, aq, ap - bp, (ap + bp) / 2.0, micro);
+    }
+}
@@ -0,0 +1,169 @@
+package com.oscar.market.metrics.flow.book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.SpotClient;
+import com.oscar.market.marketdata.SpotClient.Depth;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Mantiene un {@link LocalOrderBook} por símbolo seguido con el procedimiento estándar de Binance:
+ * bufferizar diffs, pedir snapshot, descartar u <= lastUpdateId, aplicar en secuencia (U == prev u + 1)
+ * y resincronizar ante huecos o reconexiones.
+ */
+@Component
+public class OrderBookMirror implements SpotStreamHandler {
+
+    static final String DEPTH = "depth@100ms";
+    private static final int MAX_PENDING = 5000;
+    private static final long SNAPSHOT_RETRY_MS = 2000;
+
+    private final SpotClient spot;
+    private final Map<String, Sync> syncs = new ConcurrentHashMap<>();
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "orderbook-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${market.book.max-levels:5000}")
+    private int maxLevels;
+
+    @Value("${market.book.snapshot-limit:1000}")
+    private int snapshotLimit;
+
+    public OrderBookMirror(SpotClient spot) {
+        this.spot = spot;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        snapshots.shutdownNow();
+    }
+
+    /** Libro sincronizado del símbolo, si existe. */
+    public Optional<LocalOrderBook> book(String symbol) {
+        Sync s = syncs.get(symbol);
+        if (s == null) return Optional.empty();
+        synchronized (s) {
+            return s.synced ? Optional.of(s.book) : Optional.empty();
+        }
+    }
+
+    @Override
+    public List<String> streamSuffixes() {
+        return List.of(DEPTH);
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        Sync s = syncs.computeIfAbsent(symbol, sym -> new Sync(sym, maxLevels));
+        long first = data.path("U").asLong();
+        long last = data.path("u").asLong();
+        synchronized (s) {
+            if (!s.synced) {
+                if (s.pending.size() >= MAX_PENDING) s.pending.clear();
+                s.pending.add(data);
+                requestSnapshot(s);
+                return;
+            }
+            long local = s.book.lastUpdateId();
+            if (last <= local) return;
+            if (first > local + 1) { // hueco → resync
+                s.synced = false;
+                s.pending.clear();
+                s.pending.add(data);
+                requestSnapshot(s);
+                return;
+            }
+            s.book.apply(data.get("b"), data.get("a"), last, data.path("E").asLong());
+        }
+    }
+
+    @Override
+    public void onConnected() {
+        resetAll();
+    }
+
+    @Override
+    public void onDisconnected() {
+        resetAll();
+    }
+
+    private void resetAll() {
+        for (Sync s : syncs.values()) {
+            synchronized (s) {
+                s.synced = false;
+                s.pending.clear();
+            }
+        }
+    }
+
+    /* bajo el monitor de s */
+    private void requestSnapshot(Sync s) {
+        long now = System.currentTimeMillis();
+        if (s.snapshotInFlight || now < s.nextSnapshotAtMs) return;
+        s.snapshotInFlight = true;
+        snapshots.submit(() -> loadSnapshot(s));
+    }
+
+    private void loadSnapshot(Sync s) {
+        Depth d = null;
+        try {
+            d = spot.getDepth(s.symbol, snapshotLimit);
+        } catch (Exception ignored) {}
+
+        synchronized (s) {
+            s.snapshotInFlight = false;
+            // sin snapshot, o anterior al primer diff bufferizado → pedir otro más tarde
+            if (d == null || s.pending.isEmpty()
+                    || d.lastUpdateId() < s.pending.getFirst().path("U").asLong()) {
+                s.nextSnapshotAtMs = System.currentTimeMillis() + SNAPSHOT_RETRY_MS;
+                return;
+            }
+
+            s.book.load(d);
+            long local = d.lastUpdateId();
+            for (JsonNode ev : s.pending) {
+                long first = ev.path("U").asLong();
+                long last = ev.path("u").asLong();
+                if (last <= local) continue;
+                if (first > local + 1) { // hueco dentro del buffer
+                    s.pending.clear();
+                    return;
+                }
+                s.book.apply(ev.get("b"), ev.get("a"), last, ev.path("E").asLong());
+                local = last;
+            }
+            s.pending.clear();
+            s.synced = true;
+        }
+    }
+
+    /** Estado de sincronización por símbolo (guardado por su propio monitor). */
+    private static final class Sync {
+        final String symbol;
+        final LocalOrderBook book;
+        final List<JsonNode> pending = new ArrayList<>();
+        boolean synced;
+        boolean snapshotInFlight;
+        long nextSnapshotAtMs;
+
+        Sync(String symbol, int maxLevels) {
+            this.symbol = symbol;
+            this.book = new LocalOrderBook(symbol, maxLevels);
+        }
+    }
+}
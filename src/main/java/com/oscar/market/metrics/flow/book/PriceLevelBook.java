@@ -0,0 +1,49 @@
+package com.oscar.market.metrics.flow.book;
+
+/**
+ * Libro de niveles de precio en punto fijo ({@link FixedPoint}) con bids y asks en arrays
+ * primitivos preasignados. Un solo escritor; la sincronización la pone quien lo contiene.
+ */
+public final class PriceLevelBook {
+
+    private final PriceLevelSide bids;
+    private final PriceLevelSide asks;
+
+    public PriceLevelBook(int maxLevels) {
+        this.bids = new PriceLevelSide(true, maxLevels);
+        this.asks = new PriceLevelSide(false, maxLevels);
+    }
+
+    public void clear() {
+        bids.clear();
+        asks.clear();
+    }
+
+    /** Fija un nivel (qty == 0 lo elimina). Sin asignaciones. */
+    public void update(boolean bid, long tick, double qty) {
+        (bid ? bids : asks).set(tick, qty);
+    }
+
+    public int depth(boolean bid) {
+        return (bid ? bids : asks).size();
+    }
+
+    /** Tick del nivel i (0 = mejor precio). */
+    public long tick(boolean bid, int i) {
+        return (bid ? bids : asks).tick(i);
+    }
+
+    public double qty(boolean bid, int i) {
+        return (bid ? bids : asks).qty(i);
+    }
+
+    /** Cantidad acumulada de los 'levels' mejores niveles. */
+    public double cumulative(boolean bid, int levels) {
+        return (bid ? bids : asks).cumulative(levels);
+    }
+
+    /** Cantidad acumulada hasta un precio (incluido), desde el mejor nivel. */
+    public double cumulativeTo(boolean bid, long tick) {
+        return (bid ? bids : asks).cumulativeTo(tick);
+    }
+}
@@ -0,0 +1,101 @@
+package com.oscar.market.metrics.flow.book;
+
+/**
+ * Un lado del libro en arrays primitivos ordenados por tick de precio (mejor precio en índice 0).
+ * Localización por búsqueda binaria O(log n); insertar/borrar desplaza con System.arraycopy
+ * (memmove acotado por maxLevels). Todo se reserva al construir: 0 asignaciones por update.
+ * El acumulado de cantidades (prefijo) se recalcula perezosamente desde el primer nivel modificado.
+ */
+final class PriceLevelSide {
+
+    private final boolean bids; // bids: tick descendente; asks: ascendente
+    private final long[] ticks;
+    private final double[] qtys;
+    private final double[] prefix;
+    private int size;
+    private int prefixValid; // prefix[0..prefixValid-1] al día
+
+    PriceLevelSide(boolean bids, int maxLevels) {
+        this.bids = bids;
+        this.ticks = new long[maxLevels];
+        this.qtys = new double[maxLevels];
+        this.prefix = new double[maxLevels];
+    }
+
+    void clear() {
+        size = 0;
+        prefixValid = 0;
+    }
+
+    /** Fija la cantidad de un nivel; qty == 0 elimina el nivel. */
+    void set(long tick, double qty) {
+        int i = search(tick);
+        if (i >= 0) {
+            if (qty == 0.0) {
+                System.arraycopy(ticks, i + 1, ticks, i, size - i - 1);
+                System.arraycopy(qtys, i + 1, qtys, i, size - i - 1);
+                size--;
+            } else {
+                qtys[i] = qty;
+            }
+            invalidateFrom(i);
+            return;
+        }
+        if (qty == 0.0) return;
+        int at = -i - 1;
+        if (size == ticks.length) {
+            if (at >= size) return; // más lejos que el peor nivel guardado
+            size--;                  // descarta el peor nivel
+        }
+        System.arraycopy(ticks, at, ticks, at + 1, size - at);
+        System.arraycopy(qtys, at, qtys, at + 1, size - at);
+        ticks[at] = tick;
+        qtys[at] = qty;
+        size++;
+        invalidateFrom(at);
+    }
+
+    int size() { return size; }
+
+    long tick(int i) { return ticks[i]; }
+
+    double qty(int i) { return qtys[i]; }
+
+    /** Cantidad acumulada de los 'levels' mejores niveles. */
+    double cumulative(int levels) {
+        int n = Math.min(levels, size);
+        if (n <= 0) return 0.0;
+        ensurePrefix(n);
+        return prefix[n - 1];
+    }
+
+    /** Cantidad acumulada de los niveles con precio igual o mejor que 'tick'. */
+    double cumulativeTo(long tick) {
+        int i = search(tick);
+        return cumulative(i >= 0 ? i + 1 : -i - 1);
+    }
+
+    private void invalidateFrom(int i) {
+        if (i < prefixValid) prefixValid = i;
+    }
+
+    private void ensurePrefix(int n) {
+        for (int i = prefixValid; i < n; i++) {
+            prefix[i] = (i == 0 ? 0.0 : prefix[i - 1]) + qtys[i];
+        }
+        if (n > prefixValid) prefixValid = n;
+    }
+
+    /** Búsqueda binaria en el orden del lado. Devuelve índice o -(punto de inserción) - 1. */
+    private int search(long tick) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long t = ticks[mid];
+            if (t == tick) return mid;
+            boolean before = bids ? t > tick : t < tick;
+            if (before) lo = mid + 1; else hi = mid - 1;
+        }
+        return -(lo + 1);
+    }
+}
@@ -0,0 +1,173 @@
+package com.oscar.market.metrics.flow.profile;
+
+import java.util.Arrays;
+
+/**
+ * Histograma de volumen comprador/vendedor por buckets de precio de ancho fijo
+ * (bucket = floor(precio / ancho)). Arrays primitivos que crecen en ambos sentidos.
+ */
+public final class PriceHistogram {
+
+    private final double width;
+    private long base;        // índice de bucket del slot 0
+    private double[] buys;
+    private double[] sells;
+    private long lo = Long.MAX_VALUE; // rango de buckets usados [lo, hi]
+    private long hi = Long.MIN_VALUE;
+
+    public PriceHistogram(double width) {
+        this(width, 16);
+    }
+
+    private PriceHistogram(double width, int capacity) {
+        this.width = width;
+        this.buys = new double[capacity];
+        this.sells = new double[capacity];
+    }
+
+    public double width() { return width; }
+
+    public boolean isEmpty() { return lo > hi; }
+
+    public void clear() {
+        if (!isEmpty()) {
+            Arrays.fill(buys, 0.0);
+            Arrays.fill(sells, 0.0);
+        }
+        lo = Long.MAX_VALUE;
+        hi = Long.MIN_VALUE;
+    }
+
+    /** sellAggressor = isBuyerMaker del trade. */
+    public void add(double price, double qty, boolean sellAggressor) {
+        addBucket((long) Math.floor(price / width), sellAggressor ? 0.0 : qty, sellAggressor ? qty : 0.0);
+    }
+
+    /** Suma otro histograma del mismo ancho. */
+    public void addAll(PriceHistogram other) {
+        if (other.isEmpty()) return;
+        if (other.width != width) throw new IllegalArgumentException("Anchos de bucket distintos");
+        for (long b = other.lo; b <= other.hi; b++) {
+            int j = (int) (b - other.base);
+            if (other.buys[j] != 0.0 || other.sells[j] != 0.0) addBucket(b, other.buys[j], other.sells[j]);
+        }
+    }
+
+    /** Nuevo histograma con buckets 'factor' veces más anchos. */
+    public PriceHistogram rebin(int factor) {
+        if (factor <= 1) return copy();
+        PriceHistogram out = new PriceHistogram(width * factor);
+        for (long b = lo; b <= hi; b++) {
+            int j = (int) (b - base);
+            if (buys[j] != 0.0 || sells[j] != 0.0) out.addBucket(Math.floorDiv(b, factor), buys[j], sells[j]);
+        }
+        return out;
+    }
+
+    public PriceHistogram copy() {
+        PriceHistogram out = new PriceHistogram(width, buys.length);
+        out.base = base;
+        System.arraycopy(buys, 0, out.buys, 0, buys.length);
+        System.arraycopy(sells, 0, out.sells, 0, sells.length);
+        out.lo = lo;
+        out.hi = hi;
+        return out;
+    }
+
+    /* =================== lectura =================== */
+
+    public long lowBucket() { return lo; }
+
+    public long highBucket() { return hi; }
+
+    /** Precio inferior del bucket. */
+    public double price(long bucket) { return bucket * width; }
+
+    public double buys(long bucket) { return in(bucket) ? buys[(int) (bucket - base)] : 0.0; }
+
+    public double sells(long bucket) { return in(bucket) ? sells[(int) (bucket - base)] : 0.0; }
+
+    public double total(long bucket) { return buys(bucket) + sells(bucket); }
+
+    public double totalBuys() {
+        double s = 0.0;
+        for (long b = lo; b <= hi; b++) s += buys[(int) (b - base)];
+        return s;
+    }
+
+    public double totalSells() {
+        double s = 0.0;
+        for (long b = lo; b <= hi; b++) s += sells[(int) (b - base)];
+        return s;
+    }
+
+    /** Bucket con más volumen (Point of Control). Long.MIN_VALUE si está vacío. */
+    public long poc() {
+        long best = Long.MIN_VALUE;
+        double bestVol = -1.0;
+        for (long b = lo; b <= hi; b++) {
+            double v = total(b);
+            if (v > bestVol) { bestVol = v; best = b; }
+        }
+        return best;
+    }
+
+    /**
+     * Value area: desde el POC se añade el bucket vecino (arriba o abajo) con más volumen
+     * hasta cubrir 'pct' del total. Devuelve {bucketBajo, bucketAlto} o null si está vacío.
+     */
+    public long[] valueArea(double pct) {
+        if (isEmpty()) return null;
+        double total = totalBuys() + totalSells();
+        double target = total * pct;
+        long poc = poc();
+        long down = poc, up = poc;
+        double acc = total(poc);
+        while (acc < target && (down > lo || up < hi)) {
+            double below = down > lo ? total(down - 1) : -1.0;
+            double above = up < hi ? total(up + 1) : -1.0;
+            if (above >= below) acc += total(++up);
+            else acc += total(--down);
+        }
+        return new long[]{down, up};
+    }
+
+    private boolean in(long bucket) {
+        return bucket >= lo && bucket <= hi;
+    }
+
+    private void addBucket(long bucket, double b, double s) {
+        ensure(bucket);
+        int j = (int) (bucket - base);
+        buys[j] += b;
+        sells[j] += s;
+        if (bucket < lo) lo = bucket;
+        if (bucket > hi) hi = bucket;
+    }
+
+    private void ensure(long bucket) {
+        if (isEmpty()) {
+            // vacío: recentra el array alrededor del primer bucket
+            if (bucket < base || bucket - base >= buys.length) base = bucket - buys.length / 2;
+            return;
+        }
+        if (bucket < base) {
+            int extra = (int) Math.max(base - bucket, buys.length / 2);
+            grow(extra, 0);
+        } else if (bucket - base >= buys.length) {
+            int extra = (int) Math.max(bucket - base - buys.length + 1, buys.length / 2);
+            grow(0, extra);
+        }
+    }
+
+    private void grow(int front, int back) {
+        int len = buys.length + front + back;
+        double[] nb = new double[len];
+        double[] ns = new double[len];
+        System.arraycopy(buys, 0, nb, front, buys.length);
+        System.arraycopy(sells, 0, ns, front, sells.length);
+        buys = nb;
+        sells = ns;
+        base -= front;
+    }
+}
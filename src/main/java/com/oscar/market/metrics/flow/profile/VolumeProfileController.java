@@ -0,0 +1,92 @@
+package com.oscar.market.metrics.flow.profile;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+
+import com.oscar.market.metrics.session.TradingSession;
+
+@RestController
+@RequestMapping("/metrics")
+public class VolumeProfileController {
+
+    private final VolumeProfileService service;
+
+    @Value("${DEFAULT_SYMBOL:BTCUSDC}")
+    private String defaultSymbol;
+
+    public VolumeProfileController(VolumeProfileService service) {
+        this.service = service;
+    }
+
+    /** Volume profile (POC + value area): scope = today | session | range */
+    @GetMapping("/volume-profile")
+    public Map<String, Object> volumeProfile(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false, defaultValue = "today") String scope,
+            @RequestParam(required = false) String session,   // ASIA | LONDON | NEW_YORK
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to,
+            @RequestParam(required = false, defaultValue = "0") double bucket
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        var r = switch (scope.toLowerCase(Locale.ROOT)) {
+            case "today" -> service.today(sym, bucket);
+            case "session" -> {
+                if (session == null || session.isBlank()) throw new IllegalArgumentException("Falta 'session'");
+                yield service.session(sym, TradingSession.valueOf(session.toUpperCase(Locale.ROOT)), bucket);
+            }
+            case "range" -> {
+                if (from == null) throw new IllegalArgumentException("Falta 'from'");
+                yield service.range(sym, from, to != null ? to : System.currentTimeMillis(), bucket);
+            }
+            default -> throw new IllegalArgumentException("scope inválido: " + scope);
+        };
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", sym);
+        out.put("scope", scope);
+        if (session != null) out.put("session", session.toUpperCase(Locale.ROOT));
+        out.put("from", r.from());
+        out.put("to", r.to());
+        out.put("bucketWidth", r.bucketWidth());
+        out.put("poc", r.poc());
+        out.put("valueAreaLow", r.valueAreaLow());
+        out.put("valueAreaHigh", r.valueAreaHigh());
+        out.put("totalBuys", r.totalBuys());
+        out.put("totalSells", r.totalSells());
+        out.put("levels", r.levels());
+        out.put("completeFrom", r.completeFrom());
+        out.put("source", "binance-ws");
+        return out;
+    }
+
+    /** Footprint bid/ask por vela (1m, 5m, 15m, 30m, 1h) */
+    @GetMapping("/footprint")
+    public Map<String, Object> footprint(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false, defaultValue = "5m") String interval,
+            @RequestParam(required = false, defaultValue = "12") int candles,
+            @RequestParam(required = false, defaultValue = "0") double bucket
+    ) {
+        String sym = (symbol == null || symbol.isBlank()) ? defaultSymbol : symbol;
+        int minutes = switch (interval) {
+            case "1m" -> 1;
+            case "5m" -> 5;
+            case "15m" -> 15;
+            case "30m" -> 30;
+            case "1h" -> 60;
+            default -> throw new IllegalArgumentException("interval no soportado: " + interval);
+        };
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("symbol", sym);
+        out.put("interval", interval);
+        out.put("candles", service.footprint(sym, minutes, Math.max(1, candles), bucket));
+        out.put("source", "binance-ws");
+        return out;
+    }
+}
@@ -0,0 +1,266 @@
+package com.oscar.market.metrics.flow.profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+import com.oscar.market.metrics.flow.MinuteFlowBuckets;
+import com.oscar.market.metrics.flow.book.FixedPoint;
+import com.oscar.market.metrics.session.TradingSession;
+
+/**
+ * Volume profile y footprint construidos en streaming desde @aggTrade.
+ * Por símbolo mantiene: un footprint por vela de 1m (anillo), un histograma por día UTC
+ * y uno por sesión (Asia/London/NY). Los minutos completos alimentan también
+ * {@link MinuteFlowBuckets}, así el CVD de símbolos con stream no descarga trades.
+ */
+@Service
+public class VolumeProfileService implements SpotStreamHandler {
+
+    static final String AGG_TRADE = "aggTrade";
+    private static final long MINUTE = 60_000L;
+
+    private final MinuteFlowBuckets flowBuckets;
+    private final Map<String, SymbolProfile> profiles = new ConcurrentHashMap<>();
+
+    @Value("${market.profile.bucket-width:10}")
+    private double bucketWidth;
+
+    @Value("${market.profile.days:2}")
+    private int keepDays;
+
+    @Value("${market.profile.value-area-pct:0.70}")
+    private double valueAreaPct;
+
+    public VolumeProfileService(MinuteFlowBuckets flowBuckets) {
+        this.flowBuckets = flowBuckets;
+    }
+
+    /* =================== ingesta =================== */
+
+    @Override
+    public List<String> streamSuffixes() {
+        return List.of(AGG_TRADE);
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        String p = data.path("p").textValue();
+        String q = data.path("q").textValue();
+        if (p == null || q == null) return;
+        double price, qty;
+        try {
+            price = FixedPoint.toDouble(FixedPoint.parse(p));
+            qty = FixedPoint.toDouble(FixedPoint.parse(q));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        boolean sellAggressor = data.path("m").asBoolean();
+        long ts = data.path("T").asLong();
+        if (price <= 0 || qty <= 0 || ts <= 0) return;
+
+        SymbolProfile sp = profiles.computeIfAbsent(symbol, s -> new SymbolProfile(s, bucketWidth, Math.max(1, keepDays)));
+        sp.add(price, qty, sellAggressor, ts);
+    }
+
+    @Override
+    public void onConnected() {
+        long next = (Math.floorDiv(System.currentTimeMillis(), MINUTE) + 1) * MINUTE;
+        for (SymbolProfile sp : profiles.values()) sp.markCompleteFrom(next);
+    }
+
+    @Override
+    public void onDisconnected() {
+        for (SymbolProfile sp : profiles.values()) sp.markCompleteFrom(Long.MAX_VALUE);
+    }
+
+    /* =================== consultas =================== */
+
+    public record Level(double price, double buys, double sells, double total) {}
+
+    public record ProfileResult(
+            long from, long to, double bucketWidth,
+            List<Level> levels,
+            Double poc, Double valueAreaLow, Double valueAreaHigh,
+            double totalBuys, double totalSells,
+            Long completeFrom   // desde cuándo el stream no ha tenido cortes
+    ) {}
+
+    /** Perfil del día UTC en curso. */
+    public ProfileResult today(String symbol, double bucket) {
+        long day = TradingSession.dayStart(System.currentTimeMillis());
+        SymbolProfile sp = require(symbol);
+        PriceHistogram h;
+        synchronized (sp) { h = sp.day(day, 0).copy(); }
+        return toResult(sp, h, day, day + TradingSession.DAY_MS - 1, bucket);
+    }
+
+    /** Perfil de una sesión del día UTC en curso. */
+    public ProfileResult session(String symbol, TradingSession session, double bucket) {
+        long day = TradingSession.dayStart(System.currentTimeMillis());
+        SymbolProfile sp = require(symbol);
+        PriceHistogram h;
+        synchronized (sp) { h = sp.day(day, session.ordinal() + 1).copy(); }
+        return toResult(sp, h, session.start(day), session.end(day), bucket);
+    }
+
+    /** Perfil anclado en [from, to] sumando footprints de 1m retenidos (recortado a la ventana retenida). */
+    public ProfileResult range(String symbol, long from, long to, double bucket) {
+        if (to < from) throw new IllegalArgumentException("'to' debe ser >= 'from'");
+        SymbolProfile sp = require(symbol);
+        // el bucle va bajo el monitor que necesita add(): nunca más minutos de los retenidos
+        long now = System.currentTimeMillis();
+        long oldest = (Math.floorDiv(now, MINUTE) - sp.minutes.length + 1) * MINUTE;
+        long f = Math.max(from, oldest), t = Math.min(to, now);
+        if (t < f) throw new IllegalArgumentException("Rango fuera de los " + sp.days + " días retenidos");
+        PriceHistogram h = new PriceHistogram(bucketWidth);
+        synchronized (sp) {
+            for (long m = Math.floorDiv(f, MINUTE); m <= Math.floorDiv(t, MINUTE); m++) {
+                PriceHistogram fm = sp.minute(m);
+                if (fm != null) h.addAll(fm);
+            }
+        }
+        return toResult(sp, h, f, t, bucket);
+    }
+
+    public record FootprintCandle(long openTime, List<Level> levels, double buys, double sells,
+                                  double delta, Double poc) {}
+
+    /** Footprint bid/ask de las últimas 'candles' velas de 'minutesPerCandle'. */
+    public List<FootprintCandle> footprint(String symbol, int minutesPerCandle, int candles, double bucket) {
+        SymbolProfile sp = require(symbol);
+        // más allá de la ventana retenida no hay footprints: no se recorren minutos vacíos
+        candles = Math.min(candles, Math.max(1, sp.minutes.length / minutesPerCandle));
+        int factor = factor(bucket);
+        long span = minutesPerCandle * MINUTE;
+        long lastOpen = Math.floorDiv(System.currentTimeMillis(), span) * span;
+        List<FootprintCandle> out = new ArrayList<>(candles);
+        for (int c = candles - 1; c >= 0; c--) {
+            long open = lastOpen - c * span;
+            PriceHistogram h = new PriceHistogram(bucketWidth);
+            synchronized (sp) {
+                for (long m = open / MINUTE; m < (open + span) / MINUTE; m++) {
+                    PriceHistogram fm = sp.minute(m);
+                    if (fm != null) h.addAll(fm);
+                }
+            }
+            if (h.isEmpty()) continue;
+            PriceHistogram r = h.rebin(factor);
+            double b = r.totalBuys(), s = r.totalSells();
+            out.add(new FootprintCandle(open, levels(r), b, s, b - s, r.price(r.poc())));
+        }
+        return out;
+    }
+
+    private ProfileResult toResult(SymbolProfile sp, PriceHistogram h, long from, long to, double bucket) {
+        PriceHistogram r = h.rebin(factor(bucket));
+        Long completeFrom;
+        synchronized (sp) { completeFrom = sp.completeFrom == Long.MAX_VALUE ? null : sp.completeFrom; }
+        if (r.isEmpty()) {
+            return new ProfileResult(from, to, r.width(), List.of(), null, null, null, 0.0, 0.0, completeFrom);
+        }
+        long[] va = r.valueArea(valueAreaPct);
+        return new ProfileResult(from, to, r.width(), levels(r),
+                r.price(r.poc()), r.price(va[0]), r.price(va[1]) + r.width(),
+                r.totalBuys(), r.totalSells(), completeFrom);
+    }
+
+    private static List<Level> levels(PriceHistogram h) {
+        List<Level> out = new ArrayList<>();
+        for (long b = h.lowBucket(); b <= h.highBucket(); b++) {
+            double t = h.total(b);
+            if (t > 0) out.add(new Level(h.price(b), h.buys(b), h.sells(b), t));
+        }
+        return out;
+    }
+
+    private int factor(double bucket) {
+        return bucket <= bucketWidth ? 1 : (int) Math.round(bucket / bucketWidth);
+    }
+
+    private SymbolProfile require(String symbol) {
+        SymbolProfile sp = profiles.get(symbol);
+        if (sp == null) throw new IllegalStateException("Sin stream de trades para " + symbol);
+        return sp;
+    }
+
+    /** Estado por símbolo, guardado por su propio monitor. */
+    private final class SymbolProfile {
+        final String symbol;
+        final double width;
+        final int days;
+        final long[] minuteKeys;
+        final PriceHistogram[] minutes;
+        final Map<Long, PriceHistogram[]> byDay = new HashMap<>(); // [día, ASIA, LONDON, NEW_YORK]
+        long currentMinute = Long.MIN_VALUE;
+        long completeFrom = Long.MAX_VALUE;
+
+        SymbolProfile(String symbol, double width, int days) {
+            this.symbol = symbol;
+            this.width = width;
+            this.days = days;
+            int cap = days * 1440;
+            this.minuteKeys = new long[cap];
+            this.minutes = new PriceHistogram[cap];
+            Arrays.fill(minuteKeys, Long.MIN_VALUE);
+            // el primer trade recibido ya implica conexión abierta
+            this.completeFrom = (Math.floorDiv(System.currentTimeMillis(), MINUTE) + 1) * MINUTE;
+        }
+
+        synchronized void markCompleteFrom(long ts) {
+            completeFrom = ts;
+        }
+
+        synchronized void add(double price, double qty, boolean sellAggressor, long ts) {
+            long m = Math.floorDiv(ts, MINUTE);
+            if (m > currentMinute) {
+                closeMinute(currentMinute);
+                currentMinute = m;
+            }
+            int slot = (int) Math.floorMod(m, (long) minutes.length);
+            if (minuteKeys[slot] != m) {
+                if (m < currentMinute) return; // minuto ya reciclado
+                if (minutes[slot] == null) minutes[slot] = new PriceHistogram(width);
+                else minutes[slot].clear();
+                minuteKeys[slot] = m;
+            }
+            minutes[slot].add(price, qty, sellAggressor);
+
+            long day = TradingSession.dayStart(ts);
+            day(day, 0).add(price, qty, sellAggressor);
+            TradingSession s = TradingSession.at(ts);
+            if (s != null) day(day, s.ordinal() + 1).add(price, qty, sellAggressor);
+        }
+
+        /** Cierra un minuto: si se vio entero, pasa compras/ventas a la caché de CVD. */
+        private void closeMinute(long m) {
+            if (m == Long.MIN_VALUE || m * MINUTE < completeFrom) return;
+            PriceHistogram h = minute(m);
+            if (h != null) flowBuckets.put(symbol, m, h.totalBuys(), h.totalSells());
+        }
+
+        PriceHistogram minute(long m) {
+            int slot = (int) Math.floorMod(m, (long) minutes.length);
+            return minuteKeys[slot] == m ? minutes[slot] : null;
+        }
+
+        PriceHistogram day(long day, int idx) {
+            PriceHistogram[] hs = byDay.get(day);
+            if (hs == null) {
+                hs = new PriceHistogram[1 + TradingSession.values().length];
+                for (int i = 0; i < hs.length; i++) hs[i] = new PriceHistogram(width);
+                byDay.put(day, hs);
+                byDay.keySet().removeIf(d -> d <= day - days * TradingSession.DAY_MS);
+            }
+            return hs[idx];
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.oscar.market.metrics.series;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bloque columnar comprimido al estilo Gorilla: timestamps con delta-of-delta y columnas double
+ * con XOR frente al valor anterior. Cada columna es un flujo de bits independiente y el
+ * {@link Reader} avanza fila a fila por todos a la vez, sin materializar arrays.
+ * <p>
+ * El XOR comprime mal los decimales (precios a 0,01, cantidades a 1e-5): si todos los valores
+ * de una columna se recuperan exactos como entero / 10^k, se guarda el delta de esos enteros
+ * con prefijos de longitud variable. Sin pérdida en ambos modos.
+ * <p>
+ * Formato: [byte versión][int filas][int columnas][byte modo por columna: escala o XOR]
+ * [int bytes de cada flujo (ts + columnas)][flujos].
+ */
+public final class GorillaBlock {
+
+    private static final byte VERSION = 1;
+    private static final byte XOR = -1;
+    private static final int MAX_SCALE = 9;
+    private static final long[] POW10 = new long[MAX_SCALE + 1];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private GorillaBlock() {}
+
+    /** Recibe cada fila decodificada; values se reutiliza entre filas. */
+    @FunctionalInterface
+    public interface RowSink {
+        void row(long ts, double[] values);
+    }
+
+    /* =================== codificación =================== */
+
+    /** Codifica las n primeras filas. ts no tiene por qué ser creciente, aunque así comprime mejor. */
+    public static byte[] encode(long[] ts, double[][] cols, int n) {
+        BitWriter tsOut = new BitWriter(16 + n / 4);
+        long prevTs = 0, prevDelta = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0) {
+                tsOut.write(ts[0], 64);
+            } else {
+                long delta = ts[i] - prevTs;
+                writeDod(tsOut, delta - prevDelta);
+                prevDelta = delta;
+            }
+            prevTs = ts[i];
+        }
+
+        BitWriter[] colOut = new BitWriter[cols.length];
+        byte[] modes = new byte[cols.length];
+        for (int c = 0; c < cols.length; c++) {
+            BitWriter w = new BitWriter(16 + n * 2);
+            int scale = decimalScale(cols[c], n);
+            modes[c] = scale < 0 ? XOR : (byte) scale;
+            if (scale >= 0) writeDecimal(w, cols[c], n, POW10[scale]);
+            else writeXor(w, cols[c], n);
+            colOut[c] = w;
+        }
+
+        byte[][] streams = new byte[cols.length + 1][];
+        streams[0] = tsOut.finish();
+        for (int c = 0; c < cols.length; c++) streams[c + 1] = colOut[c].finish();
+        int size = 1 + 4 + 4 + cols.length + 4 * streams.length;
+        for (byte[] s : streams) size += s.length;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(VERSION).putInt(n).putInt(cols.length).put(modes);
+        for (byte[] s : streams) out.putInt(s.length);
+        for (byte[] s : streams) out.put(s);
+        return out.array();
+    }
+
+    /** Menor k tal que todos los valores son exactamente entero / 10^k; -1 si no hay. */
+    private static int decimalScale(double[] col, int n) {
+        for (int k = 0; k <= MAX_SCALE; k++) {
+            double p = POW10[k];
+            boolean ok = true;
+            for (int i = 0; i < n && ok; i++) {
+                double m = Math.rint(col[i] * p);
+                // |m| < 2^53 para que el entero sea exacto; -0.0, NaN e infinitos no pasan
+                ok = Math.abs(m) < 0x1p53
+                        && Double.doubleToRawLongBits((long) m / p) == Double.doubleToRawLongBits(col[i]);
+            }
+            if (ok) return k;
+        }
+        return -1;
+    }
+
+    // delta de los enteros escalados: '0' igual; 10/110/1110/11110/11111 con 8/16/24/32/64 bits
+    private static void writeDecimal(BitWriter w, double[] col, int n, long pow) {
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            long m = (long) Math.rint(col[i] * pow);
+            long d = m - prev;
+            prev = m;
+            if (d == 0) {
+                w.write(0, 1);
+                continue;
+            }
+            long z = (d << 1) ^ (d >> 63);
+            if (z >>> 8 == 0) { w.write(0b10, 2); w.write(z, 8); }
+            else if (z >>> 16 == 0) { w.write(0b110, 3); w.write(z, 16); }
+            else if (z >>> 24 == 0) { w.write(0b1110, 4); w.write(z, 24); }
+            else if (z >>> 32 == 0) { w.write(0b11110, 5); w.write(z, 32); }
+            else { w.write(0b11111, 5); w.write(z, 64); }
+        }
+    }
+
+    private static void writeXor(BitWriter w, double[] col, int n) {
+        long prev = 0;
+        int lead = -1, trail = 0;
+        for (int i = 0; i < n; i++) {
+            long bits = Double.doubleToRawLongBits(col[i]);
+            if (i == 0) {
+                w.write(bits, 64);
+                prev = bits;
+                continue;
+            }
+            long x = bits ^ prev;
+            prev = bits;
+            if (x == 0) {
+                w.write(0, 1);
+                continue;
+            }
+            w.write(1, 1);
+            int l = Math.min(Long.numberOfLeadingZeros(x), 31);
+            int t = Long.numberOfTrailingZeros(x);
+            if (lead >= 0 && l >= lead && t >= trail) {
+                // cabe en la ventana significativa anterior
+                w.write(0, 1);
+                w.write(x >>> trail, 64 - lead - trail);
+            } else {
+                int sig = 64 - l - t;
+                w.write(1, 1);
+                w.write(l, 5);
+                w.write(sig - 1, 6);
+                w.write(x >>> t, sig);
+                lead = l;
+                trail = t;
+            }
+        }
+    }
+
+    // delta-of-delta en zigzag: 0 → '0'; después prefijos 10/110/1110/11110/11111 con 7/9/12/32/64 bits
+    private static void writeDod(BitWriter w, long dod) {
+        if (dod == 0) {
+            w.write(0, 1);
+            return;
+        }
+        long z = (dod << 1) ^ (dod >> 63);
+        if (z >>> 7 == 0) { w.write(0b10, 2); w.write(z, 7); }
+        else if (z >>> 9 == 0) { w.write(0b110, 3); w.write(z, 9); }
+        else if (z >>> 12 == 0) { w.write(0b1110, 4); w.write(z, 12); }
+        else if (z >>> 32 == 0) { w.write(0b11110, 5); w.write(z, 32); }
+        else { w.write(0b11111, 5); w.write(z, 64); }
+    }
+
+    /* =================== decodificación =================== */
+
+    public static int rows(byte[] block) {
+        return ByteBuffer.wrap(block).getInt(1);
+    }
+
+    public static int columns(byte[] block) {
+        return ByteBuffer.wrap(block).getInt(5);
+    }
+
+    public static Reader reader(byte[] block) {
+        return new Reader(block);
+    }
+
+    /** Recorre todas las filas en orden. */
+    public static void forEach(byte[] block, RowSink sink) {
+        Reader r = new Reader(block);
+        while (r.next()) sink.row(r.ts(), r.values);
+    }
+
+    /** Lector fila a fila: next() y después ts() / value(col). */
+    public static final class Reader {
+        private final int rows;
+        private final BitReader tsIn;
+        private final BitReader[] colIn;
+        private final double[] values;
+        private final long[] prevBits;
+        private final int[] lead, trail;
+        private final byte[] modes;
+        private final long[] scaled;
+        private int row;
+        private long ts, delta;
+
+        private Reader(byte[] block) {
+            ByteBuffer b = ByteBuffer.wrap(block);
+            if (b.get() != VERSION) throw new IllegalArgumentException("Versión de bloque desconocida");
+            rows = b.getInt();
+            int cols = b.getInt();
+            modes = new byte[cols];
+            b.get(modes);
+            int[] len = new int[cols + 1];
+            for (int i = 0; i <= cols; i++) len[i] = b.getInt();
+            int off = b.position();
+            tsIn = new BitReader(block, off, len[0]);
+            off += len[0];
+            colIn = new BitReader[cols];
+            for (int c = 0; c < cols; c++) {
+                colIn[c] = new BitReader(block, off, len[c + 1]);
+                off += len[c + 1];
+            }
+            values = new double[cols];
+            prevBits = new long[cols];
+            lead = new int[cols];
+            trail = new int[cols];
+            scaled = new long[cols];
+        }
+
+        public int rows() { return rows; }
+
+        public boolean next() {
+            if (row >= rows) return false;
+            if (row == 0) {
+                ts = tsIn.read(64);
+            } else {
+                delta += readDod(tsIn);
+                ts += delta;
+            }
+            for (int c = 0; c < colIn.length; c++) {
+                BitReader in = colIn[c];
+                if (modes[c] != XOR) {
+                    scaled[c] += readDelta(in);
+                    values[c] = scaled[c] / (double) POW10[modes[c]];
+                    continue;
+                }
+                long bits;
+                if (row == 0) {
+                    bits = in.read(64);
+                } else if (in.read(1) == 0) {
+                    bits = prevBits[c];
+                } else {
+                    if (in.read(1) == 1) {
+                        lead[c] = (int) in.read(5);
+                        int sig = (int) in.read(6) + 1;
+                        trail[c] = 64 - lead[c] - sig;
+                    }
+                    bits = prevBits[c] ^ (in.read(64 - lead[c] - trail[c]) << trail[c]);
+                }
+                prevBits[c] = bits;
+                values[c] = Double.longBitsToDouble(bits);
+            }
+            row++;
+            return true;
+        }
+
+        public long ts() { return ts; }
+
+        public double value(int col) { return values[col]; }
+
+        private static long readDelta(BitReader in) {
+            if (in.read(1) == 0) return 0;
+            int bits;
+            if (in.read(1) == 0) bits = 8;
+            else if (in.read(1) == 0) bits = 16;
+            else if (in.read(1) == 0) bits = 24;
+            else bits = in.read(1) == 0 ? 32 : 64;
+            long z = in.read(bits);
+            return (z >>> 1) ^ -(z & 1);
+        }
+
+        private static long readDod(BitReader in) {
+            if (in.read(1) == 0) return 0;
+            int bits;
+            if (in.read(1) == 0) bits = 7;
+            else if (in.read(1) == 0) bits = 9;
+            else if (in.read(1) == 0) bits = 12;
+            else bits = in.read(1) == 0 ? 32 : 64;
+            long z = in.read(bits);
+            return (z >>> 1) ^ -(z & 1);
+        }
+    }
+
+    /* =================== bits =================== */
+
+    /** Escritor MSB primero con acumulador de 64 bits. */
+    private static final class BitWriter {
+        private byte[] buf;
+        private int len;
+        private long acc;
+        private int used;
+
+        BitWriter(int initial) {
+            buf = new byte[Math.max(16, initial)];
+        }
+
+        /** Escribe los n bits bajos de v (1..64). */
+        void write(long v, int n) {
+            if (n < 64) v &= (1L << n) - 1;
+            int free = 64 - used;
+            if (n < free) {
+                acc |= v << (free - n);
+                used += n;
+                return;
+            }
+            int rest = n - free;
+            acc |= v >>> rest;
+            putLong(acc);
+            acc = rest == 0 ? 0 : v << (64 - rest);
+            used = rest;
+        }
+
+        private void putLong(long v) {
+            if (len + 8 > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + 8));
+            for (int s = 56; s >= 0; s -= 8) buf[len++] = (byte) (v >>> s);
+        }
+
+        byte[] finish() {
+            int bytes = (used + 7) >>> 3;
+            byte[] out = Arrays.copyOf(buf, len + bytes);
+            for (int i = 0; i < bytes; i++) out[len + i] = (byte) (acc >>> (56 - 8 * i));
+            return out;
+        }
+    }
+
+    /** Lector MSB primero; más allá del final devuelve ceros. */
+    private static final class BitReader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+        private long window; // los 'avail' bits bajos son los siguientes
+        private int avail;
+
+        BitReader(byte[] buf, int off, int len) {
+            this.buf = buf;
+            this.pos = off;
+            this.end = off + len;
+        }
+
+        long read(int n) {
+            if (n > 56) {
+                long hi = read(n - 32);
+                return (hi << 32) | read(32);
+            }
+            if (avail < n) {
+                while (avail <= 56) {
+                    int b = pos < end ? buf[pos++] & 0xff : 0;
+                    window = (window << 8) | b;
+                    avail += 8;
+                }
+            }
+            avail -= n;
+            return (window >>> avail) & ((1L << n) - 1);
+        }
+    }
+}
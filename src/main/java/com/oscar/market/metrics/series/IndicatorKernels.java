@@ -0,0 +1,88 @@
+package com.oscar.market.metrics.series;
+
+/**
+ * Indicadores incrementales sobre primitivos: se alimentan valor a valor (p.ej. desde un
+ * {@link GorillaBlock.Reader}) sin listas ni boxing. Mismos resultados que
+ * EmaService.computeEma y RsiService.computeRsi, que delegan aquí.
+ */
+public final class IndicatorKernels {
+
+    private IndicatorKernels() {}
+
+    /** EMA sembrada con la SMA de los 'period' primeros valores. */
+    public static final class Ema {
+        private final int period;
+        private final double k;
+        private int n;
+        private double value;
+
+        public Ema(int period) {
+            this.period = period;
+            this.k = 2.0 / (period + 1);
+        }
+
+        public void accept(double v) {
+            if (n < period) {
+                value += v;
+                if (++n == period) value /= period;
+                return;
+            }
+            value = v * k + value * (1 - k);
+            n++;
+        }
+
+        public boolean ready() { return n >= period; }
+
+        public int count() { return n; }
+
+        public double value() {
+            if (!ready()) throw new IllegalArgumentException("Datos insuficientes para EMA(" + period + ")");
+            return value;
+        }
+    }
+
+    /** RSI 0–100 con suavizado de Wilder. */
+    public static final class Rsi {
+        private final int period;
+        private int n;
+        private double prev, avgGain, avgLoss;
+
+        public Rsi(int period) {
+            this.period = period;
+        }
+
+        public void accept(double v) {
+            if (n++ == 0) {
+                prev = v;
+                return;
+            }
+            double diff = v - prev;
+            prev = v;
+            double gain = diff > 0 ? diff : 0.0;
+            double loss = diff < 0 ? -diff : 0.0;
+            if (n <= period + 1) {
+                // sumas iniciales; en el valor period+1 pasan a medias
+                avgGain += gain;
+                avgLoss += loss;
+                if (n == period + 1) {
+                    avgGain /= period;
+                    avgLoss /= period;
+                }
+                return;
+            }
+            avgGain = (avgGain * (period - 1) + gain) / period;
+            avgLoss = (avgLoss * (period - 1) + loss) / period;
+        }
+
+        public boolean ready() { return n >= period + 1; }
+
+        public double value() {
+            if (!ready()) throw new IllegalArgumentException("Datos insuficientes para RSI(" + period + ")");
+            if (avgLoss == 0 && avgGain == 0) return 50.0;
+            if (avgLoss == 0) return 100.0;
+            if (avgGain == 0) return 0.0;
+            double rs = avgGain / avgLoss;
+            return 100.0 - (100.0 / (1.0 + rs));
+        }
+    }
+}
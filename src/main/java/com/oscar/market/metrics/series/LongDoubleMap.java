@@ -0,0 +1,135 @@
+package com.oscar.market.metrics.series;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Mapa long → N columnas double con direccionamiento abierto (sondeo lineal) y arrays de
+ * primitivos: ni claves ni valores se encajonan. Long.MIN_VALUE queda reservado como hueco.
+ * Sin borrado individual: {@link #removeIf} reconstruye la tabla. No es thread-safe.
+ */
+public final class LongDoubleMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int columns;
+    private long[] keys;
+    private double[][] cols;
+    private int mask;
+    private int size;
+
+    public LongDoubleMap(int columns, int expected) {
+        this.columns = columns;
+        alloc(tableSize(expected));
+    }
+
+    public int size() { return size; }
+
+    /** Número de ranuras; recorrer 0..capacity() con {@link #used}. */
+    public int capacity() { return keys.length; }
+
+    public boolean used(int slot) { return keys[slot] != EMPTY; }
+
+    public long keyAt(int slot) { return keys[slot]; }
+
+    public double get(int slot, int col) { return cols[col][slot]; }
+
+    /** Ranura de la clave, o -1 si no está. */
+    public int find(long key) {
+        int i = mix(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) return i;
+            if (k == EMPTY) return -1;
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Ranura de la clave, insertándola a cero si no estaba. Puede mover las ranuras existentes. */
+    public int slot(long key) {
+        if (key == EMPTY) throw new IllegalArgumentException("Clave reservada");
+        int i = mix(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) return i;
+            if (k == EMPTY) break;
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) * 4L > keys.length * 3L) { // carga máxima 0.75
+            rehash(keys.length << 1);
+            return slot(key);
+        }
+        keys[i] = key;
+        size++;
+        return i;
+    }
+
+    public void add(int slot, int col, double v) {
+        cols[col][slot] += v;
+    }
+
+    public void max(int slot, int col, double v) {
+        if (v > cols[col][slot]) cols[col][slot] = v;
+    }
+
+    /** Elimina las claves que cumplen el predicado; devuelve cuántas. */
+    public int removeIf(LongPredicate drop) {
+        int before = size;
+        long[] oldKeys = keys;
+        double[][] oldCols = cols;
+        alloc(keys.length);
+        for (int s = 0; s < oldKeys.length; s++) {
+            long k = oldKeys[s];
+            if (k == EMPTY || drop.test(k)) continue;
+            put(k, oldCols, s);
+        }
+        return before - size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        for (double[] c : cols) Arrays.fill(c, 0.0);
+        size = 0;
+    }
+
+    private void rehash(int newLength) {
+        long[] oldKeys = keys;
+        double[][] oldCols = cols;
+        alloc(newLength);
+        for (int s = 0; s < oldKeys.length; s++) {
+            if (oldKeys[s] != EMPTY) put(oldKeys[s], oldCols, s);
+        }
+    }
+
+    private void put(long key, double[][] from, int fromSlot) {
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY) i = (i + 1) & mask;
+        keys[i] = key;
+        for (int c = 0; c < columns; c++) cols[c][i] = from[c][fromSlot];
+        size++;
+    }
+
+    private void alloc(int length) {
+        keys = new long[length];
+        Arrays.fill(keys, EMPTY);
+        cols = new double[columns][length];
+        mask = length - 1;
+        size = 0;
+    }
+
+    private static int tableSize(int expected) {
+        int n = 16;
+        while (n * 3L < Math.max(1, expected) * 4L) n <<= 1;
+        return n;
+    }
+
+    // murmur3 fmix64: claves empaquetadas (tiempo << 32 | precio) se reparten bien
+    private static int mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return (int) k;
+    }
+}
@@ -0,0 +1,77 @@
+package com.oscar.market.metrics.series;
+
+/**
+ * Serie temporal acotada en anillo de primitivos: un timestamp y N columnas double por punto.
+ * No es thread-safe; quien la contiene sincroniza.
+ */
+public final class RingSeries {
+
+    private final long[] ts;
+    private final double[][] cols;
+    private int head;   // siguiente posición a escribir
+    private int size;
+
+    public RingSeries(int capacity, int columns) {
+        this.ts = new long[capacity];
+        this.cols = new double[columns][capacity];
+    }
+
+    public int capacity() { return ts.length; }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public void append(long t, double v0) {
+        cols[0][head] = v0;
+        advance(t);
+    }
+
+    public void append(long t, double v0, double v1) {
+        cols[0][head] = v0;
+        cols[1][head] = v1;
+        advance(t);
+    }
+
+    public void append(long t, double v0, double v1, double v2) {
+        cols[0][head] = v0;
+        cols[1][head] = v1;
+        cols[2][head] = v2;
+        advance(t);
+    }
+
+    public void append(long t, double v0, double v1, double v2, double v3) {
+        cols[0][head] = v0;
+        cols[1][head] = v1;
+        cols[2][head] = v2;
+        cols[3][head] = v3;
+        advance(t);
+    }
+
+    public int columns() { return cols.length; }
+
+    /** Timestamp del punto 'back' posiciones atrás (0 = último). */
+    public long ts(int back) { return ts[index(back)]; }
+
+    /** Valor de la columna 'col' del punto 'back' posiciones atrás (0 = último). */
+    public double value(int col, int back) { return cols[col][index(back)]; }
+
+    public long lastTs() { return size == 0 ? Long.MIN_VALUE : ts(0); }
+
+    private void advance(long t) {
+        ts[head] = t;
+        head = (head + 1) % ts.length;
+        if (size < ts.length) size++;
+    }
+
+    private int index(int back) {
+        if (back < 0 || back >= size) throw new IndexOutOfBoundsException("back=" + back + " size=" + size);
+        int i = head - 1 - back;
+        return i < 0 ? i + ts.length : i;
+    }
+}
@@ -3,6 +3,7 @@ package com.oscar.market.metrics.session;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -25,8 +26,41 @@ public class SessionContextController {
 
     @GetMapping("/avwap")
     public Map<String, Object> avwap(@RequestParam(required = false) String symbol,
-                                     @RequestParam(required = false) Long anchorTs) {
-        return service.avwap(symbol, anchorTs);
+                                     @RequestParam(required = false) Long anchorTs,
+                                     @RequestParam(required = false) Long toTs) {
+        return service.avwap(symbol, anchorTs, toTs);
+    }
+
+    // High/low + VWAP desde el índice de 1m: from/to (epoch ms, to por defecto ahora) o una sesión
+    // (ASIA | LONDON | NEW_YORK) de hace daysAgo días; minutes recorta al opening range de esa duración
+    @GetMapping("/range")
+    public Map<String, Object> range(@RequestParam(required = false) String symbol,
+                                     @RequestParam(required = false) Long from,
+                                     @RequestParam(required = false) Long to,
+                                     @RequestParam(required = false) String session,
+                                     @RequestParam(defaultValue = "0") int daysAgo,
+                                     @RequestParam(required = false) Integer minutes) {
+        long start, end;
+        if (session != null && !session.isBlank()) {
+            TradingSession s;
+            try {
+                s = TradingSession.valueOf(session.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("session inválida: " + session);
+            }
+            long day = TradingSession.dayStart(System.currentTimeMillis()) - daysAgo * TradingSession.DAY_MS;
+            start = s.start(day);
+            end = s.end(day) + 1;
+        } else {
+            if (from == null) throw new IllegalArgumentException("Falta 'from' o 'session'");
+            start = from;
+            end = to != null ? to : System.currentTimeMillis();
+        }
+        if (minutes != null) {
+            if (minutes <= 0) throw new IllegalArgumentException("minutes debe ser positivo");
+            end = Math.min(end, start + minutes * 60_000L);
+        }
+        return service.range(symbol, start, end);
     }
 
     @GetMapping("/prev-day-hilo")
@@ -12,6 +12,7 @@ import java.util.*;
 public class SessionContextService {
 
     private final SpotClient spot;
+    private final VwapIndex vwapIndex;
 
     @Value("${DEFAULT_SYMBOL:BTCUSDC}")
     private String defaultSymbol;
@@ -25,8 +26,9 @@ public class SessionContextService {
     @Value("${market.macro.key-events:}")
     private String macroKeyEventsCsv;
 
-    public SessionContextService(SpotClient spot) {
+    public SessionContextService(SpotClient spot, VwapIndex vwapIndex) {
         this.spot = spot;
+        this.vwapIndex = vwapIndex;
     }
 
     public Map<String, Object> vwapDaily(String symbol) {
@@ -34,12 +36,18 @@ public class SessionContextService {
         long start = startOfUtcDayMs();
         long now = System.currentTimeMillis();
 
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("symbol", sym);
+        if (fromIndex(out, sym, start, now, "vwap")) {
+            out.put("interval", "1m");
+            out.put("window", "today_utc");
+            return out;
+        }
+
         var kl = fetch1m(sym, start, now, 1500);
         if (kl.isEmpty() && sym.endsWith("USDC")) kl = fetch1m(toUsdt(sym), start, now, 1500);
 
         Double vwap = computeVwap(kl);
-        Map<String,Object> out = new LinkedHashMap<>();
-        out.put("symbol", sym);
         out.put("vwap", vwap);
         out.put("interval", "1m");
         out.put("window", "today_utc");
@@ -47,28 +55,70 @@ public class SessionContextService {
         return out;
     }
 
-    public Map<String, Object> avwap(String symbol, Long anchorTs) {
+    public Map<String, Object> avwap(String symbol, Long anchorTs, Long toTs) {
         String sym = orDefault(symbol);
         long anchor = (anchorTs == null) ? startOfUtcDayMs() : anchorTs;
         long now = System.currentTimeMillis();
+        long to = (toTs == null) ? now : Math.min(toTs, now);
+        if (to <= anchor) throw new IllegalArgumentException("'to' debe ser posterior a anchorTs");
 
-        var kl = fetch1m(sym, anchor, now, 2000);
-        if (kl.isEmpty() && sym.endsWith("USDC")) kl = fetch1m(toUsdt(sym), anchor, now, 2000);
-
-        Double vwap = computeVwap(kl);
         Map<String,Object> out = new LinkedHashMap<>();
         out.put("symbol", sym);
         out.put("anchorTs", anchor);
+        if (toTs != null) out.put("toTs", to);
+        if (fromIndex(out, sym, anchor, to, "avwap")) {
+            out.put("interval", "1m");
+            return out;
+        }
+
+        var kl = fetch1m(sym, anchor, to, 2000);
+        if (kl.isEmpty() && sym.endsWith("USDC")) kl = fetch1m(toUsdt(sym), anchor, to, 2000);
+
+        Double vwap = computeVwap(kl);
         out.put("avwap", vwap);
         out.put("interval", "1m");
         out.put("source", "binance-spot");
         return out;
     }
 
+    /** VWAP y bandas de ±1σ/±2σ desde el índice de acumulados; false si no cubre el rango. */
+    private boolean fromIndex(Map<String,Object> out, String sym, long from, long to, String key) {
+        VwapIndex.Range r = vwapIndex.range(sym, from, to);
+        if ((r == null || r.vwap() == null) && sym.endsWith("USDC")) {
+            VwapIndex.Range usdt = vwapIndex.range(toUsdt(sym), from, to);
+            if (usdt != null && usdt.vwap() != null) r = usdt;
+        }
+        if (r == null) return false;
+        out.put(key, r.vwap());
+        out.put("stdev", r.stdev());
+        if (r.vwap() != null) {
+            Map<String,Object> bands = new LinkedHashMap<>();
+            bands.put("upper1", r.vwap() + r.stdev());
+            bands.put("lower1", r.vwap() - r.stdev());
+            bands.put("upper2", r.vwap() + 2 * r.stdev());
+            bands.put("lower2", r.vwap() - 2 * r.stdev());
+            out.put("bands", bands);
+        }
+        out.put("volume", r.volume());
+        out.put("source", "vwap-index");
+        return true;
+    }
+
     public Map<String, Object> prevDayHiLo(String symbol) {
         String sym = orDefault(symbol);
         long todayStart = startOfUtcDayMs();
 
+        VwapIndex.HighLow idx = indexHighLow(sym, todayStart - TradingSession.DAY_MS, todayStart);
+        if (idx != null && idx.high() != null) {
+            Map<String,Object> out = new LinkedHashMap<>();
+            out.put("symbol", sym);
+            out.put("prevDayHigh", idx.high());
+            out.put("prevDayLow", idx.low());
+            out.put("prevOpenTime", idx.from());
+            out.put("source", "range-index");
+            return out;
+        }
+
         // 2 daily velas suelen bastar, pero para robustez pedimos 3
         var dailies = spot.getKlines(sym, "1d", null, null, 3);
         if ((dailies == null || dailies.isEmpty()) && sym.endsWith("USDC")) {
@@ -104,13 +154,20 @@ public class SessionContextService {
         long start = startOfUtcDayMs();
         long end = start + 60L * 60 * 1000;
 
-        var kl = fetch1m(sym, start, end, 1200);
-        if (kl.isEmpty() && sym.endsWith("USDC")) kl = fetch1m(toUsdt(sym), start, end, 1200);
-
         Double hi = null, lo = null;
-        if (!kl.isEmpty()) {
-            hi = kl.stream().map(Kline::high).max(Double::compare).orElse(null);
-            lo = kl.stream().map(Kline::low).min(Double::compare).orElse(null);
+        String source = "range-index";
+        VwapIndex.HighLow idx = indexHighLow(sym, start, end);
+        if (idx != null) {
+            hi = idx.high();
+            lo = idx.low();
+        } else {
+            var kl = fetch1m(sym, start, end, 1200);
+            if (kl.isEmpty() && sym.endsWith("USDC")) kl = fetch1m(toUsdt(sym), start, end, 1200);
+            if (!kl.isEmpty()) {
+                hi = kl.stream().map(Kline::high).max(Double::compare).orElse(null);
+                lo = kl.stream().map(Kline::low).min(Double::compare).orElse(null);
+            }
+            source = "binance-spot";
         }
 
         Map<String,Object> out = new LinkedHashMap<>();
@@ -119,31 +176,58 @@ public class SessionContextService {
         out.put("orHigh", hi);
         out.put("orLow", lo);
         out.put("range", hi != null ? hi - lo : null);
-        out.put("source", "binance-spot");
+        out.put("source", source);
         return out;
     }
 
+    /**
+     * High/low (y VWAP) de [from, to) solo desde el índice de 1m, sin llamadas a Binance:
+     * opening range de cualquier duración, día anterior, una sesión o un rango anclado.
+     */
+    public Map<String, Object> range(String symbol, long from, long to) {
+        String sym = orDefault(symbol);
+        if (to <= from) throw new IllegalArgumentException("'to' debe ser posterior a 'from'");
+        VwapIndex.HighLow hl = indexHighLow(sym, from, to);
+        if (hl == null) {
+            throw new IllegalArgumentException("Rango fuera del índice de 1m (market.session.vwap-days) para " + sym);
+        }
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("symbol", sym);
+        out.put("from", from);
+        out.put("to", to);
+        out.put("high", hl.high());
+        out.put("low", hl.low());
+        out.put("range", hl.high() != null ? hl.high() - hl.low() : null);
+        fromIndex(out, sym, from, to, "vwap");
+        out.put("interval", "1m");
+        out.put("source", "range-index");
+        return out;
+    }
+
+    private VwapIndex.HighLow indexHighLow(String sym, long from, long to) {
+        VwapIndex.HighLow hl = vwapIndex.highLow(sym, from, to);
+        if ((hl == null || hl.high() == null) && sym.endsWith("USDC")) {
+            VwapIndex.HighLow usdt = vwapIndex.highLow(toUsdt(sym), from, to);
+            if (usdt != null && usdt.high() != null) hl = usdt;
+        }
+        return hl;
+    }
+
     public Map<String, Object> sessionsToday() {
         long today = startOfUtcDayMs();
 
-        // Ventanas típicas UTC
-        // Asia:   00:00–06:59
-        // London: 07:00–12:59
-        // NY:     13:00–20:59
-        long asiaStart   = today + hours(0);
-        long asiaEnd     = today + hours(7) - 1;
+        // Ventanas típicas UTC (ver TradingSession)
+        long asiaStart   = TradingSession.ASIA.start(today);
+        long asiaEnd     = TradingSession.ASIA.end(today);
 
-        long londonStart = today + hours(7);
-        long londonEnd   = today + hours(13) - 1;
+        long londonStart = TradingSession.LONDON.start(today);
+        long londonEnd   = TradingSession.LONDON.end(today);
 
-        long nyStart     = today + hours(13);
-        long nyEnd       = today + hours(21) - 1;
+        long nyStart     = TradingSession.NEW_YORK.start(today);
+        long nyEnd       = TradingSession.NEW_YORK.end(today);
 
-        long now = System.currentTimeMillis();
-        String current =
-                (in(now, asiaStart, asiaEnd))   ? "ASIA" :
-                        (in(now, londonStart, londonEnd)) ? "LONDON" :
-                                (in(now, nyStart, nyEnd))         ? "NEW_YORK" : "OFF_HOURS";
+        TradingSession session = TradingSession.at(System.currentTimeMillis());
+        String current = session != null ? session.name() : "OFF_HOURS";
 
         Map<String,Object> out = new LinkedHashMap<>();
         out.put("utcDayStart", today);
@@ -196,8 +280,6 @@ public class SessionContextService {
 
     private static long hours(int h) { return h * 60L * 60 * 1000; }
 
-    private static boolean in(long t, long start, long end) { return t >= start && t <= end; }
-
     private String orDefault(String s) {
         return (s == null || s.isBlank()) ? defaultSymbol : s;
     }
@@ -0,0 +1,42 @@
+package com.oscar.market.metrics.session;
+
+/**
+ * Ventanas de sesión típicas en UTC (las mismas que expone /session/sessions).
+ * Asia 00:00–06:59, London 07:00–12:59, NY 13:00–20:59.
+ */
+public enum TradingSession {
+    ASIA(0, 7),
+    LONDON(7, 13),
+    NEW_YORK(13, 21);
+
+    public static final long HOUR_MS = 60L * 60 * 1000;
+    public static final long DAY_MS = 24 * HOUR_MS;
+
+    private final int startHour;
+    private final int endHour;
+
+    TradingSession(int startHour, int endHour) {
+        this.startHour = startHour;
+        this.endHour = endHour;
+    }
+
+    /** Inicio (incluido) de la sesión en el día UTC que empieza en dayStartMs. */
+    public long start(long dayStartMs) { return dayStartMs + startHour * HOUR_MS; }
+
+    /** Fin (incluido) de la sesión en el día UTC que empieza en dayStartMs. */
+    public long end(long dayStartMs) { return dayStartMs + endHour * HOUR_MS - 1; }
+
+    /** Sesión que contiene ts, o null fuera de horario. */
+    public static TradingSession at(long ts) {
+        long day = dayStart(ts);
+        for (TradingSession s : values()) {
+            if (ts >= s.start(day) && ts <= s.end(day)) return s;
+        }
+        return null;
+    }
+
+    /** Inicio del día UTC de ts. */
+    public static long dayStart(long ts) {
+        return Math.floorDiv(ts, DAY_MS) * DAY_MS;
+    }
+}
@@ -0,0 +1,412 @@
+package com.oscar.market.metrics.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.SpotClient;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Índice de sumas acumuladas sobre velas de 1m por símbolo, partido por día UTC: Σtp·v, Σv y
+ * Σtp²·v con tp = (h + l + c) / 3. El VWAP (y su desviación típica) entre dos instantes
+ * cualesquiera es la resta de dos acumulados, sin recorrer velas.
+ * <p>
+ * Se siembra por REST con los últimos market.session.vwap-days días y después lo mantiene el
+ * stream kline_1m (también la vela en curso, como hacía la consulta REST). Cada día guarda las
+ * velas crudas y su prefijo, que se rehace de forma perezosa desde la primera ranura tocada; cada
+ * día conoce además la suma de todos los anteriores (base), que solo hay que rehacer si cambia un
+ * día que no es el último. Los precios se guardan restando una referencia fija por símbolo para
+ * que Σtp²·v no pierda precisión al restar acumulados grandes.
+ * <p>
+ * Para máximos y mínimos de rango (opening range, día anterior, sesiones) cada día lleva además
+ * un árbol de segmentos de high/low: se actualiza en O(log n) con la vela en curso y responde
+ * cualquier tramo del día en O(log n); un rango de varios días consulta un árbol por día.
+ */
+@Component
+public class VwapIndex implements SpotStreamHandler, ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(VwapIndex.class);
+    static final long MINUTE_MS = 60_000L;
+    static final long DAY_MS = 1440 * MINUTE_MS;
+    private static final int SLOTS = 1440;
+    private static final int REST_LIMIT = 1000;
+
+    private final SpotClient spot;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final ExecutorService seeder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "vwap-index-seeder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${market.session.vwap-days:14}")
+    private int days = 14;
+
+    @Value("${market.spot.enabled:true}")
+    private boolean streamEnabled = true;
+
+    @Value("${market.spot.symbols-tracked:BTCUSDC,BTCUSDT}")
+    private String symbolsTrackedCsv = "";
+
+    public VwapIndex(SpotClient spot) {
+        this.spot = spot;
+    }
+
+    /** VWAP de las velas con openTime en [from, to): sumVolume, vwap y desviación típica ponderada. */
+    public record Range(long from, long to, double volume, Double vwap, Double stdev) {}
+
+    /** Máximo high y mínimo low de las velas con openTime en [from, to); null si no hay velas. */
+    public record HighLow(long from, long to, Double high, Double low) {}
+
+    @PreDestroy
+    void shutdown() {
+        seeder.shutdownNow();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!streamEnabled) return;
+        for (String sym : symbols()) {
+            Series s = series(sym);
+            seeder.submit(() -> seed(s));
+        }
+    }
+
+    /* =================== stream =================== */
+
+    @Override
+    public List<String> streamSuffixes() {
+        return streamEnabled ? List.of("kline_1m") : List.of();
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        JsonNode k = data.get("k");
+        if (k == null) return;
+        // también la vela abierta: se sobrescribe en cada actualización
+        series(symbol).put(k.path("t").asLong(), parse(k.path("h").asText()), parse(k.path("l").asText()),
+                parse(k.path("c").asText()), parse(k.path("v").asText()));
+    }
+
+    /* =================== consulta =================== */
+
+    /** null si el índice no cubre [from, to) para ese símbolo (sin stream o aún sembrando). */
+    public Range range(String symbol, long from, long to) {
+        Series s = series.get(symbol);
+        if (s == null) return null;
+        return s.range(from, to);
+    }
+
+    /** null si el índice no cubre [from, to) para ese símbolo. */
+    public HighLow highLow(String symbol, long from, long to) {
+        Series s = series.get(symbol);
+        if (s == null) return null;
+        return s.highLow(from, to);
+    }
+
+    /* =================== siembra y reparación =================== */
+
+    void seed(Series s) {
+        if (s.seeded()) return; // reintento encolado cuando ya había terminado otro
+        long now = System.currentTimeMillis();
+        long start = (Math.floorDiv(now, DAY_MS) - Math.max(0, days)) * DAY_MS;
+        try {
+            int n = fill(s, start, now);
+            s.coverFrom(start, now);
+            log.info("Índice VWAP {}: {} velas de 1m desde {}", s.symbol, n, start);
+        } catch (Exception ex) {
+            log.warn("Índice VWAP {} sin sembrar, se usa REST: {}", s.symbol, ex.getMessage());
+        }
+    }
+
+    /**
+     * Rellena por REST los minutos cerrados que falten desde la última comprobación (cortes del
+     * stream) y descarta los días que ya no entran en la ventana.
+     */
+    @Scheduled(fixedDelayString = "${market.session.vwap-repair-ms:600000}", initialDelay = 60_000)
+    public void repair() {
+        long now = System.currentTimeMillis();
+        long closed = (now / MINUTE_MS) * MINUTE_MS; // openTime de la vela en curso
+        for (Series s : series.values()) {
+            if (!s.seeded()) {
+                seeder.submit(() -> seed(s)); // la siembra de arranque falló o sigue en curso
+                continue;
+            }
+            long gap = s.firstMissing(closed);
+            if (gap < 0) continue;
+            try {
+                fill(s, gap, now);
+                s.verified(closed);
+            } catch (Exception ex) {
+                log.warn("Reparación del índice VWAP {} fallida: {}", s.symbol, ex.getMessage());
+            }
+        }
+        long keepFrom = (Math.floorDiv(now, DAY_MS) - Math.max(0, days)) * DAY_MS;
+        for (Series s : series.values()) s.prune(keepFrom);
+    }
+
+    private int fill(Series s, long from, long to) {
+        int n = 0;
+        List<double[]> batch = new ArrayList<>();
+        while (from < to) {
+            List<SpotClient.Kline> page = spot.getKlines(s.symbol, "1m", from, to, REST_LIMIT);
+            if (page.isEmpty()) break;
+            for (SpotClient.Kline k : page) {
+                batch.add(new double[]{k.openTime(), k.high(), k.low(), k.close(), k.volume()});
+            }
+            n += page.size();
+            from = page.get(page.size() - 1).openTime() + MINUTE_MS;
+            if (page.size() < REST_LIMIT) break;
+        }
+        s.putAll(batch);
+        return n;
+    }
+
+    /* =================== utils =================== */
+
+    private Series series(String symbol) {
+        return series.computeIfAbsent(symbol, Series::new);
+    }
+
+    private Set<String> symbols() {
+        Set<String> out = new LinkedHashSet<>();
+        for (String s : symbolsTrackedCsv.split(",")) {
+            String v = s.trim().toUpperCase(Locale.ROOT);
+            if (!v.isEmpty()) out.add(v);
+        }
+        return out;
+    }
+
+    private static double parse(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    /** Días de un símbolo con sus prefijos y bases. Todo bajo el monitor de la serie. */
+    static final class Series {
+        final String symbol;
+        private final TreeMap<Long, Day> days = new TreeMap<>();
+        private double ref = Double.NaN;
+        private long coveredFrom = Long.MAX_VALUE;
+        private long verifiedUntil = Long.MAX_VALUE;
+        private long staleFrom = Long.MAX_VALUE; // primer día cuyas bases hay que rehacer
+
+        Series(String symbol) {
+            this.symbol = symbol;
+        }
+
+        synchronized void put(long openTime, double high, double low, double close, double volume) {
+            putLocked(openTime, high, low, close, volume);
+        }
+
+        synchronized void putAll(List<double[]> klines) {
+            for (double[] k : klines) putLocked((long) k[0], k[1], k[2], k[3], k[4]);
+        }
+
+        private void putLocked(long openTime, double high, double low, double close, double volume) {
+            double tp = (high + low + close) / 3.0;
+            if (Double.isNaN(ref)) ref = tp;
+            long d = Math.floorDiv(openTime, DAY_MS);
+            Day day = days.get(d);
+            if (day == null) {
+                day = new Day();
+                days.put(d, day);
+                staleFrom = Math.min(staleFrom, d);
+            } else if (d != days.lastKey()) {
+                staleFrom = Math.min(staleFrom, d + 1); // cambia su total: las bases de después
+            }
+            day.put((int) ((openTime - d * DAY_MS) / MINUTE_MS), tp - ref, volume, high, low);
+        }
+
+        /** El índice cubre desde 'from'; los minutos cerrados hasta 'until' ya están comprobados. */
+        synchronized void coverFrom(long from, long until) {
+            coveredFrom = from;
+            verifiedUntil = (until / MINUTE_MS) * MINUTE_MS;
+        }
+
+        synchronized void verified(long until) {
+            verifiedUntil = Math.max(verifiedUntil == Long.MAX_VALUE ? until : verifiedUntil, until);
+        }
+
+        /** openTime del primer minuto cerrado sin vela desde la última comprobación; -1 si no falta ninguno. */
+        synchronized long firstMissing(long closedBefore) {
+            for (long t = verifiedUntil; t < closedBefore; t += MINUTE_MS) {
+                long d = Math.floorDiv(t, DAY_MS);
+                Day day = days.get(d);
+                if (day == null || !day.present[(int) ((t - d * DAY_MS) / MINUTE_MS)]) return t;
+            }
+            verifiedUntil = closedBefore;
+            return -1;
+        }
+
+        synchronized void prune(long keepFrom) {
+            // quitar días antiguos no cambia ninguna diferencia entre acumulados posteriores
+            days.headMap(Math.floorDiv(keepFrom, DAY_MS)).clear();
+            if (coveredFrom != Long.MAX_VALUE) coveredFrom = Math.max(coveredFrom, keepFrom);
+        }
+
+        synchronized Range range(long from, long to) {
+            if (from < coveredFrom || to <= from) return null;
+            refresh();
+            double[] a = cumulative(from), b = cumulative(to);
+            double v = b[1] - a[1];
+            if (v <= 0) return new Range(from, to, Math.max(0, v), null, null);
+            double mean = (b[0] - a[0]) / v; // respecto a ref
+            double var = (b[2] - a[2]) / v - mean * mean;
+            return new Range(from, to, v, ref + mean, Math.sqrt(Math.max(0, var)));
+        }
+
+        synchronized HighLow highLow(long from, long to) {
+            if (from < coveredFrom || to <= from) return null;
+            long d0 = Math.floorDiv(from, DAY_MS), d1 = Math.floorDiv(to - 1, DAY_MS);
+            double[] out = {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+            for (Map.Entry<Long, Day> e : days.subMap(d0, true, d1, true).entrySet()) {
+                long start = e.getKey() * DAY_MS;
+                int l = e.getKey() == d0 ? slotBefore(from - start) : 0;
+                int r = e.getKey() == d1 ? slotBefore(to - start) : SLOTS;
+                e.getValue().extremes(l, r, out);
+            }
+            return out[0] == Double.NEGATIVE_INFINITY
+                    ? new HighLow(from, to, null, null)
+                    : new HighLow(from, to, out[0], out[1]);
+        }
+
+        /** Σ (tp-ref)·v, Σ v, Σ (tp-ref)²·v de todas las velas con openTime < t. */
+        private double[] cumulative(long t) {
+            long d = Math.floorDiv(t, DAY_MS);
+            Map.Entry<Long, Day> e = days.floorEntry(d);
+            if (e == null) return new double[3];
+            Day day = e.getValue();
+            double[] out = day.base.clone();
+            if (e.getKey() < d) {
+                for (int i = 0; i < 3; i++) out[i] += day.total(i);
+            } else {
+                day.addPrefix(slotBefore(t - d * DAY_MS), out);
+            }
+            return out;
+        }
+
+        /** Rehace prefijos pendientes y las bases desde el primer día afectado. */
+        private void refresh() {
+            if (days.isEmpty()) return;
+            days.lastEntry().getValue().ensure(); // lo normal: solo ha cambiado el último día
+            if (staleFrom == Long.MAX_VALUE) return;
+            Map.Entry<Long, Day> p = days.lowerEntry(staleFrom);
+            Day prev = p == null ? null : p.getValue();
+            if (prev != null) prev.ensure();
+            for (Day day : days.tailMap(staleFrom).values()) {
+                day.ensure();
+                for (int i = 0; i < 3; i++) day.base[i] = prev == null ? 0 : prev.base[i] + prev.total(i);
+                prev = day;
+            }
+            staleFrom = Long.MAX_VALUE;
+        }
+
+        /** Número de ranuras del día con openTime < offset (offset en ms desde el inicio del día). */
+        private static int slotBefore(long offset) {
+            return (int) Math.floorDiv(offset + MINUTE_MS - 1, MINUTE_MS);
+        }
+
+        synchronized boolean seeded() {
+            return coveredFrom != Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Un día UTC: velas crudas por minuto y su prefijo inclusivo hasta la última ranura con datos,
+     * más dos árboles de segmentos iterativos (hojas en [SLOTS, 2·SLOTS)) para high y low.
+     */
+    static final class Day {
+        final boolean[] present = new boolean[SLOTS];
+        private final double[][] raw = new double[3][SLOTS];
+        private final double[][] prefix = new double[3][SLOTS];
+        private final double[] maxTree = new double[2 * SLOTS];
+        private final double[] minTree = new double[2 * SLOTS];
+        final double[] base = new double[3];
+        private int hi = -1;
+        private int computedHi = -1; // prefijo válido en [0, computedHi]
+        private int dirtyFrom = SLOTS;
+
+        Day() {
+            Arrays.fill(maxTree, Double.NEGATIVE_INFINITY);
+            Arrays.fill(minTree, Double.POSITIVE_INFINITY);
+        }
+
+        void put(int slot, double p, double v, double high, double low) {
+            if (slot < 0 || slot >= SLOTS) return;
+            int i = slot + SLOTS;
+            maxTree[i] = high;
+            minTree[i] = low;
+            for (i >>= 1; i >= 1; i >>= 1) {
+                maxTree[i] = Math.max(maxTree[2 * i], maxTree[2 * i + 1]);
+                minTree[i] = Math.min(minTree[2 * i], minTree[2 * i + 1]);
+            }
+            present[slot] = true;
+            raw[0][slot] = p * v;
+            raw[1][slot] = v;
+            raw[2][slot] = p * p * v;
+            hi = Math.max(hi, slot);
+            dirtyFrom = Math.min(dirtyFrom, slot);
+        }
+
+        void ensure() {
+            // una vela tras un hueco deja sin calcular las ranuras intermedias: se arrastra la suma
+            int from = Math.min(dirtyFrom, computedHi + 1);
+            if (from > hi) return;
+            for (int i = 0; i < 3; i++) {
+                double acc = from == 0 ? 0 : prefix[i][from - 1];
+                for (int s = from; s <= hi; s++) prefix[i][s] = acc += raw[i][s];
+            }
+            computedHi = hi;
+            dirtyFrom = SLOTS;
+        }
+
+        double total(int i) {
+            return hi < 0 ? 0 : prefix[i][hi];
+        }
+
+        /** Acumula en out[0] el máximo high y en out[1] el mínimo low de las ranuras [l, r). */
+        void extremes(int l, int r, double[] out) {
+            for (l += SLOTS, r += SLOTS; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    out[0] = Math.max(out[0], maxTree[l]);
+                    out[1] = Math.min(out[1], minTree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    out[0] = Math.max(out[0], maxTree[--r]);
+                    out[1] = Math.min(out[1], minTree[r]);
+                }
+            }
+        }
+
+        /** Suma a out el prefijo de las ranuras [0, slot). */
+        void addPrefix(int slot, double[] out) {
+            int last = Math.min(slot, hi + 1) - 1;
+            if (last < 0) return;
+            for (int i = 0; i < 3; i++) out[i] += prefix[i][last];
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Service;
 
 import com.oscar.market.marketdata.BinanceClient;
 import com.oscar.market.marketdata.Candle;
+import com.oscar.market.metrics.series.IndicatorKernels;
 
 @Service
 public class EmaService {
@@ -44,25 +45,14 @@ public class EmaService {
         return new EmaSlope(delta, pct, sign);
     }
 
-    /** Cálculo de EMA dado un array de cierres */
+    /** Cálculo de EMA dado un array de cierres (SMA de los 'period' primeros como semilla) */
     public static double computeEma(List<Double> data, int period) {
         if (data.size() < period) {
             throw new IllegalArgumentException("Datos insuficientes para EMA(" + period + ")");
         }
-        double k = 2.0 / (period + 1);
-
-        // EMA inicial = SMA de los 'period' primeros
-        double ema = 0.0;
-        for (int i = 0; i < period; i++) {
-            ema += data.get(i);
-        }
-        ema /= period;
-
-        for (int i = period; i < data.size(); i++) {
-            double price = data.get(i);
-            ema = price * k + ema * (1 - k);
-        }
-        return ema;
+        IndicatorKernels.Ema ema = new IndicatorKernels.Ema(period);
+        for (Double v : data) ema.accept(v);
+        return ema.value();
     }
 
     /** DTO para la pendiente de EMA */
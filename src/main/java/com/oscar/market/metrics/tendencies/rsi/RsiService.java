@@ -6,6 +6,7 @@ import org.springframework.stereotype.Service;
 
 import com.oscar.market.marketdata.BinanceClient;
 import com.oscar.market.marketdata.Candle;
+import com.oscar.market.metrics.series.IndicatorKernels;
 
 @Service
 public class RsiService {
@@ -29,34 +30,8 @@ public class RsiService {
         if (closes.size() < period + 1) {
             throw new IllegalArgumentException("Datos insuficientes para RSI(" + period + ")");
         }
-
-        // ganancias/pérdidas iniciales
-        double gainSum = 0.0;
-        double lossSum = 0.0;
-        for (int i = 1; i <= period; i++) {
-            double diff = closes.get(i) - closes.get(i - 1);
-            if (diff > 0) gainSum += diff;
-            else          lossSum += -diff;
-        }
-
-        double avgGain = gainSum / period;
-        double avgLoss = lossSum / period;
-
-        // suavizado de Wilder sobre el resto
-        for (int i = period + 1; i < closes.size(); i++) {
-            double diff = closes.get(i) - closes.get(i - 1);
-            double gain = diff > 0 ? diff : 0.0;
-            double loss = diff < 0 ? -diff : 0.0;
-
-            avgGain = (avgGain * (period - 1) + gain) / period;
-            avgLoss = (avgLoss * (period - 1) + loss) / period;
-        }
-
-        if (avgLoss == 0 && avgGain == 0) return 50.0;
-        if (avgLoss == 0) return 100.0;
-        if (avgGain == 0) return 0.0;
-
-        double rs = avgGain / avgLoss;
-        return 100.0 - (100.0 / (1.0 + rs));
+        IndicatorKernels.Rsi rsi = new IndicatorKernels.Rsi(period);
+        for (Double v : closes) rsi.accept(v);
+        return rsi.value();
     }
 }
@@ -0,0 +1,165 @@
+package com.oscar.market.push;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.BinanceClient;
+import com.oscar.market.marketdata.Candle;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+import com.oscar.market.metrics.series.RingSeries;
+import com.oscar.market.metrics.tendencies.ema.EmaService;
+import com.oscar.market.metrics.tendencies.rsi.RsiService;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Al cerrar cada vela del stream @kline publica en "candles:&lt;SYMBOL&gt;:&lt;interval&gt;" la vela
+ * con RSI(14), EMA(20) y EMA(50) recalculados sobre los cierres en memoria. Los cierres se
+ * siembran por REST la primera vez que alguien escucha; después los mantiene el stream.
+ */
+@Component
+public class CandlePush implements SpotStreamHandler {
+
+    private static final int SEED_CANDLES = 200;
+
+    private final PushHub hub;
+    private final BinanceClient client;
+    private final Map<String, Closes> states = new ConcurrentHashMap<>();
+    private final ExecutorService seeder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "candle-push-seeder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${market.push.candle-intervals:1m,1h}")
+    private String intervalsCsv;
+
+    public CandlePush(PushHub hub, BinanceClient client) {
+        this.hub = hub;
+        this.client = client;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        seeder.shutdownNow();
+    }
+
+    @Override
+    public List<String> streamSuffixes() {
+        List<String> out = new ArrayList<>();
+        for (String p : intervalsCsv.split(",")) {
+            String v = p.trim();
+            if (!v.isEmpty()) out.add("kline_" + v);
+        }
+        return out;
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        JsonNode k = data.get("k");
+        if (k == null || !k.path("x").asBoolean()) return; // solo velas cerradas
+        String interval = k.path("i").asText();
+        String topic = topic(symbol, interval);
+        Closes st = states.get(topic);
+        if (st == null) {
+            if (!hub.hasSubscribers(topic)) return; // nadie escucha: ni se siembra
+            st = state(symbol, interval);
+        }
+        long openTime = k.path("t").asLong();
+        double close = parse(k.path("c").asText());
+        if (!st.onClosed(openTime, close)) return; // aún sembrando o repetida
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("symbol", symbol);
+        m.put("interval", interval);
+        m.put("openTime", openTime);
+        m.put("closeTime", k.path("T").asLong());
+        m.put("open", parse(k.path("o").asText()));
+        m.put("high", parse(k.path("h").asText()));
+        m.put("low", parse(k.path("l").asText()));
+        m.put("close", close);
+        m.put("volume", parse(k.path("v").asText()));
+        List<Double> closes = st.closes();
+        m.put("rsi14", closes.size() > 14 ? RsiService.computeRsi(closes, 14) : null);
+        m.put("ema20", closes.size() >= 20 ? EmaService.computeEma(closes, 20) : null);
+        m.put("ema50", closes.size() >= 50 ? EmaService.computeEma(closes, 50) : null);
+        hub.publish(topic, "candle", m);
+    }
+
+    public static String topic(String symbol, String interval) {
+        return "candles:" + symbol + ":" + interval;
+    }
+
+    /** Siembra los cierres en segundo plano (al suscribirse alguien) si no estaban ya. */
+    public void warm(String symbol, String interval) {
+        state(symbol, interval);
+    }
+
+    private Closes state(String symbol, String interval) {
+        String topic = topic(symbol, interval);
+        Closes created = new Closes();
+        Closes prev = states.putIfAbsent(topic, created);
+        if (prev != null) return prev;
+        seeder.submit(() -> {
+            try {
+                created.load(client.getKlines(symbol, interval, SEED_CANDLES));
+            } catch (Exception ex) {
+                states.remove(topic, created); // se reintenta con la próxima vela o suscripción
+            }
+        });
+        return created;
+    }
+
+    private static double parse(String s) {
+        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    }
+
+    private static final class Closes {
+        final RingSeries ring = new RingSeries(SEED_CANDLES, 1);
+        boolean seeded;
+
+        synchronized void load(List<Candle> candles) {
+            // cierres llegados por el stream mientras se sembraba: van detrás de la siembra
+            int n = ring.size();
+            long[] ts = new long[n];
+            double[] cl = new double[n];
+            for (int i = 0; i < n; i++) {
+                ts[i] = ring.ts(n - 1 - i);
+                cl[i] = ring.value(0, n - 1 - i);
+            }
+            ring.clear();
+            long now = System.currentTimeMillis();
+            for (Candle c : candles) {
+                if (c.closeTime().toEpochMilli() >= now) continue; // la vela en curso no
+                long t = c.openTime().toEpochMilli();
+                if (ring.isEmpty() || t > ring.lastTs()) ring.append(t, c.close());
+            }
+            for (int i = 0; i < n; i++) {
+                if (ring.isEmpty() || ts[i] > ring.lastTs()) ring.append(ts[i], cl[i]);
+            }
+            seeded = true;
+        }
+
+        /** Añade el cierre; false si no hay que publicar (sin sembrar o ya visto). */
+        synchronized boolean onClosed(long openTime, double close) {
+            if (!ring.isEmpty() && openTime <= ring.lastTs()) return false;
+            ring.append(openTime, close);
+            return seeded;
+        }
+
+        synchronized List<Double> closes() {
+            List<Double> out = new ArrayList<>(ring.size());
+            for (int back = ring.size() - 1; back >= 0; back--) out.add(ring.value(0, back));
+            return out;
+        }
+    }
+}
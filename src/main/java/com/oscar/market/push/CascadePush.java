@@ -0,0 +1,27 @@
+package com.oscar.market.push;
+
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.metrics.derivatives.ws.LiquidationCascadeDetector.Cascade;
+import com.oscar.market.metrics.derivatives.ws.LiquidationCascadeListener;
+
+/** Publica inicio y fin de cascadas en "cascades:&lt;SYMBOL&gt;". */
+@Component
+public class CascadePush implements LiquidationCascadeListener {
+
+    private final PushHub hub;
+
+    public CascadePush(PushHub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void onCascadeStart(Cascade cascade) {
+        hub.publish("cascades:" + cascade.symbol(), "cascade-start", cascade);
+    }
+
+    @Override
+    public void onCascadeEnd(Cascade cascade) {
+        hub.publish("cascades:" + cascade.symbol(), "cascade-end", cascade);
+    }
+}
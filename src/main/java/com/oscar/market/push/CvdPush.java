@@ -0,0 +1,116 @@
+package com.oscar.market.push;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.oscar.market.marketdata.ws.SpotStreamHandler;
+
+/**
+ * CVD móvil (volumen agresivo comprador - vendedor) de los últimos N minutos a partir del
+ * stream aggTrade, en un anillo de segundos con totales incrementales. Se publica una vez por
+ * segundo en "cvd:&lt;SYMBOL&gt;", y solo si alguien escucha.
+ */
+@Component
+public class CvdPush implements SpotStreamHandler {
+
+    private static final String AGG_TRADE = "aggTrade";
+    private static final long SECOND_MS = 1000L;
+
+    private final PushHub hub;
+    private final Map<String, Rolling> bySymbol = new ConcurrentHashMap<>();
+
+    @Value("${market.push.cvd-window-minutes:60}")
+    private int windowMinutes;
+
+    public CvdPush(PushHub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public List<String> streamSuffixes() {
+        return List.of(AGG_TRADE);
+    }
+
+    @Override
+    public void onEvent(String symbol, String suffix, JsonNode data) {
+        double qty;
+        try {
+            qty = Double.parseDouble(data.path("q").asText());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        long ts = data.path("T").asLong();
+        if (qty <= 0 || ts <= 0) return;
+        bySymbol.computeIfAbsent(symbol, s -> new Rolling(Math.max(1, windowMinutes) * 60))
+                .add(ts, qty, data.path("m").asBoolean());
+    }
+
+    @Scheduled(fixedRate = 1000L, scheduler = "timerScheduler")
+    public void publish() {
+        long now = System.currentTimeMillis();
+        for (var e : bySymbol.entrySet()) {
+            String topic = "cvd:" + e.getKey();
+            if (!hub.hasSubscribers(topic)) continue;
+            double[] t = e.getValue().totals(now);
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("symbol", e.getKey());
+            m.put("windowMinutes", windowMinutes);
+            m.put("buys", t[0]);
+            m.put("sells", t[1]);
+            m.put("cvd", t[0] - t[1]);
+            m.put("ts", now);
+            hub.publish(topic, "cvd", m);
+        }
+    }
+
+    /** Anillo de segundos: al avanzar se restan de los totales los segundos que salen. */
+    private static final class Rolling {
+        final double[] buys, sells;
+        double totalBuys, totalSells;
+        long head = Long.MIN_VALUE; // último segundo de la ventana
+
+        Rolling(int seconds) {
+            buys = new double[seconds];
+            sells = new double[seconds];
+        }
+
+        synchronized void add(long ts, double qty, boolean sellAggressor) {
+            long s = Math.floorDiv(ts, SECOND_MS);
+            advance(s);
+            if (s <= head - buys.length) return; // fuera de la ventana
+            int i = (int) Math.floorMod(s, (long) buys.length);
+            if (sellAggressor) { sells[i] += qty; totalSells += qty; }
+            else { buys[i] += qty; totalBuys += qty; }
+        }
+
+        synchronized double[] totals(long now) {
+            advance(Math.floorDiv(now, SECOND_MS));
+            return new double[]{totalBuys, totalSells};
+        }
+
+        private void advance(long s) {
+            if (head != Long.MIN_VALUE && s <= head) return;
+            if (head == Long.MIN_VALUE || s - head >= buys.length) {
+                Arrays.fill(buys, 0.0);
+                Arrays.fill(sells, 0.0);
+                totalBuys = totalSells = 0.0;
+            } else {
+                for (long x = head + 1; x <= s; x++) {
+                    int i = (int) Math.floorMod(x, (long) buys.length);
+                    totalBuys -= buys[i];
+                    totalSells -= sells[i];
+                    buys[i] = sells[i] = 0.0;
+                }
+            }
+            head = s;
+        }
+    }
+}
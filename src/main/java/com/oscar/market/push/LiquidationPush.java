@@ -0,0 +1,37 @@
+package com.oscar.market.push;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.oscar.market.metrics.derivatives.ws.LiquidationEvent;
+import com.oscar.market.metrics.derivatives.ws.LiquidationLiveListener;
+
+/**
+ * Publica en "liquidations:&lt;SYMBOL&gt;" cada liquidación según llega del WS, sin esperar al
+ * commit en BD: una BD lenta o un journal con cola no retrasan el push. El backfill no pasa por aquí.
+ */
+@Component
+public class LiquidationPush implements LiquidationLiveListener {
+
+    private final PushHub hub;
+
+    public LiquidationPush(PushHub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void onLiquidation(LiquidationEvent e) {
+        String topic = "liquidations:" + e.getSymbol();
+        if (!hub.hasSubscribers(topic)) return;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("symbol", e.getSymbol());
+        m.put("side", e.getSide());
+        m.put("price", e.getPrice());
+        m.put("qty", e.getQty());
+        m.put("notional", e.getNotional());
+        m.put("ts", e.getTs());
+        hub.publish(topic, "liquidation", m);
+    }
+}
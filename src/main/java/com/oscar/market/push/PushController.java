@@ -0,0 +1,74 @@
+package com.oscar.market.push;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/push")
+public class PushController {
+
+    private static final int MAX_TOPICS = 20;
+
+    private final PushHub hub;
+    private final CandlePush candles;
+
+    public PushController(PushHub hub, CandlePush candles) {
+        this.hub = hub;
+        this.candles = candles;
+    }
+
+    // Suscripción SSE. Temas separados por comas:
+    //   liquidations:BTCUSDT · cascades:BTCUSDT · candles:BTCUSDC:1m · cvd:BTCUSDC
+    // Desde el navegador (EventSource no manda cabeceras) la clave va en la query:
+    //   new EventSource("/push/stream?topics=...&apiKey=...")
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam String topics) {
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String raw : topics.split(",")) {
+            String t = raw.trim();
+            if (t.isEmpty()) continue;
+            String[] p = t.split(":");
+            switch (p[0]) {
+                case "liquidations", "cascades", "cvd" -> {
+                    if (p.length != 2 || p[1].isBlank()) throw new IllegalArgumentException("Tema no válido: " + t);
+                    parsed.add(p[0] + ":" + p[1].toUpperCase(Locale.ROOT));
+                }
+                case "candles" -> {
+                    if (p.length != 3 || p[1].isBlank() || p[2].isBlank()) {
+                        throw new IllegalArgumentException("Tema no válido: " + t);
+                    }
+                    if (!candles.streamSuffixes().contains("kline_" + p[2])) {
+                        throw new IllegalArgumentException("Intervalo sin stream: " + p[2]);
+                    }
+                    parsed.add(CandlePush.topic(p[1].toUpperCase(Locale.ROOT), p[2]));
+                }
+                default -> throw new IllegalArgumentException("Tema no válido: " + t);
+            }
+        }
+        if (parsed.size() > MAX_TOPICS) throw new IllegalArgumentException("Máximo " + MAX_TOPICS + " temas");
+        for (String t : parsed) {
+            String[] p = t.split(":");
+            if (p.length == 3) candles.warm(p[1], p[2]);
+        }
+        return hub.subscribe(parsed);
+    }
+
+    // Estado del canal
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("connections", hub.connections());
+        out.put("source", "sse");
+        return out;
+    }
+}
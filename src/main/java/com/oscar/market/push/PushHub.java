@@ -0,0 +1,191 @@
+package com.oscar.market.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Canal de push por SSE. Cada evento se serializa una sola vez y se reparte a los suscriptores
+ * del tema; cada cliente tiene su cola acotada y su hilo virtual que escribe en el socket, así
+ * un cliente lento nunca frena al publicador ni a los demás. Con la cola llena el evento se
+ * descarta para ese cliente, y si sigue llena más de slow-consumer-ms se le desconecta.
+ */
+@Component
+public class PushHub {
+
+    private static final Logger log = LoggerFactory.getLogger(PushHub.class);
+
+    /** Evento ya serializado; publishedAt en nanos para medir la latencia de reparto. */
+    private record Event(String name, String json, long publishedAt) {}
+
+    private static final Event HEARTBEAT = new Event(null, null, 0);
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final Map<String, Set<Client>> byTopic = new ConcurrentHashMap<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+
+    private final Counter published;
+    private final Counter dropped;
+    private final Counter evicted;
+    private final Timer fanOutLatency;
+
+    @Value("${market.push.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${market.push.slow-consumer-ms:10000}")
+    private long slowConsumerMs;
+
+    @Value("${market.push.max-clients:500}")
+    private int maxClients;
+
+    public PushHub(MeterRegistry meters) {
+        published = Counter.builder("push.events.published").register(meters);
+        dropped = Counter.builder("push.events.dropped").register(meters);
+        evicted = Counter.builder("push.clients.evicted").register(meters);
+        // desde publish() hasta escrito en el socket del cliente
+        fanOutLatency = Timer.builder("push.fanout.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meters);
+        Gauge.builder("push.connections", clients, Set::size).register(meters);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Client c : clients) c.close();
+    }
+
+    /** Alta de un cliente SSE suscrito a los temas dados (ej. "liquidations:BTCUSDT"). */
+    public SseEmitter subscribe(Set<String> topics) {
+        if (topics.isEmpty()) throw new IllegalArgumentException("Indica al menos un tema");
+        if (clients.size() >= maxClients) throw new IllegalArgumentException("Demasiados clientes conectados");
+        SseEmitter emitter = new SseEmitter(0L); // sin timeout: el heartbeat detecta los muertos
+        Client c = new Client(emitter, topics, Math.max(1, bufferSize));
+        emitter.onCompletion(c::close);
+        emitter.onTimeout(c::close);
+        emitter.onError(e -> c.close());
+        clients.add(c);
+        for (String t : topics) {
+            byTopic.compute(t, (k, s) -> {
+                Set<Client> out = s == null ? new CopyOnWriteArraySet<>() : s;
+                out.add(c);
+                return out;
+            });
+        }
+        Thread.ofVirtual().name("push-client").start(c::drain);
+        return emitter;
+    }
+
+    public boolean hasSubscribers(String topic) {
+        Set<Client> s = byTopic.get(topic);
+        return s != null && !s.isEmpty();
+    }
+
+    /** Serializa una vez y encola para cada suscriptor. Sin suscriptores no hace nada. */
+    public void publish(String topic, String name, Object payload) {
+        Set<Client> subs = byTopic.get(topic);
+        if (subs == null || subs.isEmpty()) return;
+        String json;
+        try {
+            json = om.writeValueAsString(payload);
+        } catch (Exception ex) {
+            log.debug("Evento {} no serializable: {}", topic, ex.getMessage());
+            return;
+        }
+        Event e = new Event(name, json, System.nanoTime());
+        published.increment();
+        for (Client c : subs) c.offer(e);
+    }
+
+    /** Mantiene vivas las conexiones y destapa las cerradas por el otro extremo. */
+    @Scheduled(fixedDelayString = "${market.push.heartbeat-ms:15000}", scheduler = "timerScheduler")
+    public void heartbeat() {
+        for (Client c : clients) c.offer(HEARTBEAT);
+    }
+
+    public int connections() { return clients.size(); }
+
+    private final class Client {
+        final SseEmitter emitter;
+        final Set<String> topics;
+        final BlockingQueue<Event> queue;
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile Thread sender;
+        volatile long fullSince; // 0 = la cola no está llena
+
+        Client(SseEmitter emitter, Set<String> topics, int capacity) {
+            this.emitter = emitter;
+            this.topics = topics;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void offer(Event e) {
+            if (closed.get()) return;
+            if (queue.offer(e)) {
+                fullSince = 0;
+                return;
+            }
+            dropped.increment();
+            long now = System.nanoTime();
+            if (fullSince == 0) {
+                fullSince = now;
+            } else if (now - fullSince > TimeUnit.MILLISECONDS.toNanos(slowConsumerMs)) {
+                evicted.increment();
+                close();
+            }
+        }
+
+        void drain() {
+            sender = Thread.currentThread();
+            try {
+                while (!closed.get()) {
+                    Event e = queue.take();
+                    if (e == HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("hb"));
+                        continue;
+                    }
+                    emitter.send(SseEmitter.event().name(e.name()).data(e.json(), MediaType.APPLICATION_JSON));
+                    fanOutLatency.record(System.nanoTime() - e.publishedAt(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException ignored) {
+                // cerrado mientras esperaba
+            } catch (Exception ex) {
+                close(); // socket cerrado por el cliente
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            clients.remove(this);
+            for (String t : topics) {
+                byTopic.computeIfPresent(t, (k, s) -> {
+                    s.remove(this);
+                    return s.isEmpty() ? null : s;
+                });
+            }
+            queue.clear();
+            Thread t = sender;
+            if (t != null) t.interrupt();
+            try { emitter.complete(); } catch (Exception ignored) {}
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.oscar.market.marketdata.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oscar.market.metrics.series.GorillaBlock;
+
+class CandleArchiveTest {
+
+	/** candle_archive_1m en memoria: solo lo que usan load() y upsert(). */
+	static final class FakeJdbc extends JdbcTemplate {
+		final Map<String, byte[]> blocks = new HashMap<>();
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+			byte[] b = blocks.get(args[0] + "|" + args[1]);
+			return b == null ? List.of() : List.of((T) b);
+		}
+
+		@Override
+		public int update(String sql, Object... args) {
+			blocks.put(args[0] + "|" + args[1], (byte[]) args[3]);
+			return 1;
+		}
+	}
+
+	@Test
+	void lateKlineForEvictedDayKeepsArchivedCandles() throws Exception {
+		FakeJdbc jdbc = new FakeJdbc();
+		CandleArchive archive = new CandleArchive(jdbc, null, null, "");
+		ReflectionTestUtils.setField(archive, "enabled", true);
+
+		long yesterday = Math.floorDiv(System.currentTimeMillis(), CandleArchive.DAY_MS) - 1;
+		long start = yesterday * CandleArchive.DAY_MS;
+		DayCandles full = new DayCandles("BTCUSDT", yesterday);
+		for (int i = 0; i < 1440; i++) full.put(start + i * CandleArchive.MINUTE_MS, 100, 101, 99, 100, 1);
+		jdbc.blocks.put("BTCUSDT|" + yesterday, full.encode());
+
+		// la vela de las 23:59 llega tras una reconexión, con el día ya fuera de memoria
+		long last = start + 1439 * CandleArchive.MINUTE_MS;
+		archive.onEvent("BTCUSDT", "kline_1m", new ObjectMapper().readTree("{\"k\":{\"t\":" + last
+				+ ",\"o\":\"100\",\"h\":\"105\",\"l\":\"99\",\"c\":\"104\",\"v\":\"2\",\"x\":true}}"));
+		archive.flush();
+
+		byte[] stored = jdbc.blocks.get("BTCUSDT|" + yesterday);
+		assertEquals(1440, GorillaBlock.rows(stored));
+		double[] lastClose = {0};
+		GorillaBlock.forEach(stored, (ts, v) -> { if (ts == last) lastClose[0] = v[CandleArchive.CLOSE]; });
+		assertEquals(104, lastClose[0], 0.0);
+	}
+}
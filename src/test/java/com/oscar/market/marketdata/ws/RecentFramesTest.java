@@ -0,0 +1,21 @@
+package com.oscar.market.marketdata.ws;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RecentFramesTest {
+
+	@Test
+	void suppressesRepeatsAndForgetsOldGenerations() {
+		RecentFrames recent = new RecentFrames(16);
+		assertTrue(recent.firstSeen("{\"E\":1}"));
+		assertFalse(recent.firstSeen(new StringBuilder("{\"E\":1}")));
+		assertTrue(recent.firstSeen("{\"E\":2}"));
+
+		// dos generaciones completas después, la primera trama ya no se recuerda
+		for (int i = 100; i < 100 + 3 * 32; i++) assertTrue(recent.firstSeen("{\"E\":" + i + "}"));
+		assertTrue(recent.firstSeen("{\"E\":1}"));
+	}
+}
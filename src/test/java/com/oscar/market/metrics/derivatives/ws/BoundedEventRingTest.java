@@ -0,0 +1,62 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedEventRingTest {
+
+	@Test
+	void roundsCapacityAndRejectsWhenFull() {
+		BoundedEventRing<Integer> ring = new BoundedEventRing<>(3);
+		assertEquals(4, ring.capacity());
+		for (int i = 0; i < 4; i++) assertTrue(ring.offer(i));
+		assertFalse(ring.offer(99));
+		assertEquals(0, ring.poll());
+		assertTrue(ring.offer(4));
+		List<Integer> out = new ArrayList<>();
+		ring.drainTo(out, 10);
+		assertEquals(List.of(1, 2, 3, 4), out);
+		assertNull(ring.poll());
+	}
+
+	@Test
+	void deliversEveryEventFromConcurrentProducers() throws Exception {
+		BoundedEventRing<Long> ring = new BoundedEventRing<>(1024);
+		int producers = 4;
+		int perProducer = 100_000;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			long base = (long) p * perProducer;
+			Thread t = new Thread(() -> {
+				try { start.await(); } catch (InterruptedException ignored) {}
+				for (long i = 0; i < perProducer; i++) {
+					while (!ring.offer(base + i)) Thread.onSpinWait();
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		start.countDown();
+
+		long expected = (long) producers * perProducer;
+		long count = 0, sum = 0;
+		while (count < expected) {
+			Long v = ring.poll();
+			if (v == null) { Thread.onSpinWait(); continue; }
+			count++;
+			sum += v;
+		}
+		for (Thread t : threads) t.join();
+		assertEquals(expected * (expected - 1) / 2, sum);
+		assertNull(ring.poll());
+	}
+}
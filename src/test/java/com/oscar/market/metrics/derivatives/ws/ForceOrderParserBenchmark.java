@@ -0,0 +1,64 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmark manual (no lo ejecuta surefire): tramas/s y bytes asignados por trama de
+ * {@link ForceOrderParser} frente al camino anterior (readTree + asText + parseDouble) sobre
+ * las tramas sintéticas de fixtures/force-order-arr.jsonl (mismo formato que el stream !forceOrder@arr),
+ * con BTCUSDT/BTCUSDC como símbolos seguidos.
+ */
+public class ForceOrderParserBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		List<String> frames = ForceOrderParserTest.fixture();
+		String[] tracked = {"BTCUSDT", "BTCUSDC"};
+
+		ObjectMapper om = new ObjectMapper();
+		ForceOrderParser parser = new ForceOrderParser(tracked);
+		double[] sink = new double[1];
+		ForceOrderParser.Sink s = o -> sink[0] += o.price() * o.qty();
+
+		for (int i = 0; i < rounds / 10; i++) { // calentamiento
+			for (String f : frames) { jackson(om, f, tracked, sink); parser.parse(f, s); }
+		}
+
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+		long total = (long) rounds * frames.size();
+
+		long b0 = threads.getThreadAllocatedBytes(tid);
+		long t0 = System.nanoTime();
+		for (int i = 0; i < rounds; i++) for (String f : frames) jackson(om, f, tracked, sink);
+		long jNs = System.nanoTime() - t0;
+		long jBytes = threads.getThreadAllocatedBytes(tid) - b0;
+
+		b0 = threads.getThreadAllocatedBytes(tid);
+		t0 = System.nanoTime();
+		for (int i = 0; i < rounds; i++) for (String f : frames) parser.parse(f, s);
+		long pNs = System.nanoTime() - t0;
+		long pBytes = threads.getThreadAllocatedBytes(tid) - b0;
+
+		System.out.printf("frames=%d%n", total);
+		System.out.printf("  jackson:   %.2f M frames/s  %.0f bytes/frame%n", total / (jNs / 1e9) / 1e6, jBytes / (double) total);
+		System.out.printf("  streaming: %.2f M frames/s  %.0f bytes/frame  (x%.1f)  sink=%.1f%n",
+				total / (pNs / 1e9) / 1e6, pBytes / (double) total, jNs / (double) pNs, sink[0]);
+	}
+
+	/** Lo que hacía FuturesLiquidationWs.handle antes del parser en streaming. */
+	private static void jackson(ObjectMapper om, String json, String[] tracked, double[] sink) throws Exception {
+		JsonNode n = om.readTree(json);
+		JsonNode o = n.has("o") ? n.get("o") : n;
+		String symbol = o.get("s").asText();
+		boolean ok = false;
+		for (String t : tracked) ok |= t.equals(symbol);
+		double price = Double.parseDouble(o.get("p").asText());
+		double qty = Double.parseDouble(o.get("z").asText());
+		if (ok) sink[0] += price * qty;
+	}
+}
@@ -0,0 +1,77 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ForceOrderParserTest {
+
+	private record Parsed(String symbol, String side, double price, double qty, long ts) {}
+
+	private static List<Parsed> parse(ForceOrderParser parser, CharSequence frame) {
+		List<Parsed> out = new ArrayList<>();
+		parser.parse(frame, o -> out.add(new Parsed(o.symbol, o.side, o.price(), o.qty(), o.ts())));
+		return out;
+	}
+
+	@Test
+	void matchesJacksonOnSyntheticFrames() throws Exception {
+		ObjectMapper om = new ObjectMapper();
+		ForceOrderParser parser = new ForceOrderParser(new String[0]);
+		int n = 0;
+		for (String line : fixture()) {
+			JsonNode o = om.readTree(line).get("o");
+			List<Parsed> got = parse(parser, line);
+			assertEquals(1, got.size());
+			Parsed p = got.getFirst();
+			assertEquals(o.get("s").asText(), p.symbol());
+			assertEquals(o.get("S").asText(), p.side());
+			assertEquals(Double.parseDouble(o.get("p").asText()), p.price());
+			assertEquals(Double.parseDouble(o.get("z").asText()), p.qty());
+			assertEquals(o.get("T").asLong(), p.ts());
+			n++;
+		}
+		assertTrue(n > 100);
+	}
+
+	@Test
+	void filtersUntrackedAndInternsTracked() {
+		String[] tracked = {"BTCUSDT", "BTCUSDC"};
+		ForceOrderParser parser = new ForceOrderParser(tracked);
+		String frame = "[{\"e\":\"forceOrder\",\"E\":1,\"o\":{\"s\":\"ETHUSDT\",\"S\":\"SELL\",\"p\":\"2600\",\"z\":\"1\",\"T\":2}},"
+				+ " {\"e\":\"forceOrder\",\"E\":3,\"o\":{\"s\":\"BTCUSDT\",\"S\":\"BUY\",\"x\":{\"a\":[1,\"}\"]},\"p\":\"67000.5\",\"z\":\"0.002\",\"T\":4}}]";
+		List<Parsed> got = parse(parser, new StringBuilder(frame));
+		assertEquals(1, got.size());
+		assertSame(tracked[0], got.getFirst().symbol());
+		assertEquals(67000.5, got.getFirst().price());
+		assertEquals(4, got.getFirst().ts());
+	}
+
+	@Test
+	void fallsBackLikeBefore() {
+		ForceOrderParser parser = new ForceOrderParser(new String[0]);
+		// sin p ni z ni T: ap, q y E
+		List<Parsed> got = parse(parser, "{\"E\":1700000000000,\"o\":{\"s\":\"BTCUSDT\",\"S\":\"\",\"ap\":\"100.25\",\"q\":\"3\"}}");
+		assertEquals(new Parsed("BTCUSDT", "", 100.25, 3.0, 1700000000000L), got.getFirst());
+		// precio cero o trama truncada: nada
+		assertTrue(parse(parser, "{\"o\":{\"s\":\"BTCUSDT\",\"p\":\"0\",\"z\":\"1\"}}").isEmpty());
+		assertTrue(parse(parser, "{\"o\":{\"s\":\"BTCUSDT\",\"p\":\"1\",\"z\":").isEmpty());
+	}
+
+	// tramas sintéticas con el formato de !forceOrder@arr (símbolos, campos y precios variados), no tráfico grabado
+	static List<String> fixture() throws Exception {
+		try (InputStream in = ForceOrderParserTest.class.getResourceAsStream("/fixtures/force-order-arr.jsonl")) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().filter(l -> !l.isBlank()).toList();
+		}
+	}
+}
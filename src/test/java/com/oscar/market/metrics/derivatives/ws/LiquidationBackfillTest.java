@@ -0,0 +1,222 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oscar.market.marketdata.FuturesClient;
+import com.oscar.market.marketdata.RateBudget;
+
+class LiquidationBackfillTest {
+
+	@Test
+	void gapsAreTheComplementOfOverlappingCoverage() {
+		List<long[]> gaps = LiquidationBackfill.complement(List.of(
+				new long[]{150, 300},
+				new long[]{0, 120},
+				new long[]{200, 250},
+				new long[]{400, 450},
+				new long[]{451, 500}), 100, 600);
+		assertEquals(3, gaps.size());
+		assertArrayEquals(new long[]{121, 149}, gaps.get(0));
+		assertArrayEquals(new long[]{301, 399}, gaps.get(1));
+		assertArrayEquals(new long[]{501, 600}, gaps.get(2));
+	}
+
+	@Test
+	void noCoverageMeansOneGapAndFullCoverageNone() {
+		List<long[]> all = LiquidationBackfill.complement(List.of(), 100, 600);
+		assertEquals(1, all.size());
+		assertArrayEquals(new long[]{100, 600}, all.get(0));
+		assertEquals(0, LiquidationBackfill.complement(List.of(new long[]{50, Long.MAX_VALUE}), 100, 600).size());
+	}
+
+	/** liquidationOrders sobre una lista fija: como mucho una página, del más antiguo al más reciente. */
+	static final class FakeFutures extends FuturesClient {
+		final List<Long> times = new ArrayList<>();
+		final List<long[]> requests = new ArrayList<>();
+		volatile long failingTs = -1;
+
+		FakeFutures() {
+			super(new RateBudget(1_000_000));
+		}
+
+		@Override
+		public List<Map<String, Object>> getLiquidationOrders(String symbol, long startTime, long endTime,
+				Integer limit, String autoCloseType) {
+			synchronized (requests) {
+				requests.add(new long[]{startTime, endTime});
+			}
+			if (failingTs >= startTime && failingTs <= endTime) throw new IllegalStateException("503");
+			List<Map<String, Object>> page = new ArrayList<>();
+			for (long t : times) {
+				if (t < startTime || t > endTime) continue;
+				page.add(Map.of("price", "100", "executedQty", "1", "side", "SELL", "time", t));
+				if (page.size() == LIQUIDATIONS_PAGE) break;
+			}
+			return page;
+		}
+	}
+
+	/** liquidation_coverage en memoria; liquidation_event siempre vacía (no hay filas previas). */
+	static final class FakeJdbc extends JdbcTemplate {
+		final List<long[]> coverage = new ArrayList<>();
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+			if (!sql.contains("liquidation_coverage")) return List.of();
+			long from = (Long) args[1], to = (Long) args[2];
+			List<T> out = new ArrayList<>();
+			synchronized (coverage) {
+				for (long[] c : coverage) if (c[1] >= from && c[0] <= to) out.add((T) c.clone());
+			}
+			return out;
+		}
+
+		@Override
+		public int update(String sql, Object... args) {
+			synchronized (coverage) {
+				coverage.add(new long[]{(Long) args[2], (Long) args[3]});
+			}
+			return 1;
+		}
+	}
+
+	static final class FakeBulk extends LiquidationBulkWriter {
+		final List<LiquidationEvent> written = new ArrayList<>();
+
+		FakeBulk() {
+			super(null, null, null, "");
+		}
+
+		@Override
+		public synchronized int write(List<LiquidationEvent> batch) {
+			written.addAll(batch);
+			return batch.size();
+		}
+	}
+
+	/** Writer con todo escrito hasta un instante fijo. */
+	static final class FakeIngestor extends LiquidationIngestor {
+		volatile long flushedThrough = Long.MAX_VALUE;
+
+		FakeIngestor() {
+			super(null, null, null, null, null, null);
+		}
+
+		@Override
+		public long flushedThrough() {
+			return flushedThrough;
+		}
+	}
+
+	private static LiquidationBackfill backfill(FakeFutures futures, FakeJdbc jdbc, FakeBulk bulk, int windowMinutes) {
+		return backfill(futures, jdbc, bulk, new FakeIngestor(), windowMinutes);
+	}
+
+	private static LiquidationBackfill backfill(FakeFutures futures, FakeJdbc jdbc, FakeBulk bulk, FakeIngestor ingest,
+			int windowMinutes) {
+		LiquidationBackfill b = new LiquidationBackfill(futures, bulk, ingest, List.of(), jdbc, "", 4);
+		ReflectionTestUtils.setField(b, "enabled", true);
+		ReflectionTestUtils.setField(b, "ready", true);
+		ReflectionTestUtils.setField(b, "symbols", Set.of("BTCUSDT"));
+		ReflectionTestUtils.setField(b, "minNotional", 0.0);
+		ReflectionTestUtils.setField(b, "lookbackHours", 1);
+		ReflectionTestUtils.setField(b, "windowMinutes", windowMinutes);
+		ReflectionTestUtils.setField(b, "settleMs", 0L);
+		return b;
+	}
+
+	private static Set<Long> timestamps(List<LiquidationEvent> events) {
+		Set<Long> out = new HashSet<>();
+		for (LiquidationEvent e : events) out.add(e.getTs());
+		return out;
+	}
+
+	@Test
+	void fullPagesAreSplitUntilEveryEventIsFetched() {
+		FakeFutures futures = new FakeFutures();
+		long start = System.currentTimeMillis() - 3_540_000L; // dentro del horizonte de 1h
+		for (int i = 0; i < 2500; i++) futures.times.add(start + i * 1000L);
+		FakeBulk bulk = new FakeBulk();
+		LiquidationBackfill b = backfill(futures, new FakeJdbc(), bulk, 60);
+
+		b.pass();
+
+		LiquidationBackfill.Progress p = b.progress();
+		assertTrue(p.windowsSplit() >= 2, "ventanas partidas: " + p.windowsSplit());
+		assertEquals(0, p.windowsFailed());
+		assertEquals(2500, p.fetched());
+		assertEquals(2500, bulk.written.size());
+		assertEquals(2500, timestamps(bulk.written).size());
+	}
+
+	@Test
+	void interruptedPassResumesOnlyTheMissingWindows() {
+		FakeFutures futures = new FakeFutures();
+		long start = System.currentTimeMillis() - 3_540_000L;
+		for (int i = 0; i < 59; i++) futures.times.add(start + i * 60_000L);
+		futures.failingTs = start + 25 * 60_000L;
+		FakeJdbc jdbc = new FakeJdbc();
+		FakeBulk bulk = new FakeBulk();
+		LiquidationBackfill b = backfill(futures, jdbc, bulk, 10);
+
+		b.pass();
+		assertEquals(1, b.progress().windowsFailed());
+		int firstPass = bulk.written.size();
+		assertTrue(firstPass > 0 && firstPass < 59, "escritas en la primera pasada: " + firstPass);
+
+		futures.failingTs = -1;
+		futures.requests.clear();
+		b.pass();
+
+		// solo la ventana fallida y, como mucho, el tramo nuevo desde la pasada anterior
+		assertTrue(futures.requests.size() <= 2, "peticiones en la segunda pasada: " + futures.requests.size());
+		assertEquals(59, bulk.written.size());
+		assertEquals(59, timestamps(bulk.written).size());
+	}
+
+	@Test
+	void identicalRowsInAPageOnlyCancelAgainstStoredOnes() {
+		LiquidationEvent a1 = new LiquidationEvent(null, "BTCUSDT", "SELL", 100, 1, 100, 1000L);
+		LiquidationEvent a2 = new LiquidationEvent(null, "BTCUSDT", "SELL", 100, 1, 100, 1000L);
+		LiquidationEvent a3 = new LiquidationEvent(null, "BTCUSDT", "SELL", 100, 1, 100, 1000L);
+		LiquidationEvent b = new LiquidationEvent(null, "BTCUSDT", "BUY", 100, 1, 100, 1000L);
+		LiquidationBackfill.Fingerprint stored = new LiquidationBackfill.Fingerprint(1000L, "SELL", 100, 1);
+
+		// sin nada en BD las tres iguales son liquidaciones distintas
+		assertEquals(4, LiquidationBackfill.fresh(List.of(a1, a2, a3, b), List.of()).size());
+		// una guardada empareja una sola de la página
+		List<LiquidationEvent> fresh = LiquidationBackfill.fresh(List.of(a1, a2, a3, b), List.of(stored));
+		assertEquals(List.of(a2, a3, b), fresh);
+		assertEquals(List.of(b), LiquidationBackfill.fresh(List.of(a1, a2, b), List.of(stored, stored, stored)));
+	}
+
+	@Test
+	void windowsStopAtWhatTheWriterHasFlushed() {
+		FakeFutures futures = new FakeFutures();
+		long now = System.currentTimeMillis();
+		FakeIngestor ingest = new FakeIngestor();
+		ingest.flushedThrough = now - 1_200_000L; // 20 min aún en la cola del writer
+		LiquidationBackfill b = backfill(futures, new FakeJdbc(), new FakeBulk(), ingest, 10);
+
+		b.pass();
+
+		assertTrue(futures.requests.size() > 0);
+		for (long[] r : futures.requests) {
+			assertTrue(r[1] <= ingest.flushedThrough, "ventana pedida hasta " + r[1]);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Benchmark manual (no lo ejecuta surefire) contra un PostgreSQL real: eventos/s de
+ * {@link LiquidationBulkWriter} frente al camino JPA actual. Con IDENTITY, saveAll() hace
+ * un INSERT ... RETURNING id por entidad; aquí se reproduce eso con JDBC para no arrancar
+ * el contexto. Usa un esquema propio (bench_liq) que se borra al terminar.
+ *
+ * Variables: BENCH_JDBC_URL (por defecto jdbc:postgresql://localhost:5432/market), DB_USER, DB_PASSWORD.
+ */
+public class LiquidationBulkWriterBenchmark {
+
+	private static final String SCHEMA = "bench_liq";
+
+	public static void main(String[] args) throws Exception {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		DriverManagerDataSource ds = new DriverManagerDataSource(
+				System.getenv().getOrDefault("BENCH_JDBC_URL", "jdbc:postgresql://localhost:5432/market"),
+				System.getenv("DB_USER"), System.getenv("DB_PASSWORD"));
+		JdbcTemplate jdbc = new JdbcTemplate(ds);
+		jdbc.execute("create schema if not exists " + SCHEMA);
+		jdbc.execute("drop table if exists " + SCHEMA + ".liquidation_event");
+		jdbc.execute("create table " + SCHEMA + ".liquidation_event (id bigint generated by default as identity primary key, "
+				+ "symbol varchar(20) not null, side varchar(5), price float8 not null, qty float8 not null, "
+				+ "notional float8 not null, ts bigint not null)");
+		for (String t : new String[]{"liquidation_rollup_1m", "liquidation_rollup_1h"}) {
+			jdbc.execute("drop table if exists " + SCHEMA + "." + t);
+			jdbc.execute("create table " + SCHEMA + "." + t + " (symbol varchar(20) not null, bucket_ts bigint not null, "
+					+ "events bigint not null, buys bigint not null, sells bigint not null, notional float8 not null, "
+					+ "buy_notional float8 not null, sell_notional float8 not null, max_notional float8 not null, "
+					+ "primary key (symbol, bucket_ts))");
+		}
+
+		List<LiquidationEvent> all = events(events);
+		LiquidationBulkWriter bulk = new LiquidationBulkWriter(jdbc,
+				new LiquidationRollupStore(jdbc, SCHEMA), new DataSourceTransactionManager(ds), SCHEMA);
+		try {
+			perRow(ds, all.subList(0, Math.min(all.size(), 2000)), batchSize); // calentamiento
+			bulk.write(all.subList(0, Math.min(all.size(), 2000)));
+
+			long t0 = System.nanoTime();
+			perRow(ds, all, batchSize);
+			long jpaNs = System.nanoTime() - t0;
+
+			t0 = System.nanoTime();
+			for (int i = 0; i < all.size(); i += batchSize) {
+				bulk.write(all.subList(i, Math.min(all.size(), i + batchSize)));
+			}
+			long bulkNs = System.nanoTime() - t0;
+
+			System.out.printf("events=%d batch=%d%n", events, batchSize);
+			System.out.printf("  jpa (insert por fila):  %,.0f events/s%n", events / (jpaNs / 1e9));
+			System.out.printf("  bulk (multi-row + rollups): %,.0f events/s  (x%.1f)%n",
+					events / (bulkNs / 1e9), jpaNs / (double) bulkNs);
+		} finally {
+			jdbc.execute("drop schema " + SCHEMA + " cascade");
+		}
+	}
+
+	/** Lo que hace Hibernate con IDENTITY: una sentencia y un round trip por evento. */
+	private static void perRow(DriverManagerDataSource ds, List<LiquidationEvent> all, int batchSize) throws Exception {
+		String sql = "insert into " + SCHEMA + ".liquidation_event (symbol, side, price, qty, notional, ts) values (?,?,?,?,?,?)";
+		try (Connection c = ds.getConnection()) {
+			c.setAutoCommit(false);
+			try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+				for (int i = 0; i < all.size(); i++) {
+					LiquidationEvent e = all.get(i);
+					ps.setString(1, e.getSymbol());
+					ps.setString(2, e.getSide());
+					ps.setDouble(3, e.getPrice());
+					ps.setDouble(4, e.getQty());
+					ps.setDouble(5, e.getNotional());
+					ps.setLong(6, e.getTs());
+					ps.executeUpdate();
+					try (ResultSet keys = ps.getGeneratedKeys()) { keys.next(); }
+					if ((i + 1) % batchSize == 0) c.commit();
+				}
+			}
+			c.commit();
+		}
+	}
+
+	private static List<LiquidationEvent> events(int n) {
+		SplittableRandom rnd = new SplittableRandom(7);
+		List<LiquidationEvent> out = new ArrayList<>(n);
+		long ts = System.currentTimeMillis() - n;
+		for (int i = 0; i < n; i++) {
+			double price = 67_000 + rnd.nextDouble() * 500;
+			double qty = 0.001 + rnd.nextDouble() * 2;
+			out.add(new LiquidationEvent(null, rnd.nextBoolean() ? "BTCUSDT" : "BTCUSDC",
+					rnd.nextBoolean() ? "BUY" : "SELL", price, qty, price * qty, ts + i));
+		}
+		return out;
+	}
+}
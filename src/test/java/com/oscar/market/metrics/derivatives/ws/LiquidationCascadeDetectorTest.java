@@ -0,0 +1,71 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LiquidationCascadeDetectorTest {
+
+	@Test
+	void startsOnNotionalBurstAndEndsAfterCooldown() {
+		List<String> seen = new ArrayList<>();
+		LiquidationCascadeDetector d = new LiquidationCascadeDetector(List.of(new LiquidationCascadeListener() {
+			@Override
+			public void onCascadeStart(LiquidationCascadeDetector.Cascade c) {
+				seen.add("start:" + c.side() + ":" + c.trigger());
+			}
+
+			@Override
+			public void onCascadeEnd(LiquidationCascadeDetector.Cascade c) {
+				seen.add("end:" + c.side());
+			}
+		}));
+		long t0 = 1_700_000_000_000L;
+
+		// ruido de fondo: no dispara
+		for (int s = 0; s < 120; s += 5) d.onEvent("BTCUSDT", "SELL", 20_000, t0 + s * 1000L);
+		assertTrue(seen.isEmpty());
+
+		// 6 x 1M en 6 segundos: 30s supera 5M
+		long burst = t0 + 200_000;
+		for (int s = 0; s < 6; s++) d.onEvent("BTCUSDT", "SELL", 1_000_000, burst + s * 1000L);
+		assertEquals(List.of("start:SELL:notional"), seen);
+		LiquidationCascadeDetector.Cascade active = d.recent("BTCUSDT", 10).get(0);
+		assertNull(active.endedAt());
+		assertEquals(6_000_000, active.notional(), 1e-6);
+
+		// la ráfaga sigue dentro de los 30s; después corre el cooldown de 20s
+		d.tick(burst + 20_000);
+		d.tick(burst + 36_000);
+		assertEquals(1, seen.size());
+		d.tick(burst + 45_000);
+		assertEquals(List.of("start:SELL:notional", "end:SELL"), seen);
+		LiquidationCascadeDetector.Cascade done = d.recent("BTCUSDT", 10).get(0);
+		assertEquals(burst + 45_000, done.endedAt());
+		assertEquals(6, done.events());
+	}
+
+	@Test
+	void slidingSumsDropSecondsThatLeaveEachWindow() {
+		LiquidationCascadeDetector d = new LiquidationCascadeDetector(List.of());
+		long t0 = 1_700_000_000_000L;
+		for (int s = 0; s <= 70; s++) d.onEvent("ETHUSDT", "BUY", 100, t0 + s * 1000L);
+		var w2 = d.windows("ETHUSDT", "BUY", t0 + 70_500);
+		assertEquals(100, w2.notional1s(), 1e-9);
+		assertEquals(10, w2.events10s());
+		assertEquals(30, w2.events30s());
+		assertEquals(60, w2.events60s());
+		assertEquals(6000, w2.notional60s(), 1e-9);
+
+		// 25s después: solo quedan en 60s los segundos 36..70
+		var later = d.windows("ETHUSDT", "BUY", t0 + 95_000);
+		assertEquals(0, later.events10s());
+		assertEquals(5, later.events30s());
+		assertEquals(35, later.events60s());
+	}
+}
@@ -0,0 +1,65 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oscar.market.metrics.series.LongDoubleMap;
+
+class LiquidationHeatmapTest {
+
+	@Test
+	void groupsBaseCellsIntoWiderPriceAndTimeBuckets() {
+		LiquidationHeatmap heatmap = new LiquidationHeatmap(null, "market_schema");
+		ReflectionTestUtils.setField(heatmap, "priceStep", 10.0);
+		ReflectionTestUtils.setField(heatmap, "timeStepMinutes", 5);
+		ReflectionTestUtils.setField(heatmap, "retentionDays", 7);
+		ReflectionTestUtils.setField(heatmap, "maxCells", 1000);
+		heatmap.rebuild(); // sin BD: solo fija la resolución base
+
+		long t0 = 1_700_000_100_000L - 1_700_000_100_000L % 3_600_000L;
+		heatmap.onPersisted(List.of(
+				new LiquidationEvent(null, "BTCUSDT", "SELL", 60005, 1, 60005, t0 + 60_000),
+				new LiquidationEvent(null, "BTCUSDT", "BUY", 60095, 1, 60095, t0 + 20 * 60_000),
+				new LiquidationEvent(null, "BTCUSDT", "SELL", 60150, 1, 60150, t0 + 30 * 60_000),
+				new LiquidationEvent(null, "BTCUSDT", "SELL", 60150, 1, 60150, t0 + 90 * 60_000)));
+
+		LiquidationHeatmap.Heatmap base = heatmap.query("BTCUSDT", t0, t0 + 3_600_000L, 0, 0);
+		assertEquals(3, base.cells().size());
+		assertEquals(60000, base.cells().get(0).priceFrom(), 1e-9);
+		assertEquals(t0, base.cells().get(0).ts());
+
+		LiquidationHeatmap.Heatmap wide = heatmap.query("BTCUSDT", t0, t0 + 7_200_000L, 100, 3_600_000L);
+		assertEquals(100, wide.priceStep(), 1e-9);
+		assertEquals(3, wide.cells().size()); // (h0, 60000), (h0, 60100), (h1, 60100)
+		LiquidationHeatmap.Cell first = wide.cells().get(0);
+		assertEquals(2, first.events());
+		assertEquals(60095, first.buyNotional(), 1e-9);
+		assertEquals(60005, first.sellNotional(), 1e-9);
+		assertEquals(t0 + 3_600_000L, wide.cells().get(2).ts());
+	}
+
+	@Test
+	void primitiveMapGrowsAndRemoves() {
+		LongDoubleMap map = new LongDoubleMap(2, 4);
+		for (long k = 0; k < 10_000; k++) {
+			int s = map.slot(k * 31);
+			map.add(s, 0, 1);
+			map.add(s, 1, k);
+		}
+		assertEquals(10_000, map.size());
+		map.add(map.slot(31), 0, 1);
+		assertEquals(2, map.get(map.find(31), 0), 1e-9);
+		assertEquals(-1, map.find(32));
+
+		assertEquals(5_000, map.removeIf(k -> (k / 31) % 2 == 0));
+		assertEquals(5_000, map.size());
+		assertEquals(-1, map.find(0));
+		assertTrue(map.find(31 * 9_999L) >= 0);
+		assertEquals(9_999, map.get(map.find(31 * 9_999L), 1), 1e-9);
+	}
+}
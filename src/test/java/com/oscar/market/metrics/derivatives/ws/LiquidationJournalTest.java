@@ -0,0 +1,90 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LiquidationJournalTest {
+
+	@TempDir
+	Path dir;
+
+	private static LiquidationEvent ev(int i) {
+		return new LiquidationEvent(null, "BTCUSDT", i % 2 == 0 ? "SELL" : null, 60_000 + i, 0.5, (60_000 + i) * 0.5, 1_700_000_000_000L + i);
+	}
+
+	@Test
+	void replaysFromCheckpointAcrossSegmentsAfterRestart() throws Exception {
+		// segmentos de 256 bytes: 4 registros por segmento, fuerza varios saltos
+		LiquidationJournal j = new LiquidationJournal(dir, 256, 100);
+		for (int i = 0; i < 20; i++) assertTrue(j.append(ev(i)));
+		assertEquals(20, j.pending());
+
+		List<LiquidationEvent> out = new ArrayList<>();
+		assertEquals(7, j.read(out, 7));
+		j.commit();
+		assertEquals(13, j.read(new ArrayList<>(), 100)); // leído pero sin checkpoint
+		j.close();
+
+		LiquidationJournal again = new LiquidationJournal(dir, 256, 100);
+		assertEquals(13, again.pending());
+		out.clear();
+		assertEquals(13, again.read(out, 100));
+		for (int k = 0; k < 13; k++) {
+			LiquidationEvent e = out.get(k);
+			int i = k + 7;
+			assertEquals("BTCUSDT", e.getSymbol());
+			assertEquals(60_000 + i, e.getPrice());
+			assertEquals(1_700_000_000_000L + i, e.getTs());
+			if (i % 2 == 0) assertEquals("SELL", e.getSide());
+			else assertNull(e.getSide());
+		}
+
+		// lo nuevo va detrás del backlog
+		assertTrue(again.append(ev(99)));
+		out.clear();
+		assertEquals(1, again.read(out, 100));
+		assertEquals(1_700_000_000_099L, out.get(0).getTs());
+	}
+
+	@Test
+	void positionCommittedInDbWinsOverAStaleFileCheckpoint() throws Exception {
+		LiquidationJournal j = new LiquidationJournal(dir, 256, 100);
+		for (int i = 0; i < 10; i++) assertTrue(j.append(ev(i)));
+		assertEquals(6, j.read(new ArrayList<>(), 6));
+		long[] committed = j.position(); // el lote entró en BD pero el proceso cae antes del checkpoint en fichero
+		j.close();
+
+		// una posición de otro journal (segmento que no existe) no se tiene en cuenta
+		LiquidationJournal other = new LiquidationJournal(dir, 256, 100, new long[]{999, 0});
+		assertEquals(10, other.pending());
+		other.close();
+
+		LiquidationJournal again = new LiquidationJournal(dir, 256, 100, committed);
+		assertEquals(4, again.pending());
+		List<LiquidationEvent> out = new ArrayList<>();
+		assertEquals(4, again.read(out, 100));
+		assertEquals(1_700_000_000_006L, out.get(0).getTs());
+	}
+
+	@Test
+	void rejectsWhenFullAndFreesSegmentsOnCommit() throws Exception {
+		LiquidationJournal j = new LiquidationJournal(dir, 256, 2);
+		int accepted = 0;
+		while (j.append(ev(accepted))) accepted++;
+		assertEquals(8, accepted);
+		assertFalse(j.append(ev(100)));
+
+		assertEquals(8, j.read(new ArrayList<>(), 100));
+		j.commit();
+		assertTrue(j.append(ev(100)));
+	}
+}
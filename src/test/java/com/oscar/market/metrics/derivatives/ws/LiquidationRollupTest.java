@@ -0,0 +1,54 @@
+package com.oscar.market.metrics.derivatives.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LiquidationRollupTest {
+
+	@Test
+	void sumsMinuteBucketsForAnyWindow() {
+		LiquidationRollup rollup = new LiquidationRollup(null, "market_schema");
+		long now = System.currentTimeMillis();
+		rollup.onPersisted(List.of(
+				new LiquidationEvent(null, "BTCUSDT", "SELL", 60000, 1, 60000, now - 2 * 60_000),
+				new LiquidationEvent(null, "BTCUSDT", "BUY", 60000, 2, 120000, now - 2 * 60_000),
+				new LiquidationEvent(null, "BTCUSDT", "SELL", 60000, 0.5, 30000, now - 3 * 3_600_000),
+				new LiquidationEvent(null, "BTCUSDC", "SELL", 60000, 0.5, 30000, now)));
+
+		LiquidationRollup.Totals m5 = rollup.window("BTCUSDT", LiquidationRollup.windowMs("5m"));
+		assertEquals(2, m5.count());
+		assertEquals(1, m5.buys());
+		assertEquals(1, m5.sells());
+		assertEquals(180000, m5.notional(), 1e-9);
+		assertEquals(120000, m5.maxNotional(), 1e-9);
+
+		LiquidationRollup.Totals h4 = rollup.window("BTCUSDT", LiquidationRollup.windowMs("4h"));
+		assertEquals(3, h4.count());
+		assertEquals(90000, h4.sellNotional(), 1e-9);
+	}
+
+	@Test
+	void tierBoundariesFallOnWholeHours() {
+		LiquidationRollupStore store = new LiquidationRollupStore(null, "market_schema");
+		long now = 1_700_000_123_456L;
+		long horizon = store.minuteHorizon(now);
+		assertEquals(0, horizon % LiquidationRollupStore.HOUR_MS);
+		assertTrue(now - horizon >= 30 * LiquidationRollupStore.DAY_MS);
+		assertTrue(now - horizon < 30 * LiquidationRollupStore.DAY_MS + LiquidationRollupStore.HOUR_MS);
+		// buckets de 5m cortan en la hora; de 90m, cada 3h
+		assertEquals(3_600_000L, LiquidationRollupStore.lcm(5 * 60_000L, 3_600_000L));
+		assertEquals(3 * 3_600_000L, LiquidationRollupStore.lcm(90 * 60_000L, 3_600_000L));
+	}
+
+	@Test
+	void rejectsInvalidWindows() {
+		assertEquals(7 * 86_400_000L, LiquidationRollup.windowMs("7d"));
+		assertThrows(IllegalArgumentException.class, () -> LiquidationRollup.windowMs("10x"));
+		assertThrows(IllegalArgumentException.class, () -> LiquidationRollup.windowMs("h"));
+	}
+}
@@ -0,0 +1,74 @@
+package com.oscar.market.metrics.flow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oscar.market.marketdata.BinanceClient;
+import com.oscar.market.marketdata.Candle;
+import com.oscar.market.marketdata.RateBudget;
+
+class ObvTrackerTest {
+
+	/** Velas de 1h cerradas con cierres 1, 2, 1, 3 y volumen 10, 20, 30, 40. */
+	static final class FakeClient extends BinanceClient {
+		final List<String> calls = new ArrayList<>();
+
+		FakeClient() {
+			super(null, new RateBudget(1_000_000));
+		}
+
+		@Override
+		public List<Candle> getKlines(String symbol, String interval, int limit) {
+			calls.add(symbol + "|" + interval);
+			long start = (System.currentTimeMillis() / 3_600_000L - 5) * 3_600_000L;
+			double[] close = {1, 2, 1, 3};
+			List<Candle> out = new ArrayList<>();
+			for (int i = 0; i < close.length; i++) {
+				long t = start + i * 3_600_000L;
+				out.add(new Candle(Instant.ofEpochMilli(t), close[i], close[i], close[i], close[i], 10 * (i + 1),
+						Instant.ofEpochMilli(t + 3_599_999L)));
+			}
+			return out;
+		}
+	}
+
+	private static ObvTracker tracker(FakeClient client, int maxUntracked) {
+		ObvTracker t = new ObvTracker(client, maxUntracked);
+		ReflectionTestUtils.setField(t, "intervalsCsv", "1h");
+		ReflectionTestUtils.setField(t, "history", 200);
+		ReflectionTestUtils.setField(t, "symbolsTrackedCsv", "BTCUSDC");
+		return t;
+	}
+
+	@Test
+	void untrackedPairsAreSeededOnDemandInABoundedCache() {
+		FakeClient client = new FakeClient();
+		ObvTracker t = tracker(client, 2);
+
+		ObvTracker.Window w = t.window("ethusdt", "4h", 10);
+		assertArrayEquals(new double[]{0, 20, -10, 30}, w.obv());
+		t.window("SOLUSDT", "1h", 10);
+		t.window("XRPUSDT", "1h", 10);
+
+		Map<?, ?> untracked = (Map<?, ?>) ReflectionTestUtils.getField(t, "untracked");
+		assertEquals(2, untracked.size());
+		assertEquals(List.of("ETHUSDT|4h", "SOLUSDT|1h", "XRPUSDT|1h"), client.calls);
+	}
+
+	@Test
+	void malformedIntervalIsRejectedWithoutState() {
+		ObvTracker t = tracker(new FakeClient(), 2);
+		assertThrows(IllegalArgumentException.class, () -> t.window("BTCUSDC", "xh", 10));
+		assertThrows(IllegalArgumentException.class, () -> t.window("BTCUSDC", "", 10));
+		assertEquals(0, ((Map<?, ?>) ReflectionTestUtils.getField(t, "untracked")).size());
+	}
+}
@@ -0,0 +1,58 @@
+package com.oscar.market.metrics.flow.book;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmark manual (no lo ejecuta surefire): updates/s sobre {@link PriceLevelBook}
+ * con un paseo aleatorio cerca del mejor precio, como un diff stream de BTC.
+ * Mide también los bytes asignados por el hilo durante la fase medida (debe ser ~0).
+ */
+public class PriceLevelBookBenchmark {
+
+	public static void main(String[] args) {
+		int levels = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int updates = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+
+		// precios en ticks de 0.01 alrededor de 67000.00
+		long tickSize = FixedPoint.SCALE / 100;
+		long mid = FixedPoint.parse("67000.00");
+		int n = 1 << 20;
+		boolean[] sides = new boolean[n];
+		long[] ticks = new long[n];
+		double[] qtys = new double[n];
+		SplittableRandom rnd = new SplittableRandom(42);
+		for (int i = 0; i < n; i++) {
+			sides[i] = rnd.nextBoolean();
+			long offset = (long) Math.abs(rnd.nextGaussian() * 200) + 1;
+			ticks[i] = sides[i] ? mid - offset * tickSize : mid + offset * tickSize;
+			qtys[i] = rnd.nextInt(10) == 0 ? 0.0 : rnd.nextDouble() * 2;
+		}
+
+		PriceLevelBook book = new PriceLevelBook(levels);
+		run(book, sides, ticks, qtys, updates / 10); // calentamiento
+
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().threadId();
+		long bytes0 = threads.getThreadAllocatedBytes(tid);
+		long t0 = System.nanoTime();
+		double sink = run(book, sides, ticks, qtys, updates);
+		long elapsed = System.nanoTime() - t0;
+		long bytes = threads.getThreadAllocatedBytes(tid) - bytes0;
+
+		System.out.printf("levels=%d updates=%d  %.1f M updates/s  %.1f ns/update  allocated=%d bytes  (bidDepth=%d askDepth=%d sink=%.3f)%n",
+				levels, updates, updates / (elapsed / 1e9) / 1e6, elapsed / (double) updates, bytes,
+				book.depth(true), book.depth(false), sink);
+	}
+
+	private static double run(PriceLevelBook book, boolean[] sides, long[] ticks, double[] qtys, int updates) {
+		int mask = sides.length - 1;
+		double sink = 0.0;
+		for (int i = 0; i < updates; i++) {
+			int j = i & mask;
+			book.update(sides[j], ticks[j], qtys[j]);
+			if ((i & 1023) == 0) sink += book.cumulative(true, 20) - book.cumulative(false, 20);
+		}
+		return sink;
+	}
+}
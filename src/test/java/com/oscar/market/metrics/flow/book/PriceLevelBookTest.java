@@ -0,0 +1,61 @@
+package com.oscar.market.metrics.flow.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class PriceLevelBookTest {
+
+	@Test
+	void parsesFixedPoint() {
+		assertEquals(6712345000000L, FixedPoint.parse("67123.45000000"));
+		assertEquals(1L, FixedPoint.parse("0.00000001"));
+		assertEquals(150000000L, FixedPoint.parse("1.5"));
+		assertEquals(-250000000L, FixedPoint.parse("-2.5"));
+	}
+
+	@Test
+	void keepsSidesOrderedAndRemovesZeroQty() {
+		PriceLevelBook book = new PriceLevelBook(16);
+		book.update(true, 100, 1.0);
+		book.update(true, 102, 2.0);
+		book.update(true, 101, 3.0);
+		book.update(false, 105, 1.0);
+		book.update(false, 103, 4.0);
+
+		assertEquals(102, book.tick(true, 0));
+		assertEquals(101, book.tick(true, 1));
+		assertEquals(103, book.tick(false, 0));
+
+		book.update(true, 102, 0.0);
+		assertEquals(2, book.depth(true));
+		assertEquals(101, book.tick(true, 0));
+	}
+
+	@Test
+	void answersCumulativeDepthAfterUpdates() {
+		PriceLevelBook book = new PriceLevelBook(16);
+		book.update(false, 10, 1.0);
+		book.update(false, 11, 2.0);
+		book.update(false, 12, 3.0);
+		assertEquals(6.0, book.cumulative(false, 3), 1e-12);
+
+		book.update(false, 9, 5.0);
+		book.update(false, 11, 0.5);
+		assertEquals(6.0, book.cumulative(false, 2), 1e-12);
+		assertEquals(6.5, book.cumulativeTo(false, 11), 1e-12);
+		assertEquals(9.5, book.cumulative(false, 100), 1e-12);
+	}
+
+	@Test
+	void dropsWorstLevelWhenFull() {
+		PriceLevelBook book = new PriceLevelBook(2);
+		book.update(true, 100, 1.0);
+		book.update(true, 99, 1.0);
+		book.update(true, 98, 1.0);   // peor que todos: se ignora
+		book.update(true, 101, 1.0);  // mejor: expulsa 99
+		assertEquals(2, book.depth(true));
+		assertEquals(101, book.tick(true, 0));
+		assertEquals(100, book.tick(true, 1));
+	}
+}
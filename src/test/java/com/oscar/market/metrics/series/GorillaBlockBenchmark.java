@@ -0,0 +1,210 @@
+package com.oscar.market.metrics.series;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.oscar.market.marketdata.Candle;
+import com.oscar.market.metrics.tendencies.ema.EmaService;
+import com.oscar.market.metrics.tendencies.rsi.RsiService;
+
+/**
+ * Benchmark manual (no lo ejecuta surefire): un año de velas de 1m sintéticas de BTC
+ * (precio a 0,01 y volumen a 5 decimales) en bloques {@link GorillaBlock} de un día.
+ * Mide ratio de compresión, codificación y decodificación en streaming hacia EMA/RSI.
+ * Con BENCH_JDBC_URL (+ DB_USER, DB_PASSWORD) compara además con una fila por vela en
+ * PostgreSQL (tamaño real con índice y lectura a objetos + computeEma/computeRsi) y con
+ * los bloques guardados en bytea. Usa un esquema propio (bench_candles) que se borra al terminar.
+ */
+public class GorillaBlockBenchmark {
+
+	private static final int PER_DAY = 1440;
+	private static final String SCHEMA = "bench_candles";
+
+	public static void main(String[] args) throws Exception {
+		int days = args.length > 0 ? Integer.parseInt(args[0]) : 365;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int n = days * PER_DAY;
+
+		long[] ts = new long[n];
+		double[][] cols = synthetic(ts, n);
+
+		// codificación por día
+		byte[][] blocks = new byte[days][];
+		long t0 = System.nanoTime();
+		for (int d = 0; d < days; d++) blocks[d] = encodeDay(ts, cols, d);
+		long encNs = System.nanoTime() - t0;
+		long compressed = 0;
+		for (byte[] b : blocks) compressed += b.length;
+		long raw = (long) n * (8 + 5 * 8);
+
+		// decodificación en streaming hacia los kernels (se repite y se queda el mejor)
+		long best = Long.MAX_VALUE;
+		double check = 0;
+		for (int r = 0; r < rounds; r++) {
+			t0 = System.nanoTime();
+			check = streamKernels(blocks);
+			best = Math.min(best, System.nanoTime() - t0);
+		}
+
+		System.out.printf("velas: %,d (%d días)%n", n, days);
+		System.out.printf("sin comprimir (ts + 5 doubles): %,d bytes (%.1f B/vela)%n", raw, (double) raw / n);
+		System.out.printf("gorilla: %,d bytes (%.2f B/vela, ratio %.1fx)%n", compressed, (double) compressed / n,
+				(double) raw / compressed);
+		System.out.printf("codificación: %.1f M velas/s%n", n / (encNs / 1e9) / 1e6);
+		System.out.printf("decodificación + EMA20/EMA50/RSI14: %.1f M velas/s (%.1f ms) [%.4f]%n",
+				n / (best / 1e9) / 1e6, best / 1e6, check);
+
+		String url = System.getenv("BENCH_JDBC_URL");
+		if (url == null) {
+			System.out.println("BENCH_JDBC_URL no definido: sin comparación con filas en PostgreSQL");
+			return;
+		}
+		DriverManagerDataSource ds = new DriverManagerDataSource(url, System.getenv("DB_USER"), System.getenv("DB_PASSWORD"));
+		try (Connection con = ds.getConnection(); Statement st = con.createStatement()) {
+			st.execute("drop schema if exists " + SCHEMA + " cascade");
+			st.execute("create schema " + SCHEMA);
+			st.execute("create table " + SCHEMA + ".candle (id bigint generated by default as identity primary key,"
+					+ " symbol varchar(20) not null, open_time bigint not null, open float8 not null, high float8 not null,"
+					+ " low float8 not null, close float8 not null, volume float8 not null, close_time bigint not null)");
+			st.execute("create index on " + SCHEMA + ".candle (symbol, open_time)");
+			st.execute("create table " + SCHEMA + ".candle_archive_1m (symbol varchar(20) not null, day bigint not null,"
+					+ " rows int not null, block bytea not null, primary key (symbol, day))");
+			try {
+				con.setAutoCommit(false);
+				try (PreparedStatement ps = con.prepareStatement("insert into " + SCHEMA + ".candle"
+						+ " (symbol, open_time, open, high, low, close, volume, close_time) values (?,?,?,?,?,?,?,?)")) {
+					for (int i = 0; i < n; i++) {
+						ps.setString(1, "BTCUSDT");
+						ps.setLong(2, ts[i]);
+						for (int c = 0; c < 5; c++) ps.setDouble(3 + c, cols[c][i]);
+						ps.setLong(8, ts[i] + 59_999);
+						ps.addBatch();
+						if (i % 5000 == 4999) ps.executeBatch();
+					}
+					ps.executeBatch();
+				}
+				try (PreparedStatement ps = con.prepareStatement("insert into " + SCHEMA + ".candle_archive_1m"
+						+ " (symbol, day, rows, block) values (?,?,?,?)")) {
+					for (int d = 0; d < days; d++) {
+						ps.setString(1, "BTCUSDT");
+						ps.setLong(2, d);
+						ps.setInt(3, PER_DAY);
+						ps.setBytes(4, blocks[d]);
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				}
+				con.commit();
+				st.execute("vacuum analyze " + SCHEMA + ".candle");
+			} finally {
+				con.setAutoCommit(true);
+			}
+			long rowBytes = size(st, "candle"), blockBytes = size(st, "candle_archive_1m");
+			System.out.printf("postgres filas: %,d bytes (%.1f B/vela)%n", rowBytes, (double) rowBytes / n);
+			System.out.printf("postgres bytea: %,d bytes (%.2f B/vela, %.1fx menos)%n", blockBytes,
+					(double) blockBytes / n, (double) rowBytes / blockBytes);
+
+			con.setAutoCommit(false);
+			long rowsBest = Long.MAX_VALUE, blocksBest = Long.MAX_VALUE;
+			for (int r = 0; r < rounds; r++) {
+				t0 = System.nanoTime();
+				List<Candle> candles = new ArrayList<>(n);
+				try (PreparedStatement ps = con.prepareStatement("select open_time, open, high, low, close, volume, close_time from "
+						+ SCHEMA + ".candle where symbol = 'BTCUSDT' order by open_time")) {
+					ps.setFetchSize(10_000);
+					try (ResultSet rs = ps.executeQuery()) {
+						while (rs.next()) {
+							candles.add(new Candle(Instant.ofEpochMilli(rs.getLong(1)), rs.getDouble(2),
+									rs.getDouble(3), rs.getDouble(4), rs.getDouble(5), rs.getDouble(6),
+									Instant.ofEpochMilli(rs.getLong(7))));
+						}
+					}
+				}
+				List<Double> closes = new ArrayList<>(n);
+				for (Candle c : candles) closes.add(c.close());
+				double v = EmaService.computeEma(closes, 20) + EmaService.computeEma(closes, 50) + RsiService.computeRsi(closes, 14);
+				rowsBest = Math.min(rowsBest, System.nanoTime() - t0);
+				if (r == 0) System.out.printf("  [filas %.4f]%n", v);
+
+				t0 = System.nanoTime();
+				List<byte[]> read = new ArrayList<>(days);
+				try (PreparedStatement ps = con.prepareStatement("select block from " + SCHEMA
+						+ ".candle_archive_1m where symbol = 'BTCUSDT' order by day");
+					 ResultSet rs = ps.executeQuery()) {
+					while (rs.next()) read.add(rs.getBytes(1));
+				}
+				v = streamKernels(read.toArray(new byte[0][]));
+				blocksBest = Math.min(blocksBest, System.nanoTime() - t0);
+				if (r == 0) System.out.printf("  [bloques %.4f]%n", v);
+			}
+			con.setAutoCommit(true);
+			System.out.printf("lectura + indicadores, filas: %.1f ms (%.2f M velas/s)%n", rowsBest / 1e6, n / (rowsBest / 1e9) / 1e6);
+			System.out.printf("lectura + indicadores, bytea: %.1f ms (%.2f M velas/s)%n", blocksBest / 1e6, n / (blocksBest / 1e9) / 1e6);
+			st.execute("drop schema if exists " + SCHEMA + " cascade");
+		}
+	}
+
+	private static double[][] synthetic(long[] ts, int n) {
+		SplittableRandom rnd = new SplittableRandom(42);
+		double[][] cols = new double[5][n];
+		long start = 1_672_531_200_000L; // 2023-01-01
+		double close = 16_500;
+		for (int i = 0; i < n; i++) {
+			ts[i] = start + i * 60_000L;
+			double open = close;
+			close = round2(open * (1 + rnd.nextGaussian() * 0.0008));
+			double hi = round2(Math.max(open, close) * (1 + Math.abs(rnd.nextGaussian()) * 0.0004));
+			double lo = round2(Math.min(open, close) * (1 - Math.abs(rnd.nextGaussian()) * 0.0004));
+			cols[0][i] = open;
+			cols[1][i] = hi;
+			cols[2][i] = lo;
+			cols[3][i] = close;
+			cols[4][i] = Math.round(Math.abs(rnd.nextGaussian()) * 40 * 1e5) / 1e5;
+		}
+		return cols;
+	}
+
+	private static byte[] encodeDay(long[] ts, double[][] cols, int d) {
+		int from = d * PER_DAY;
+		long[] t = Arrays.copyOfRange(ts, from, from + PER_DAY);
+		double[][] c = new double[5][];
+		for (int k = 0; k < 5; k++) c[k] = Arrays.copyOfRange(cols[k], from, from + PER_DAY);
+		return GorillaBlock.encode(t, c, PER_DAY);
+	}
+
+	private static double streamKernels(byte[][] blocks) {
+		IndicatorKernels.Ema ema20 = new IndicatorKernels.Ema(20);
+		IndicatorKernels.Ema ema50 = new IndicatorKernels.Ema(50);
+		IndicatorKernels.Rsi rsi14 = new IndicatorKernels.Rsi(14);
+		for (byte[] b : blocks) {
+			GorillaBlock.Reader r = GorillaBlock.reader(b);
+			while (r.next()) {
+				double c = r.value(3);
+				ema20.accept(c);
+				ema50.accept(c);
+				rsi14.accept(c);
+			}
+		}
+		return ema20.value() + ema50.value() + rsi14.value();
+	}
+
+	private static double round2(double v) {
+		return Math.round(v * 100) / 100.0;
+	}
+
+	private static long size(Statement st, String table) throws Exception {
+		try (ResultSet rs = st.executeQuery("select pg_total_relation_size('" + SCHEMA + "." + table + "')")) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.oscar.market.metrics.series;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import com.oscar.market.metrics.tendencies.ema.EmaService;
+import com.oscar.market.metrics.tendencies.rsi.RsiService;
+
+class GorillaBlockTest {
+
+	@Test
+	void roundTripsIrregularTimestampsAndSpecialDoubles() {
+		SplittableRandom rnd = new SplittableRandom(7);
+		int n = 5000;
+		long[] ts = new long[n];
+		double[][] cols = new double[3][n];
+		long t = 1_700_000_000_000L;
+		double p = 60_000;
+		for (int i = 0; i < n; i++) {
+			// paso regular con saltos, retrocesos y huecos enormes
+			t += i % 97 == 0 ? rnd.nextLong(1L << 40) : i % 13 == 0 ? -5 : 60_000;
+			ts[i] = t;
+			p = Math.round((p + rnd.nextGaussian() * 20) * 100) / 100.0;
+			cols[0][i] = p;
+			cols[1][i] = i % 10 == 0 ? cols[1][Math.max(0, i - 1)] : rnd.nextDouble() * 1e6;
+			cols[2][i] = switch (i % 7) {
+				case 0 -> Double.NaN;
+				case 1 -> -0.0;
+				case 2 -> Double.POSITIVE_INFINITY;
+				case 3 -> Double.MIN_VALUE;
+				default -> -p;
+			};
+		}
+		byte[] block = GorillaBlock.encode(ts, cols, n);
+		assertEquals(n, GorillaBlock.rows(block));
+		assertEquals(3, GorillaBlock.columns(block));
+
+		int[] i = {0};
+		GorillaBlock.forEach(block, (time, v) -> {
+			int k = i[0]++;
+			assertEquals(ts[k], time);
+			for (int c = 0; c < 3; c++) {
+				assertEquals(Double.doubleToRawLongBits(cols[c][k]), Double.doubleToRawLongBits(v[c]));
+			}
+		});
+		assertEquals(n, i[0]);
+	}
+
+	@Test
+	void regularCandlesCompressAndFeedKernels() {
+		int n = 1440;
+		long[] ts = new long[n];
+		double[][] cols = new double[1][n];
+		List<Double> closes = new ArrayList<>(n);
+		SplittableRandom rnd = new SplittableRandom(1);
+		double p = 60_000;
+		for (int i = 0; i < n; i++) {
+			ts[i] = 1_700_000_000_000L + i * 60_000L;
+			p = Math.round((p + rnd.nextGaussian() * 15) * 100) / 100.0;
+			cols[0][i] = p;
+			closes.add(p);
+		}
+		byte[] block = GorillaBlock.encode(ts, cols, n);
+		// timestamps regulares: ~1 bit por fila frente a 8 bytes
+		assertTrue(block.length < n * 16 / 2, "bloque de " + block.length + " bytes");
+
+		IndicatorKernels.Ema ema = new IndicatorKernels.Ema(20);
+		IndicatorKernels.Rsi rsi = new IndicatorKernels.Rsi(14);
+		GorillaBlock.Reader r = GorillaBlock.reader(block);
+		while (r.next()) {
+			ema.accept(r.value(0));
+			rsi.accept(r.value(0));
+		}
+		assertEquals(EmaService.computeEma(closes, 20), ema.value(), 0.0);
+		assertEquals(RsiService.computeRsi(closes, 14), rsi.value(), 0.0);
+	}
+}
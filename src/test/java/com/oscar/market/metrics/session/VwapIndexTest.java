@@ -0,0 +1,124 @@
+package com.oscar.market.metrics.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class VwapIndexTest {
+
+	private static final long MIN = VwapIndex.MINUTE_MS;
+	private static final long DAY = VwapIndex.DAY_MS;
+	private static final long T0 = 19_700 * DAY; // inicio de un día UTC
+
+	@Test
+	void rangesMatchBruteForceAcrossDaysAndLateBackfill() {
+		SplittableRandom rnd = new SplittableRandom(3);
+		int n = 3 * 1440;
+		List<double[]> klines = new ArrayList<>();
+		double p = 60_000;
+		for (int i = 0; i < n; i++) {
+			if (i % 500 == 7) continue; // huecos
+			p += rnd.nextGaussian() * 20;
+			klines.add(new double[]{T0 + i * MIN, p + rnd.nextDouble() * 30, p - rnd.nextDouble() * 30, p, rnd.nextDouble() * 50});
+		}
+		VwapIndex.Series s = new VwapIndex.Series("BTCUSDT");
+		// el stream trae los dos últimos días y la siembra llega después con el primero
+		for (double[] k : klines) {
+			if (k[0] >= T0 + DAY) s.put((long) k[0], k[1], k[2], k[3], k[4]);
+		}
+		s.putAll(klines.stream().filter(k -> k[0] < T0 + DAY).toList());
+		assertNull(s.range(T0, T0 + DAY)); // aún sin cobertura declarada
+		s.coverFrom(T0, T0 + 3 * DAY);
+
+		long[][] ranges = {
+				{T0, T0 + 3 * DAY},
+				{T0 + 90 * MIN + 30_000, T0 + 2 * DAY + 17 * MIN},  // ancla a mitad de minuto
+				{T0 + DAY, T0 + DAY + MIN},
+				{T0 + 2 * DAY - 5 * MIN, T0 + 5 * DAY},
+		};
+		for (long[] r : ranges) check(s, klines, r[0], r[1]);
+
+		// una vela corregida en un día que no es el último mueve las bases posteriores
+		double[] k = klines.get(100);
+		k[4] += 1000;
+		s.put((long) k[0], k[1], k[2], k[3], k[4]);
+		for (long[] r : ranges) check(s, klines, r[0], r[1]);
+	}
+
+	@Test
+	void candleAfterGapOnAlreadyQueriedDayCarriesPrefix() {
+		VwapIndex.Series s = new VwapIndex.Series("BTCUSDT");
+		List<double[]> klines = new ArrayList<>();
+		for (int i = 0; i <= 10; i++) klines.add(new double[]{T0 + i * MIN, 100, 100, 100, 1});
+		s.putAll(klines);
+		s.coverFrom(T0, T0 + DAY);
+		check(s, klines, T0, T0 + 60 * MIN);
+
+		double[] late = {T0 + 20 * MIN, 200, 200, 200, 1};
+		klines.add(late);
+		s.put((long) late[0], late[1], late[2], late[3], late[4]);
+		check(s, klines, T0, T0 + 60 * MIN);
+		check(s, klines, T0, T0 + 15 * MIN);
+		check(s, klines, T0 + 5 * MIN, T0 + 25 * MIN);
+	}
+
+	@Test
+	void highLowMatchesBruteForceOnAnyRange() {
+		SplittableRandom rnd = new SplittableRandom(11);
+		int n = 2 * 1440 + 300;
+		List<double[]> klines = new ArrayList<>();
+		VwapIndex.Series s = new VwapIndex.Series("BTCUSDT");
+		double p = 60_000;
+		for (int i = 0; i < n; i++) {
+			if (i % 333 == 5) continue;
+			p += rnd.nextGaussian() * 20;
+			double[] k = {T0 + i * MIN, p + rnd.nextDouble() * 30, p - rnd.nextDouble() * 30, p, 1};
+			klines.add(k);
+			s.put((long) k[0], k[1], k[2], k[3], k[4]);
+		}
+		s.coverFrom(T0, T0 + 3 * DAY);
+		for (int q = 0; q < 500; q++) {
+			long from = T0 + rnd.nextLong(n * MIN);
+			long to = from + 1 + rnd.nextLong(2 * DAY);
+			double hi = Double.NEGATIVE_INFINITY, lo = Double.POSITIVE_INFINITY;
+			for (double[] k : klines) {
+				if (k[0] < from || k[0] >= to) continue;
+				hi = Math.max(hi, k[1]);
+				lo = Math.min(lo, k[2]);
+			}
+			VwapIndex.HighLow r = s.highLow(from, to);
+			if (hi == Double.NEGATIVE_INFINITY) {
+				assertNull(r.high());
+			} else {
+				assertEquals(hi, r.high(), 0.0);
+				assertEquals(lo, r.low(), 0.0);
+			}
+		}
+		assertNull(s.highLow(T0 - MIN, T0 + DAY)); // antes de la cobertura
+	}
+
+	private static void check(VwapIndex.Series s, List<double[]> klines, long from, long to) {
+		double pv = 0, v = 0;
+		for (double[] k : klines) {
+			if (k[0] < from || k[0] >= to) continue;
+			double tp = (k[1] + k[2] + k[3]) / 3.0;
+			pv += tp * k[4];
+			v += k[4];
+		}
+		double vwap = pv / v, var = 0;
+		for (double[] k : klines) {
+			if (k[0] < from || k[0] >= to) continue;
+			double d = (k[1] + k[2] + k[3]) / 3.0 - vwap;
+			var += d * d * k[4];
+		}
+		VwapIndex.Range r = s.range(from, to);
+		assertEquals(v, r.volume(), 1e-6);
+		assertEquals(vwap, r.vwap(), 1e-6);
+		assertEquals(Math.sqrt(var / v), r.stdev(), 1e-4);
+	}
+}